@@ -0,0 +1,126 @@
+package org.swisspush.reststorage;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * ReadStream over content which is already in memory. The content is emitted as slices of the buffer, so it is not
+ * copied. Emitting stops as soon as the stream is paused (e.g. by a {@link io.vertx.core.streams.Pump} when the write
+ * queue of the response is full) and continues where it stopped when resumed.
+ */
+public class BufferReadStream implements ReadStream<Buffer> {
+
+    public static final int DEFAULT_SLICE_SIZE = 64 * 1024;
+
+    private final Vertx vertx;
+    private final Buffer content;
+    private final int sliceSize;
+    private int position;
+    private boolean paused;
+    private boolean scheduled;
+    private boolean ended;
+    private Handler<Buffer> handler;
+    private Handler<Void> endHandler;
+    private Handler<Throwable> exceptionHandler;
+
+    public BufferReadStream(Vertx vertx, Buffer content) {
+        this(vertx, content, DEFAULT_SLICE_SIZE);
+    }
+
+    public BufferReadStream(Vertx vertx, byte[] content) {
+        this(vertx, Buffer.buffer(Unpooled.wrappedBuffer(content)), DEFAULT_SLICE_SIZE);
+    }
+
+    public BufferReadStream(Vertx vertx, Buffer content, int sliceSize) {
+        this.vertx = vertx;
+        this.content = content;
+        this.sliceSize = sliceSize;
+    }
+
+    /**
+     * @return the whole content, allows consumers to write small content at once instead of streaming it
+     */
+    public Buffer getContent() {
+        return content;
+    }
+
+    public int length() {
+        return content.length();
+    }
+
+    @Override
+    public BufferReadStream handler(Handler<Buffer> handler) {
+        this.handler = handler;
+        if (handler != null) {
+            schedule();
+        }
+        return this;
+    }
+
+    @Override
+    public BufferReadStream pause() {
+        paused = true;
+        return this;
+    }
+
+    @Override
+    public BufferReadStream resume() {
+        paused = false;
+        schedule();
+        return this;
+    }
+
+    @Override
+    public BufferReadStream exceptionHandler(Handler<Throwable> handler) {
+        this.exceptionHandler = handler;
+        return this;
+    }
+
+    @Override
+    public BufferReadStream endHandler(Handler<Void> endHandler) {
+        this.endHandler = endHandler;
+        return this;
+    }
+
+    /**
+     * Emitting starts on the next tick, so that the consumer can register all its handlers first. Only one emit loop
+     * is scheduled at a time, no matter how often the stream is resumed.
+     */
+    private void schedule() {
+        if (scheduled || ended) {
+            return;
+        }
+        scheduled = true;
+        vertx.runOnContext(v -> {
+            scheduled = false;
+            emit();
+        });
+    }
+
+    private void emit() {
+        while (!paused && !ended && handler != null) {
+            if (position < content.length()) {
+                int end = Math.min(position + sliceSize, content.length());
+                Buffer slice = content.slice(position, end);
+                position = end;
+                try {
+                    handler.handle(slice);
+                } catch (RuntimeException e) {
+                    if (exceptionHandler == null) {
+                        throw e;
+                    }
+                    ended = true;
+                    exceptionHandler.handle(e);
+                }
+            } else {
+                ended = true;
+                if (endHandler != null) {
+                    endHandler.handle(null);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.buffer.Buffer;
+import org.swisspush.reststorage.util.LockMode;
+
+/**
+ * A single resource of a bulk put, with the same options as a single put.
+ */
+public class BulkPutEntry {
+    public String path;
+    public Buffer content;
+    public String etag;
+    public boolean merge = false;
+    public long expire = -1;
+    public boolean storeCompressed = false;
+    public String lockOwner = "";
+    public LockMode lockMode = LockMode.SILENT;
+    public long lockExpire = 300;
+}
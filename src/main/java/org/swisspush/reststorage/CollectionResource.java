@@ -1,8 +1,14 @@
 package org.swisspush.reststorage;
+import io.vertx.core.streams.ReadStream;
+
 import java.util.List;
 
 
 
 public class CollectionResource extends Resource {
     public List<Resource> items;
+    // the name of the last listed member if the listing was limited and further members follow, null otherwise
+    public String cursor;
+    // the members of a large collection, which are read while they are consumed instead of being contained in items
+    public ReadStream<Resource> memberStream;
 }
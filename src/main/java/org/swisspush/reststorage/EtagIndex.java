@@ -0,0 +1,38 @@
+package org.swisspush.reststorage;
+
+/**
+ * In-process index of the etags of resources held in front of the {@link RedisStorage}. Allows to answer conditional
+ * GET requests of unchanged resources without evaluating a script. The index is bounded by the amount of entries.
+ */
+public class EtagIndex extends InvalidatedCache<EtagIndex.Entry> {
+
+    public static class Entry extends InvalidatedCache.Entry {
+        private final String etag;
+
+        public Entry(String etag, long expireAt) {
+            super(expireAt);
+            this.etag = etag;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    public EtagIndex(long maxEntries) {
+        super(maxEntries);
+    }
+
+    /**
+     * @return <code>true</code> if the resource is known to have the given etag and is not expired
+     */
+    public boolean isNotModified(String key, String etag, long now) {
+        Entry entry = get(key, now);
+        return entry != null && etag.equals(entry.getEtag());
+    }
+
+    @Override
+    protected long sizeOf(Entry entry) {
+        return 1;
+    }
+}
@@ -5,14 +5,24 @@ import io.vertx.core.Vertx;
 import io.vertx.core.file.FileProps;
 import io.vertx.core.file.FileSystem;
 import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.swisspush.reststorage.util.LockMode;
+import org.swisspush.reststorage.util.ResourceNameUtil;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class FileSystemStorage implements Storage {
 
@@ -26,6 +36,12 @@ public class FileSystemStorage implements Storage {
 
     @Override
     public void get(String path, String etag, final int offset, final int count, final Handler<Resource> handler) {
+        get(path, etag, offset, count, null, null, handler);
+    }
+
+    @Override
+    public void get(String path, String etag, final int offset, final int count, final String cursor, final String startsWith,
+                    final Handler<Resource> handler) {
         final String fullPath = canonicalize(path);
         fileSystem().exists(fullPath, booleanAsyncResult -> {
             if (booleanAsyncResult.result()) {
@@ -56,6 +72,12 @@ public class FileSystemStorage implements Storage {
                                     c.items.add(r);
                                     if (c.items.size() == length) {
                                         Collections.sort(c.items);
+                                        if (cursor != null || startsWith != null) {
+                                            c.items = c.items.stream()
+                                                    .filter(member -> cursor == null || member.name.compareTo(cursor) > 0)
+                                                    .filter(member -> startsWith == null || member.name.startsWith(startsWith))
+                                                    .collect(Collectors.toList());
+                                        }
                                         int n = count;
                                         if(n == -1) {
                                             n = length;
@@ -65,6 +87,9 @@ public class FileSystemStorage implements Storage {
                                                 handler.handle(c);
                                             } else {
                                                 c.items = c.items.subList(offset, offset+n);
+                                                if (n > 0) {
+                                                    c.cursor = c.items.get(n - 1).name;
+                                                }
                                                 handler.handle(c);
                                             }
                                         }
@@ -94,6 +119,26 @@ public class FileSystemStorage implements Storage {
         });
     }
 
+    @Override
+    public void multiGet(List<String> paths, Handler<List<Resource>> handler) {
+        if (paths.isEmpty()) {
+            handler.handle(Collections.emptyList());
+            return;
+        }
+        // all files are looked up and opened at once, the file system operations run in parallel on the worker pool
+        final Resource[] resources = new Resource[paths.size()];
+        final int[] pending = {paths.size()};
+        for (int i = 0; i < paths.size(); i++) {
+            final int index = i;
+            get(paths.get(i), null, 0, -1, resource -> {
+                resources[index] = resource;
+                if (--pending[0] == 0) {
+                    handler.handle(Arrays.asList(resources));
+                }
+            });
+        }
+    }
+
     @Override
     public void put(String path, String etag, boolean merge, long expire, final Handler<Resource> handler) {
         put(path, etag, merge, expire, "", LockMode.SILENT, 0, handler);
@@ -176,6 +221,25 @@ public class FileSystemStorage implements Storage {
         });
     }
 
+    @Override
+    public void bulkDelete(List<String> paths, String lockOwner, LockMode lockMode, long lockExpire, Handler<List<Resource>> handler) {
+        // the paths are deleted one after the other, since they may contain each other
+        final Resource[] resources = new Resource[paths.size()];
+        deleteFrom(paths, 0, resources, lockOwner, lockMode, lockExpire, handler);
+    }
+
+    private void deleteFrom(List<String> paths, int index, Resource[] resources, String lockOwner, LockMode lockMode, long lockExpire,
+                            Handler<List<Resource>> handler) {
+        if (index == paths.size()) {
+            handler.handle(Arrays.asList(resources));
+            return;
+        }
+        delete(paths.get(index), lockOwner, lockMode, lockExpire, resource -> {
+            resources[index] = resource;
+            deleteFrom(paths, index + 1, resources, lockOwner, lockMode, lockExpire, handler);
+        });
+    }
+
     private String canonicalize(String path) {
         try {
             return new File(root + path).getCanonicalPath();
@@ -197,8 +261,209 @@ public class FileSystemStorage implements Storage {
         // nothing to do here
     }
 
+    @Override
+    public void metrics(Handler<JsonObject> handler) {
+        // no metrics available
+        handler.handle(new JsonObject());
+    }
+
     @Override
     public void storageExpand(String path, String etag, List<String> subResources, Handler<Resource> handler) {
-        throw new UnsupportedOperationException("Method 'storageExpand' is not yet implemented for the FileSystemStorage");
+        storageExpand(path, etag, subResources, 1, handler);
+    }
+
+    @Override
+    public void storageExpand(String path, String etag, List<String> subResources, int depth, Handler<Resource> handler) {
+        List<String> names = new ArrayList<>(subResources.size());
+        for (String subResource : subResources) {
+            names.add(ResourceNameUtil.resetReplacedColonsAndSemiColons(subResource));
+        }
+        expand(canonicalize(path), etag, depth, false, directory -> names, handler);
+    }
+
+    @Override
+    public void storageExpandAll(String path, String etag, String prefix, int offset, int limit, int depth, Handler<Resource> handler) {
+        expand(canonicalize(path), etag, depth, true, directory -> {
+            List<String> matching = new ArrayList<>();
+            for (String member : listMembers(directory)) {
+                if (prefix == null || member.startsWith(prefix)) {
+                    matching.add(member);
+                }
+            }
+            int from = Math.min(offset, matching.size());
+            int to = limit < 0 ? matching.size() : Math.min(from + limit, matching.size());
+            return matching.subList(from, to);
+        }, handler);
+    }
+
+    /**
+     * Expands the sub resources of the directory on a worker thread. The files are read and the json is built with
+     * blocking file system calls, the etag is the hash of the expanded content.
+     */
+    private void expand(String fullPath, String etag, int depth, boolean allSubResources, Function<File, List<String>> subResources,
+                        Handler<Resource> handler) {
+        vertx.<Resource>executeBlocking(future -> {
+            File directory = new File(fullPath);
+            Resource r = new Resource();
+            if (!directory.isDirectory()) {
+                r.exists = false;
+                future.complete(r);
+                return;
+            }
+            JsonObject expanded = new JsonObject();
+            for (String name : subResources.apply(directory)) {
+                try {
+                    expandMember(directory, name, 1, depth, expanded);
+                } catch (DecodeException e) {
+                    r.invalid = true;
+                    r.invalidMessage = "Error decoding invalid json resource '" + name + "'";
+                    future.complete(r);
+                    return;
+                } catch (IOException e) {
+                    r.error = true;
+                    r.errorMessage = "Error reading resource '" + name + "': " + e.getMessage();
+                    future.complete(r);
+                    return;
+                }
+            }
+            if (expanded.isEmpty() && !allSubResources) {
+                r.exists = false;
+                future.complete(r);
+                return;
+            }
+            byte[] content = expanded.encode().getBytes(StandardCharsets.UTF_8);
+            String digest = DigestUtils.sha1Hex(content);
+            if (digest.equals(etag)) {
+                r.modified = false;
+                future.complete(r);
+                return;
+            }
+            DocumentResource d = new DocumentResource();
+            d.readStream = new BufferReadStream(vertx, content);
+            d.length = content.length;
+            d.etag = digest;
+            d.closeHandler = v -> {
+                // nothing to close
+            };
+            future.complete(d);
+        }, false, result -> {
+            if (result.failed()) {
+                Resource r = new Resource();
+                r.error = true;
+                r.errorMessage = "Error expanding the sub resources: " + result.cause().getMessage();
+                handler.handle(r);
+                return;
+            }
+            handler.handle(result.result());
+        });
+    }
+
+    private void expandMember(File directory, String name, int level, int depth, JsonObject expanded) throws IOException {
+        String memberName = name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+        if (memberName.isEmpty() || memberName.equals(".") || memberName.equals("..") || memberName.contains("/")
+                || memberName.contains(File.separator)) {
+            // only direct members of the directory are expanded
+            return;
+        }
+        if (name.endsWith("/")) {
+            String collectionName = memberName;
+            File collection = new File(directory, collectionName);
+            if (!collection.isDirectory()) {
+                return;
+            }
+            if (level >= depth) {
+                expanded.put(collectionName, new JsonArray(new ArrayList<>(listMembers(collection))));
+            } else {
+                JsonObject members = new JsonObject();
+                for (String member : listMembers(collection)) {
+                    expandMember(collection, member, level + 1, depth, members);
+                }
+                expanded.put(collectionName, members);
+            }
+        } else {
+            File file = new File(directory, name);
+            if (file.isFile()) {
+                expanded.put(name, new JsonObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    /**
+     * Lists the members of the directory like the redis storage, the sub directories first with a trailing slash,
+     * followed by the files. Both are sorted by name.
+     */
+    private List<String> listMembers(File directory) {
+        List<String> collections = new ArrayList<>();
+        List<String> resources = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    collections.add(file.getName() + "/");
+                } else if (file.isFile()) {
+                    resources.add(file.getName());
+                }
+            }
+        }
+        Collections.sort(collections);
+        Collections.sort(resources);
+        collections.addAll(resources);
+        return collections;
+    }
+
+    @Override
+    public void bulkPut(List<BulkPutEntry> entries, boolean atomic, Handler<List<Resource>> handler) {
+        final Resource[] resources = new Resource[entries.size()];
+        if (atomic) {
+            // the files cannot be written all or none, so nothing is written
+            for (int i = 0; i < resources.length; i++) {
+                resources[i] = invalidResource("Atomic bulk put is not supported by the FileSystemStorage");
+            }
+            handler.handle(Arrays.asList(resources));
+            return;
+        }
+        // the entries are written one after the other, since they may contain each other
+        putFrom(entries, 0, resources, handler);
+    }
+
+    private void putFrom(List<BulkPutEntry> entries, int index, Resource[] resources, Handler<List<Resource>> handler) {
+        if (index == entries.size()) {
+            handler.handle(Arrays.asList(resources));
+            return;
+        }
+        final BulkPutEntry entry = entries.get(index);
+        if (entry.storeCompressed) {
+            resources[index] = invalidResource("Storing compressed resources is not supported by the FileSystemStorage");
+            putFrom(entries, index + 1, resources, handler);
+            return;
+        }
+        put(entry.path, entry.etag, entry.merge, entry.expire, entry.lockOwner, entry.lockMode, entry.lockExpire, resource -> {
+            if (resource instanceof DocumentResource && resource.exists) {
+                final DocumentResource d = (DocumentResource) resource;
+                d.endHandler = v -> {
+                    resources[index] = d;
+                    putFrom(entries, index + 1, resources, handler);
+                };
+                d.writeStream.write(entry.content);
+                d.closeHandler.handle(null);
+                return;
+            }
+            if (resource instanceof CollectionResource) {
+                resources[index] = resource;
+            } else {
+                // the file cannot be created, e.g. because a parent is a file
+                DocumentResource d = new DocumentResource();
+                d.exists = false;
+                resources[index] = d;
+            }
+            putFrom(entries, index + 1, resources, handler);
+        });
+    }
+
+    private Resource invalidResource(String message) {
+        Resource r = new Resource();
+        r.invalid = true;
+        r.invalidMessage = message;
+        return r;
     }
 }
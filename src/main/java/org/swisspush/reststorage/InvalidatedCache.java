@@ -0,0 +1,149 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Base class of the in-process caches held in front of the {@link RedisStorage}, which are bounded by a maximum size
+ * and evict the least recently used entries first.
+ * <p>
+ * Entries are invalidated by the messages published by the lua scripts on every write. A message either contains the
+ * key of a single resource or the key of a collection followed by {@link #TREE_SUFFIX}, which invalidates all resources
+ * below this collection. Every invalidation increments the generation of the cache. Results of redis reads started
+ * before an invalidation are not added to the cache, since they may contain a stale value.
+ * </p>
+ * Not thread safe, must only be used from the context of the storage.
+ */
+public abstract class InvalidatedCache<E extends InvalidatedCache.Entry> {
+
+    public static final String TREE_SUFFIX = ":*";
+
+    private final long maxSize;
+    private final LinkedHashMap<String, E> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long size = 0;
+    private long generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    public static class Entry {
+        private final long expireAt;
+
+        public Entry(long expireAt) {
+            this.expireAt = expireAt;
+        }
+
+        public long getExpireAt() {
+            return expireAt;
+        }
+    }
+
+    protected InvalidatedCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the size the entry accounts for in the maximum size of the cache
+     */
+    protected abstract long sizeOf(E entry);
+
+    /**
+     * @return the entry of the resource or <code>null</code>, if the resource is not cached or expired
+     */
+    public E get(String key, long now) {
+        E entry = entries.get(key);
+        if (entry != null && entry.getExpireAt() < now) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the current generation, to be passed to {@link #put(String, Entry, long)} with the result of a read
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * Adds the entry, unless the cache was invalidated since the given generation was obtained.
+     */
+    public void put(String key, E entry, long generation) {
+        long entrySize = sizeOf(entry);
+        if (generation != this.generation || entrySize > maxSize) {
+            return;
+        }
+        remove(key);
+        entries.put(key, entry);
+        size += entrySize;
+        Iterator<Map.Entry<String, E>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= sizeOf(iterator.next().getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Handles an invalidation message.
+     */
+    public void invalidate(String message) {
+        generation++;
+        invalidations++;
+        if (message.endsWith(TREE_SUFFIX)) {
+            String key = message.substring(0, message.length() - TREE_SUFFIX.length());
+            String prefix = key + ":";
+            remove(key);
+            Iterator<Map.Entry<String, E>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, E> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    size -= sizeOf(entry.getValue());
+                    iterator.remove();
+                }
+            }
+        } else {
+            remove(message);
+        }
+    }
+
+    /**
+     * Removes all entries, e.g. when invalidation messages may have been missed.
+     */
+    public void clear() {
+        generation++;
+        entries.clear();
+        size = 0;
+    }
+
+    private void remove(String key) {
+        E removed = entries.remove(key);
+        if (removed != null) {
+            size -= sizeOf(removed);
+        }
+    }
+
+    public JsonObject metrics() {
+        JsonObject metrics = new JsonObject();
+        long requests = hits + misses;
+        metrics.put("maxSize", maxSize);
+        metrics.put("size", size);
+        metrics.put("entries", entries.size());
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("hitRatio", requests == 0 ? 0.0 : (double) hits / requests);
+        metrics.put("evictions", evictions);
+        metrics.put("invalidations", invalidations);
+        return metrics;
+    }
+}
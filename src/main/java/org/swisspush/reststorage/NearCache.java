@@ -0,0 +1,43 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * In-process cache of resource contents held in front of the {@link RedisStorage}. The cache is bounded by the amount
+ * of bytes of the cached contents.
+ */
+public class NearCache extends InvalidatedCache<NearCache.Entry> {
+
+    // rough amount of bytes used by an entry besides its content
+    private static final int ENTRY_OVERHEAD = 128;
+
+    public static class Entry extends InvalidatedCache.Entry {
+        private final Buffer content;
+        private final String etag;
+        private final long size;
+
+        public Entry(Buffer content, String etag, long expireAt) {
+            super(expireAt);
+            this.content = content;
+            this.etag = etag;
+            this.size = content.length() + (etag == null ? 0 : etag.length() * 2) + ENTRY_OVERHEAD;
+        }
+
+        public Buffer getContent() {
+            return content;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    public NearCache(long maxSize) {
+        super(maxSize);
+    }
+
+    @Override
+    protected long sizeOf(Entry entry) {
+        return entry.size;
+    }
+}
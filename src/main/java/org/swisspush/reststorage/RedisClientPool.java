@@ -0,0 +1,199 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.redis.RedisClient;
+import io.vertx.redis.RedisOptions;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+import org.swisspush.reststorage.util.ModuleConfiguration.RedisPoolStrategy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A pool of {@link RedisClient} connections used by the {@link RedisStorage}.
+ * <p>
+ * Script evaluations are dispatched to the connections either round-robin or to the connection
+ * with the least outstanding commands. When a maximum amount of in-flight commands per connection
+ * is configured, commands exceeding this limit are queued until a connection becomes available.
+ * </p>
+ */
+public class RedisClientPool {
+
+    private Logger log = LoggerFactory.getLogger(RedisClientPool.class);
+
+    private final List<PooledClient> clients;
+    private final RedisPoolStrategy strategy;
+    private final int maxInFlight;
+    private final Deque<PendingCommand> pendingCommands = new ArrayDeque<>();
+    private int nextIndex = 0;
+
+    private long dispatchedCommands = 0;
+    private long queuedCommands = 0;
+    private long failedCommands = 0;
+    private int maxQueueSize = 0;
+
+    public RedisClientPool(Vertx vertx, ModuleConfiguration config) {
+        this(vertx, new RedisOptions().setHost(config.getRedisHost()).setPort(config.getRedisPort()),
+                config.getRedisPoolSize(), config.getRedisPoolStrategy(), config.getRedisMaxInFlight());
+    }
+
+    public RedisClientPool(Vertx vertx, RedisOptions options, int poolSize, RedisPoolStrategy strategy, int maxInFlight) {
+        int size = poolSize < 1 ? 1 : poolSize;
+        this.strategy = strategy == null ? RedisPoolStrategy.roundRobin : strategy;
+        this.maxInFlight = maxInFlight < 0 ? 0 : maxInFlight;
+        this.clients = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            clients.add(new PooledClient(RedisClient.create(vertx, options)));
+        }
+        log.info("created redis connection pool with " + size + " connections, strategy " + this.strategy
+                + " and max in-flight commands per connection " + (this.maxInFlight == 0 ? "unlimited" : this.maxInFlight));
+    }
+
+    /**
+     * Holds a pooled connection and the amount of commands sent to it and not answered yet.
+     */
+    private class PooledClient {
+        private final RedisClient client;
+        private int outstanding = 0;
+
+        private PooledClient(RedisClient client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * A command waiting for a connection with free capacity.
+     */
+    private class PendingCommand {
+        private final String sha;
+        private final List<String> keys;
+        private final List<String> arguments;
+        private final Handler<AsyncResult<JsonArray>> handler;
+
+        private PendingCommand(String sha, List<String> keys, List<String> arguments, Handler<AsyncResult<JsonArray>> handler) {
+            this.sha = sha;
+            this.keys = keys;
+            this.arguments = arguments;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Returns a connection of the pool for commands which do not need to be tracked (e.g. loading lua scripts).
+     *
+     * @return a redis client of the pool
+     */
+    public RedisClient client() {
+        return clients.get(0).client;
+    }
+
+    /**
+     * Evaluates the lua script with the provided sha on a connection of the pool.
+     *
+     * @param sha the sha of the lua script
+     * @param keys the keys passed to the script
+     * @param arguments the arguments passed to the script
+     * @param handler the handler called with the result of the script evaluation
+     */
+    public void evalsha(String sha, List<String> keys, List<String> arguments, Handler<AsyncResult<JsonArray>> handler) {
+        PooledClient pooledClient = selectClient();
+        if (pooledClient == null) {
+            queuedCommands++;
+            pendingCommands.add(new PendingCommand(sha, keys, arguments, handler));
+            if (pendingCommands.size() > maxQueueSize) {
+                maxQueueSize = pendingCommands.size();
+            }
+            return;
+        }
+        dispatch(pooledClient, sha, keys, arguments, handler);
+    }
+
+    private void dispatch(PooledClient pooledClient, String sha, List<String> keys, List<String> arguments, Handler<AsyncResult<JsonArray>> handler) {
+        pooledClient.outstanding++;
+        dispatchedCommands++;
+        pooledClient.client.evalsha(sha, keys, arguments, event -> {
+            pooledClient.outstanding--;
+            if (event.failed()) {
+                failedCommands++;
+            }
+            dispatchPendingCommands();
+            handler.handle(event);
+        });
+    }
+
+    private void dispatchPendingCommands() {
+        while (!pendingCommands.isEmpty()) {
+            PooledClient pooledClient = selectClient();
+            if (pooledClient == null) {
+                return;
+            }
+            PendingCommand command = pendingCommands.poll();
+            dispatch(pooledClient, command.sha, command.keys, command.arguments, command.handler);
+        }
+    }
+
+    /**
+     * Selects a connection according to the configured strategy.
+     *
+     * @return the selected connection or <code>null</code> when all connections reached the max in-flight limit
+     */
+    private PooledClient selectClient() {
+        int size = clients.size();
+        PooledClient selected = null;
+        for (int i = 0; i < size; i++) {
+            PooledClient candidate = clients.get((nextIndex + i) % size);
+            if (hasCapacity(candidate)) {
+                if (strategy == RedisPoolStrategy.roundRobin) {
+                    selected = candidate;
+                    break;
+                }
+                if (selected == null || candidate.outstanding < selected.outstanding) {
+                    selected = candidate;
+                }
+            }
+        }
+        nextIndex = (nextIndex + 1) % size;
+        return selected;
+    }
+
+    private boolean hasCapacity(PooledClient pooledClient) {
+        return maxInFlight == 0 || pooledClient.outstanding < maxInFlight;
+    }
+
+    /**
+     * Returns the utilization metrics of the pool.
+     *
+     * @return a json object containing the pool metrics
+     */
+    public JsonObject metrics() {
+        int inFlight = 0;
+        JsonArray perConnection = new JsonArray();
+        for (PooledClient pooledClient : clients) {
+            inFlight += pooledClient.outstanding;
+            perConnection.add(pooledClient.outstanding);
+        }
+        JsonObject metrics = new JsonObject();
+        metrics.put("size", clients.size());
+        metrics.put("strategy", strategy.name());
+        metrics.put("maxInFlight", maxInFlight);
+        metrics.put("inFlight", inFlight);
+        metrics.put("inFlightPerConnection", perConnection);
+        if (maxInFlight > 0) {
+            metrics.put("utilization", (double) inFlight / (clients.size() * maxInFlight));
+        }
+        metrics.put("queued", pendingCommands.size());
+        metrics.put("maxQueued", maxQueueSize);
+        metrics.put("totalQueued", queuedCommands);
+        metrics.put("totalDispatched", dispatchedCommands);
+        metrics.put("totalFailed", failedCommands);
+        return metrics;
+    }
+}
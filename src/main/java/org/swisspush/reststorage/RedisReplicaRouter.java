@@ -0,0 +1,317 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.redis.RedisClient;
+import io.vertx.redis.RedisOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Routes the evaluations of read-only lua scripts to redis replicas, in order to take read traffic off the primary.
+ * <p>
+ * The replication state of every replica is checked periodically. A replica is only used while its link to the
+ * primary is up and the last interaction with the primary is not older than the configured maximum lag in seconds.
+ * Reads are sent round-robin to the usable replicas. When no replica is usable or a replica fails to answer, the
+ * read is sent to the primary.
+ * </p>
+ * <p>
+ * With hedging enabled, a read which was not answered by a replica within the 95th percentile of the recent replica
+ * latencies is sent to a second node as well (another replica or the primary). The first answer wins.
+ * </p>
+ * Not thread safe, must only be used from the context of the storage.
+ */
+public class RedisReplicaRouter {
+
+    private Logger log = LoggerFactory.getLogger(RedisReplicaRouter.class);
+
+    private static final long REPLICATION_CHECK_INTERVAL_MILLIS = 1000;
+    private static final int LATENCY_SAMPLES = 1024;
+    // amount of samples needed before the latency percentile is used for hedging
+    private static final int MIN_LATENCY_SAMPLES = 100;
+    private static final int PERCENTILE_UPDATE_INTERVAL = 64;
+
+    private final Vertx vertx;
+    private final RedisClientPool primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final int maxLag;
+    private final boolean hedging;
+    private int nextIndex = 0;
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount = 0;
+    private long p95Micros = -1;
+
+    private long primaryReads = 0;
+    private long fallbacks = 0;
+    private long hedgedReads = 0;
+    private long hedgeWins = 0;
+
+    /**
+     * A replica and the result of its last replication check.
+     */
+    private class Replica {
+        private final String address;
+        private final RedisClient client;
+        private boolean usable = false;
+        private long lag = -1;
+        private long dispatched = 0;
+        private long failed = 0;
+
+        private Replica(String address, RedisClient client) {
+            this.address = address;
+            this.client = client;
+        }
+    }
+
+    /**
+     * @param replicas comma separated list of <code>host:port</code> of the replicas
+     * @param maxLag the maximum age in seconds of the last interaction of a replica with the primary
+     * @param hedging if slow replica reads are sent to a second node
+     */
+    public RedisReplicaRouter(Vertx vertx, RedisClientPool primary, String replicas, int maxLag, boolean hedging) {
+        this.vertx = vertx;
+        this.primary = primary;
+        this.maxLag = maxLag;
+        this.hedging = hedging;
+        for (String address : parseAddresses(replicas)) {
+            int separator = address.lastIndexOf(':');
+            String host = separator < 0 ? address : address.substring(0, separator);
+            int port = separator < 0 ? 6379 : Integer.parseInt(address.substring(separator + 1));
+            this.replicas.add(new Replica(address, RedisClient.create(vertx, new RedisOptions().setHost(host).setPort(port))));
+        }
+        log.info("route reads to the redis replicas " + replicas + " with max lag " + maxLag + "s, hedging " + hedging);
+        checkReplication();
+        vertx.setPeriodic(REPLICATION_CHECK_INTERVAL_MILLIS, timerId -> checkReplication());
+    }
+
+    /**
+     * @return the addresses of the comma separated list, without blank entries
+     */
+    public static List<String> parseAddresses(String replicas) {
+        List<String> addresses = new ArrayList<>();
+        if (replicas != null) {
+            for (String address : Arrays.asList(replicas.split(","))) {
+                if (!address.trim().isEmpty()) {
+                    addresses.add(address.trim());
+                }
+            }
+        }
+        return addresses;
+    }
+
+    private void checkReplication() {
+        for (Replica replica : replicas) {
+            replica.client.infoSection("replication", event -> {
+                if (event.failed()) {
+                    setUsable(replica, false, -1, event.cause().getMessage());
+                    return;
+                }
+                JsonObject info = event.result();
+                if (info.getJsonObject("replication") != null) {
+                    info = info.getJsonObject("replication");
+                }
+                if (!"slave".equals(info.getString("role"))) {
+                    setUsable(replica, false, -1, "not a replica");
+                } else if (!"up".equals(info.getString("master_link_status"))) {
+                    setUsable(replica, false, -1, "link to the primary is down");
+                } else {
+                    long lag = Long.parseLong(String.valueOf(info.getValue("master_last_io_seconds_ago", "-1")));
+                    setUsable(replica, lag >= 0 && lag <= maxLag, lag, "lag of " + lag + "s");
+                }
+            });
+        }
+    }
+
+    private void setUsable(Replica replica, boolean usable, long lag, String reason) {
+        if (replica.usable != usable) {
+            if (usable) {
+                log.info("redis replica " + replica.address + " is used for reads");
+            } else {
+                log.warn("redis replica " + replica.address + " is not used for reads: " + reason);
+            }
+        }
+        replica.usable = usable;
+        replica.lag = lag;
+    }
+
+    /**
+     * Evaluates a read-only lua script on a replica, or on the primary when no replica is usable.
+     *
+     * @param sha the sha of the lua script
+     * @param script the lua script, loaded into replicas which do not know the sha yet
+     * @param keys the keys passed to the script
+     * @param arguments the arguments passed to the script
+     * @param handler the handler called with the result of the script evaluation
+     */
+    public void evalsha(String sha, String script, List<String> keys, List<String> arguments, Handler<AsyncResult<JsonArray>> handler) {
+        Replica replica = selectReplica(null);
+        if (replica == null) {
+            primaryReads++;
+            primary.evalsha(sha, keys, arguments, handler);
+            return;
+        }
+        new Read(sha, script, keys, arguments, handler).start(replica);
+    }
+
+    private Replica selectReplica(Replica excluded) {
+        int size = replicas.size();
+        for (int i = 0; i < size; i++) {
+            Replica candidate = replicas.get((nextIndex + i) % size);
+            if (candidate.usable && candidate != excluded) {
+                nextIndex = (nextIndex + i + 1) % size;
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A read sent to a replica and, after a failure or a hedging delay, to a second node.
+     */
+    private class Read {
+        private final String sha;
+        private final String script;
+        private final List<String> keys;
+        private final List<String> arguments;
+        private final Handler<AsyncResult<JsonArray>> handler;
+        private int outstanding = 0;
+        private boolean secondSent = false;
+        private boolean done = false;
+        private long timerId = -1;
+
+        private Read(String sha, String script, List<String> keys, List<String> arguments, Handler<AsyncResult<JsonArray>> handler) {
+            this.sha = sha;
+            this.script = script;
+            this.keys = keys;
+            this.arguments = arguments;
+            this.handler = handler;
+        }
+
+        private void start(Replica replica) {
+            send(replica, false);
+            if (hedging && p95Micros >= 0) {
+                timerId = vertx.setTimer(Math.max(1, p95Micros / 1000), id -> {
+                    timerId = -1;
+                    if (!done && !secondSent) {
+                        hedgedReads++;
+                        sendSecond(selectReplica(replica), true);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Sends the read to the given replica or, if <code>null</code>, to the primary.
+         */
+        private void sendSecond(Replica replica, boolean hedged) {
+            secondSent = true;
+            if (replica != null) {
+                send(replica, hedged);
+            } else {
+                primaryReads++;
+                outstanding++;
+                primary.evalsha(sha, keys, arguments, event -> handle(event, hedged));
+            }
+        }
+
+        private void send(Replica replica, boolean hedged) {
+            long start = System.nanoTime();
+            replica.dispatched++;
+            outstanding++;
+            replica.client.evalsha(sha, keys, arguments, event -> {
+                if (event.succeeded()) {
+                    recordLatency((System.nanoTime() - start) / 1000);
+                } else {
+                    replica.failed++;
+                    String message = event.cause().getMessage();
+                    if (message != null && message.startsWith("NOSCRIPT")) {
+                        // scripts loaded on the primary are not necessarily known to the replica
+                        replica.client.scriptLoad(script, loaded -> {
+                            if (loaded.failed()) {
+                                log.error("loading lua script into redis replica " + replica.address + " failed: " + loaded.cause().getMessage());
+                            }
+                        });
+                    } else {
+                        log.warn("read from redis replica " + replica.address + " failed: " + message);
+                    }
+                }
+                handle(event, hedged);
+            });
+        }
+
+        private void handle(AsyncResult<JsonArray> event, boolean hedged) {
+            outstanding--;
+            if (done) {
+                return;
+            }
+            if (event.failed() && outstanding > 0) {
+                // the other node may still answer
+                return;
+            }
+            if (event.succeeded() || secondSent) {
+                done = true;
+                if (timerId >= 0) {
+                    vertx.cancelTimer(timerId);
+                }
+                if (hedged && event.succeeded()) {
+                    hedgeWins++;
+                }
+                handler.handle(event);
+                return;
+            }
+            // the replica failed and no other node was asked yet
+            fallbacks++;
+            if (timerId >= 0) {
+                vertx.cancelTimer(timerId);
+                timerId = -1;
+            }
+            sendSecond(null, false);
+        }
+    }
+
+    private void recordLatency(long micros) {
+        latencies[(int) (latencyCount % LATENCY_SAMPLES)] = micros;
+        latencyCount++;
+        if (latencyCount >= MIN_LATENCY_SAMPLES && latencyCount % PERCENTILE_UPDATE_INTERVAL == 0) {
+            int samples = (int) Math.min(latencyCount, LATENCY_SAMPLES);
+            long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            p95Micros = sorted[(int) Math.ceil(samples * 0.95) - 1];
+        }
+    }
+
+    /**
+     * Returns the routing metrics.
+     *
+     * @return a json object containing the replica metrics
+     */
+    public JsonObject metrics() {
+        JsonArray replicaMetrics = new JsonArray();
+        for (Replica replica : replicas) {
+            replicaMetrics.add(new JsonObject()
+                    .put("address", replica.address)
+                    .put("usable", replica.usable)
+                    .put("lag", replica.lag)
+                    .put("dispatched", replica.dispatched)
+                    .put("failed", replica.failed));
+        }
+        JsonObject metrics = new JsonObject();
+        metrics.put("replicas", replicaMetrics);
+        metrics.put("maxLag", maxLag);
+        metrics.put("primaryReads", primaryReads);
+        metrics.put("fallbacks", fallbacks);
+        metrics.put("hedging", hedging);
+        metrics.put("latencyP95Micros", p95Micros);
+        metrics.put("hedgedReads", hedgedReads);
+        metrics.put("hedgeWins", hedgeWins);
+        return metrics;
+    }
+}
@@ -1,9 +1,15 @@
 package org.swisspush.reststorage;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
-import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
@@ -21,6 +27,7 @@ import org.swisspush.reststorage.util.ModuleConfiguration;
 import org.swisspush.reststorage.util.ResourceNameUtil;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class RedisStorage implements Storage {
@@ -31,7 +38,27 @@ public class RedisStorage implements Storage {
     private static final String MAX_EXPIRE_IN_MILLIS = "9999999999999";
     private final String EMPTY = "";
 
-    private static final int CLEANUP_BULK_SIZE = 200;
+    // bounds of the amount of expired resources deleted by a single evaluation of the cleanup script, which is adapted
+    // to the measured duration of the evaluations
+    private static final int CLEANUP_INITIAL_BULK_SIZE = 200;
+    private static final int CLEANUP_MIN_BULK_SIZE = 10;
+    private static final int CLEANUP_MAX_BULK_SIZE = 10000;
+
+    private static final String CHUNKS_KEY_SUFFIX = "-chunks:";
+    private static final long CHUNKS_KEY_EXPIRE_MILLIS = 3600000;
+    private static final int MAX_PENDING_CHUNK_WRITES = 2;
+    // limits of the puts sent with a single evaluation of the bulk put script, if the bulk is not all or nothing
+    private static final int BULK_PUT_MAX_ENTRIES = 1000;
+    private static final int BULK_PUT_MAX_BYTES = 4 * 1024 * 1024;
+    // limit of the paths deleted with a single evaluation of the bulk delete script
+    private static final int BULK_DELETE_MAX_PATHS = 1000;
+    // parser used to validate the json of expanded resources and the size of the array writing them to the response
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int SCRATCH_SIZE = 8192;
+    // attempts of a chunked storage expand whose chunks saw different members of the collection
+    private static final int STORAGE_EXPAND_CHUNK_ATTEMPTS = 3;
+    // members of a streamed collection listing read by a single script evaluation
+    private static final int COLLECTION_STREAM_PAGE_SIZE = 1000;
 
     private String redisResourcesPrefix;
     private String redisCollectionsPrefix;
@@ -39,10 +66,59 @@ public class RedisStorage implements Storage {
     private String redisDeltaEtagsPrefix;
     private String expirableSet;
     private long cleanupResourcesAmount;
+    private long cleanupTargetDuration;
+    private int cleanupBulkSize = CLEANUP_INITIAL_BULK_SIZE;
+    private long cleanupRuns = 0;
+    private long cleanupEvaluations = 0;
+    private long cleanupCleaned = 0;
+    private double cleanupLastDuration = 0;
+    private double cleanupThroughput = 0;
+    private long cleanupSkipped = 0;
+    private long cleanupFenced = 0;
+    private long cleanupLeaseDuration;
+    private String cleanupLeaseKey;
+    private final String cleanupLeaseOwner = UUID.randomUUID().toString();
     private String redisLockPrefix;
     private Vertx vertx;
-    private RedisClient redisClient;
+    private RedisClientPool redisClientPool;
+    private RedisReplicaRouter replicaRouter;
     private Map<LuaScript,LuaScriptState> luaScripts = new HashMap<>();
+    private long batchWindow;
+    private int batchMaxSize;
+    private List<BatchEntry> batchEntries = new ArrayList<>();
+    private boolean batchFlushScheduled = false;
+    // collects the evaluations of a multi get, null when no multi get is in progress
+    private List<BatchEntry> multiGetEntries;
+    private long multiGetCount = 0;
+    private long bulkPutCount = 0;
+    private long bulkPutEvaluations = 0;
+    private long bulkPutResources = 0;
+    private long bulkDeleteCount = 0;
+    private long bulkDeleteEvaluations = 0;
+    private long bulkDeletePaths = 0;
+    private long batchCount = 0;
+    private long batchedCommands = 0;
+    private int maxBatchSize = 0;
+    private int chunkSize;
+    private int storageExpandMaxNodes;
+    private long storageExpandMaxBytes;
+    private int storageExpandChunkSize;
+    private boolean storageExpandChunkConsistency;
+    private long storageExpandChunked = 0;
+    private long storageExpandChunkEvaluations = 0;
+    private int collectionStreamThreshold;
+    private long collectionStreams = 0;
+    private long collectionStreamPages = 0;
+    private int reclaimBatchSize;
+    private boolean reclaimRunning = false;
+    private boolean reclaimRequested = false;
+    private long reclaimDetached = 0;
+    private long reclaimEvaluations = 0;
+    private long reclaimMembers = 0;
+    private long reclaimPending = 0;
+    private String invalidationChannel;
+    private NearCache nearCache;
+    private EtagIndex etagIndex;
 
     public RedisStorage(Vertx vertx, ModuleConfiguration config) {
         this.expirableSet = config.getExpirablePrefix();
@@ -51,10 +127,41 @@ public class RedisStorage implements Storage {
         this.redisDeltaResourcesPrefix = config.getDeltaResourcesPrefix();
         this.redisDeltaEtagsPrefix = config.getDeltaEtagsPrefix();
         this.cleanupResourcesAmount = config.getResourceCleanupAmount();
+        this.cleanupTargetDuration = config.getCleanupTargetDuration();
+        this.cleanupLeaseDuration = config.getCleanupLeaseDuration();
+        this.cleanupLeaseKey = expirableSet + "-lease";
         this.redisLockPrefix = config.getLockPrefix();
+        this.batchWindow = config.getRedisBatchWindow();
+        this.batchMaxSize = config.getRedisBatchMaxSize() < 1 ? 1 : config.getRedisBatchMaxSize();
+        this.chunkSize = config.getRedisChunkSize();
+        this.storageExpandMaxNodes = config.getStorageExpandMaxNodes();
+        this.storageExpandMaxBytes = config.getStorageExpandMaxBytes();
+        this.storageExpandChunkSize = config.getStorageExpandChunkSize();
+        this.storageExpandChunkConsistency = config.isStorageExpandChunkConsistency();
+        this.collectionStreamThreshold = config.getCollectionStreamThreshold();
+        this.reclaimBatchSize = config.getReclaimBatchSize() < 1 ? 1 : config.getReclaimBatchSize();
+        this.invalidationChannel = config.getRedisInvalidationChannel() == null ? EMPTY : config.getRedisInvalidationChannel();
 
         this.vertx = vertx;
-        this.redisClient = RedisClient.create(vertx, new RedisOptions().setHost(config.getRedisHost()).setPort(config.getRedisPort()));
+        this.redisClientPool = new RedisClientPool(vertx, config);
+        if(!RedisReplicaRouter.parseAddresses(config.getRedisReplicas()).isEmpty()) {
+            this.replicaRouter = new RedisReplicaRouter(vertx, redisClientPool, config.getRedisReplicas(),
+                    config.getRedisReplicaMaxLag(), config.isRedisReplicaHedging());
+        }
+
+        if(config.getRedisNearCacheSize() > 0 || config.getRedisEtagIndexSize() > 0) {
+            if(invalidationChannel.isEmpty()) {
+                log.warn("near cache and etag index are disabled, since they require an invalidation channel");
+            } else {
+                if(config.getRedisNearCacheSize() > 0) {
+                    this.nearCache = new NearCache(config.getRedisNearCacheSize());
+                }
+                if(config.getRedisEtagIndexSize() > 0) {
+                    this.etagIndex = new EtagIndex(config.getRedisEtagIndexSize());
+                }
+                subscribeInvalidations(config);
+            }
+        }
 
         // load all the lua scripts
         LuaScriptState luaGetScriptState = new LuaScriptState(LuaScript.GET, false);
@@ -76,20 +183,144 @@ public class RedisStorage implements Storage {
         LuaScriptState luaCleanupScriptState = new LuaScriptState(LuaScript.CLEANUP, false);
         luaCleanupScriptState.loadLuaScript(new RedisCommandDoNothing(), 0);
         luaScripts.put(LuaScript.CLEANUP, luaCleanupScriptState);
+
+        LuaScriptState luaGetChunkScriptState = new LuaScriptState(LuaScript.GET_CHUNK, false);
+        luaGetChunkScriptState.loadLuaScript(new RedisCommandDoNothing(), 0);
+        luaScripts.put(LuaScript.GET_CHUNK, luaGetChunkScriptState);
+
+        // the batch script is used for multi gets, even if batching is disabled
+        LuaScriptState luaBatchScriptState = new LuaScriptState(LuaScript.BATCH, false);
+        luaBatchScriptState.loadLuaScript(new RedisCommandDoNothing(), 0);
+        luaScripts.put(LuaScript.BATCH, luaBatchScriptState);
+
+        LuaScriptState luaBulkPutScriptState = new LuaScriptState(LuaScript.BULK_PUT, false);
+        luaBulkPutScriptState.loadLuaScript(new RedisCommandDoNothing(), 0);
+        luaScripts.put(LuaScript.BULK_PUT, luaBulkPutScriptState);
+
+        LuaScriptState luaBulkDeleteScriptState = new LuaScriptState(LuaScript.BULK_DELETE, false);
+        luaBulkDeleteScriptState.loadLuaScript(new RedisCommandDoNothing(), 0);
+        luaScripts.put(LuaScript.BULK_DELETE, luaBulkDeleteScriptState);
+
+        LuaScriptState luaReclaimScriptState = new LuaScriptState(LuaScript.RECLAIM, false);
+        luaReclaimScriptState.loadLuaScript(new RedisCommandDoNothing(), 0);
+        luaScripts.put(LuaScript.RECLAIM, luaReclaimScriptState);
+
+        LuaScriptState luaCleanupLeaseScriptState = new LuaScriptState(LuaScript.CLEANUP_LEASE, false);
+        luaCleanupLeaseScriptState.loadLuaScript(new RedisCommandDoNothing(), 0);
+        luaScripts.put(LuaScript.CLEANUP_LEASE, luaCleanupLeaseScriptState);
+
+        // resumes the reclamation of collections detached before a restart
+        reclaim();
+    }
+
+    /**
+     * Subscribes to the invalidation messages published by the lua scripts on a dedicated connection. The redis client
+     * forwards the messages to the event bus, every storage uses its own address, so that the caches of each storage
+     * receive all messages.
+     */
+    private void subscribeInvalidations(ModuleConfiguration config) {
+        String address = "rest-storage.invalidations." + UUID.randomUUID();
+        RedisClient subscriber = RedisClient.create(vertx, new RedisOptions()
+                .setHost(config.getRedisHost()).setPort(config.getRedisPort()).setAddress(address));
+        vertx.eventBus().<JsonObject>localConsumer(address + "." + invalidationChannel, message -> {
+            JsonObject value = message.body().getJsonObject("value");
+            if(value != null && value.getString("message") != null) {
+                invalidateCaches(value.getString("message"));
+            }
+        });
+        subscriber.subscribe(invalidationChannel, event -> {
+            if(event.failed()) {
+                // without invalidations the cached values could become stale
+                log.error("subscription to the invalidation channel failed, near cache and etag index are disabled: " + event.cause().getMessage());
+                nearCache = null;
+                etagIndex = null;
+            }
+        });
+    }
+
+    private void invalidateCaches(String message) {
+        if(nearCache != null) {
+            nearCache.invalidate(message);
+        }
+        if(etagIndex != null) {
+            etagIndex.invalidate(message);
+        }
+    }
+
+    /**
+     * Remembers the generations of the caches when a read is started, so that its result is only cached if no write
+     * happened in the meantime.
+     */
+    private class CacheUpdate {
+        private final String key;
+        private final long nearCacheGeneration;
+        private final long etagIndexGeneration;
+
+        private CacheUpdate(String key) {
+            this.key = key;
+            this.nearCacheGeneration = nearCache != null ? nearCache.generation() : -1;
+            this.etagIndexGeneration = etagIndex != null ? etagIndex.generation() : -1;
+        }
+
+        private void etag(String etag, long expireAt) {
+            if(etagIndex != null && !isEmpty(etag)) {
+                etagIndex.put(key, new EtagIndex.Entry(etag, expireAt), etagIndexGeneration);
+            }
+        }
+
+        private void resource(Buffer content, String etag, long expireAt) {
+            etag(etag, expireAt);
+            if(nearCache != null && content != null) {
+                nearCache.put(key, new NearCache.Entry(content, etag, expireAt), nearCacheGeneration);
+            }
+        }
+    }
+
+    /**
+     * @return the expiration time returned by a script at the given index, or the maximum value if the resource does
+     * not expire
+     */
+    private long expireAt(JsonArray values, int index) {
+        if(values.size() > index && !values.hasNull(index)) {
+            return (long) Double.parseDouble(values.getString(index));
+        }
+        return Long.MAX_VALUE;
     }
 
+    /** the placeholder of the functions of detached collections, which are shared by several scripts */
+    private static final String DETACHED_COLLECTIONS = "DETACHED_COLLECTIONS";
+    private static final String DETACHED_COLLECTIONS_FILE = "detachedCollections.lua";
+
     private enum LuaScript {
-        GET("get.lua"), STORAGE_EXPAND("storageExpand.lua"), PUT("put.lua"), DELETE("del.lua"), CLEANUP("cleanup.lua");
+        GET("get.lua", true, true), STORAGE_EXPAND("storageExpand.lua", true, true), PUT("put.lua", true, false),
+        DELETE("del.lua", true, false), CLEANUP("cleanup.lua", false, false), BATCH("batch.lua", false, false),
+        GET_CHUNK("getChunk.lua", false, false), BULK_PUT("bulkPut.lua", false, false),
+        BULK_DELETE("bulkDelete.lua", false, false), RECLAIM("reclaim.lua", false, false),
+        CLEANUP_LEASE("cleanupLease.lua", false, false);
 
         private String file;
+        /** if the script can be executed as part of a batch */
+        private boolean batchable;
+        /** if the script can be evaluated on a replica */
+        private boolean readOnly;
 
-        LuaScript(String file) {
+        LuaScript(String file, boolean batchable, boolean readOnly) {
             this.file = file;
+            this.batchable = batchable;
+            this.readOnly = readOnly;
         }
 
         public String getFile() {
             return file;
         }
+
+        public boolean isBatchable() {
+            return batchable;
+        }
+
+        public boolean isReadOnly() {
+            return readOnly;
+        }
     }
 
     /**
@@ -120,22 +351,39 @@ public class RedisStorage implements Storage {
         private void composeLuaScript(LuaScript luaScriptType) {
             log.info("read the lua script for script type: " + luaScriptType + " with logoutput: " + logoutput);
 
+            // the functions of detached collections are shared by several scripts and substituted into each of them
+            Map<String, String> values = new HashMap<>();
+            values.put(DETACHED_COLLECTIONS, readLuaScriptFromClasspath(DETACHED_COLLECTIONS_FILE));
+
             // It is not possible to evalsha or eval inside lua scripts,
             // so we wrap the cleanupscript around the deletescript manually to avoid code duplication.
-            // we have to comment the return, so that the cleanup script doesn't terminate
+            // we have to comment the return, so that the cleanup script doesn't terminate. the shared functions are
+            // substituted into the deletescript afterwards, their returns are kept
             if(LuaScript.CLEANUP.equals(luaScriptType)) {
-                Map<String, String> values = new HashMap<>();
                 values.put("delscript", readLuaScriptFromClasspath(LuaScript.DELETE).replaceAll("return", "--return"));
-                StrSubstitutor sub = new StrSubstitutor(values, "--%(", ")");
-                this.script = sub.replace(readLuaScriptFromClasspath(LuaScript.CLEANUP));
-            } else {
-                this.script = readLuaScriptFromClasspath(luaScriptType);
+            } else if(LuaScript.BATCH.equals(luaScriptType)) {
+                // the same applies to the batch script, which wraps every batchable script into a function
+                for (LuaScript batchableScript : LuaScript.values()) {
+                    if(batchableScript.isBatchable()) {
+                        values.put(batchableScript.name(), readLuaScriptFromClasspath(batchableScript));
+                    }
+                }
+            } else if(LuaScript.BULK_PUT.equals(luaScriptType)) {
+                // the bulk put script wraps the put script into a function as well, the known collections are
+                // declared by the bulk put script, so that they are shared by all puts of the evaluation
+                values.put("PUT", readLuaScriptFromClasspath(LuaScript.PUT).replace("local knownCollections = {}", ""));
             }
+            StrSubstitutor sub = new StrSubstitutor(values, "--%(", ")");
+            this.script = sub.replace(readLuaScriptFromClasspath(luaScriptType));
             this.sha = DigestUtils.sha1Hex(this.script);
         }
 
         private String readLuaScriptFromClasspath(LuaScript luaScriptType) {
-            BufferedReader in = new BufferedReader(new InputStreamReader(this.getClass().getClassLoader().getResourceAsStream(luaScriptType.getFile())));
+            return readLuaScriptFromClasspath(luaScriptType.getFile());
+        }
+
+        private String readLuaScriptFromClasspath(String file) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(this.getClass().getClassLoader().getResourceAsStream(file)));
             StringBuilder sb;
             try {
                 sb = new StringBuilder();
@@ -175,7 +423,7 @@ public class RedisStorage implements Storage {
             final int executionCounterIncr = ++executionCounter;
 
             // check first if the lua script already exists in the store
-            redisClient.scriptExists(this.sha, resultArray -> {
+            redisClientPool.client().scriptExists(this.sha, resultArray -> {
                 if(resultArray.failed()){
                     log.error("Error checking whether lua script exists", resultArray.cause());
                     return;
@@ -187,7 +435,7 @@ public class RedisStorage implements Storage {
                     redisCommand.exec(executionCounterIncr);
                 } else {
                     log.info("load lua script for script type: " + luaScriptType + " logutput: " + logoutput);
-                    redisClient.scriptLoad(script, stringAsyncResult -> {
+                    redisClientPool.client().scriptLoad(script, stringAsyncResult -> {
                         String newSha = stringAsyncResult.result();
                         log.info("got sha from redis for lua script: " + luaScriptType + ": " + newSha);
                         if(!newSha.equals(sha)) {
@@ -270,140 +518,224 @@ public class RedisStorage implements Storage {
         luaScriptState.loadLuaScript(redisCommand, executionCounter);
     }
 
-    public class ByteArrayReadStream implements ReadStream<Buffer> {
+    private boolean isBatchingEnabled() {
+        return batchWindow >= 0;
+    }
 
-        ByteArrayInputStream content;
-        int size;
-        boolean paused;
-        int position;
-        Handler<Void> endHandler;
-        Handler<Buffer> handler;
+    /**
+     * Evaluates the lua script. If batching is enabled, the evaluation is collected and sent to redis together with the
+     * other evaluations issued during the current event loop tick (batch window 0) or the configured batch window
+     * in milliseconds. Read-only scripts are evaluated on a replica if replicas are configured.
+     *
+     * @param luaScript the type of lua script
+     * @param keys the keys passed to the script
+     * @param arguments the arguments passed to the script
+     * @param handler the handler called with the result of this script evaluation
+     */
+    private void evalScript(LuaScript luaScript, List<String> keys, List<String> arguments, Handler<AsyncResult<JsonArray>> handler) {
+        evalScript(luaScript, keys, arguments, true, handler);
+    }
 
-        public ByteArrayReadStream(byte[] byteArray) {
-            size = byteArray.length;
-            content = new ByteArrayInputStream(byteArray);
+    /**
+     * Evaluates a lua script like {@link #evalScript(LuaScript, List, List, Handler)}, the evaluation is only batched
+     * if batch is true.
+     */
+    private void evalScript(LuaScript luaScript, List<String> keys, List<String> arguments, boolean batch, Handler<AsyncResult<JsonArray>> handler) {
+        if(replicaRouter != null && luaScript.isReadOnly()) {
+            LuaScriptState luaScriptState = luaScripts.get(luaScript);
+            replicaRouter.evalsha(luaScriptState.getSha(), luaScriptState.getScript(), keys, arguments, handler);
+            return;
         }
-
-        private void doRead() {
-            vertx.runOnContext(v -> {
-                if (!paused) {
-                    if (position < size) {
-                        int toRead = 8192;
-                        if (position + toRead > size) {
-                            toRead = size - position;
-                        }
-                        byte[] bytes = new byte[toRead];
-                        content.read(bytes, 0, toRead);
-                        handler.handle(Buffer.buffer(bytes));
-                        position += toRead;
-                        doRead();
-                    } else {
-                        endHandler.handle(null);
-                    }
-                }
-            });
+        if(multiGetEntries != null && batch && luaScript.isBatchable()) {
+            multiGetEntries.add(new BatchEntry(luaScript, keys, arguments, handler));
+            return;
         }
-
-        public ByteArrayReadStream resume() {
-            paused = false;
-            doRead();
-            return this;
+        if(!batch || !isBatchingEnabled() || !luaScript.isBatchable()) {
+            redisClientPool.evalsha(luaScripts.get(luaScript).getSha(), keys, arguments, handler);
+            return;
         }
-
-        @Override
-        public ByteArrayReadStream pause() {
-            paused = true;
-            return this;
+        batchEntries.add(new BatchEntry(luaScript, keys, arguments, handler));
+        if(batchEntries.size() >= batchMaxSize) {
+            flushBatch();
+        } else if(!batchFlushScheduled) {
+            batchFlushScheduled = true;
+            if(batchWindow == 0) {
+                vertx.runOnContext(v -> {
+                    batchFlushScheduled = false;
+                    flushBatch();
+                });
+            } else {
+                vertx.setTimer(batchWindow, timerId -> {
+                    batchFlushScheduled = false;
+                    flushBatch();
+                });
+            }
         }
+    }
 
-        @Override
-        public ByteArrayReadStream exceptionHandler(Handler<Throwable> handler) {
-            return this;
+    private void flushBatch() {
+        if(batchEntries.isEmpty()) {
+            return;
         }
-
-        @Override
-        public ReadStream<Buffer> handler(Handler<Buffer> handler) {
-            this.handler = handler;
-            doRead();
-            return this;
+        List<BatchEntry> entries = batchEntries;
+        batchEntries = new ArrayList<>();
+        if(entries.size() == 1) {
+            // nothing to gain from the batch script
+            BatchEntry entry = entries.get(0);
+            redisClientPool.evalsha(luaScripts.get(entry.luaScript).getSha(), entry.keys, entry.arguments, entry.handler);
+            return;
         }
-
-        @Override
-        public ByteArrayReadStream endHandler(Handler<Void> endHandler) {
-            this.endHandler = endHandler;
-            return this;
+        batchCount++;
+        batchedCommands += entries.size();
+        if(entries.size() > maxBatchSize) {
+            maxBatchSize = entries.size();
         }
+        reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.BATCH, new Batch(entries), 0);
     }
 
-    @Override
-    public void get(String path, String etag, int offset, int limit, final Handler<Resource> handler) {
-        final String key = encodePath(path);
-        List<String> keys = Collections.singletonList(key);
-        List<String> arguments = Arrays.asList(
-                redisResourcesPrefix,
-                redisCollectionsPrefix,
-                expirableSet,
-                String.valueOf(System.currentTimeMillis()),
-                MAX_EXPIRE_IN_MILLIS,
-                String.valueOf(offset),
-                String.valueOf(limit),
-                etag
-        );
-        reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.GET, new Get(keys, arguments, handler), 0);
+    /**
+     * A script evaluation waiting to be sent with the next batch.
+     */
+    private class BatchEntry {
+        private final LuaScript luaScript;
+        private final List<String> keys;
+        private final List<String> arguments;
+        private final Handler<AsyncResult<JsonArray>> handler;
+
+        private BatchEntry(LuaScript luaScript, List<String> keys, List<String> arguments, Handler<AsyncResult<JsonArray>> handler) {
+            this.luaScript = luaScript;
+            this.keys = keys;
+            this.arguments = arguments;
+            this.handler = handler;
+        }
     }
 
     /**
-     * The Get Command Execution.
-     * If the get script cannot be found under the sha in luaScriptState, reload the script.
+     * The Batch Command Execution.
+     * Sends all collected script evaluations with a single evalsha and dispatches the results to the handlers of the
+     * evaluations. If the batch script cannot be found under the sha in luaScriptState, reload the script.
      * To avoid infinite recursion, we limit the recursion.
      */
-    private class Get implements RedisCommand {
+    private class Batch implements RedisCommand {
 
-        private List<String> keys;
-        private List<String> arguments;
-        private Handler<Resource> handler;
+        private List<BatchEntry> entries;
 
-        public Get(List<String> keys, List<String> arguments, final Handler<Resource> handler) {
-            this.keys = keys;
-            this.arguments = arguments;
-            this.handler = handler;
+        public Batch(List<BatchEntry> entries) {
+            this.entries = entries;
         }
 
         public void exec(final int executionCounter) {
-            redisClient.evalsha(luaScripts.get(LuaScript.GET).getSha(), keys, arguments, event -> {
-                if(event.succeeded()){
-                    JsonArray values = event.result();
-                    if (log.isTraceEnabled()) {
-                        log.trace("RedisStorage get result: " + values);
-                    }
-                    if("notModified".equals(values.getString(0))){
-                        notModified(handler);
-                    } else if ("notFound".equals(values.getString(0))) {
-                        notFound(handler);
-                    } else {
-                        handleJsonArrayValues(values, handler, "0".equals(arguments.get(5)) && "-1".equals(arguments.get(6)));
+            List<String> keys = new ArrayList<>();
+            List<String> arguments = new ArrayList<>();
+            arguments.add(String.valueOf(entries.size()));
+            for (BatchEntry entry : entries) {
+                // the redis client skips null values, so we do the same to pass the arguments like a single evaluation
+                List<String> entryArguments = withoutNullValues(entry.arguments);
+                arguments.add(entry.luaScript.name());
+                arguments.add(String.valueOf(entry.keys.size()));
+                arguments.add(String.valueOf(entryArguments.size()));
+                keys.addAll(entry.keys);
+                arguments.addAll(entryArguments);
+            }
+            redisClientPool.evalsha(luaScripts.get(LuaScript.BATCH).getSha(), keys, arguments, event -> {
+                if(event.succeeded()) {
+                    JsonArray results = event.result();
+                    for (int i = 0; i < entries.size(); i++) {
+                        entries.get(i).handler.handle(toEntryResult(results.getValue(i)));
                     }
                 } else {
                     String message = event.cause().getMessage();
                     if(message != null && message.startsWith("NOSCRIPT")) {
-                        log.warn("get script couldn't be found, reload it");
+                        log.warn("batch script couldn't be found, reload it");
                         log.warn("amount the script got loaded: " + String.valueOf(executionCounter));
                         if(executionCounter > 10) {
                             log.error("amount the script got loaded is higher than 10, we abort");
                         } else {
-                            luaScripts.get(LuaScript.GET).loadLuaScript(new Get(keys, arguments, handler), executionCounter);
+                            luaScripts.get(LuaScript.BATCH).loadLuaScript(new Batch(entries), executionCounter);
+                            return;
                         }
                     } else {
-                        log.error("GET request failed with message: " + message);
+                        log.error("Batch request failed with message: " + message);
+                    }
+                    for (BatchEntry entry : entries) {
+                        entry.handler.handle(Future.failedFuture(event.cause()));
                     }
                 }
             });
         }
+
+        private List<String> withoutNullValues(List<String> values) {
+            List<String> result = new ArrayList<>(values.size());
+            for (String value : values) {
+                if(value != null) {
+                    result.add(value);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Converts a single result of the batch script to the result the script evaluation would have returned
+         * when it was sent on its own.
+         */
+        private AsyncResult<JsonArray> toEntryResult(Object value) {
+            if(value instanceof JsonArray) {
+                return Future.succeededFuture((JsonArray) value);
+            }
+            if(value instanceof String && ((String) value).startsWith("batchError ")) {
+                return Future.failedFuture(((String) value).substring("batchError ".length()));
+            }
+            List<Object> single = new ArrayList<>();
+            single.add(value);
+            return Future.succeededFuture(new JsonArray(single));
+        }
     }
 
     @Override
-    public void storageExpand(String path, String etag, List<String> subResources, Handler<Resource> handler) {
+    public void get(String path, String etag, int offset, int limit, final Handler<Resource> handler) {
+        get(path, etag, offset, limit, null, null, 0, handler);
+    }
+
+    /**
+     * Lists a collection with the lexicographical index of its members if the listing is paged, so that a page
+     * following a cursor costs the same regardless of its position in the collection. The members of a collection
+     * with more members than collectionStreamThreshold are read in pages by the member stream of the collection.
+     */
+    @Override
+    public void get(String path, String etag, int offset, int limit, String cursor, String startsWith, final Handler<Resource> handler) {
+        get(path, etag, offset, limit, cursor, startsWith, collectionStreamThreshold, handler);
+    }
+
+    private void get(String path, String etag, int offset, int limit, String cursor, String startsWith, int streamThreshold,
+                     final Handler<Resource> handler) {
         final String key = encodePath(path);
+        CacheUpdate cacheUpdate = null;
+        if(etagIndex != null && !isEmpty(etag) && etagIndex.isNotModified(key, etag, System.currentTimeMillis())) {
+            notModified(handler);
+            return;
+        }
+        if(nearCache != null) {
+            NearCache.Entry entry = nearCache.get(key, System.currentTimeMillis());
+            if(entry != null) {
+                if(!isEmpty(etag) && etag.equals(entry.getEtag())) {
+                    notModified(handler);
+                } else {
+                    DocumentResource r = new DocumentResource();
+                    r.readStream = new BufferReadStream(vertx, entry.getContent());
+                    r.length = entry.getContent().length();
+                    r.etag = entry.getEtag();
+                    r.closeHandler = event -> {
+                        // nothing to close
+                    };
+                    handler.handle(r);
+                }
+                return;
+            }
+        }
+        // a replica may answer with a value older than the last invalidation, which must not be cached
+        if((nearCache != null || etagIndex != null) && replicaRouter == null) {
+            cacheUpdate = new CacheUpdate(key);
+        }
         List<String> keys = Collections.singletonList(key);
         List<String> arguments = Arrays.asList(
                 redisResourcesPrefix,
@@ -411,183 +743,1059 @@ public class RedisStorage implements Storage {
                 expirableSet,
                 String.valueOf(System.currentTimeMillis()),
                 MAX_EXPIRE_IN_MILLIS,
-                StringUtils.join(subResources, ";"),
-                String.valueOf(subResources.size())
+                String.valueOf(offset),
+                String.valueOf(limit),
+                etag != null ? etag : EMPTY,
+                cursor != null ? cursor : EMPTY,
+                startsWith != null ? startsWith : EMPTY,
+                "true",
+                EMPTY,
+                String.valueOf(streamThreshold)
         );
-        reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.STORAGE_EXPAND, new StorageExpand(keys, arguments, handler, etag), 0);
+        reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.GET, new Get(keys, arguments, handler, cacheUpdate), 0);
     }
 
     /**
-     * The StorageExpand Command Execution.
+     * The Get Command Execution.
      * If the get script cannot be found under the sha in luaScriptState, reload the script.
      * To avoid infinite recursion, we limit the recursion.
      */
-    private class StorageExpand implements RedisCommand {
+    private class Get implements RedisCommand {
 
         private List<String> keys;
         private List<String> arguments;
         private Handler<Resource> handler;
-        private String etag;
+        private CacheUpdate cacheUpdate;
 
-        public StorageExpand(List<String> keys, List<String> arguments, final Handler<Resource> handler, String etag) {
+        public Get(List<String> keys, List<String> arguments, final Handler<Resource> handler, CacheUpdate cacheUpdate) {
             this.keys = keys;
             this.arguments = arguments;
             this.handler = handler;
-            this.etag = etag;
+            this.cacheUpdate = cacheUpdate;
         }
 
         public void exec(final int executionCounter) {
-            redisClient.evalsha(luaScripts.get(LuaScript.STORAGE_EXPAND).getSha(), keys, arguments, event -> {
+            evalScript(LuaScript.GET, keys, arguments, event -> {
                 if(event.succeeded()){
-                    Object value = event.result().getValue(0);
+                    JsonArray values = event.result();
                     if (log.isTraceEnabled()) {
-                        log.trace("RedisStorage get result: " + value);
-                    }
-                    if("compressionNotSupported".equalsIgnoreCase((String) value)){
-                        error(handler, "Collections having compressed resources are not supported in storage expand");
-                        return;
-                    }
-                    if("notFound".equalsIgnoreCase((String) value)){
-                        notFound(handler);
-                        return;
+                        log.trace("RedisStorage get result: " + values);
                     }
-                    JsonObject expandResult = new JsonObject();
-
-                    JsonArray resultArr = new JsonArray((String) value);
-
-                    for (Object resultEntry : resultArr) {
-                        JsonArray entries = (JsonArray) resultEntry;
-                        String subResourceName = ResourceNameUtil.resetReplacedColonsAndSemiColons(entries.getString(0));
-                        String subResourceValue = entries.getString(1);
-                        if(subResourceValue.startsWith("[") && subResourceValue.endsWith("]")){
-                            expandResult.put(subResourceName, extractSortedJsonArray(subResourceValue));
-                        } else {
-                            try {
-                                expandResult.put(subResourceName, new JsonObject(subResourceValue));
-                            }catch (DecodeException ex){
-                                invalid(handler, "Error decoding invalid json resource '" + subResourceName + "'");
-                                return;
-                            }
+                    if("notModified".equals(values.getString(0))){
+                        if(cacheUpdate != null) {
+                            cacheUpdate.etag(arguments.get(7), expireAt(values, 1));
                         }
-                    }
-
-                    byte[] finalExpandedContent = decodeBinary(expandResult.encode());
-                    String calcDigest = DigestUtils.sha1Hex(finalExpandedContent);
-
-                    if(calcDigest.equals(etag)){
                         notModified(handler);
+                    } else if ("notFound".equals(values.getString(0))) {
+                        notFound(handler);
                     } else {
-                        DocumentResource r = new DocumentResource();
-                        r.readStream = new ByteArrayReadStream(finalExpandedContent);
-                        r.length = finalExpandedContent.length;
-                        r.etag = calcDigest;
-                        r.closeHandler = event1 -> {
-                            // nothing to close
-                        };
-                        handler.handle(r);
+                        boolean unpaged = "0".equals(arguments.get(5)) && "-1".equals(arguments.get(6))
+                                && arguments.get(8).isEmpty() && arguments.get(9).isEmpty();
+                        handleJsonArrayValues(keys.get(0), values, handler, unpaged, cacheUpdate);
                     }
                 } else {
                     String message = event.cause().getMessage();
                     if(message != null && message.startsWith("NOSCRIPT")) {
-                        log.warn("storageExpand script couldn't be found, reload it");
+                        log.warn("get script couldn't be found, reload it");
                         log.warn("amount the script got loaded: " + String.valueOf(executionCounter));
                         if(executionCounter > 10) {
                             log.error("amount the script got loaded is higher than 10, we abort");
                         } else {
-                            luaScripts.get(LuaScript.STORAGE_EXPAND).loadLuaScript(new StorageExpand(keys, arguments, handler, etag), executionCounter);
+                            luaScripts.get(LuaScript.GET).loadLuaScript(new Get(keys, arguments, handler, cacheUpdate), executionCounter);
+                            return;
                         }
                     } else {
-                        log.error("StorageExpand request failed with message: " + message);
+                        log.error("GET request failed with message: " + message);
                     }
+                    // a failed page of a streamed listing ends the stream, a failed multi get entry its response
+                    error(handler, "GET request failed with message: " + message);
                 }
             });
         }
     }
 
-    private JsonArray extractSortedJsonArray(String arrayString){
-        String arrayContent = arrayString.replaceAll("\\[", EMPTY).replaceAll("\\]", EMPTY).replaceAll("\"", EMPTY).replaceAll("\\\\", EMPTY);
-        String[] splitted = StringUtils.split(arrayContent, ",");
-        List<String> resources = new ArrayList<>();
-        List<String> collections = new ArrayList<>();
-        for (String split : splitted) {
-            if (split.endsWith("/")) {
-                collections.add(split);
-            } else {
-                resources.add(split);
-            }
+    /**
+     * Gets all resources with the same logic as single gets. The script evaluations issued by the gets are not sent one
+     * by one, but collected and sent in a single evaluation of the batch script. Resources served from the near cache
+     * or evaluated on a replica are not part of the batch.
+     */
+    @Override
+    public void multiGet(List<String> paths, Handler<List<Resource>> handler) {
+        if(paths.isEmpty()) {
+            handler.handle(Collections.emptyList());
+            return;
         }
-        Collections.sort(collections);
-        collections.addAll(resources);
-        return new JsonArray(new ArrayList<Object>(collections));
-    }
-
-    private void handleJsonArrayValues(JsonArray values, Handler<Resource> handler, boolean allowEmptyReturn){
-        String type = values.getString(0);
-        if("TYPE_RESOURCE".equals(type)){
-            String valueStr = values.getString(1);
-            DocumentResource r = new DocumentResource();
-            byte[] content = decodeBinary(valueStr);
-            if(!values.hasNull(3)){
-                // data is compressed
-                GZIPUtil.decompressResource(vertx, content, decompressedResult -> {
-                    if(decompressedResult.succeeded()) {
-                        r.readStream = new ByteArrayReadStream(decompressedResult.result());
-                        r.length = decompressedResult.result().length;
-                        r.etag = values.getString(2);
-                        r.closeHandler = event -> {
-                            // nothing to close
-                        };
-                        handler.handle(r);
-                    } else {
-                        error(handler, "Error during decompression of resource: " + decompressedResult.cause().getMessage());
+        final Resource[] resources = new Resource[paths.size()];
+        final int[] pending = {paths.size()};
+        List<BatchEntry> entries = new ArrayList<>();
+        multiGetEntries = entries;
+        try {
+            for (int i = 0; i < paths.size(); i++) {
+                final int index = i;
+                get(paths.get(i), null, 0, -1, resource -> {
+                    resources[index] = resource;
+                    if(--pending[0] == 0) {
+                        handler.handle(Arrays.asList(resources));
                     }
                 });
-            } else {
-                r.readStream = new ByteArrayReadStream(content);
-                r.length = content.length;
-                r.etag = values.getString(2);
-                r.closeHandler = event -> {
-                    // nothing to close
-                };
-                handler.handle(r);
-            }
-        } else if("TYPE_COLLECTION".equals(type)) {
-            CollectionResource r = new CollectionResource();
-            Set<Resource> items = new HashSet<>();
-            for (Object value : values) {
-                String member = (String) value;
-                if (!"TYPE_COLLECTION".equals(member)) {
-                    if (member.endsWith(":")) {
-                        member = member.replaceAll(":$", "");
-                        CollectionResource c = new CollectionResource();
-                        c.name = member;
-                        items.add(c);
-                    } else {
-                        DocumentResource d = new DocumentResource();
-                        d.name = member;
-                        items.add(d);
-                    }
-                }
             }
-            if(allowEmptyReturn && items.size()==0) {
-                notFound(handler);
-            } else {
-                r.items = new ArrayList<>(items);
-                Collections.sort(r.items);
-                handler.handle(r);
-            }
-        } else {
-            notFound(handler);
+        } finally {
+            multiGetEntries = null;
+        }
+        if(entries.size() == 1) {
+            BatchEntry entry = entries.get(0);
+            redisClientPool.evalsha(luaScripts.get(entry.luaScript).getSha(), entry.keys, entry.arguments, entry.handler);
+        } else if(entries.size() > 1) {
+            multiGetCount++;
+            reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.BATCH, new Batch(entries), 0);
         }
     }
 
-    class ByteArrayWriteStream implements WriteStream<Buffer> {
-
-        private ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    @Override
+    public void storageExpand(String path, String etag, List<String> subResources, Handler<Resource> handler) {
+        storageExpand(path, etag, subResources, 1, handler);
+    }
 
-        public byte[] getBytes() {
-            return bos.toByteArray();
-        }
+    /**
+     * Expands the sub resources up to the given depth. The deeper levels are returned by the script as a flat list of
+     * entries, which is written as nested json while the response is streamed. The amount of expanded resources and
+     * collections and the size of the expanded resources are limited by the configured budget.
+     */
+    @Override
+    public void storageExpand(String path, String etag, List<String> subResources, int depth, Handler<Resource> handler) {
+        storageExpand(path, etag, subResources, false, EMPTY, 0, -1, depth, handler);
+    }
+
+    /**
+     * Expands the members of the collection matching the prefix within the offset and limit window. The members are
+     * listed by the script, in the same order as in the expanded collections.
+     */
+    @Override
+    public void storageExpandAll(String path, String etag, String prefix, int offset, int limit, int depth, Handler<Resource> handler) {
+        storageExpand(path, etag, Collections.emptyList(), true, prefix != null ? prefix : EMPTY, offset, limit, depth, handler);
+    }
+
+    private void storageExpand(String path, String etag, List<String> subResources, boolean allSubResources, String prefix,
+                               int offset, int limit, int depth, Handler<Resource> handler) {
+        if(!allSubResources && storageExpandChunkSize > 0 && subResources.size() > storageExpandChunkSize) {
+            expandInChunks(path, etag, new ArrayList<>(new LinkedHashSet<>(subResources)), depth, handler, 0);
+            return;
+        }
+        List<String> arguments = storageExpandArguments(subResources, depth, etag, allSubResources, prefix, offset, limit, "full", false);
+        evalStorageExpand(encodePath(path), arguments, true, event -> {
+            if(event.failed()) {
+                error(handler, "StorageExpand request failed with message: " + event.cause().getMessage());
+                return;
+            }
+            JsonArray result = event.result();
+            if(result.size() > 0 && "list".equals(result.getValue(0))) {
+                // the collection has more members than a single evaluation expands
+                result.remove(0);
+                List<String> names = new ArrayList<>(result.size());
+                for (int i = 0; i < result.size(); i++) {
+                    names.add(result.getString(i));
+                }
+                expandInChunks(path, etag, names, depth, handler, 0);
+                return;
+            }
+            Object value = result.getValue(0);
+            if(value instanceof JsonArray) {
+                // the first entry contains the etag calculated by the script
+                String expandEtag = ((JsonArray) result.remove(0)).getString(1);
+                decompressExpandedResources(result, expandEtag, handler);
+                return;
+            }
+            if("notModified".equals(value)){
+                notModified(handler);
+                return;
+            }
+            if("budgetExceeded".equals(value)){
+                budgetExceeded(handler);
+                return;
+            }
+            if("notFound".equalsIgnoreCase((String) value)){
+                notFound(handler);
+                return;
+            }
+            log.error("StorageExpand returned an unexpected result: " + value);
+            error(handler, "Unexpected result of storage expand");
+        });
+    }
+
+    private List<String> storageExpandArguments(List<String> subResources, int depth, String etag, boolean allSubResources,
+                                                String prefix, int offset, int limit, String mode, boolean membershipCheck) {
+        return storageExpandArguments(subResources, depth, etag, allSubResources, prefix, offset, limit, mode, membershipCheck,
+                storageExpandMaxNodes, storageExpandMaxBytes);
+    }
+
+    private List<String> storageExpandArguments(List<String> subResources, int depth, String etag, boolean allSubResources,
+                                                String prefix, int offset, int limit, String mode, boolean membershipCheck,
+                                                long maxNodes, long maxBytes) {
+        return Arrays.asList(
+                redisResourcesPrefix,
+                redisCollectionsPrefix,
+                expirableSet,
+                String.valueOf(System.currentTimeMillis()),
+                MAX_EXPIRE_IN_MILLIS,
+                StringUtils.join(subResources, ";"),
+                String.valueOf(subResources.size()),
+                String.valueOf(depth),
+                String.valueOf(maxNodes),
+                String.valueOf(maxBytes),
+                etag != null ? etag : EMPTY,
+                String.valueOf(allSubResources),
+                prefix,
+                String.valueOf(offset),
+                String.valueOf(limit),
+                mode,
+                String.valueOf(storageExpandChunkSize),
+                String.valueOf(membershipCheck)
+        );
+    }
+
+    private void budgetExceeded(Handler<Resource> handler) {
+        error(handler, "Storage expand exceeds the limit of " + storageExpandMaxNodes + " resources or "
+                + storageExpandMaxBytes + " bytes");
+    }
+
+    /**
+     * Expands the sub resources with one evaluation per chunk of at most storageExpandChunkSize sub resources, so that
+     * redis serves other clients between the evaluations. The evaluations are sent at once, bypassing the batching, and
+     * their entries are merged in the order of the chunks. The etag is the hash of the etags of the chunks. For a
+     * conditional request, the etags of the chunks are evaluated first, without reading the resources.
+     * If the consistency check is configured, an expand whose chunks saw different members of the collection is
+     * repeated.
+     */
+    private void expandInChunks(String path, String etag, List<String> subResources, int depth, Handler<Resource> handler, int attempt) {
+        storageExpandChunked++;
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < subResources.size(); i += storageExpandChunkSize) {
+            chunks.add(subResources.subList(i, Math.min(i + storageExpandChunkSize, subResources.size())));
+        }
+        if(etag == null || attempt > 0) {
+            expandChunks(path, etag, chunks, depth, handler, attempt);
+            return;
+        }
+        evalExpandChunks(path, chunks, depth, "etag", handler, results -> {
+            ExpandChunks expandChunks = new ExpandChunks(results);
+            if(expandChunks.budgetExceeded) {
+                budgetExceeded(handler);
+            } else if(expandChunks.consistent && expandChunks.etag.equals(etag)) {
+                notModified(handler);
+            } else {
+                expandChunks(path, etag, chunks, depth, handler, attempt);
+            }
+        });
+    }
+
+    private void expandChunks(String path, String etag, List<List<String>> chunks, int depth, Handler<Resource> handler, int attempt) {
+        evalExpandChunks(path, chunks, depth, "full", handler, results -> {
+            ExpandChunks expandChunks = new ExpandChunks(results);
+            if(expandChunks.budgetExceeded || (depth > 1 && (expandChunks.nodes > storageExpandMaxNodes || expandChunks.bytes > storageExpandMaxBytes))) {
+                budgetExceeded(handler);
+            } else if(!expandChunks.consistent) {
+                if(attempt < STORAGE_EXPAND_CHUNK_ATTEMPTS - 1) {
+                    log.warn("The members of " + path + " changed during the storage expand, the expand is repeated");
+                    List<String> subResources = new ArrayList<>();
+                    for (List<String> chunk : chunks) {
+                        subResources.addAll(chunk);
+                    }
+                    expandInChunks(path, etag, subResources, depth, handler, attempt + 1);
+                } else {
+                    error(handler, "The members of the collection changed during the storage expand");
+                }
+            } else if(expandChunks.entries.isEmpty()) {
+                notFound(handler);
+            } else if(expandChunks.etag.equals(etag)) {
+                notModified(handler);
+            } else {
+                decompressExpandedResources(expandChunks.entries, expandChunks.etag, handler);
+            }
+        });
+    }
+
+    /**
+     * Evaluates the storage expand of every chunk and calls the resultHandler with the results in the order of the
+     * chunks, once all evaluations are done. The budget of an expand deeper than one level is shared by its chunks,
+     * which are evaluated one after the other instead.
+     */
+    private void evalExpandChunks(String path, List<List<String>> chunks, int depth, String mode, Handler<Resource> handler,
+                                  Handler<List<JsonArray>> resultHandler) {
+        String key = encodePath(path);
+        JsonArray[] results = new JsonArray[chunks.size()];
+        if(depth > 1) {
+            evalExpandChunksInSequence(key, chunks, 0, depth, mode, storageExpandMaxNodes, storageExpandMaxBytes, results,
+                    handler, resultHandler);
+            return;
+        }
+        int[] pending = {chunks.size()};
+        boolean[] failed = {false};
+        for (int i = 0; i < chunks.size(); i++) {
+            int index = i;
+            storageExpandChunkEvaluations++;
+            List<String> arguments = storageExpandArguments(chunks.get(i), depth, EMPTY, false, EMPTY, 0, -1, mode,
+                    storageExpandChunkConsistency);
+            evalStorageExpand(key, arguments, false, event -> {
+                if(failed[0]) {
+                    return;
+                }
+                if(event.failed()) {
+                    failed[0] = true;
+                    error(handler, "StorageExpand request failed with message: " + event.cause().getMessage());
+                    return;
+                }
+                results[index] = event.result();
+                if(--pending[0] == 0) {
+                    resultHandler.handle(Arrays.asList(results));
+                }
+            });
+        }
+    }
+
+    /**
+     * Evaluates the chunks from the index on, each with the budget left by the previous chunks, so that the expanded
+     * resources held in memory never exceed the budget. The results end with the first chunk exceeding it.
+     */
+    private void evalExpandChunksInSequence(String key, List<List<String>> chunks, int index, int depth, String mode,
+                                            long nodesLeft, long bytesLeft, JsonArray[] results, Handler<Resource> handler,
+                                            Handler<List<JsonArray>> resultHandler) {
+        if(index == chunks.size()) {
+            resultHandler.handle(Arrays.asList(results));
+            return;
+        }
+        storageExpandChunkEvaluations++;
+        List<String> arguments = storageExpandArguments(chunks.get(index), depth, EMPTY, false, EMPTY, 0, -1, mode,
+                storageExpandChunkConsistency, nodesLeft, bytesLeft);
+        evalStorageExpand(key, arguments, false, event -> {
+            if(event.failed()) {
+                error(handler, "StorageExpand request failed with message: " + event.cause().getMessage());
+                return;
+            }
+            results[index] = event.result();
+            ExpandChunks chunk = new ExpandChunks(Collections.singletonList(event.result()));
+            if(chunk.budgetExceeded) {
+                resultHandler.handle(Arrays.asList(results).subList(0, index + 1));
+                return;
+            }
+            evalExpandChunksInSequence(key, chunks, index + 1, depth, mode, nodesLeft - chunk.nodes, bytesLeft - chunk.bytes,
+                    results, handler, resultHandler);
+        });
+    }
+
+    /**
+     * The merged results of the chunks of a storage expand.
+     */
+    private static class ExpandChunks {
+        private final JsonArray entries = new JsonArray();
+        private final String etag;
+        private boolean budgetExceeded;
+        private boolean consistent = true;
+        private int nodes;
+        private long bytes;
+
+        private ExpandChunks(List<JsonArray> results) {
+            StringBuilder etags = new StringBuilder();
+            String membership = null;
+            for (JsonArray result : results) {
+                Object value = result.getValue(0);
+                if(!(value instanceof JsonArray)) {
+                    // a chunk without any existing sub resource is "notFound"
+                    budgetExceeded |= "budgetExceeded".equals(value);
+                    etags.append("-,");
+                    continue;
+                }
+                for (int i = 0; i < result.size(); i++) {
+                    JsonArray entry = result.getJsonArray(i);
+                    String type = entry.getString(0);
+                    if("e".equals(type)) {
+                        etags.append(entry.getString(1)).append(',');
+                    } else if("m".equals(type)) {
+                        if(membership != null && !membership.equals(entry.getString(1))) {
+                            consistent = false;
+                        }
+                        membership = entry.getString(1);
+                    } else {
+                        entries.add(entry);
+                        if(!"c".equals(type)) {
+                            nodes++;
+                        }
+                        if("r".equals(type) || "z".equals(type)) {
+                            bytes += entry.getString(2).length();
+                        }
+                    }
+                }
+            }
+            etag = DigestUtils.sha1Hex(etags.toString());
+        }
+    }
+
+    private void evalStorageExpand(String key, List<String> arguments, boolean batch, Handler<AsyncResult<JsonArray>> handler) {
+        reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.STORAGE_EXPAND,
+                new StorageExpand(Collections.singletonList(key), arguments, batch, handler), 0);
+    }
+
+    /**
+     * The StorageExpand Command Execution.
+     * If the get script cannot be found under the sha in luaScriptState, reload the script.
+     * To avoid infinite recursion, we limit the recursion.
+     */
+    private class StorageExpand implements RedisCommand {
+
+        private List<String> keys;
+        private List<String> arguments;
+        private boolean batch;
+        private Handler<AsyncResult<JsonArray>> handler;
+
+        public StorageExpand(List<String> keys, List<String> arguments, boolean batch, final Handler<AsyncResult<JsonArray>> handler) {
+            this.keys = keys;
+            this.arguments = arguments;
+            this.batch = batch;
+            this.handler = handler;
+        }
+
+        public void exec(final int executionCounter) {
+            evalScript(LuaScript.STORAGE_EXPAND, keys, arguments, batch, event -> {
+                if(event.succeeded()){
+                    if (log.isTraceEnabled()) {
+                        log.trace("RedisStorage storageExpand result: " + event.result());
+                    }
+                    handler.handle(event);
+                } else {
+                    String message = event.cause().getMessage();
+                    if(message != null && message.startsWith("NOSCRIPT")) {
+                        log.warn("storageExpand script couldn't be found, reload it");
+                        log.warn("amount the script got loaded: " + String.valueOf(executionCounter));
+                        if(executionCounter > 10) {
+                            log.error("amount the script got loaded is higher than 10, we abort");
+                            handler.handle(event);
+                        } else {
+                            luaScripts.get(LuaScript.STORAGE_EXPAND).loadLuaScript(new StorageExpand(keys, arguments, batch, handler), executionCounter);
+                        }
+                    } else {
+                        log.error("StorageExpand request failed with message: " + message);
+                        handler.handle(event);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Decompresses the compressed resources of an expanded tree in parallel on worker threads and replaces their
+     * entries by the decompressed resources before the tree is responded.
+     */
+    private void decompressExpandedResources(JsonArray entries, String etag, Handler<Resource> handler) {
+        List<Integer> compressed = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if ("z".equals(entries.getJsonArray(i).getString(0))) {
+                compressed.add(i);
+            }
+        }
+        if (compressed.isEmpty()) {
+            expandedTree(entries, etag, handler);
+            return;
+        }
+        int[] pending = {compressed.size()};
+        boolean[] failed = {false};
+        for (int index : compressed) {
+            JsonArray entry = entries.getJsonArray(index);
+            GZIPUtil.decompressResource(vertx, decodeBinary(entry.getString(2)), false, decompressedResult -> {
+                if (failed[0]) {
+                    return;
+                }
+                if (decompressedResult.failed()) {
+                    failed[0] = true;
+                    error(handler, "Error during decompression of resource '" + ResourceNameUtil.resetReplacedColonsAndSemiColons(entry.getString(1))
+                            + "': " + decompressedResult.cause().getMessage());
+                    return;
+                }
+                entries.getList().set(index, new JsonArray().add("r").add(entry.getString(1)).add(encodeBinary(decompressedResult.result())));
+                if (--pending[0] == 0) {
+                    expandedTree(entries, etag, handler);
+                }
+            });
+        }
+    }
+
+    /**
+     * Responds the entries of an expanded tree with the etag calculated by the script. The json is written twice, first
+     * to calculate the length and then, piece by piece, while the response is streamed, so that the whole json is never
+     * held in memory. The resources are only checked to be valid json objects in the first pass and written as they
+     * are stored. The other pieces contain the names as decoded by the redis client and are written as utf-8.
+     * Package visible for the StorageExpandBenchmark.
+     */
+    void expandedTree(JsonArray entries, String etag, Handler<Resource> handler) {
+        long length = 0;
+        ExpandedJson json = new ExpandedJson(entries);
+        String piece;
+        while ((piece = json.next()) != null) {
+            if (json.resourcePiece && !isJsonObject(piece)) {
+                invalid(handler, "Error decoding invalid json resource '" + json.currentName + "'");
+                return;
+            }
+            length += json.resourcePiece ? piece.length() : piece.getBytes(StandardCharsets.UTF_8).length;
+        }
+        DocumentResource r = new DocumentResource();
+        r.readStream = new ExpandedReadStream(new ExpandedJson(entries));
+        r.length = length;
+        r.etag = etag;
+        r.closeHandler = event -> {
+            // nothing to close
+        };
+        handler.handle(r);
+    }
+
+    /**
+     * Checks that the binary string is a single json object by reading its tokens, without building the tree.
+     */
+    private static boolean isJsonObject(String binary) {
+        try (JsonParser parser = JSON_FACTORY.createParser(binary)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Appends the bytes of a binary string to the buffer, copying them through the scratch array instead of allocating
+     * an array of the whole string.
+     */
+    @SuppressWarnings("deprecation")
+    private static void appendBinary(Buffer buffer, String binary, byte[] scratch) {
+        for (int start = 0; start < binary.length(); start += scratch.length) {
+            int end = Math.min(start + scratch.length, binary.length());
+            // copies the low byte of every char, which is the iso-8859-1 encoding of the binary string
+            binary.getBytes(start, end, scratch, 0);
+            buffer.appendBytes(scratch, 0, end - start);
+        }
+    }
+
+    /**
+     * Appends the name as json string. Only the quote, the backslash and the control characters are escaped, the
+     * other chars are kept and encoded as utf-8 with the rest of the piece.
+     */
+    private static void appendJsonString(StringBuilder builder, String name) {
+        builder.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    /**
+     * Writes the entries of an expanded tree as nested json. The content of a resource is returned as a piece of its
+     * own, which is a binary string like the values read from redis. The other pieces are strings of chars.
+     */
+    private class ExpandedJson {
+        private final JsonArray entries;
+        private int index = -1;
+        // if the next member of the currently open objects is the first one
+        private boolean first = true;
+        private String currentName;
+        // if the last returned piece is the content of a resource
+        private boolean resourcePiece;
+        private String pendingResource;
+
+        private ExpandedJson(JsonArray entries) {
+            this.entries = entries;
+        }
+
+        /**
+         * @return the next piece of the json or <code>null</code> at the end
+         */
+        private String next() {
+            resourcePiece = false;
+            if(pendingResource != null) {
+                String resource = pendingResource;
+                pendingResource = null;
+                resourcePiece = true;
+                return resource;
+            }
+            if(index == -1) {
+                index++;
+                return "{";
+            }
+            if(index > entries.size()) {
+                return null;
+            }
+            if(index == entries.size()) {
+                index++;
+                return "}";
+            }
+            JsonArray entry = entries.getJsonArray(index++);
+            String type = entry.getString(0);
+            if("c".equals(type)) {
+                first = false;
+                return "}";
+            }
+            currentName = ResourceNameUtil.resetReplacedColonsAndSemiColons(entry.getString(1));
+            StringBuilder piece = new StringBuilder();
+            if(!first) {
+                piece.append(',');
+            }
+            appendJsonString(piece, currentName);
+            piece.append(':');
+            if("o".equals(type)) {
+                first = true;
+                return piece.append('{').toString();
+            }
+            first = false;
+            if("l".equals(type)) {
+                piece.append('[');
+                JsonArray members = entry.getJsonArray(2);
+                for (int i = 0; i < members.size(); i++) {
+                    if (i > 0) {
+                        piece.append(',');
+                    }
+                    appendJsonString(piece, members.getString(i));
+                }
+                return piece.append(']').toString();
+            }
+            pendingResource = entry.getString(2);
+            return piece.toString();
+        }
+    }
+
+    /**
+     * ReadStream writing the json of an expanded tree while it is read. The pieces are collected up to the slice size
+     * of the {@link BufferReadStream} before they are emitted.
+     */
+    private class ExpandedReadStream implements ReadStream<Buffer> {
+
+        private final ExpandedJson json;
+        private final byte[] scratch = new byte[SCRATCH_SIZE];
+        private boolean paused;
+        private boolean scheduled;
+        private boolean ended;
+        private Handler<Buffer> handler;
+        private Handler<Void> endHandler;
+        private Handler<Throwable> exceptionHandler;
+
+        private ExpandedReadStream(ExpandedJson json) {
+            this.json = json;
+        }
+
+        private void schedule() {
+            if (scheduled || ended) {
+                return;
+            }
+            scheduled = true;
+            vertx.runOnContext(v -> {
+                scheduled = false;
+                emit();
+            });
+        }
+
+        private void emit() {
+            while (!paused && !ended && handler != null) {
+                Buffer slice = Buffer.buffer(BufferReadStream.DEFAULT_SLICE_SIZE);
+                String piece = null;
+                while (slice.length() < BufferReadStream.DEFAULT_SLICE_SIZE && (piece = json.next()) != null) {
+                    if (json.resourcePiece) {
+                        appendBinary(slice, piece, scratch);
+                    } else {
+                        slice.appendString(piece, "UTF-8");
+                    }
+                }
+                if (slice.length() > 0) {
+                    handler.handle(slice);
+                }
+                if (piece == null) {
+                    ended = true;
+                    if (endHandler != null) {
+                        endHandler.handle(null);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public ExpandedReadStream resume() {
+            paused = false;
+            schedule();
+            return this;
+        }
+
+        @Override
+        public ExpandedReadStream pause() {
+            paused = true;
+            return this;
+        }
+
+        @Override
+        public ExpandedReadStream exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public ExpandedReadStream handler(Handler<Buffer> handler) {
+            this.handler = handler;
+            if (handler != null) {
+                schedule();
+            }
+            return this;
+        }
+
+        @Override
+        public ExpandedReadStream endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+    }
+
+    private void handleJsonArrayValues(String key, JsonArray values, Handler<Resource> handler, boolean allowEmptyReturn, CacheUpdate cacheUpdate){
+        String type = values.getString(0);
+        if("TYPE_RESOURCE".equals(type) && !values.hasNull(4)){
+            // the resource is stored in chunks, which are read on demand
+            DocumentResource r = new DocumentResource();
+            r.readStream = new ChunkedReadStream(key, values.getString(2), Integer.parseInt(values.getString(4)));
+            r.length = Long.parseLong(values.getString(5));
+            r.etag = values.getString(2);
+            r.closeHandler = event -> {
+                // nothing to close
+            };
+            if(cacheUpdate != null) {
+                cacheUpdate.etag(r.etag, expireAt(values, 6));
+            }
+            handler.handle(r);
+        } else if("TYPE_RESOURCE".equals(type)){
+            String valueStr = values.getString(1);
+            DocumentResource r = new DocumentResource();
+            byte[] content = decodeBinary(valueStr);
+            if(!values.hasNull(3)){
+                // data is compressed
+                GZIPUtil.decompressResource(vertx, content, decompressedResult -> {
+                    if(decompressedResult.succeeded()) {
+                        Buffer decompressed = Buffer.buffer(Unpooled.wrappedBuffer(decompressedResult.result()));
+                        if(cacheUpdate != null) {
+                            cacheUpdate.resource(decompressed, values.getString(2), expireAt(values, 6));
+                        }
+                        r.readStream = new BufferReadStream(vertx, decompressed);
+                        r.length = decompressed.length();
+                        r.etag = values.getString(2);
+                        r.closeHandler = event -> {
+                            // nothing to close
+                        };
+                        handler.handle(r);
+                    } else {
+                        error(handler, "Error during decompression of resource: " + decompressedResult.cause().getMessage());
+                    }
+                });
+            } else {
+                Buffer buffer = Buffer.buffer(Unpooled.wrappedBuffer(content));
+                if(cacheUpdate != null) {
+                    cacheUpdate.resource(buffer, values.getString(2), expireAt(values, 6));
+                }
+                r.readStream = new BufferReadStream(vertx, buffer);
+                r.length = buffer.length();
+                r.etag = values.getString(2);
+                r.closeHandler = event -> {
+                    // nothing to close
+                };
+                handler.handle(r);
+            }
+        } else if("TYPE_COLLECTION_STREAM".equals(type)) {
+            CollectionResource r = new CollectionResource();
+            r.memberStream = new CollectionReadStream(key);
+            collectionStreams++;
+            handler.handle(r);
+        } else if("TYPE_COLLECTION".equals(type)) {
+            CollectionResource r = new CollectionResource();
+            // the type is followed by the cursor of the following page, empty if no members follow
+            if(!values.getString(1).isEmpty()) {
+                r.cursor = values.getString(1);
+            }
+            Set<Resource> items = new HashSet<>();
+            for (int i = 2; i < values.size(); i++) {
+                String member = values.getString(i);
+                if (member.endsWith(":")) {
+                    member = member.replaceAll(":$", "");
+                    CollectionResource c = new CollectionResource();
+                    c.name = member;
+                    items.add(c);
+                } else {
+                    DocumentResource d = new DocumentResource();
+                    d.name = member;
+                    items.add(d);
+                }
+            }
+            if(allowEmptyReturn && items.size()==0) {
+                notFound(handler);
+            } else {
+                r.items = new ArrayList<>(items);
+                Collections.sort(r.items);
+                handler.handle(r);
+            }
+        } else {
+            notFound(handler);
+        }
+    }
+
+    /**
+     * Reads the members of a large collection in pages of COLLECTION_STREAM_PAGE_SIZE members, the sub collections
+     * first, followed by the resources, both in the lexicographical order of their names. The next page is only read
+     * from redis when the members of the previous one were handled and the stream is not paused. Members added or
+     * removed while the collection is read may be missing.
+     */
+    private class CollectionReadStream implements ReadStream<Resource> {
+
+        private final String key;
+        // the kind of the members read next, null when all members were read
+        private String kind = "collections";
+        private String cursor = EMPTY;
+        private final Deque<Resource> pending = new ArrayDeque<>();
+        private boolean paused;
+        private boolean reading;
+        private boolean ended;
+        private Handler<Resource> handler;
+        private Handler<Void> endHandler;
+        private Handler<Throwable> exceptionHandler;
+
+        private CollectionReadStream(String key) {
+            this.key = key;
+        }
+
+        private void doRead() {
+            while (!paused && handler != null && !pending.isEmpty()) {
+                handler.handle(pending.poll());
+            }
+            if (paused || reading || ended || handler == null || !pending.isEmpty()) {
+                return;
+            }
+            if (kind == null) {
+                ended = true;
+                if (endHandler != null) {
+                    endHandler.handle(null);
+                }
+                return;
+            }
+            reading = true;
+            collectionStreamPages++;
+            List<String> keys = Collections.singletonList(key);
+            List<String> arguments = Arrays.asList(
+                    redisResourcesPrefix,
+                    redisCollectionsPrefix,
+                    expirableSet,
+                    String.valueOf(System.currentTimeMillis()),
+                    MAX_EXPIRE_IN_MILLIS,
+                    "0",
+                    String.valueOf(COLLECTION_STREAM_PAGE_SIZE),
+                    EMPTY,
+                    cursor,
+                    EMPTY,
+                    "true",
+                    kind,
+                    "0"
+            );
+            reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.GET, new Get(keys, arguments, resource -> {
+                reading = false;
+                if (resource.error) {
+                    ended = true;
+                    if (exceptionHandler != null) {
+                        exceptionHandler.handle(new IllegalStateException(resource.errorMessage));
+                    }
+                    return;
+                }
+                if (resource instanceof CollectionResource && resource.exists) {
+                    CollectionResource page = (CollectionResource) resource;
+                    pending.addAll(page.items);
+                    if (page.cursor != null) {
+                        cursor = page.cursor;
+                    } else {
+                        kind = "collections".equals(kind) ? "resources" : null;
+                        cursor = EMPTY;
+                    }
+                } else {
+                    // the collection was removed in the meantime
+                    kind = null;
+                }
+                doRead();
+            }, null), 0);
+        }
+
+        @Override
+        public CollectionReadStream resume() {
+            paused = false;
+            doRead();
+            return this;
+        }
+
+        @Override
+        public CollectionReadStream pause() {
+            paused = true;
+            return this;
+        }
+
+        @Override
+        public CollectionReadStream exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public CollectionReadStream handler(Handler<Resource> handler) {
+            this.handler = handler;
+            doRead();
+            return this;
+        }
+
+        @Override
+        public CollectionReadStream endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+    }
+
+    /**
+     * Reads a resource stored in chunks. The next chunk is only read from redis when the previous one was handled
+     * and the stream is not paused. Fails if the resource is replaced while it is read.
+     */
+    private class ChunkedReadStream implements ReadStream<Buffer> {
+
+        private final String key;
+        private final String etag;
+        private final int chunks;
+        private int nextChunk = 0;
+        private boolean paused;
+        private boolean reading;
+        private boolean ended;
+        private Handler<Buffer> handler;
+        private Handler<Void> endHandler;
+        private Handler<Throwable> exceptionHandler;
+
+        private ChunkedReadStream(String key, String etag, int chunks) {
+            this.key = key;
+            this.etag = etag;
+            this.chunks = chunks;
+        }
+
+        private void doRead() {
+            if (paused || reading || ended || handler == null) {
+                return;
+            }
+            if (nextChunk >= chunks) {
+                ended = true;
+                if (endHandler != null) {
+                    endHandler.handle(null);
+                }
+                return;
+            }
+            reading = true;
+            List<String> keys = Collections.singletonList(redisResourcesPrefix + key);
+            List<String> arguments = Arrays.asList(etag, String.valueOf(nextChunk));
+            reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.GET_CHUNK, new GetChunk(keys, arguments, event -> {
+                reading = false;
+                if (event.failed()) {
+                    ended = true;
+                    if (exceptionHandler != null) {
+                        exceptionHandler.handle(event.cause());
+                    }
+                    return;
+                }
+                nextChunk++;
+                handler.handle(event.result());
+                doRead();
+            }), 0);
+        }
+
+        @Override
+        public ChunkedReadStream resume() {
+            paused = false;
+            doRead();
+            return this;
+        }
+
+        @Override
+        public ChunkedReadStream pause() {
+            paused = true;
+            return this;
+        }
+
+        @Override
+        public ChunkedReadStream exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public ChunkedReadStream handler(Handler<Buffer> handler) {
+            this.handler = handler;
+            doRead();
+            return this;
+        }
+
+        @Override
+        public ChunkedReadStream endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+    }
+
+    /**
+     * The GetChunk Command Execution.
+     * If the getChunk script cannot be found under the sha in luaScriptState, reload the script.
+     * To avoid infinite recursion, we limit the recursion.
+     */
+    private class GetChunk implements RedisCommand {
+
+        private List<String> keys;
+        private List<String> arguments;
+        private Handler<AsyncResult<Buffer>> handler;
+
+        public GetChunk(List<String> keys, List<String> arguments, Handler<AsyncResult<Buffer>> handler) {
+            this.keys = keys;
+            this.arguments = arguments;
+            this.handler = handler;
+        }
+
+        public void exec(final int executionCounter) {
+            redisClientPool.evalsha(luaScripts.get(LuaScript.GET_CHUNK).getSha(), keys, arguments, event -> {
+                if(event.succeeded()){
+                    JsonArray values = event.result();
+                    if("chunk".equals(values.getString(0))) {
+                        handler.handle(Future.succeededFuture(decodeBinaryBuffer(values.getString(1))));
+                    } else {
+                        handler.handle(Future.failedFuture("Resource " + keys.get(0) + " was modified while reading it"));
+                    }
+                } else {
+                    String message = event.cause().getMessage();
+                    if(message != null && message.startsWith("NOSCRIPT")) {
+                        log.warn("getChunk script couldn't be found, reload it");
+                        log.warn("amount the script got loaded: " + String.valueOf(executionCounter));
+                        if(executionCounter > 10) {
+                            log.error("amount the script got loaded is higher than 10, we abort");
+                        } else {
+                            luaScripts.get(LuaScript.GET_CHUNK).loadLuaScript(new GetChunk(keys, arguments, handler), executionCounter);
+                            return;
+                        }
+                    } else {
+                        log.error("GetChunk request failed with message: " + message);
+                    }
+                    handler.handle(Future.failedFuture(event.cause()));
+                }
+            });
+        }
+    }
+
+    class ByteArrayWriteStream implements WriteStream<Buffer> {
+
+        private Buffer content = Buffer.buffer();
+
+        public Buffer getContent() {
+            return content;
+        }
 
         @Override
         public ByteArrayWriteStream setWriteQueueMaxSize(int maxSize) {
@@ -611,21 +1819,13 @@ public class RedisStorage implements Storage {
 
         @Override
         public WriteStream<Buffer> write(Buffer data) {
-            try {
-                bos.write(data.getBytes());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+            content.appendBuffer(data);
             return this;
         }
 
         @Override
         public void end() {
-            try {
-                bos.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+            // nothing to close
         }
     }
 
@@ -651,122 +1851,436 @@ public class RedisStorage implements Storage {
     public void put(String path, String etag, boolean merge, long expire, String lockOwner, LockMode lockMode, long lockExpire, boolean storeCompressed, Handler<Resource> handler) {
         final String key = encodePath(path);
         final DocumentResource d = new DocumentResource();
-        final ByteArrayWriteStream stream = new ByteArrayWriteStream();
 
         final String etagValue = initEtagValue(etag);
-        d.writeStream = stream;
-        d.closeHandler = event -> {
-            String expireInMillis = MAX_EXPIRE_IN_MILLIS;
-            if (expire > -1) {
-                expireInMillis = String.valueOf(System.currentTimeMillis() + (expire * 1000));
+        if (chunkSize > 0 && !merge && !storeCompressed) {
+            // merging and compression need the whole content, so only plain resources are streamed in chunks
+            final ChunkedWriteStream stream = new ChunkedWriteStream();
+            d.writeStream = stream;
+            d.closeHandler = event -> stream.flush(flushed -> {
+                if (flushed.failed()) {
+                    log.error("PUT request failed writing chunks with message: " + flushed.cause().getMessage());
+                    if (d.errorHandler != null) {
+                        d.errorHandler.handle(flushed.cause().getMessage());
+                    }
+                    return;
+                }
+                if (stream.getChunkCount() == 0) {
+                    putResource(d, key, stream.getRemaining(), etagValue, false, expire, lockOwner, lockMode, lockExpire, false, handler);
+                } else {
+                    List<String> arguments = putArguments(EMPTY, etagValue, false, expire, lockOwner, lockMode, lockExpire, false,
+                            stream.getChunksKey(), stream.getChunkCount(), stream.getLength());
+                    reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.PUT, new Put(d, Collections.singletonList(key), arguments, handler), 0);
+                }
+            });
+        } else {
+            final ByteArrayWriteStream stream = new ByteArrayWriteStream();
+            d.writeStream = stream;
+            d.closeHandler = event -> putResource(d, key, stream.getContent(), etagValue, merge, expire, lockOwner, lockMode, lockExpire, storeCompressed, handler);
+        }
+        handler.handle(d);
+    }
+
+    private void putResource(DocumentResource d, String key, Buffer content, String etagValue, boolean merge, long expire, String lockOwner,
+                             LockMode lockMode, long lockExpire, boolean storeCompressed, Handler<Resource> handler) {
+        List<String> keys = Collections.singletonList(key);
+        if (storeCompressed) {
+            GZIPUtil.compressResource(vertx, content.getBytes(), compressResourceResult -> {
+                if(compressResourceResult.succeeded()) {
+                    List<String> arguments = putArguments(encodeBinary(compressResourceResult.result()), etagValue, merge, expire,
+                            lockOwner, lockMode, lockExpire, true, EMPTY, 0, 0);
+                    reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.PUT, new Put(d, keys, arguments, handler), 0);
+                } else {
+                    error(handler, "Error during compression of resource");
+                }
+            });
+        } else {
+            List<String> arguments = putArguments(encodeBinary(content), etagValue, merge, expire, lockOwner, lockMode, lockExpire,
+                    false, EMPTY, 0, 0);
+            reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.PUT, new Put(d, keys, arguments, handler), 0);
+        }
+    }
+
+    private List<String> putArguments(String resourceValue, String etagValue, boolean merge, long expire, String lockOwner, LockMode lockMode,
+                                      long lockExpire, boolean storeCompressed, String chunksKey, int chunkCount, long length) {
+        String expireInMillis = MAX_EXPIRE_IN_MILLIS;
+        if (expire > -1) {
+            expireInMillis = String.valueOf(System.currentTimeMillis() + (expire * 1000));
+        }
+
+        String lockExpireInMillis = String.valueOf(System.currentTimeMillis() + (lockExpire * 1000));
+
+        return Arrays.asList(
+                redisResourcesPrefix,
+                redisCollectionsPrefix,
+                expirableSet,
+                merge ? "true" : "false",
+                expireInMillis,
+                MAX_EXPIRE_IN_MILLIS,
+                resourceValue,
+                etagValue,
+                redisLockPrefix,
+                lockOwner,
+                lockMode.text(),
+                lockExpireInMillis,
+                storeCompressed ? "1" : "0",
+                chunksKey,
+                String.valueOf(chunkCount),
+                String.valueOf(length),
+                invalidationChannel,
+                redisDeltaResourcesPrefix,
+                redisDeltaEtagsPrefix
+        );
+    }
+
+    /**
+     * Writes the content of a resource in chunks of the configured chunk size to a temporary key, so that large
+     * resources don't have to be kept in memory. The put script replaces the resource with the chunks at the end.
+     * Content smaller than the chunk size is kept in memory and stored the usual way.
+     */
+    private class ChunkedWriteStream implements WriteStream<Buffer> {
+
+        private final String chunksKey = redisResourcesPrefix + CHUNKS_KEY_SUFFIX + UUID.randomUUID().toString();
+        private Buffer remaining = Buffer.buffer();
+        private int chunkCount = 0;
+        private long length = 0;
+        private int pendingWrites = 0;
+        private int writeQueueMaxSize = MAX_PENDING_CHUNK_WRITES;
+        private Throwable failure;
+        private Handler<Void> drainHandler;
+        private Handler<Throwable> exceptionHandler;
+        private Handler<AsyncResult<Void>> flushHandler;
+
+        public String getChunksKey() {
+            return chunksKey;
+        }
+
+        public int getChunkCount() {
+            return chunkCount;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public Buffer getRemaining() {
+            return remaining;
+        }
+
+        @Override
+        public ChunkedWriteStream write(Buffer data) {
+            length += data.length();
+            remaining.appendBuffer(data);
+            if (remaining.length() >= chunkSize) {
+                int offset = 0;
+                while (remaining.length() - offset >= chunkSize) {
+                    writeChunk(remaining.slice(offset, offset + chunkSize));
+                    offset += chunkSize;
+                }
+                remaining = remaining.getBuffer(offset, remaining.length());
             }
+            return this;
+        }
 
-            String lockExpireInMillis = String.valueOf(System.currentTimeMillis() + (lockExpire * 1000));
+        private void writeChunk(Buffer chunk) {
+            RedisClient client = redisClientPool.client();
+            int chunkIndex = chunkCount++;
+            pendingWrites++;
+            client.hset(chunksKey, "c" + chunkIndex, encodeBinary(chunk), event -> {
+                pendingWrites--;
+                if (event.failed() && failure == null) {
+                    failure = event.cause();
+                    if (exceptionHandler != null) {
+                        exceptionHandler.handle(failure);
+                    }
+                }
+                if (drainHandler != null && !writeQueueFull()) {
+                    Handler<Void> handler = drainHandler;
+                    drainHandler = null;
+                    handler.handle(null);
+                }
+                if (flushHandler != null && pendingWrites == 0) {
+                    completeFlush();
+                }
+            });
+            if (chunkIndex == 0) {
+                // the temporary key disappears if the upload is never completed
+                client.pexpire(chunksKey, CHUNKS_KEY_EXPIRE_MILLIS, event -> {});
+            }
+        }
 
-            List<String> keys = Collections.singletonList(key);
+        /**
+         * Writes the remaining content as last chunk, if the content is stored in chunks, and calls the handler as
+         * soon as all chunks are written.
+         */
+        public void flush(Handler<AsyncResult<Void>> handler) {
+            if (chunkCount > 0 && remaining.length() > 0) {
+                writeChunk(remaining);
+                remaining = Buffer.buffer();
+            }
+            flushHandler = handler;
+            if (pendingWrites == 0) {
+                completeFlush();
+            }
+        }
+
+        private void completeFlush() {
+            Handler<AsyncResult<Void>> handler = flushHandler;
+            flushHandler = null;
+            if (failure != null) {
+                handler.handle(Future.failedFuture(failure));
+            } else {
+                handler.handle(Future.succeededFuture());
+            }
+        }
+
+        @Override
+        public ChunkedWriteStream setWriteQueueMaxSize(int maxSize) {
+            return this;
+        }
+
+        @Override
+        public boolean writeQueueFull() {
+            return pendingWrites >= writeQueueMaxSize;
+        }
+
+        @Override
+        public ChunkedWriteStream drainHandler(Handler<Void> handler) {
+            this.drainHandler = handler;
+            return this;
+        }
+
+        @Override
+        public ChunkedWriteStream exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public void end() {
+            // the content is completed with the close handler of the resource
+        }
+    }
+
+    /**
+     * The Put Command Execution.
+     * If the get script cannot be found under the sha in luaScriptState, reload the script.
+     * To avoid infinite recursion, we limit the recursion.
+     */
+    private class Put implements RedisCommand {
+
+        private DocumentResource d;
+        private List<String> keys;
+        private List<String> arguments;
+        private Handler<Resource> handler;
+
+        public Put(DocumentResource d, List<String> keys, List<String> arguments, Handler<Resource> handler) {
+            this.d = d;
+            this.keys = keys;
+            this.arguments = arguments;
+            this.handler = handler;
+        }
+
+        public void exec(final int executionCounter) {
+            evalScript(LuaScript.PUT, keys, arguments, event -> {
+                invalidateCaches(keys.get(0));
+                if(event.succeeded()){
+                    String result = event.result().getString(0);
+                    if (log.isTraceEnabled()) {
+                        log.trace("RedisStorage successfull put. Result: " + result);
+                    }
+                    if(result != null && result.startsWith("existingCollection")){
+                        CollectionResource c = new CollectionResource();
+                        handler.handle(c);
+                    } else if(result != null && result.startsWith("existingResource")){
+                        DocumentResource d = new DocumentResource();
+                        d.exists = false;
+                        handler.handle(d);
+                    } else if("notModified".equals(result)){
+                        notModified(handler);
+                    } else if(LockMode.REJECT.text().equals(result)) {
+                        rejected(handler);
+                    }
+                    else {
+                        d.endHandler.handle(null);
+                    }
+                } else {
+                    String message = event.cause().getMessage();
+                    if(message != null && message.startsWith("NOSCRIPT")) {
+                        log.warn("put script couldn't be found, reload it");
+                        log.warn("amount the script got loaded: " + String.valueOf(executionCounter));
+                        if(executionCounter > 10) {
+                            log.error("amount the script got loaded is higher than 10, we abort");
+                        } else {
+                            luaScripts.get(LuaScript.PUT).loadLuaScript(new Put(d, keys, arguments, handler), executionCounter);
+                        }
+                    } else if (message != null && d.errorHandler != null){
+                        log.error("PUT request failed with message: " + message);
+                        d.errorHandler.handle(message);
+                    }
+                }
+            });
+        }
+    }
 
-            if (storeCompressed) {
-                String finalExpireInMillis = expireInMillis;
-                GZIPUtil.compressResource(vertx, stream.getBytes(), compressResourceResult -> {
+    /**
+     * Puts all entries with the same logic as single puts. The puts are sent with a single evaluation of the bulk put
+     * script per chunk of entries, the chunks are sent one after the other. Within an evaluation, the collections
+     * containing a resource are only checked and updated by the first put which touches them. An all or nothing bulk
+     * put is sent in a single evaluation, which checks all puts before anything is written.
+     */
+    @Override
+    public void bulkPut(List<BulkPutEntry> entries, boolean atomic, Handler<List<Resource>> handler) {
+        if(entries.isEmpty()) {
+            handler.handle(Collections.emptyList());
+            return;
+        }
+        bulkPutCount++;
+        bulkPutResources += entries.size();
+        final List<String> keys = new ArrayList<>(entries.size());
+        final List<List<String>> arguments = new ArrayList<>(Collections.nCopies(entries.size(), null));
+        final int[] pending = {entries.size() + 1};
+        final String[] compressionError = {null};
+        Handler<Void> prepared = v -> {
+            if(--pending[0] > 0) {
+                return;
+            }
+            Resource[] results = new Resource[entries.size()];
+            if(compressionError[0] != null) {
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = errorResource(compressionError[0]);
+                }
+                handler.handle(Arrays.asList(results));
+                return;
+            }
+            bulkPutChunk(keys, arguments, atomic, 0, results, handler);
+        };
+        for (int i = 0; i < entries.size(); i++) {
+            final int index = i;
+            final BulkPutEntry entry = entries.get(i);
+            final String etagValue = initEtagValue(entry.etag);
+            final String lockOwner = entry.lockOwner != null ? entry.lockOwner : EMPTY;
+            keys.add(encodePath(entry.path));
+            if(entry.storeCompressed) {
+                GZIPUtil.compressResource(vertx, entry.content.getBytes(), compressResourceResult -> {
                     if(compressResourceResult.succeeded()) {
-                        List<String> arg = Arrays.asList(
-                                redisResourcesPrefix,
-                                redisCollectionsPrefix,
-                                expirableSet,
-                                merge ? "true" : "false",
-                                finalExpireInMillis,
-                                MAX_EXPIRE_IN_MILLIS,
-                                encodeBinary(compressResourceResult.result()),
-                                etagValue,
-                                redisLockPrefix,
-                                lockOwner,
-                                lockMode.text(),
-                                lockExpireInMillis,
-                                storeCompressed ? "1" : "0"
-                        );
-                        reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.PUT, new Put(d, keys, arg, handler), 0);
+                        arguments.set(index, putArguments(encodeBinary(compressResourceResult.result()), etagValue, entry.merge,
+                                entry.expire, lockOwner, entry.lockMode, entry.lockExpire, true, EMPTY, 0, 0));
                     } else {
-                        error(handler, "Error during compression of resource");
+                        compressionError[0] = "Error during compression of resource";
                     }
+                    prepared.handle(null);
                 });
             } else {
-                List<String> arguments = Arrays.asList(
-                        redisResourcesPrefix,
-                        redisCollectionsPrefix,
-                        expirableSet,
-                        merge ? "true" : "false",
-                        expireInMillis,
-                        MAX_EXPIRE_IN_MILLIS,
-                        encodeBinary(stream.getBytes()),
-                        etagValue,
-                        redisLockPrefix,
-                        lockOwner,
-                        lockMode.text(),
-                        lockExpireInMillis,
-                        storeCompressed ? "1" : "0"
-                );
-                reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.PUT, new Put(d, keys, arguments, handler), 0);
+                arguments.set(index, putArguments(encodeBinary(entry.content), etagValue, entry.merge, entry.expire, lockOwner,
+                        entry.lockMode, entry.lockExpire, false, EMPTY, 0, 0));
+                prepared.handle(null);
             }
-        };
-        handler.handle(d);
+        }
+        prepared.handle(null);
     }
 
     /**
-     * The Put Command Execution.
-     * If the get script cannot be found under the sha in luaScriptState, reload the script.
+     * Sends the puts starting at the given index, as many as fit into a single evaluation, and continues with the
+     * following puts when the evaluation returned.
+     */
+    private void bulkPutChunk(List<String> keys, List<List<String>> arguments, boolean atomic, int from, Resource[] results,
+                              Handler<List<Resource>> handler) {
+        int to = from;
+        long bytes = 0;
+        while (to < keys.size() && (atomic || (to - from < BULK_PUT_MAX_ENTRIES && (to == from || bytes < BULK_PUT_MAX_BYTES)))) {
+            bytes += arguments.get(to).get(6).length();
+            to++;
+        }
+        final int end = to;
+        bulkPutEvaluations++;
+        BulkPut bulkPut = new BulkPut(keys.subList(from, end), arguments.subList(from, end), atomic, event -> {
+            for (int i = from; i < end; i++) {
+                invalidateCaches(keys.get(i));
+                if(event.succeeded()) {
+                    results[i] = toBulkPutResult(event.result().getValue(i - from));
+                } else {
+                    results[i] = errorResource(event.cause().getMessage());
+                }
+            }
+            if(end < keys.size()) {
+                bulkPutChunk(keys, arguments, atomic, end, results, handler);
+            } else {
+                handler.handle(Arrays.asList(results));
+            }
+        });
+        reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.BULK_PUT, bulkPut, 0);
+    }
+
+    /**
+     * Converts the result of a single put of the bulk put script to the resource a single put would have passed to
+     * its handler.
+     */
+    private Resource toBulkPutResult(Object value) {
+        String result = value instanceof String ? (String) value : null;
+        Resource resource = new Resource();
+        if(result != null && result.startsWith("existingCollection")) {
+            resource = new CollectionResource();
+        } else if(result != null && result.startsWith("existingResource")) {
+            resource = new DocumentResource();
+            resource.exists = false;
+        } else if("notModified".equals(result)) {
+            resource.modified = false;
+        } else if(LockMode.REJECT.text().equals(result)) {
+            resource.rejected = true;
+        } else if("aborted".equals(result)) {
+            resource.aborted = true;
+        } else if(result != null && result.startsWith("batchError ")) {
+            resource.invalid = true;
+            resource.invalidMessage = result.substring("batchError ".length());
+        }
+        return resource;
+    }
+
+    /**
+     * The Bulk Put Command Execution.
+     * If the bulk put script cannot be found under the sha in luaScriptState, reload the script.
      * To avoid infinite recursion, we limit the recursion.
      */
-    private class Put implements RedisCommand {
+    private class BulkPut implements RedisCommand {
 
-        private DocumentResource d;
         private List<String> keys;
-        private List<String> arguments;
-        private Handler<Resource> handler;
+        private List<List<String>> arguments;
+        private boolean atomic;
+        private Handler<AsyncResult<JsonArray>> handler;
 
-        public Put(DocumentResource d, List<String> keys, List<String> arguments, Handler<Resource> handler) {
-            this.d = d;
+        public BulkPut(List<String> keys, List<List<String>> arguments, boolean atomic, Handler<AsyncResult<JsonArray>> handler) {
             this.keys = keys;
             this.arguments = arguments;
+            this.atomic = atomic;
             this.handler = handler;
         }
 
         public void exec(final int executionCounter) {
-            redisClient.evalsha(luaScripts.get(LuaScript.PUT).getSha(), keys, arguments, event -> {
-                if(event.succeeded()){
-                    String result = event.result().getString(0);
-                    if (log.isTraceEnabled()) {
-                        log.trace("RedisStorage successfull put. Result: " + result);
-                    }
-                    if(result != null && result.startsWith("existingCollection")){
-                        CollectionResource c = new CollectionResource();
-                        handler.handle(c);
-                    } else if(result != null && result.startsWith("existingResource")){
-                        DocumentResource d = new DocumentResource();
-                        d.exists = false;
-                        handler.handle(d);
-                    } else if("notModified".equals(result)){
-                        notModified(handler);
-                    } else if(LockMode.REJECT.text().equals(result)) {
-                        rejected(handler);
-                    }
-                    else {
-                        d.endHandler.handle(null);
-                    }
-                } else {
+            List<String> scriptArguments = new ArrayList<>();
+            scriptArguments.add(String.valueOf(keys.size()));
+            scriptArguments.add(atomic ? "true" : "false");
+            for (List<String> putArguments : arguments) {
+                scriptArguments.add(String.valueOf(putArguments.size()));
+                scriptArguments.addAll(putArguments);
+            }
+            redisClientPool.evalsha(luaScripts.get(LuaScript.BULK_PUT).getSha(), keys, scriptArguments, event -> {
+                if(event.failed()) {
                     String message = event.cause().getMessage();
                     if(message != null && message.startsWith("NOSCRIPT")) {
-                        log.warn("put script couldn't be found, reload it");
+                        log.warn("bulk put script couldn't be found, reload it");
                         log.warn("amount the script got loaded: " + String.valueOf(executionCounter));
                         if(executionCounter > 10) {
                             log.error("amount the script got loaded is higher than 10, we abort");
                         } else {
-                            luaScripts.get(LuaScript.PUT).loadLuaScript(new Put(d, keys, arguments, handler), executionCounter);
+                            luaScripts.get(LuaScript.BULK_PUT).loadLuaScript(new BulkPut(keys, arguments, atomic, handler), executionCounter);
+                            return;
                         }
-                    } else if (message != null && d.errorHandler != null){
-                        log.error("PUT request failed with message: " + message);
-                        d.errorHandler.handle(message);
+                    } else {
+                        log.error("Bulk put request failed with message: " + message);
                     }
                 }
+                handler.handle(event);
             });
         }
     }
@@ -794,7 +2308,9 @@ public class RedisStorage implements Storage {
                 redisLockPrefix,
                 lockOwner,
                 lockMode.text(),
-                lockExpireInMillis
+                lockExpireInMillis,
+                invalidationChannel,
+                String.valueOf(reclaimBatchSize)
         );
         reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.DELETE, new Delete(keys, arguments, handler), 0);
     }
@@ -817,7 +2333,8 @@ public class RedisStorage implements Storage {
         }
 
         public void exec(final int executionCounter) {
-            redisClient.evalsha(luaScripts.get(LuaScript.DELETE).getSha(), keys, arguments, event -> {
+            evalScript(LuaScript.DELETE, keys, arguments, event -> {
+                invalidateCaches(keys.get(0) + InvalidatedCache.TREE_SUFFIX);
                 if(event.cause() != null && event.cause().getMessage().startsWith("NOSCRIPT")) {
                     log.warn("delete script couldn't be found, reload it");
                     log.warn("amount the script got loaded: " + String.valueOf(executionCounter));
@@ -844,12 +2361,211 @@ public class RedisStorage implements Storage {
                     rejected(handler);
                     return;
                 }
+                else if("detached".equals(result)) {
+                    reclaimDetached++;
+                    reclaim();
+                }
                 Resource r = new Resource();
                 handler.handle(r);
             });
         }
     }
 
+    /**
+     * Deletes all paths with the same logic as single deletes. The paths are sent with a single evaluation of the bulk
+     * delete script per chunk of paths, the chunks are sent one after the other. Within an evaluation, the collections
+     * which became empty are removed from their parents once after all paths were deleted.
+     */
+    @Override
+    public void bulkDelete(List<String> paths, String lockOwner, LockMode lockMode, long lockExpire, Handler<List<Resource>> handler) {
+        if(paths.isEmpty()) {
+            handler.handle(Collections.emptyList());
+            return;
+        }
+        bulkDeleteCount++;
+        bulkDeletePaths += paths.size();
+        List<String> keys = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            keys.add(encodePath(path));
+        }
+        bulkDeleteChunk(keys, lockOwner != null ? lockOwner : EMPTY, lockMode, lockExpire, 0, new Resource[keys.size()], handler);
+    }
+
+    private void bulkDeleteChunk(List<String> keys, String lockOwner, LockMode lockMode, long lockExpire, int from, Resource[] results,
+                                 Handler<List<Resource>> handler) {
+        final int end = Math.min(keys.size(), from + BULK_DELETE_MAX_PATHS);
+        List<String> arguments = Arrays.asList(
+                redisResourcesPrefix,
+                redisCollectionsPrefix,
+                redisDeltaResourcesPrefix,
+                redisDeltaEtagsPrefix,
+                expirableSet,
+                String.valueOf(System.currentTimeMillis()),
+                MAX_EXPIRE_IN_MILLIS,
+                redisLockPrefix,
+                lockOwner,
+                lockMode.text(),
+                String.valueOf(System.currentTimeMillis() + (lockExpire * 1000)),
+                invalidationChannel,
+                String.valueOf(reclaimBatchSize)
+        );
+        bulkDeleteEvaluations++;
+        BulkDelete bulkDelete = new BulkDelete(keys.subList(from, end), arguments, event -> {
+            boolean detached = false;
+            for (int i = from; i < end; i++) {
+                invalidateCaches(keys.get(i) + InvalidatedCache.TREE_SUFFIX);
+                if(event.failed()) {
+                    results[i] = errorResource(event.cause().getMessage());
+                    continue;
+                }
+                String result = event.result().getString(i - from);
+                Resource resource = new Resource();
+                if("notFound".equals(result)) {
+                    resource.exists = false;
+                } else if(LockMode.REJECT.text().equals(result)) {
+                    resource.rejected = true;
+                } else if("detached".equals(result)) {
+                    reclaimDetached++;
+                    detached = true;
+                }
+                results[i] = resource;
+            }
+            if(detached) {
+                reclaim();
+            }
+            if(end < keys.size()) {
+                bulkDeleteChunk(keys, lockOwner, lockMode, lockExpire, end, results, handler);
+            } else {
+                handler.handle(Arrays.asList(results));
+            }
+        });
+        reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.BULK_DELETE, bulkDelete, 0);
+    }
+
+    /**
+     * The Bulk Delete Command Execution.
+     * If the bulk delete script cannot be found under the sha in luaScriptState, reload the script.
+     * To avoid infinite recursion, we limit the recursion.
+     */
+    private class BulkDelete implements RedisCommand {
+
+        private List<String> keys;
+        private List<String> arguments;
+        private Handler<AsyncResult<JsonArray>> handler;
+
+        public BulkDelete(List<String> keys, List<String> arguments, Handler<AsyncResult<JsonArray>> handler) {
+            this.keys = keys;
+            this.arguments = arguments;
+            this.handler = handler;
+        }
+
+        public void exec(final int executionCounter) {
+            redisClientPool.evalsha(luaScripts.get(LuaScript.BULK_DELETE).getSha(), keys, arguments, event -> {
+                if(event.failed()) {
+                    String message = event.cause().getMessage();
+                    if(message != null && message.startsWith("NOSCRIPT")) {
+                        log.warn("bulk delete script couldn't be found, reload it");
+                        log.warn("amount the script got loaded: " + String.valueOf(executionCounter));
+                        if(executionCounter > 10) {
+                            log.error("amount the script got loaded is higher than 10, we abort");
+                        } else {
+                            luaScripts.get(LuaScript.BULK_DELETE).loadLuaScript(new BulkDelete(keys, arguments, handler), executionCounter);
+                            return;
+                        }
+                    } else {
+                        log.error("Bulk delete request failed with message: " + message);
+                    }
+                }
+                handler.handle(event);
+            });
+        }
+    }
+
+    /**
+     * Reclaims the keys of the collections detached by deletes in the background. The queue of detached collections
+     * is processed by one evaluation of the reclaim script after the other, each deleting at most reclaimBatchSize
+     * members, until the queue is empty. Only one reclamation runs at a time, a reclamation requested in the meantime
+     * continues the running one.
+     */
+    private void reclaim() {
+        if(reclaimRunning) {
+            reclaimRequested = true;
+            return;
+        }
+        reclaimRunning = true;
+        reclaimBatch();
+    }
+
+    private void reclaimBatch() {
+        reclaimRequested = false;
+        List<String> keys = Collections.singletonList(redisCollectionsPrefix + "-reclaim");
+        List<String> arguments = Arrays.asList(
+                redisResourcesPrefix,
+                redisCollectionsPrefix,
+                redisDeltaResourcesPrefix,
+                redisDeltaEtagsPrefix,
+                expirableSet,
+                redisLockPrefix,
+                String.valueOf(reclaimBatchSize)
+        );
+        reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.RECLAIM, new Reclaim(keys, arguments, event -> {
+            if(event.failed()) {
+                // the queue is kept, the reclamation is resumed by the next detached collection or restart
+                log.error("Reclaiming detached collections failed with message: " + event.cause().getMessage());
+                reclaimRunning = false;
+                return;
+            }
+            reclaimEvaluations++;
+            reclaimMembers += event.result().getLong(0);
+            reclaimPending = event.result().getLong(1);
+            if (log.isTraceEnabled()) {
+                log.trace("RedisStorage reclaimed members: " + event.result().getLong(0) + ", detached collections left: " + reclaimPending);
+            }
+            if(reclaimPending > 0 || reclaimRequested) {
+                reclaimBatch();
+            } else {
+                reclaimRunning = false;
+            }
+        }), 0);
+    }
+
+    /**
+     * The Reclaim Command Execution.
+     * If the reclaim script cannot be found under the sha in luaScriptState, reload the script.
+     * To avoid infinite recursion, we limit the recursion.
+     */
+    private class Reclaim implements RedisCommand {
+
+        private List<String> keys;
+        private List<String> arguments;
+        private Handler<AsyncResult<JsonArray>> handler;
+
+        public Reclaim(List<String> keys, List<String> arguments, Handler<AsyncResult<JsonArray>> handler) {
+            this.keys = keys;
+            this.arguments = arguments;
+            this.handler = handler;
+        }
+
+        public void exec(final int executionCounter) {
+            redisClientPool.evalsha(luaScripts.get(LuaScript.RECLAIM).getSha(), keys, arguments, event -> {
+                if(event.failed()) {
+                    String message = event.cause().getMessage();
+                    if(message != null && message.startsWith("NOSCRIPT")) {
+                        log.warn("reclaim script couldn't be found, reload it");
+                        log.warn("amount the script got loaded: " + String.valueOf(executionCounter));
+                        if(executionCounter > 10) {
+                            log.error("amount the script got loaded is higher than 10, we abort");
+                        } else {
+                            luaScripts.get(LuaScript.RECLAIM).loadLuaScript(new Reclaim(keys, arguments, handler), executionCounter);
+                            return;
+                        }
+                    }
+                }
+                handler.handle(event);
+            });
+        }
+    }
+
     /**
      * Cleans up the outdated resources recursive.
      * If the script which is refered over the luaScriptState.sha, the execution is aborted and the script is reloaded.
@@ -860,6 +2576,18 @@ public class RedisStorage implements Storage {
      * @param bulkSize how many resources should be cleaned in one run
      */
     public void cleanupRecursive(final Handler<DocumentResource> handler, final long cleanedLastRun, final long maxdel, final int bulkSize) {
+        cleanupRuns++;
+        cleanupRecursive(handler, cleanedLastRun, maxdel, bulkSize, 0, System.nanoTime());
+    }
+
+    /**
+     * @param fencingToken the token of the cleanup lease held by this storage, 0 if the cleanup is not coordinated.
+     * An evaluation with a token which is not the one of the current lease does not clean anything, so that a storage
+     * which lost its lease unnoticed, e.g. during a long pause, does not compete with the new holder
+     */
+    private void cleanupRecursive(final Handler<DocumentResource> handler, final long cleanedLastRun, final long maxdel, final int bulkSize,
+                                  final long fencingToken, final long runStarted) {
+        final int limit = (int) Math.max(1, Math.min(bulkSize, maxdel - cleanedLastRun));
         List<String> arguments = Arrays.asList(
                 redisResourcesPrefix,
                 redisCollectionsPrefix,
@@ -869,23 +2597,39 @@ public class RedisStorage implements Storage {
                 "0",
                 MAX_EXPIRE_IN_MILLIS,
                 String.valueOf(System.currentTimeMillis()),
-                String.valueOf(bulkSize)
+                String.valueOf(limit),
+                EMPTY,
+                EMPTY,
+                invalidationChannel, // at the positions of the arguments expected by the embedded delete script
+                String.valueOf(reclaimBatchSize),
+                fencingToken > 0 ? cleanupLeaseKey : EMPTY,
+                String.valueOf(fencingToken),
+                String.valueOf(cleanupLeaseDuration)
         );
 
-        redisClient.evalsha(luaScripts.get(LuaScript.CLEANUP).getSha(), Collections.emptyList(), arguments, event -> {
+        final long started = System.nanoTime();
+        redisClientPool.evalsha(luaScripts.get(LuaScript.CLEANUP).getSha(), Collections.emptyList(), arguments, event -> {
             if (log.isTraceEnabled()) {
                 log.trace("RedisStorage cleanup resources succeeded: " + event.succeeded());
             }
 
             if(event.failed() && event.cause() != null && event.cause().getMessage().startsWith("NOSCRIPT")) {
+                // the run ends, so that the handler is called in any case
                 log.warn("the cleanup script is not loaded. Load it and exit. The Cleanup will success the next time");
                 luaScripts.get(LuaScript.CLEANUP).loadLuaScript(new RedisCommandDoNothing(), 0);
-                return;
             }
 
             long cleanedThisRun = 0;
-            if(event.succeeded() && event.result().getLong(0) != null){
+            int nextBulkSize = bulkSize;
+            if(event.succeeded() && event.result().getLong(0) != null && event.result().getLong(0) < 0) {
+                log.warn("the cleanup lease of this storage was taken over by another storage, the cleanup is aborted");
+                cleanupFenced++;
+            } else if(event.succeeded() && event.result().getLong(0) != null){
                 cleanedThisRun = event.result().getLong(0);
+                cleanupEvaluations++;
+                cleanupCleaned += cleanedThisRun;
+                cleanupLastDuration = (System.nanoTime() - started) / 1000000d;
+                nextBulkSize = adaptCleanupBulkSize(bulkSize, limit, cleanedThisRun, cleanupLastDuration);
             }
             if (log.isTraceEnabled()) {
                 log.trace("RedisStorage cleanup resources cleanded this run: " + cleanedThisRun);
@@ -895,33 +2639,121 @@ public class RedisStorage implements Storage {
                 if (log.isTraceEnabled()) {
                     log.trace("RedisStorage cleanup resources call recursive next bulk");
                 }
-                cleanupRecursive(handler, cleaned, maxdel, bulkSize);
+                cleanupRecursive(handler, cleaned, maxdel, nextBulkSize, fencingToken, runStarted);
             } else {
-                redisClient.zcount(expirableSet, 0, System.currentTimeMillis(), longAsyncResult -> {
-                    Long result = longAsyncResult.result();
-                    if (log.isTraceEnabled()) {
-                        log.trace("RedisStorage cleanup resources zcount on expirable set: " + result);
-                    }
-                    int resToCleanLeft = 0;
-                    if (result != null && result.intValue() >= 0) {
-                        resToCleanLeft = result.intValue();
-                    }
-                    JsonObject retObj = new JsonObject();
-                    retObj.put("cleanedResources", cleaned);
-                    retObj.put("expiredResourcesLeft", resToCleanLeft);
-                    DocumentResource r = new DocumentResource();
-                    byte[] content = decodeBinary(retObj.toString());
-                    r.readStream = new ByteArrayReadStream(content);
-                    r.length = content.length;
-                    r.closeHandler = event1 -> {
-                        // nothing to close
-                    };
-                    handler.handle(r);
-                });
+                double runDuration = (System.nanoTime() - runStarted) / 1000000000d;
+                cleanupThroughput = runDuration > 0 ? cleaned / runDuration : 0;
+                cleanupResult(handler, cleaned);
+            }
+        });
+    }
+
+    private void cleanupResult(final Handler<DocumentResource> handler, final long cleaned) {
+        redisClientPool.client().zcount(expirableSet, 0, System.currentTimeMillis(), longAsyncResult -> {
+            Long result = longAsyncResult.result();
+            if (log.isTraceEnabled()) {
+                log.trace("RedisStorage cleanup resources zcount on expirable set: " + result);
+            }
+            int resToCleanLeft = 0;
+            if (result != null && result.intValue() >= 0) {
+                resToCleanLeft = result.intValue();
             }
+            JsonObject retObj = new JsonObject();
+            retObj.put("cleanedResources", cleaned);
+            retObj.put("expiredResourcesLeft", resToCleanLeft);
+            DocumentResource r = new DocumentResource();
+            byte[] content = decodeBinary(retObj.toString());
+            r.readStream = new BufferReadStream(vertx, content);
+            r.length = content.length;
+            r.closeHandler = event1 -> {
+                // nothing to close
+            };
+            handler.handle(r);
         });
     }
 
+    /**
+     * Acquires, renews or releases the cleanup lease of this storage. The handler is called with the fencing token of
+     * the lease, or with 0 if the lease is held by another storage or was released.
+     */
+    private void cleanupLease(boolean release, Handler<Long> handler) {
+        List<String> keys = Collections.singletonList(cleanupLeaseKey);
+        List<String> arguments = Arrays.asList(
+                cleanupLeaseOwner,
+                String.valueOf(cleanupLeaseDuration),
+                release ? "release" : "acquire"
+        );
+        reloadScriptIfLoglevelChangedAndExecuteRedisCommand(LuaScript.CLEANUP_LEASE, new CleanupLease(keys, arguments, event -> {
+            if(event.failed()) {
+                log.error("Cleanup lease request failed with message: " + event.cause().getMessage());
+                handler.handle(0L);
+                return;
+            }
+            handler.handle(event.result().getLong(0));
+        }), 0);
+    }
+
+    /**
+     * The Cleanup Lease Command Execution.
+     * If the cleanup lease script cannot be found under the sha in luaScriptState, reload the script.
+     * To avoid infinite recursion, we limit the recursion.
+     */
+    private class CleanupLease implements RedisCommand {
+
+        private List<String> keys;
+        private List<String> arguments;
+        private Handler<AsyncResult<JsonArray>> handler;
+
+        public CleanupLease(List<String> keys, List<String> arguments, Handler<AsyncResult<JsonArray>> handler) {
+            this.keys = keys;
+            this.arguments = arguments;
+            this.handler = handler;
+        }
+
+        public void exec(final int executionCounter) {
+            redisClientPool.evalsha(luaScripts.get(LuaScript.CLEANUP_LEASE).getSha(), keys, arguments, event -> {
+                if(event.failed()) {
+                    String message = event.cause().getMessage();
+                    if(message != null && message.startsWith("NOSCRIPT")) {
+                        log.warn("cleanup lease script couldn't be found, reload it");
+                        log.warn("amount the script got loaded: " + String.valueOf(executionCounter));
+                        if(executionCounter > 10) {
+                            log.error("amount the script got loaded is higher than 10, we abort");
+                        } else {
+                            luaScripts.get(LuaScript.CLEANUP_LEASE).loadLuaScript(new CleanupLease(keys, arguments, handler), executionCounter);
+                            return;
+                        }
+                    }
+                }
+                handler.handle(event);
+            });
+        }
+    }
+
+    /**
+     * Scales the bulk size of the cleanup by the ratio between the target duration and the measured duration of the
+     * last evaluation and the amount of resources it cleaned, at most by a factor of two per evaluation. A bulk which
+     * did not find enough expired resources to be filled is not grown, as its duration says nothing about a larger
+     * bulk. The bulk size is kept for the following cleanups.
+     *
+     * @param bulkSize the bulk size of the next evaluation if nothing changes
+     * @param limit the maximum amount of resources the last evaluation was allowed to clean
+     * @param cleaned the amount of resources the last evaluation cleaned
+     * @param duration the duration of the last evaluation in milliseconds, including the round trip to redis
+     */
+    private int adaptCleanupBulkSize(int bulkSize, int limit, long cleaned, double duration) {
+        if(cleanupTargetDuration <= 0 || cleaned == 0) {
+            return bulkSize;
+        }
+        double factor = cleanupTargetDuration / Math.max(duration, 0.1d);
+        if(factor > 1 && cleaned < limit) {
+            return bulkSize;
+        }
+        factor = Math.max(0.5d, Math.min(2d, factor));
+        cleanupBulkSize = (int) Math.max(CLEANUP_MIN_BULK_SIZE, Math.min(CLEANUP_MAX_BULK_SIZE, Math.round(cleaned * factor)));
+        return cleanupBulkSize;
+    }
+
     private String encodePath(String path) {
         if (path.equals("/")) {
             path = "";
@@ -930,19 +2762,30 @@ public class RedisStorage implements Storage {
     }
 
     private String encodeBinary(byte[] bytes) {
-        try {
-            return new String(bytes, "ISO-8859-1");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decodes the content directly from the backing array of the buffer, without copying it to an intermediate array
+     * first.
+     */
+    private String encodeBinary(Buffer buffer) {
+        ByteBuf byteBuf = buffer.getByteBuf();
+        if (byteBuf.hasArray()) {
+            return new String(byteBuf.array(), byteBuf.arrayOffset() + byteBuf.readerIndex(), byteBuf.readableBytes(), StandardCharsets.ISO_8859_1);
         }
+        return byteBuf.toString(StandardCharsets.ISO_8859_1);
     }
 
     private byte[] decodeBinary(String s) {
-        try {
-            return s.getBytes("ISO-8859-1");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
-        }
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Wraps the decoded bytes instead of copying them, as <code>Buffer.buffer(byte[])</code> would do.
+     */
+    private Buffer decodeBinaryBuffer(String s) {
+        return Buffer.buffer(Unpooled.wrappedBuffer(decodeBinary(s)));
     }
 
     private void notFound(Handler<Resource> handler) {
@@ -971,10 +2814,14 @@ public class RedisStorage implements Storage {
     }
 
     private void error(Handler<Resource> handler, String errorMessage){
+        handler.handle(errorResource(errorMessage));
+    }
+
+    private Resource errorResource(String errorMessage){
         Resource r = new Resource();
         r.error = true;
         r.errorMessage = errorMessage;
-        handler.handle(r);
+        return r;
     }
 
     @Override
@@ -988,7 +2835,95 @@ public class RedisStorage implements Storage {
         } catch (Exception e) {
             // do nothing
         }
-        cleanupRecursive(handler, 0, cleanupResourcesAmountUsed, CLEANUP_BULK_SIZE);
+        if(cleanupLeaseDuration <= 0) {
+            cleanupRecursive(handler, 0, cleanupResourcesAmountUsed, cleanupBulkSize);
+            return;
+        }
+        // only the holder of the lease cleans up, the lease is renewed by every evaluation of the cleanup script and
+        // released at the end of the run. the lease of a storage which stopped expires after the lease duration
+        final long maxdel = cleanupResourcesAmountUsed;
+        cleanupLease(false, fencingToken -> {
+            if(fencingToken <= 0) {
+                if (log.isTraceEnabled()) {
+                    log.trace("RedisStorage cleanup lease is held by another storage");
+                }
+                cleanupSkipped++;
+                cleanupResult(handler, 0);
+                return;
+            }
+            cleanupRuns++;
+            cleanupRecursive(result -> cleanupLease(true, released -> handler.handle(result)), 0, maxdel, cleanupBulkSize,
+                    fencingToken, System.nanoTime());
+        });
+    }
+
+    @Override
+    public void metrics(Handler<JsonObject> handler) {
+        JsonObject metrics = new JsonObject();
+        metrics.put("redisPool", redisClientPool.metrics());
+        if(replicaRouter != null) {
+            metrics.put("redisReplicas", replicaRouter.metrics());
+        }
+        if(isBatchingEnabled()) {
+            JsonObject batchMetrics = new JsonObject();
+            batchMetrics.put("window", batchWindow);
+            batchMetrics.put("maxSize", batchMaxSize);
+            batchMetrics.put("pending", batchEntries.size());
+            batchMetrics.put("totalBatches", batchCount);
+            batchMetrics.put("totalBatchedCommands", batchedCommands);
+            batchMetrics.put("largestBatch", maxBatchSize);
+            metrics.put("redisBatch", batchMetrics);
+        }
+        metrics.put("multiGets", multiGetCount);
+        JsonObject bulkPutMetrics = new JsonObject();
+        bulkPutMetrics.put("total", bulkPutCount);
+        bulkPutMetrics.put("evaluations", bulkPutEvaluations);
+        bulkPutMetrics.put("resources", bulkPutResources);
+        metrics.put("bulkPuts", bulkPutMetrics);
+        JsonObject bulkDeleteMetrics = new JsonObject();
+        bulkDeleteMetrics.put("total", bulkDeleteCount);
+        bulkDeleteMetrics.put("evaluations", bulkDeleteEvaluations);
+        bulkDeleteMetrics.put("paths", bulkDeletePaths);
+        metrics.put("bulkDeletes", bulkDeleteMetrics);
+        JsonObject storageExpandChunkMetrics = new JsonObject();
+        storageExpandChunkMetrics.put("total", storageExpandChunked);
+        storageExpandChunkMetrics.put("evaluations", storageExpandChunkEvaluations);
+        metrics.put("storageExpandChunks", storageExpandChunkMetrics);
+        JsonObject collectionStreamMetrics = new JsonObject();
+        collectionStreamMetrics.put("total", collectionStreams);
+        collectionStreamMetrics.put("pages", collectionStreamPages);
+        metrics.put("collectionStreams", collectionStreamMetrics);
+        JsonObject reclaimMetrics = new JsonObject();
+        reclaimMetrics.put("running", reclaimRunning);
+        reclaimMetrics.put("detached", reclaimDetached);
+        reclaimMetrics.put("pending", reclaimPending);
+        reclaimMetrics.put("evaluations", reclaimEvaluations);
+        reclaimMetrics.put("members", reclaimMembers);
+        metrics.put("reclaim", reclaimMetrics);
+        JsonObject cleanupMetrics = new JsonObject();
+        cleanupMetrics.put("runs", cleanupRuns);
+        cleanupMetrics.put("evaluations", cleanupEvaluations);
+        cleanupMetrics.put("cleaned", cleanupCleaned);
+        cleanupMetrics.put("bulkSize", cleanupBulkSize);
+        cleanupMetrics.put("targetDuration", cleanupTargetDuration);
+        cleanupMetrics.put("lastDuration", cleanupLastDuration);
+        cleanupMetrics.put("throughput", cleanupThroughput);
+        cleanupMetrics.put("skipped", cleanupSkipped);
+        cleanupMetrics.put("fenced", cleanupFenced);
+        metrics.put("cleanup", cleanupMetrics);
+        if(nearCache != null) {
+            metrics.put("nearCache", nearCache.metrics());
+        }
+        if(etagIndex != null) {
+            metrics.put("etagIndex", etagIndex.metrics());
+        }
+        // the expired resources not cleaned up yet
+        redisClientPool.client().zcount(expirableSet, 0, System.currentTimeMillis(), backlog -> {
+            if(backlog.succeeded()) {
+                cleanupMetrics.put("backlog", backlog.result());
+            }
+            handler.handle(metrics);
+        });
     }
 
     private boolean isEmpty(CharSequence cs) {
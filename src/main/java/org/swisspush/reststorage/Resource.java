@@ -8,6 +8,7 @@ public class Resource implements Comparable<Resource>{
     public boolean modified = true;
     public boolean invalid = false;
     public boolean rejected = false;
+    public boolean aborted = false;
     public boolean error = false;
     public String invalidMessage;
     public String errorMessage;
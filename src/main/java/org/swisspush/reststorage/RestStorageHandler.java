@@ -4,17 +4,24 @@ import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.streams.Pump;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import org.swisspush.reststorage.util.LockMode;
 import org.swisspush.reststorage.util.ResourceNameUtil;
 import org.swisspush.reststorage.util.StatusCode;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,7 +39,16 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
 
     private static final String OFFSET_PARAMETER = "offset";
     private static final String LIMIT_PARAMETER = "limit";
+    private static final String CURSOR_PARAMETER = "cursor";
+    private static final String STARTS_WITH_PARAMETER = "startsWith";
+    private static final String NEXT_CURSOR_HEADER = "x-next-cursor";
+    // size from which the buffered members of a streamed collection listing are written to the response
+    private static final int COLLECTION_STREAM_CHUNK_SIZE = 8192;
     private static final String STORAGE_EXPAND_PARAMETER = "storageExpand";
+    private static final String DEPTH_PARAMETER = "depth";
+    private static final String MULTI_GET = "_multiget";
+    private static final String BULK_PUT = "_bulkput";
+    private static final String BULK_DELETE = "_bulkdelete";
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String CONTENT_LENGTH = "Content-Length";
 
@@ -64,6 +80,14 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
 
         router.postWithRegex(".*_cleanup").handler(this::cleanup);
 
+        router.getWithRegex(prefixFixed + "/_metrics").handler(this::metrics);
+
+        router.postWithRegex(prefixFixed + ".*/" + MULTI_GET).handler(this::multiGet);
+
+        router.postWithRegex(prefixFixed + ".*/" + BULK_PUT).handler(this::bulkPut);
+
+        router.postWithRegex(prefixFixed + ".*/" + BULK_DELETE).handler(this::bulkDelete);
+
         router.postWithRegex(prefixFixed + ".*").handler(this::storageExpand);
 
         router.getWithRegex(prefixFixed + ".*").handler(this::getResource);
@@ -101,15 +125,47 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
             ctx.response().headers().add(CONTENT_LENGTH, "" + documentResource.length);
             ctx.response().headers().add(CONTENT_TYPE, "application/json; charset=utf-8");
             ctx.response().setStatusCode(StatusCode.OK.getStatusCode());
-            final Pump pump = Pump.pump(documentResource.readStream, ctx.response());
-            documentResource.readStream.endHandler(nothing -> {
-                documentResource.closeHandler.handle(null);
-                ctx.response().end();
-            });
-            pump.start();
+            respondWithDocument(ctx, documentResource);
         }, ctx.request().params().get("cleanupResourcesAmount"));
     }
 
+    /**
+     * Writes the content of the document to the response. Small documents held in memory are written at once, all
+     * others are pumped to the response.
+     */
+    private void respondWithDocument(RoutingContext ctx, DocumentResource documentResource) {
+        if (documentResource.readStream instanceof BufferReadStream
+                && documentResource.length <= BufferReadStream.DEFAULT_SLICE_SIZE) {
+            documentResource.closeHandler.handle(null);
+            ctx.response().end(((BufferReadStream) documentResource.readStream).getContent());
+            return;
+        }
+        final Pump pump = Pump.pump(documentResource.readStream, ctx.response());
+        documentResource.readStream.endHandler(nothing -> {
+            documentResource.closeHandler.handle(null);
+            ctx.response().end();
+        });
+        documentResource.readStream.exceptionHandler(exception -> {
+            log.error("RestStorageHandler failed reading resource " + ctx.request().uri() + ": " + exception);
+            // the headers are already sent, so the response can only be aborted
+            ctx.response().close();
+        });
+        pump.start();
+    }
+
+    private void metrics(RoutingContext ctx) {
+        if (log.isTraceEnabled()) {
+            log.trace("RestStorageHandler metrics");
+        }
+        storage.metrics(metrics -> {
+            String body = metrics.encode();
+            ctx.response().headers().add(CONTENT_LENGTH, "" + body.length());
+            ctx.response().headers().add(CONTENT_TYPE, "application/json; charset=utf-8");
+            ctx.response().setStatusCode(StatusCode.OK.getStatusCode());
+            ctx.response().end(body);
+        });
+    }
+
     private void getResourceNotFound(RoutingContext ctx) {
         if (log.isTraceEnabled()) {
             log.trace("RestStorageHandler resource not found: " + ctx.request().uri());
@@ -128,7 +184,21 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
         String offsetFromUrl = ctx.request().params().get(OFFSET_PARAMETER);
         String limitFromUrl = ctx.request().params().get(LIMIT_PARAMETER);
         OffsetLimit offsetLimit = UrlParser.offsetLimit(offsetFromUrl, limitFromUrl);
-        storage.get(path, etag, offsetLimit.offset, offsetLimit.limit, new Handler<Resource>() {
+        final String startsWith = ResourceNameUtil.replaceColonsAndSemiColons(ctx.request().params().get(STARTS_WITH_PARAMETER));
+        final String cursor;
+        try {
+            cursor = decodeCursor(ctx.request().params().get(CURSOR_PARAMETER));
+        } catch (IllegalArgumentException e) {
+            respondWithBadRequest(ctx.request(), "Bad Request: Invalid cursor");
+            return;
+        }
+        if (cursor != null && startsWith != null && !cursor.startsWith(startsWith)) {
+            respondWithBadRequest(ctx.request(), "Bad Request: The cursor does not belong to a listing starting with " + startsWith);
+            return;
+        }
+        // a paged listing is ordered by name only, so that the pages follow each other
+        final boolean paged = cursor != null || startsWith != null || offsetLimit.offset > 0 || offsetLimit.limit > -1;
+        storage.get(path, etag, offsetLimit.offset, offsetLimit.limit, cursor, startsWith, new Handler<Resource>() {
             public void handle(Resource resource) {
                 if (log.isTraceEnabled()) {
                     log.trace("RestStorageHandler resource exists: " + resource.exists);
@@ -163,6 +233,11 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
                         }
                         CollectionResource collection = (CollectionResource) resource;
                         String collectionName = collectionName(path);
+                        if (html && collection.memberStream != null) {
+                            // the html listing is built from all members at once
+                            readMembers(ctx, collection, v -> handle(collection));
+                            return;
+                        }
                         if (html && !ctx.request().uri().endsWith("/")) {
                             if (log.isTraceEnabled()) {
                                 log.trace("RestStorageHandler accept contains text/html and ends with /");
@@ -204,7 +279,7 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
                                         "<input id='name' type='text' placeholder='New Resource\u2026' onkeydown='if (event.keyCode == 13) { if(document.getElementById(\"name\").value) {window.location=\"" + editorString + "\".replace(\"$new\",document.getElementById(\"name\").value);}}'></input></div>");
                             }
                             body.append("</div><ul style='padding: 12px; font-size: 1.2em;' class='unstyled'><li><a href=\"../?follow=off\">..</a></li>");
-                            List<String> sortedNames = sortedNames(collection);
+                            List<String> sortedNames = paged ? pagedNames(collection) : sortedNames(collection);
                             ResourceNameUtil.resetReplacedColonsAndSemiColonsInList(sortedNames);
                             for (String name : sortedNames) {
                                 body.append("<li><a href=\"" + name + "\">" + name + "</a>");
@@ -214,15 +289,20 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
                             ctx.response().headers().add(CONTENT_LENGTH, "" + body.length());
                             ctx.response().headers().add(CONTENT_TYPE, "text/html; charset=utf-8");
                             ctx.response().end(body.toString());
+                        } else if (collection.memberStream != null) {
+                            respondWithMemberStream(ctx, collectionName, collection.memberStream);
                         } else {
                             JsonArray array = new JsonArray();
-                            List<String> sortedNames = sortedNames(collection);
+                            List<String> sortedNames = paged ? pagedNames(collection) : sortedNames(collection);
                             ResourceNameUtil.resetReplacedColonsAndSemiColonsInList(sortedNames);
                             sortedNames.forEach(array::add);
                             if (log.isTraceEnabled()) {
                                 log.trace("RestStorageHandler return collection: " + sortedNames);
                             }
                             String body = new JsonObject().put(collectionName, array).encode();
+                            if (collection.cursor != null) {
+                                ctx.response().headers().add(NEXT_CURSOR_HEADER, encodeCursor(collection.cursor));
+                            }
                             ctx.response().headers().add(CONTENT_LENGTH, "" + body.length());
                             ctx.response().headers().add(CONTENT_TYPE, "application/json; charset=utf-8");
                             ctx.response().end(body);
@@ -263,13 +343,7 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
                             }
                             ctx.response().headers().add(CONTENT_LENGTH, "" + documentResource.length);
                             ctx.response().headers().add(CONTENT_TYPE, mimeType);
-                            final Pump pump = Pump.pump(documentResource.readStream, ctx.response());
-                            documentResource.readStream.endHandler(nothing -> {
-                                documentResource.closeHandler.handle(null);
-                                ctx.response().end();
-                            });
-                            pump.start();
-                            // TODO: exception handlers
+                            respondWithDocument(ctx, documentResource);
                         }
                     }
                 } else {
@@ -281,24 +355,97 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
                     ctx.response().end(StatusCode.NOT_FOUND.toString());
                 }
             }
+        });
+    }
 
-            private List<String> sortedNames(CollectionResource collection) {
-                List<String> collections = new ArrayList<>();
-                List<String> documents = new ArrayList<>();
-                for (Resource r : collection.items) {
-                    String name = r.name;
-                    if (r instanceof CollectionResource) {
-                        collections.add(name + "/");
-                    } else {
-                        documents.add(name);
-                    }
+    private List<String> sortedNames(CollectionResource collection) {
+        List<String> collections = new ArrayList<>();
+        List<String> documents = new ArrayList<>();
+        for (Resource r : collection.items) {
+            String name = r.name;
+            if (r instanceof CollectionResource) {
+                collections.add(name + "/");
+            } else {
+                documents.add(name);
+            }
+        }
+        collections.addAll(documents);
+        return collections;
+    }
+
+    /**
+     * Writes the members of a streamed collection listing in chunks, so that the listing is never held in memory as a
+     * whole. The stream is paused while the response cannot take further chunks.
+     */
+    private void respondWithMemberStream(RoutingContext ctx, String collectionName, ReadStream<Resource> members) {
+        final HttpServerResponse response = ctx.response();
+        response.setChunked(true);
+        response.headers().add(CONTENT_TYPE, "application/json; charset=utf-8");
+        final Buffer[] chunk = {Buffer.buffer().appendString("{").appendString(Json.encode(collectionName)).appendString(":[")};
+        final boolean[] first = {true};
+        members.exceptionHandler(exception -> {
+            log.error("Reading the members of collection " + collectionName + " failed: " + exception.getMessage());
+            // the status was already sent with the first chunk, the incomplete listing is recognized by the client
+            response.close();
+        });
+        members.endHandler(v -> response.end(chunk[0].appendString("]}")));
+        members.handler(member -> {
+            if (!first[0]) {
+                chunk[0].appendString(",");
+            }
+            first[0] = false;
+            String name = ResourceNameUtil.resetReplacedColonsAndSemiColons(member.name);
+            chunk[0].appendString(Json.encode(member instanceof CollectionResource ? name + "/" : name));
+            if (chunk[0].length() >= COLLECTION_STREAM_CHUNK_SIZE) {
+                response.write(chunk[0]);
+                chunk[0] = Buffer.buffer();
+                if (response.writeQueueFull()) {
+                    members.pause();
+                    response.drainHandler(drained -> members.resume());
                 }
-                collections.addAll(documents);
-                return collections;
             }
         });
     }
 
+    /**
+     * Reads all members of a streamed collection listing into the items of the collection.
+     */
+    private void readMembers(RoutingContext ctx, CollectionResource collection, Handler<Void> doneHandler) {
+        ReadStream<Resource> members = collection.memberStream;
+        collection.memberStream = null;
+        collection.items = new ArrayList<>();
+        members.exceptionHandler(exception -> {
+            ctx.response().setStatusCode(StatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
+            ctx.response().setStatusMessage(StatusCode.INTERNAL_SERVER_ERROR.getStatusMessage());
+            ctx.response().end(exception.getMessage());
+        });
+        members.endHandler(doneHandler);
+        members.handler(collection.items::add);
+    }
+
+    private List<String> pagedNames(CollectionResource collection) {
+        List<String> names = new ArrayList<>(collection.items.size());
+        for (Resource r : collection.items) {
+            names.add(r instanceof CollectionResource ? r.name + "/" : r.name);
+        }
+        return names;
+    }
+
+    /**
+     * The cursor of a listing is the name of the last listed member, which is handed to the client as an opaque
+     * url safe token.
+     */
+    private String encodeCursor(String cursor) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String decodeCursor(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+    }
+
     private void putResource(RoutingContext ctx) {
         ctx.request().pause();
         final String path = cleanPath(ctx.request().path().substring(prefixFixed.length()));
@@ -491,16 +638,34 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
                 @Override
                 public void handle(Buffer event) {
                     List<String> subResourceNames = new ArrayList<>();
+                    boolean allSubResources;
+                    String prefix;
+                    int offset;
+                    int limit;
                     try {
                         JsonObject body = new JsonObject(event.toString());
+                        allSubResources = body.getBoolean("allSubResources", false);
+                        prefix = ResourceNameUtil.replaceColonsAndSemiColons(body.getString("prefix"));
+                        offset = body.getInteger("offset", 0);
+                        limit = body.getInteger("limit", -1);
                         JsonArray subResourcesArray = body.getJsonArray("subResources");
-                        if (subResourcesArray == null) {
+                        if (subResourcesArray == null && !allSubResources) {
                             respondWithBadRequest(ctx.request(), "Bad Request: Expected array field 'subResources' with names of resources");
                             return;
                         }
+                        if (subResourcesArray != null && allSubResources) {
+                            respondWithBadRequest(ctx.request(), "Bad Request: Field 'subResources' cannot be used together with 'allSubResources'");
+                            return;
+                        }
+                        if (offset < 0 || limit < -1) {
+                            respondWithBadRequest(ctx.request(), "Bad Request: Invalid offset or limit");
+                            return;
+                        }
 
-                        for (int i = 0; i < subResourcesArray.size(); i++) {
-                            subResourceNames.add(subResourcesArray.getString(i));
+                        if (subResourcesArray != null) {
+                            for (int i = 0; i < subResourcesArray.size(); i++) {
+                                subResourceNames.add(subResourcesArray.getString(i));
+                            }
                         }
                         ResourceNameUtil.replaceColonsAndSemiColonsInList(subResourceNames);
                     } catch(RuntimeException ex){
@@ -508,9 +673,23 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
                         return;
                     }
 
+                    int depth = 1;
+                    if (ctx.request().params().contains(DEPTH_PARAMETER)) {
+                        try {
+                            depth = Integer.parseInt(ctx.request().params().get(DEPTH_PARAMETER));
+                        } catch (NumberFormatException ex) {
+                            depth = 0;
+                        }
+                        if (depth < 1) {
+                            respondWithBadRequest(ctx.request(), "Bad Request: Invalid " + DEPTH_PARAMETER + " parameter: "
+                                    + ctx.request().params().get(DEPTH_PARAMETER));
+                            return;
+                        }
+                    }
+
                     final String path = cleanPath(ctx.request().path().substring(prefixFixed.length()));
                     final String etag = ctx.request().headers().get(IF_NONE_MATCH_HEADER);
-                    storage.storageExpand(path, etag, subResourceNames, resource -> {
+                    Handler<Resource> expandHandler = resource -> {
 
                         if(resource.error){
                             ctx.response().setStatusCode(StatusCode.CONFLICT.getStatusCode());
@@ -556,13 +735,7 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
                             }
                             ctx.response().headers().add(CONTENT_LENGTH, "" + documentResource.length);
                             ctx.response().headers().add(CONTENT_TYPE, mimeType);
-                            final Pump pump = Pump.pump(documentResource.readStream, ctx.response());
-                            documentResource.readStream.endHandler(nothing -> {
-                                documentResource.closeHandler.handle(null);
-                                ctx.response().end();
-                            });
-                            pump.start();
-                            // TODO: exception handlers
+                            respondWithDocument(ctx, documentResource);
 
                         } else {
                             if (log.isTraceEnabled()) {
@@ -572,12 +745,320 @@ public class RestStorageHandler implements Handler<HttpServerRequest> {
                             ctx.response().setStatusMessage(StatusCode.NOT_FOUND.getStatusMessage());
                             ctx.response().end(StatusCode.NOT_FOUND.toString());
                         }
-                    });
+                    };
+                    if (allSubResources) {
+                        storage.storageExpandAll(path, etag, prefix, offset, limit, depth, expandHandler);
+                    } else {
+                        storage.storageExpand(path, etag, subResourceNames, depth, expandHandler);
+                    }
+                }
+            });
+        }
+    }
+
+    private void multiGet(RoutingContext ctx) {
+        ctx.request().bodyHandler(body -> {
+            List<String> uris = new ArrayList<>();
+            try {
+                JsonArray pathsArray = new JsonObject(body.toString()).getJsonArray("paths");
+                if (pathsArray == null) {
+                    respondWithBadRequest(ctx.request(), "Bad Request: Expected array field 'paths' with the paths of the resources");
+                    return;
+                }
+                for (int i = 0; i < pathsArray.size(); i++) {
+                    uris.add(pathsArray.getString(i));
+                }
+            } catch (RuntimeException ex) {
+                respondWithBadRequest(ctx.request(), "Bad Request: Unable to parse body of multi get POST request");
+                return;
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("RestStorageHandler multi get of " + uris.size() + " resources");
+            }
+            // paths outside of the prefix are answered without asking the storage
+            List<String> paths = new ArrayList<>();
+            for (String uri : uris) {
+                if (uri != null && uri.startsWith(prefixFixed + "/")) {
+                    paths.add(cleanPath(uri.substring(prefixFixed.length())));
                 }
+            }
+            storage.multiGet(paths, resources -> {
+                JsonObject[] results = new JsonObject[uris.size()];
+                int[] pending = {uris.size()};
+                Handler<Void> respond = v -> {
+                    if (--pending[0] == 0) {
+                        String response = new JsonObject().put("results", new JsonArray(Arrays.asList((Object[]) results))).encode();
+                        ctx.response().headers().add(CONTENT_TYPE, "application/json; charset=utf-8");
+                        ctx.response().end(response);
+                    }
+                };
+                if (uris.isEmpty()) {
+                    pending[0] = 1;
+                    respond.handle(null);
+                    return;
+                }
+                int resourceIndex = 0;
+                for (int i = 0; i < uris.size(); i++) {
+                    results[i] = new JsonObject().put("path", uris.get(i));
+                    if (uris.get(i) == null || !uris.get(i).startsWith(prefixFixed + "/")) {
+                        results[i].put("status", StatusCode.NOT_FOUND.getStatusCode());
+                        respond.handle(null);
+                    } else {
+                        String path = paths.get(resourceIndex);
+                        multiGetResult(path, resources.get(resourceIndex++), results[i], respond);
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * Fills the result of a single resource of a multi get. Documents are read completely and contained as json, if
+     * they contain json, otherwise base64 encoded.
+     */
+    private void multiGetResult(String path, Resource resource, JsonObject result, Handler<Void> doneHandler) {
+        if (resource.error) {
+            result.put("status", StatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
+            result.put("error", resource.errorMessage);
+            doneHandler.handle(null);
+        } else if (!resource.exists) {
+            result.put("status", StatusCode.NOT_FOUND.getStatusCode());
+            doneHandler.handle(null);
+        } else if (resource instanceof CollectionResource) {
+            List<String> sortedNames = sortedNames((CollectionResource) resource);
+            ResourceNameUtil.resetReplacedColonsAndSemiColonsInList(sortedNames);
+            result.put("status", StatusCode.OK.getStatusCode());
+            result.put("collection", new JsonArray(sortedNames));
+            doneHandler.handle(null);
+        } else {
+            DocumentResource documentResource = (DocumentResource) resource;
+            readDocument(documentResource, content -> {
+                if (content == null) {
+                    result.put("status", StatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
+                    result.put("error", "Failed reading resource");
+                } else {
+                    result.put("status", StatusCode.OK.getStatusCode());
+                    if (documentResource.etag != null && !documentResource.etag.isEmpty()) {
+                        result.put("etag", documentResource.etag);
+                    }
+                    Object json = null;
+                    if (mimeTypeResolver.resolveMimeType(path).contains("application/json")) {
+                        json = parseJson(content.toString().trim());
+                    }
+                    if (json != null) {
+                        result.put("content", json);
+                    } else {
+                        result.put("base64", content.getBytes());
+                    }
+                }
+                doneHandler.handle(null);
             });
         }
     }
 
+    private void bulkPut(RoutingContext ctx) {
+        ctx.request().bodyHandler(body -> {
+            List<BulkPutEntry> entries = new ArrayList<>();
+            List<String> uris = new ArrayList<>();
+            boolean atomic;
+            try {
+                JsonObject request = new JsonObject(body.toString());
+                atomic = request.getBoolean("atomic", false);
+                JsonArray resourcesArray = request.getJsonArray("resources");
+                if (resourcesArray == null) {
+                    respondWithBadRequest(ctx.request(), "Bad Request: Expected array field 'resources' with the resources to put");
+                    return;
+                }
+                for (int i = 0; i < resourcesArray.size(); i++) {
+                    JsonObject resource = resourcesArray.getJsonObject(i);
+                    String uri = resource.getString("path");
+                    if (uri == null || !uri.startsWith(prefixFixed + "/")) {
+                        respondWithBadRequest(ctx.request(), "Bad Request: Invalid path of resource " + i + ": " + uri);
+                        return;
+                    }
+                    BulkPutEntry entry = bulkPutEntry(cleanPath(uri.substring(prefixFixed.length())), resource);
+                    if (entry.merge && entry.storeCompressed) {
+                        respondWithBadRequest(ctx.request(), "Bad Request: Resource " + i + " cannot be merged and stored compressed");
+                        return;
+                    }
+                    uris.add(uri);
+                    entries.add(entry);
+                }
+            } catch (RuntimeException ex) {
+                respondWithBadRequest(ctx.request(), "Bad Request: Unable to parse body of bulk put POST request");
+                return;
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("RestStorageHandler bulk put of " + entries.size() + " resources, atomic: " + atomic);
+            }
+            storage.bulkPut(entries, atomic, resources -> {
+                JsonArray results = new JsonArray();
+                boolean allInvalid = !resources.isEmpty();
+                for (int i = 0; i < uris.size(); i++) {
+                    results.add(bulkPutResult(uris.get(i), resources.get(i)));
+                    allInvalid = allInvalid && resources.get(i).invalid;
+                }
+                if (atomic && allInvalid) {
+                    // nothing was written, e.g. because the storage does not support atomic bulk puts
+                    ctx.response().setStatusCode(StatusCode.BAD_REQUEST.getStatusCode());
+                    ctx.response().setStatusMessage(resources.get(0).invalidMessage);
+                }
+                ctx.response().headers().add(CONTENT_TYPE, "application/json; charset=utf-8");
+                ctx.response().end(new JsonObject().put("results", results).encode());
+            });
+        });
+    }
+
+    /**
+     * Creates the entry of a single resource of a bulk put. The options default to the ones of a single put without
+     * headers. Throws a runtime exception if the resource is invalid.
+     */
+    private BulkPutEntry bulkPutEntry(String path, JsonObject resource) {
+        BulkPutEntry entry = new BulkPutEntry();
+        entry.path = path;
+        Object content = resource.getValue("content");
+        if (content instanceof JsonObject || content instanceof JsonArray) {
+            entry.content = Buffer.buffer(content.toString());
+        } else if (resource.containsKey("base64")) {
+            entry.content = Buffer.buffer(resource.getBinary("base64"));
+        } else {
+            throw new IllegalArgumentException("Resource without json content or base64 encoded content");
+        }
+        entry.etag = resource.getString("etag");
+        entry.expire = resource.getLong("expireAfter", -1L);
+        entry.storeCompressed = resource.getBoolean("compress", false);
+        entry.merge = resource.getBoolean("merge", false) && mimeTypeResolver.resolveMimeType(path).contains("application/json");
+        if (resource.getString("lock") != null) {
+            entry.lockOwner = resource.getString("lock");
+            entry.lockMode = LockMode.valueOf(resource.getString("lockMode", LockMode.SILENT.text()).toUpperCase());
+            entry.lockExpire = resource.getLong("lockExpireAfter", 300L);
+        }
+        return entry;
+    }
+
+    /**
+     * @return the status of a single resource of a bulk put, which is the status a single put would have responded
+     */
+    private JsonObject bulkPutResult(String uri, Resource resource) {
+        JsonObject result = new JsonObject().put("path", uri);
+        if (resource.error) {
+            result.put("status", StatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
+            result.put("error", resource.errorMessage);
+        } else if (resource.invalid) {
+            result.put("status", StatusCode.BAD_REQUEST.getStatusCode());
+            result.put("error", resource.invalidMessage);
+        } else if (resource.aborted) {
+            result.put("status", StatusCode.FAILED_DEPENDENCY.getStatusCode());
+        } else if (resource.rejected) {
+            result.put("status", StatusCode.CONFLICT.getStatusCode());
+        } else if (!resource.modified) {
+            result.put("status", StatusCode.NOT_MODIFIED.getStatusCode());
+        } else if (resource instanceof CollectionResource || (!resource.exists && resource instanceof DocumentResource)) {
+            result.put("status", StatusCode.METHOD_NOT_ALLOWED.getStatusCode());
+        } else {
+            result.put("status", StatusCode.OK.getStatusCode());
+        }
+        return result;
+    }
+
+    private void bulkDelete(RoutingContext ctx) {
+        ctx.request().bodyHandler(body -> {
+            List<String> uris = new ArrayList<>();
+            String lock;
+            LockMode lockMode;
+            long lockExpire;
+            try {
+                JsonObject request = new JsonObject(body.toString());
+                JsonArray pathsArray = request.getJsonArray("paths");
+                if (pathsArray == null) {
+                    respondWithBadRequest(ctx.request(), "Bad Request: Expected array field 'paths' with the paths of the resources");
+                    return;
+                }
+                for (int i = 0; i < pathsArray.size(); i++) {
+                    uris.add(pathsArray.getString(i));
+                }
+                lock = request.getString("lock", "");
+                lockMode = LockMode.valueOf(request.getString("lockMode", LockMode.SILENT.text()).toUpperCase());
+                lockExpire = request.getLong("lockExpireAfter", 300L);
+            } catch (RuntimeException ex) {
+                respondWithBadRequest(ctx.request(), "Bad Request: Unable to parse body of bulk delete POST request");
+                return;
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("RestStorageHandler bulk delete of " + uris.size() + " resources");
+            }
+            // paths outside of the prefix are answered without asking the storage
+            List<String> paths = new ArrayList<>();
+            for (String uri : uris) {
+                if (uri != null && uri.startsWith(prefixFixed + "/")) {
+                    paths.add(cleanPath(uri.substring(prefixFixed.length())));
+                }
+            }
+            storage.bulkDelete(paths, lock, lockMode, lockExpire, resources -> {
+                JsonArray results = new JsonArray();
+                int resourceIndex = 0;
+                for (String uri : uris) {
+                    JsonObject result = new JsonObject().put("path", uri);
+                    Resource resource = uri != null && uri.startsWith(prefixFixed + "/") ? resources.get(resourceIndex++) : null;
+                    if (resource == null || (!resource.exists && !resource.error)) {
+                        result.put("status", StatusCode.NOT_FOUND.getStatusCode());
+                    } else if (resource.error) {
+                        result.put("status", StatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
+                        result.put("error", resource.errorMessage);
+                    } else if (resource.rejected) {
+                        result.put("status", StatusCode.CONFLICT.getStatusCode());
+                    } else {
+                        result.put("status", StatusCode.OK.getStatusCode());
+                    }
+                    results.add(result);
+                }
+                ctx.response().headers().add(CONTENT_TYPE, "application/json; charset=utf-8");
+                ctx.response().end(new JsonObject().put("results", results).encode());
+            });
+        });
+    }
+
+    /**
+     * @return the parsed json object or array, or <code>null</code> if the content is not valid json
+     */
+    private Object parseJson(String content) {
+        try {
+            if (content.startsWith("{")) {
+                return new JsonObject(content);
+            }
+            if (content.startsWith("[")) {
+                return new JsonArray(content);
+            }
+        } catch (DecodeException e) {
+            // not valid json
+        }
+        return null;
+    }
+
+    /**
+     * Reads the whole content of the document and closes it. The handler is called with <code>null</code> if
+     * reading fails.
+     */
+    private void readDocument(DocumentResource documentResource, Handler<Buffer> handler) {
+        if (documentResource.readStream instanceof BufferReadStream) {
+            documentResource.closeHandler.handle(null);
+            handler.handle(((BufferReadStream) documentResource.readStream).getContent());
+            return;
+        }
+        Buffer content = Buffer.buffer((int) documentResource.length);
+        ReadStream<Buffer> readStream = documentResource.readStream;
+        readStream.exceptionHandler(exception -> {
+            log.error("RestStorageHandler failed reading resource in multi get: " + exception);
+            documentResource.closeHandler.handle(null);
+            handler.handle(null);
+        });
+        readStream.endHandler(v -> {
+            documentResource.closeHandler.handle(null);
+            handler.handle(content);
+        });
+        readStream.handler(content::appendBuffer);
+    }
+
     ////////////////////////////
     // End Router handling    //
     ////////////////////////////
@@ -29,6 +29,10 @@ public class RestStorageMod extends AbstractVerticle {
                 throw new RuntimeException("Storage not supported: " + modConfig.getStorageType());
         }
 
+        if(modConfig.getStorageType() == ModuleConfiguration.StorageType.redis && modConfig.getCleanupInterval() > 0) {
+            scheduleCleanup(storage, modConfig.getCleanupInterval());
+        }
+
         Handler<HttpServerRequest> handler = new RestStorageHandler(vertx, log, storage, modConfig.getPrefix(), modConfig.getEditorConfig(), modConfig.getLockPrefix());
 
         // in Vert.x 2x 100-continues was activated per default, in vert.x 3x it is off per default.
@@ -43,4 +47,17 @@ public class RestStorageMod extends AbstractVerticle {
             }
         });
     }
+
+    /**
+     * Runs the cleanup of the expired resources periodically. The next cleanup is scheduled once the previous one
+     * ended, so that cleanups of the same instance never overlap.
+     */
+    private void scheduleCleanup(Storage storage, long interval) {
+        vertx.setTimer(interval, timerId -> storage.cleanup(result -> {
+            if (log.isTraceEnabled()) {
+                log.trace("RestStorageMod scheduled cleanup done");
+            }
+            scheduleCleanup(storage, interval);
+        }, null));
+    }
 }
@@ -1,6 +1,7 @@
 package org.swisspush.reststorage;
 
 import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
 import org.swisspush.reststorage.util.LockMode;
 
 import java.util.List;
@@ -9,18 +10,60 @@ public interface Storage {
 
     void get(String path, String etag, int offset, int count, Handler<Resource> handler);
 
+    /**
+     * Gets a resource like {@link #get(String, String, int, int, Handler)}. A collection is listed in the lexicographical
+     * order of the member names, starting after the member named by the cursor and only containing the members starting
+     * with startsWith. Cursor and startsWith may be null. If further members follow the listed ones, the collection
+     * contains the cursor of the following page. The members of a large collection listed without offset, count, cursor
+     * and startsWith may be returned in the member stream of the collection instead of its items.
+     */
+    void get(String path, String etag, int offset, int count, String cursor, String startsWith, Handler<Resource> handler);
+
     void storageExpand(String path, String etag, List<String> subResources, Handler<Resource> handler);
 
+    /**
+     * Expands the sub resources like {@link #storageExpand(String, String, List, Handler)}, but expands the sub
+     * collections recursively up to the given depth. Depth 1 only lists the members of the sub collections.
+     */
+    void storageExpand(String path, String etag, List<String> subResources, int depth, Handler<Resource> handler);
+
+    /**
+     * Expands the members of the collection like {@link #storageExpand(String, String, List, int, Handler)}, without
+     * the names of the sub resources given by the client. Only the members starting with the prefix are expanded, the
+     * offset and the limit select a window of the matching members. A limit of -1 expands all matching members.
+     */
+    void storageExpandAll(String path, String etag, String prefix, int offset, int limit, int depth, Handler<Resource> handler);
+
+    /**
+     * Gets several resources at once. The handler is called with the resources in the order of the paths.
+     */
+    void multiGet(List<String> paths, Handler<List<Resource>> handler);
+
     void put(String path, String etag, boolean merge, long expire, Handler<Resource> handler);
 
     void put(String path, String etag, boolean merge, long expire, String lockOwner, LockMode lockMode, long lockExpire, Handler<Resource> handler);
 
     void put(String path, String etag, boolean merge, long expire, String lockOwner, LockMode lockMode, long lockExpire, boolean storeCompressed, Handler<Resource> handler);
 
+    /**
+     * Puts several resources at once. The handler is called with the results in the order of the entries, a result has
+     * the same meaning as the result of a single put. If atomic is true, either all entries are written or none, the
+     * results of the entries which did not fail are marked as aborted in the latter case.
+     */
+    void bulkPut(List<BulkPutEntry> entries, boolean atomic, Handler<List<Resource>> handler);
+
     void delete(String path, Handler<Resource> handler);
 
     void delete(String path, String lockOwner, LockMode lockMode, long lockExpire, Handler<Resource> handler);
 
+    /**
+     * Deletes several resources or collections at once. The handler is called with the results in the order of the
+     * paths, a result has the same meaning as the result of a single delete.
+     */
+    void bulkDelete(List<String> paths, String lockOwner, LockMode lockMode, long lockExpire, Handler<List<Resource>> handler);
+
     void cleanup(Handler<DocumentResource> handler, String cleanupResourcesAmount);
 
+    void metrics(Handler<JsonObject> handler);
+
 }
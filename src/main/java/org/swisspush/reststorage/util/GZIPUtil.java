@@ -57,6 +57,18 @@ public class GZIPUtil {
      * @param resultHandler the resultHandler is called when the compression is done
      */
     public static void decompressResource(Vertx vertx, byte[] compressedData, Handler<AsyncResult<byte[]>> resultHandler) {
+        decompressResource(vertx, compressedData, true, resultHandler);
+    }
+
+    /**
+     * Decompress the compressed (gzip) data. When the decompression is done, the resultHandler is called
+     * with the decompressed data as result.
+     * @param vertx vertx
+     * @param compressedData the data to decompress
+     * @param ordered if false, the decompression runs in parallel to the other blocking code of the calling context
+     * @param resultHandler the resultHandler is called when the compression is done
+     */
+    public static void decompressResource(Vertx vertx, byte[] compressedData, boolean ordered, Handler<AsyncResult<byte[]>> resultHandler) {
         vertx.executeBlocking(future -> {
             byte[] buffer = new byte[1024];
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -80,6 +92,6 @@ public class GZIPUtil {
             }
             // Success
             future.complete(baos.toByteArray());
-        }, resultHandler);
+        }, ordered, resultHandler);
     }
 }
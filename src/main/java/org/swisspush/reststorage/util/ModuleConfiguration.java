@@ -24,6 +24,27 @@ public class ModuleConfiguration {
     private String deltaEtagsPrefix;
     private long resourceCleanupAmount;
     private String lockPrefix;
+    private int redisPoolSize = 1;
+    private RedisPoolStrategy redisPoolStrategy = RedisPoolStrategy.roundRobin;
+    private int redisMaxInFlight = 0;
+    private long redisBatchWindow = -1;
+    private int redisBatchMaxSize = 100;
+    private int redisChunkSize = 0;
+    private long redisNearCacheSize = 0;
+    private String redisInvalidationChannel = "rest-storage:invalidations";
+    private int redisEtagIndexSize = 0;
+    private String redisReplicas = null;
+    private int redisReplicaMaxLag = 10;
+    private boolean redisReplicaHedging = false;
+    private int storageExpandMaxNodes = 10000;
+    private long storageExpandMaxBytes = 10485760L;
+    private int storageExpandChunkSize = 1000;
+    private boolean storageExpandChunkConsistency = false;
+    private int collectionStreamThreshold = 10000;
+    private int reclaimBatchSize = 1000;
+    private long cleanupInterval = 0;
+    private long cleanupTargetDuration = 5;
+    private long cleanupLeaseDuration = 10000;
 
     public static final String PROP_ROOT = "root";
     public static final String PROP_STORAGE_TYPE = "storageType";
@@ -40,11 +61,39 @@ public class ModuleConfiguration {
     public static final String PROP_DELTA_ETAGS_PREFIX = "deltaEtagsPrefix";
     public static final String PROP_RES_CLEANUP_AMMOUNT = "resourceCleanupAmount";
     public static final String PROP_LOCK_PREFIX = "lockPrefix";
+    public static final String PROP_REDIS_POOL_SIZE = "redisPoolSize";
+    public static final String PROP_REDIS_POOL_STRATEGY = "redisPoolStrategy";
+    public static final String PROP_REDIS_MAX_IN_FLIGHT = "redisMaxInFlight";
+    public static final String PROP_REDIS_BATCH_WINDOW = "redisBatchWindow";
+    public static final String PROP_REDIS_BATCH_MAX_SIZE = "redisBatchMaxSize";
+    public static final String PROP_REDIS_CHUNK_SIZE = "redisChunkSize";
+    public static final String PROP_REDIS_NEAR_CACHE_SIZE = "redisNearCacheSize";
+    public static final String PROP_REDIS_INVALIDATION_CHANNEL = "redisInvalidationChannel";
+    public static final String PROP_REDIS_ETAG_INDEX_SIZE = "redisEtagIndexSize";
+    public static final String PROP_REDIS_REPLICAS = "redisReplicas";
+    public static final String PROP_REDIS_REPLICA_MAX_LAG = "redisReplicaMaxLag";
+    public static final String PROP_REDIS_REPLICA_HEDGING = "redisReplicaHedging";
+    public static final String PROP_STORAGE_EXPAND_MAX_NODES = "storageExpandMaxNodes";
+    public static final String PROP_STORAGE_EXPAND_MAX_BYTES = "storageExpandMaxBytes";
+    public static final String PROP_STORAGE_EXPAND_CHUNK_SIZE = "storageExpandChunkSize";
+    public static final String PROP_STORAGE_EXPAND_CHUNK_CONSISTENCY = "storageExpandChunkConsistency";
+    public static final String PROP_COLLECTION_STREAM_THRESHOLD = "collectionStreamThreshold";
+    public static final String PROP_RECLAIM_BATCH_SIZE = "reclaimBatchSize";
+    public static final String PROP_CLEANUP_INTERVAL = "cleanupInterval";
+    public static final String PROP_CLEANUP_TARGET_DURATION = "cleanupTargetDuration";
+    public static final String PROP_CLEANUP_LEASE_DURATION = "cleanupLeaseDuration";
 
     public enum StorageType {
         filesystem, redis
     }
 
+    /**
+     * Strategy used to pick a connection from the redis connection pool.
+     */
+    public enum RedisPoolStrategy {
+        roundRobin, leastOutstanding
+    }
+
     /**
      * Constructor with default values. Use the {@link org.swisspush.reststorage.util.ModuleConfiguration.ModuleConfigurationBuilder} class
      * for simplyfied custom configuration.
@@ -82,6 +131,27 @@ public class ModuleConfiguration {
         this(builder.root, builder.storageType, builder.port, builder.prefix, builder.storageAddress, builder.editorConfig,
                 builder.redisHost, builder.redisPort, builder.expirablePrefix, builder.resourcesPrefix, builder.collectionsPrefix,
                 builder.deltaResourcesPrefix, builder.deltaEtagsPrefix, builder.resourceCleanupAmount, builder.lockPrefix);
+        this.redisPoolSize = builder.redisPoolSize;
+        this.redisPoolStrategy = builder.redisPoolStrategy;
+        this.redisMaxInFlight = builder.redisMaxInFlight;
+        this.redisBatchWindow = builder.redisBatchWindow;
+        this.redisBatchMaxSize = builder.redisBatchMaxSize;
+        this.redisChunkSize = builder.redisChunkSize;
+        this.redisNearCacheSize = builder.redisNearCacheSize;
+        this.redisInvalidationChannel = builder.redisInvalidationChannel;
+        this.redisEtagIndexSize = builder.redisEtagIndexSize;
+        this.redisReplicas = builder.redisReplicas;
+        this.redisReplicaMaxLag = builder.redisReplicaMaxLag;
+        this.redisReplicaHedging = builder.redisReplicaHedging;
+        this.storageExpandMaxNodes = builder.storageExpandMaxNodes;
+        this.storageExpandMaxBytes = builder.storageExpandMaxBytes;
+        this.storageExpandChunkSize = builder.storageExpandChunkSize;
+        this.storageExpandChunkConsistency = builder.storageExpandChunkConsistency;
+        this.collectionStreamThreshold = builder.collectionStreamThreshold;
+        this.reclaimBatchSize = builder.reclaimBatchSize;
+        this.cleanupInterval = builder.cleanupInterval;
+        this.cleanupTargetDuration = builder.cleanupTargetDuration;
+        this.cleanupLeaseDuration = builder.cleanupLeaseDuration;
     }
 
     public JsonObject asJsonObject(){
@@ -101,6 +171,27 @@ public class ModuleConfiguration {
         obj.put(PROP_DELTA_ETAGS_PREFIX, getDeltaEtagsPrefix());
         obj.put(PROP_RES_CLEANUP_AMMOUNT, getResourceCleanupAmount());
         obj.put(PROP_LOCK_PREFIX, getLockPrefix());
+        obj.put(PROP_REDIS_POOL_SIZE, getRedisPoolSize());
+        obj.put(PROP_REDIS_POOL_STRATEGY, getRedisPoolStrategy().name());
+        obj.put(PROP_REDIS_MAX_IN_FLIGHT, getRedisMaxInFlight());
+        obj.put(PROP_REDIS_BATCH_WINDOW, getRedisBatchWindow());
+        obj.put(PROP_REDIS_BATCH_MAX_SIZE, getRedisBatchMaxSize());
+        obj.put(PROP_REDIS_CHUNK_SIZE, getRedisChunkSize());
+        obj.put(PROP_REDIS_NEAR_CACHE_SIZE, getRedisNearCacheSize());
+        obj.put(PROP_REDIS_INVALIDATION_CHANNEL, getRedisInvalidationChannel());
+        obj.put(PROP_REDIS_ETAG_INDEX_SIZE, getRedisEtagIndexSize());
+        obj.put(PROP_REDIS_REPLICAS, getRedisReplicas());
+        obj.put(PROP_REDIS_REPLICA_MAX_LAG, getRedisReplicaMaxLag());
+        obj.put(PROP_REDIS_REPLICA_HEDGING, isRedisReplicaHedging());
+        obj.put(PROP_STORAGE_EXPAND_MAX_NODES, getStorageExpandMaxNodes());
+        obj.put(PROP_STORAGE_EXPAND_MAX_BYTES, getStorageExpandMaxBytes());
+        obj.put(PROP_STORAGE_EXPAND_CHUNK_SIZE, getStorageExpandChunkSize());
+        obj.put(PROP_STORAGE_EXPAND_CHUNK_CONSISTENCY, isStorageExpandChunkConsistency());
+        obj.put(PROP_COLLECTION_STREAM_THRESHOLD, getCollectionStreamThreshold());
+        obj.put(PROP_RECLAIM_BATCH_SIZE, getReclaimBatchSize());
+        obj.put(PROP_CLEANUP_INTERVAL, getCleanupInterval());
+        obj.put(PROP_CLEANUP_TARGET_DURATION, getCleanupTargetDuration());
+        obj.put(PROP_CLEANUP_LEASE_DURATION, getCleanupLeaseDuration());
         return obj;
     }
 
@@ -151,6 +242,69 @@ public class ModuleConfiguration {
         if(json.containsKey(PROP_LOCK_PREFIX)) {
             builder.lockPrefix(json.getString(PROP_LOCK_PREFIX));
         }
+        if(json.containsKey(PROP_REDIS_POOL_SIZE)) {
+            builder.redisPoolSize(json.getInteger(PROP_REDIS_POOL_SIZE));
+        }
+        if(json.containsKey(PROP_REDIS_POOL_STRATEGY)) {
+            builder.redisPoolStrategyFromString(json.getString(PROP_REDIS_POOL_STRATEGY));
+        }
+        if(json.containsKey(PROP_REDIS_MAX_IN_FLIGHT)) {
+            builder.redisMaxInFlight(json.getInteger(PROP_REDIS_MAX_IN_FLIGHT));
+        }
+        if(json.containsKey(PROP_REDIS_BATCH_WINDOW)) {
+            builder.redisBatchWindow(json.getLong(PROP_REDIS_BATCH_WINDOW));
+        }
+        if(json.containsKey(PROP_REDIS_BATCH_MAX_SIZE)) {
+            builder.redisBatchMaxSize(json.getInteger(PROP_REDIS_BATCH_MAX_SIZE));
+        }
+        if(json.containsKey(PROP_REDIS_CHUNK_SIZE)) {
+            builder.redisChunkSize(json.getInteger(PROP_REDIS_CHUNK_SIZE));
+        }
+        if(json.containsKey(PROP_REDIS_NEAR_CACHE_SIZE)) {
+            builder.redisNearCacheSize(json.getLong(PROP_REDIS_NEAR_CACHE_SIZE));
+        }
+        if(json.containsKey(PROP_REDIS_INVALIDATION_CHANNEL)) {
+            builder.redisInvalidationChannel(json.getString(PROP_REDIS_INVALIDATION_CHANNEL));
+        }
+        if(json.containsKey(PROP_REDIS_ETAG_INDEX_SIZE)) {
+            builder.redisEtagIndexSize(json.getInteger(PROP_REDIS_ETAG_INDEX_SIZE));
+        }
+        if(json.containsKey(PROP_REDIS_REPLICAS)) {
+            builder.redisReplicas(json.getString(PROP_REDIS_REPLICAS));
+        }
+        if(json.containsKey(PROP_REDIS_REPLICA_MAX_LAG)) {
+            builder.redisReplicaMaxLag(json.getInteger(PROP_REDIS_REPLICA_MAX_LAG));
+        }
+        if(json.containsKey(PROP_REDIS_REPLICA_HEDGING)) {
+            builder.redisReplicaHedging(json.getBoolean(PROP_REDIS_REPLICA_HEDGING));
+        }
+        if(json.containsKey(PROP_STORAGE_EXPAND_MAX_NODES)) {
+            builder.storageExpandMaxNodes(json.getInteger(PROP_STORAGE_EXPAND_MAX_NODES));
+        }
+        if(json.containsKey(PROP_STORAGE_EXPAND_MAX_BYTES)) {
+            builder.storageExpandMaxBytes(json.getLong(PROP_STORAGE_EXPAND_MAX_BYTES));
+        }
+        if(json.containsKey(PROP_STORAGE_EXPAND_CHUNK_SIZE)) {
+            builder.storageExpandChunkSize(json.getInteger(PROP_STORAGE_EXPAND_CHUNK_SIZE));
+        }
+        if(json.containsKey(PROP_STORAGE_EXPAND_CHUNK_CONSISTENCY)) {
+            builder.storageExpandChunkConsistency(json.getBoolean(PROP_STORAGE_EXPAND_CHUNK_CONSISTENCY));
+        }
+        if(json.containsKey(PROP_COLLECTION_STREAM_THRESHOLD)) {
+            builder.collectionStreamThreshold(json.getInteger(PROP_COLLECTION_STREAM_THRESHOLD));
+        }
+        if(json.containsKey(PROP_RECLAIM_BATCH_SIZE)) {
+            builder.reclaimBatchSize(json.getInteger(PROP_RECLAIM_BATCH_SIZE));
+        }
+        if(json.containsKey(PROP_CLEANUP_INTERVAL)) {
+            builder.cleanupInterval(json.getLong(PROP_CLEANUP_INTERVAL));
+        }
+        if(json.containsKey(PROP_CLEANUP_TARGET_DURATION)) {
+            builder.cleanupTargetDuration(json.getLong(PROP_CLEANUP_TARGET_DURATION));
+        }
+        if(json.containsKey(PROP_CLEANUP_LEASE_DURATION)) {
+            builder.cleanupLeaseDuration(json.getLong(PROP_CLEANUP_LEASE_DURATION));
+        }
         return builder.build();
     }
 
@@ -214,6 +368,90 @@ public class ModuleConfiguration {
         return lockPrefix;
     }
 
+    public int getRedisPoolSize() {
+        return redisPoolSize;
+    }
+
+    public RedisPoolStrategy getRedisPoolStrategy() {
+        return redisPoolStrategy;
+    }
+
+    public int getRedisMaxInFlight() {
+        return redisMaxInFlight;
+    }
+
+    public long getRedisBatchWindow() {
+        return redisBatchWindow;
+    }
+
+    public int getRedisBatchMaxSize() {
+        return redisBatchMaxSize;
+    }
+
+    public int getRedisChunkSize() {
+        return redisChunkSize;
+    }
+
+    public long getRedisNearCacheSize() {
+        return redisNearCacheSize;
+    }
+
+    public String getRedisInvalidationChannel() {
+        return redisInvalidationChannel;
+    }
+
+    public int getRedisEtagIndexSize() {
+        return redisEtagIndexSize;
+    }
+
+    public String getRedisReplicas() {
+        return redisReplicas;
+    }
+
+    public int getRedisReplicaMaxLag() {
+        return redisReplicaMaxLag;
+    }
+
+    public boolean isRedisReplicaHedging() {
+        return redisReplicaHedging;
+    }
+
+    public int getStorageExpandMaxNodes() {
+        return storageExpandMaxNodes;
+    }
+
+    public long getStorageExpandMaxBytes() {
+        return storageExpandMaxBytes;
+    }
+
+    public int getStorageExpandChunkSize() {
+        return storageExpandChunkSize;
+    }
+
+    public boolean isStorageExpandChunkConsistency() {
+        return storageExpandChunkConsistency;
+    }
+
+    public int getCollectionStreamThreshold() {
+        return collectionStreamThreshold;
+    }
+
+    public int getReclaimBatchSize() {
+        return reclaimBatchSize;
+    }
+
+    public long getCleanupInterval() {
+        return cleanupInterval;
+    }
+
+    public long getCleanupTargetDuration() {
+        return cleanupTargetDuration;
+    }
+
+    public long getCleanupLeaseDuration() {
+        return cleanupLeaseDuration;
+    }
+
     @Override
     public String toString() {
         return asJsonObject().toString();
@@ -247,6 +485,27 @@ public class ModuleConfiguration {
         private String deltaEtagsPrefix;
         private long resourceCleanupAmount;
         private String lockPrefix;
+        private int redisPoolSize;
+        private RedisPoolStrategy redisPoolStrategy;
+        private int redisMaxInFlight;
+        private long redisBatchWindow;
+        private int redisBatchMaxSize;
+        private int redisChunkSize;
+        private long redisNearCacheSize;
+        private String redisInvalidationChannel;
+        private int redisEtagIndexSize;
+        private String redisReplicas;
+        private int redisReplicaMaxLag;
+        private boolean redisReplicaHedging;
+        private int storageExpandMaxNodes;
+        private long storageExpandMaxBytes;
+        private int storageExpandChunkSize;
+        private boolean storageExpandChunkConsistency;
+        private int collectionStreamThreshold;
+        private int reclaimBatchSize;
+        private long cleanupInterval;
+        private long cleanupTargetDuration;
+        private long cleanupLeaseDuration;
 
         public ModuleConfigurationBuilder(){
             this.root = ".";
@@ -264,6 +523,27 @@ public class ModuleConfiguration {
             this.deltaEtagsPrefix = "delta:etags";
             this.resourceCleanupAmount = 100000L;
             this.lockPrefix = "rest-storage:locks";
+            this.redisPoolSize = 1;
+            this.redisPoolStrategy = RedisPoolStrategy.roundRobin;
+            this.redisMaxInFlight = 0;
+            this.redisBatchWindow = -1;
+            this.redisBatchMaxSize = 100;
+            this.redisChunkSize = 0;
+            this.redisNearCacheSize = 0;
+            this.redisInvalidationChannel = "rest-storage:invalidations";
+            this.redisEtagIndexSize = 0;
+            this.redisReplicas = null;
+            this.redisReplicaMaxLag = 10;
+            this.redisReplicaHedging = false;
+            this.storageExpandMaxNodes = 10000;
+            this.storageExpandMaxBytes = 10485760L;
+            this.storageExpandChunkSize = 1000;
+            this.storageExpandChunkConsistency = false;
+            this.collectionStreamThreshold = 10000;
+            this.reclaimBatchSize = 1000;
+            this.cleanupInterval = 0;
+            this.cleanupTargetDuration = 5;
+            this.cleanupLeaseDuration = 10000;
         }
 
         public ModuleConfigurationBuilder root(String root){
@@ -353,6 +633,120 @@ public class ModuleConfiguration {
             return this;
         }
 
+        public ModuleConfigurationBuilder redisPoolSize(int redisPoolSize) {
+            this.redisPoolSize = redisPoolSize;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisPoolStrategy(RedisPoolStrategy redisPoolStrategy) {
+            this.redisPoolStrategy = redisPoolStrategy;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisPoolStrategyFromString(String redisPoolStrategy) {
+            for(RedisPoolStrategy strategy : RedisPoolStrategy.values()){
+                if (strategy.name().equalsIgnoreCase(redisPoolStrategy)){
+                    this.redisPoolStrategy = strategy;
+                }
+            }
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisMaxInFlight(int redisMaxInFlight) {
+            this.redisMaxInFlight = redisMaxInFlight;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisBatchWindow(long redisBatchWindow) {
+            this.redisBatchWindow = redisBatchWindow;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisBatchMaxSize(int redisBatchMaxSize) {
+            this.redisBatchMaxSize = redisBatchMaxSize;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisChunkSize(int redisChunkSize) {
+            this.redisChunkSize = redisChunkSize;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisNearCacheSize(long redisNearCacheSize) {
+            this.redisNearCacheSize = redisNearCacheSize;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisInvalidationChannel(String redisInvalidationChannel) {
+            this.redisInvalidationChannel = redisInvalidationChannel;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisEtagIndexSize(int redisEtagIndexSize) {
+            this.redisEtagIndexSize = redisEtagIndexSize;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisReplicas(String redisReplicas) {
+            this.redisReplicas = redisReplicas;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisReplicaMaxLag(int redisReplicaMaxLag) {
+            this.redisReplicaMaxLag = redisReplicaMaxLag;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder redisReplicaHedging(boolean redisReplicaHedging) {
+            this.redisReplicaHedging = redisReplicaHedging;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder storageExpandMaxNodes(int storageExpandMaxNodes) {
+            this.storageExpandMaxNodes = storageExpandMaxNodes;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder storageExpandMaxBytes(long storageExpandMaxBytes) {
+            this.storageExpandMaxBytes = storageExpandMaxBytes;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder storageExpandChunkSize(int storageExpandChunkSize) {
+            this.storageExpandChunkSize = storageExpandChunkSize;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder storageExpandChunkConsistency(boolean storageExpandChunkConsistency) {
+            this.storageExpandChunkConsistency = storageExpandChunkConsistency;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder collectionStreamThreshold(int collectionStreamThreshold) {
+            this.collectionStreamThreshold = collectionStreamThreshold;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder reclaimBatchSize(int reclaimBatchSize) {
+            this.reclaimBatchSize = reclaimBatchSize;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder cleanupInterval(long cleanupInterval) {
+            this.cleanupInterval = cleanupInterval;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder cleanupTargetDuration(long cleanupTargetDuration) {
+            this.cleanupTargetDuration = cleanupTargetDuration;
+            return this;
+        }
+
+        public ModuleConfigurationBuilder cleanupLeaseDuration(long cleanupLeaseDuration) {
+            this.cleanupLeaseDuration = cleanupLeaseDuration;
+            return this;
+        }
+
         public ModuleConfiguration build(){
             return new ModuleConfiguration(this);
         }
@@ -37,7 +37,8 @@ public final class ResourceNameUtil {
         if(resourceName == null){
             return null;
         }
-        return resourceName.replaceAll(":", COLON_REPLACEMENT).replaceAll(";", SEMICOLON_REPLACEMENT);
+        // the replacements are single chars, replacing chars does not compile a regex and allocates nothing without a match
+        return resourceName.replace(':', COLON_REPLACEMENT.charAt(0)).replace(';', SEMICOLON_REPLACEMENT.charAt(0));
     }
 
     /**
@@ -72,7 +73,7 @@ public final class ResourceNameUtil {
         if(resourceName == null){
             return null;
         }
-        return resourceName.replaceAll(COLON_REPLACEMENT, ":").replaceAll(SEMICOLON_REPLACEMENT, ";");
+        return resourceName.replace(COLON_REPLACEMENT.charAt(0), ':').replace(SEMICOLON_REPLACEMENT.charAt(0), ';');
     }
 
     /**
@@ -13,7 +13,8 @@ public enum StatusCode {
     NOT_FOUND(404, "Not Found"),
     METHOD_NOT_ALLOWED(405, "Method Not Allowed"),
     INTERNAL_SERVER_ERROR(500, "Internal Server Error"),
-    CONFLICT(409, "Conflict");
+    CONFLICT(409, "Conflict"),
+    FAILED_DEPENDENCY(424, "Failed Dependency");
 
     private final int statusCode;
     private final String statusMessage;
@@ -0,0 +1,55 @@
+-- Executes a batch of script invocations in a single evaluation.
+-- The bodies of the batchable scripts are wrapped into functions by the RedisStorage.
+-- ARGV[1] contains the amount of invocations, followed by the name, the keys count and the arguments count of every
+-- invocation and its arguments. The keys of all invocations are passed in KEYS in the same order.
+local scripts = {}
+
+scripts["GET"] = function(KEYS, ARGV)
+--%(GET)
+end
+
+scripts["PUT"] = function(KEYS, ARGV)
+--%(PUT)
+end
+
+scripts["DELETE"] = function(KEYS, ARGV)
+--%(DELETE)
+end
+
+scripts["STORAGE_EXPAND"] = function(KEYS, ARGV)
+--%(STORAGE_EXPAND)
+end
+
+local invocationCount = tonumber(ARGV[1])
+local argPosition = 2
+local keyPosition = 1
+local results = {}
+
+for i=1,invocationCount do
+    local name = ARGV[argPosition]
+    local keysCount = tonumber(ARGV[argPosition+1])
+    local argsCount = tonumber(ARGV[argPosition+2])
+    argPosition = argPosition + 3
+    local invocationKeys = {}
+    for k=1,keysCount do
+        invocationKeys[k] = KEYS[keyPosition]
+        keyPosition = keyPosition + 1
+    end
+    local invocationArgs = {}
+    for a=1,argsCount do
+        invocationArgs[a] = ARGV[argPosition]
+        argPosition = argPosition + 1
+    end
+    local ok, result = pcall(scripts[name], invocationKeys, invocationArgs)
+    if not ok then
+        if type(result) == "table" and result.err then
+            result = result.err
+        end
+        result = "batchError "..tostring(result)
+    elseif result == nil then
+        result = false
+    end
+    results[i] = result
+end
+
+return results
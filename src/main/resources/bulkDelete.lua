@@ -0,0 +1,138 @@
+-- Deletes several resources or collections in a single evaluation.
+-- Every path is deleted like by the delete script and removed from its direct parent. The parents which became empty
+-- are removed from their own parents at the end, level by level starting with the deepest one, so that every
+-- ancestor is only checked once, regardless of the amount of deleted paths it contains.
+-- ARGV contains the same arguments as for the delete script, KEYS contains the paths to delete.
+local sep = ":"
+local resourcesPrefix = ARGV[1]
+local collectionsPrefix = ARGV[2]
+local deltaResourcesPrefix = ARGV[3]
+local deltaEtagsPrefix = ARGV[4]
+local expirableSet = ARGV[5]
+local minscore = tonumber(ARGV[6])
+local maxscore = tonumber(ARGV[7])
+local lockPrefix = ARGV[8]
+local lockOwner = ARGV[9]
+local lockMode = ARGV[10]
+local lockExpire = ARGV[11]
+local invalidationChannel = ARGV[12]
+-- the amount of members of deleted collections reclaimed by this evaluation, shared by all paths
+local budget = tonumber(ARGV[13]) or 1000
+-- the lexicographical index of a collection contains the same members as the collection, the sub collection index
+-- contains its sub collections and an empty name
+local lexIndexPrefix = collectionsPrefix.."-lex"
+local subIndexPrefix = collectionsPrefix.."-sub"
+-- deleted collections are detached and reclaimed like by the delete script
+--%(DETACHED_COLLECTIONS)
+
+-- removes the member from the collection and its indexes. the sub collection index of a collection without members
+-- is removed as well
+local function removeMember(collection, name)
+    redis.call('zrem', collectionsPrefix..collection, name)
+    redis.call('zrem', lexIndexPrefix..collection, name)
+    if redis.call('exists', collectionsPrefix..collection) == 0 then
+        redis.call('del', subIndexPrefix..collection)
+    else
+        redis.call('zrem', subIndexPrefix..collection, name)
+    end
+end
+
+-- deletes the resource or detaches the collection and reclaims the detached collections as far as the budget allows.
+-- returns true if the collection is not reclaimed completely
+local function deleteChildrenAndItself(path)
+    if redis.call('exists',resourcesPrefix..path) == 1 then
+        deleteResource(path)
+    elseif redis.call('exists',collectionsPrefix..path) == 1 then
+        detach(path)
+        return reclaimDetached()
+    else
+        redis.log(redis.LOG_WARNING, "can't delete resource from type: "..path)
+    end
+    return false
+end
+
+local setLockIfClaimed = function(path)
+    if lockOwner ~= nil and lockOwner ~= '' then
+        redis.call('hmset', lockPrefix..path, 'owner', lockOwner, 'mode', lockMode)
+        redis.call('pexpireat',lockPrefix..path, lockExpire)
+    end
+end
+
+-- the collections from which a member was removed, by depth
+local affected = {}
+local maxDepth = -1
+
+-- removes the path from its parent collection and remembers the parent
+local removeFromParent = function(path)
+    local parent, name = string.match(path, "^(.*)"..sep.."([^"..sep.."]*)$")
+    if parent == nil then
+        return
+    end
+    redis.log(redis.LOG_NOTICE, "zrem: "..collectionsPrefix..parent.." "..name)
+    removeMember(parent, name)
+    local depth = select(2, string.gsub(parent, sep, ""))
+    if affected[depth] == nil then
+        affected[depth] = {}
+    end
+    affected[depth][parent] = true
+    if depth > maxDepth then
+        maxDepth = depth
+    end
+end
+
+local results = {}
+
+for i,toDelete in ipairs(KEYS) do
+    local result = "notFound"
+    local isResource = redis.call('exists',resourcesPrefix..toDelete)
+    local isCollection = redis.call('exists',collectionsPrefix..toDelete)
+    if (isResource == 1 or isCollection == 1) and isStale(toDelete) then
+        -- the keys are removed without changing the collections above, which may have been written again in the meantime
+        deleteChildrenAndItself(toDelete)
+    elseif isResource == 1 or isCollection == 1 then
+        local lock
+        if redis.call('exists',lockPrefix..toDelete) == 1 then
+            lock = redis.call('hmget',lockPrefix..toDelete,'owner','mode')
+        end
+        if lock ~= nil and lock[1] ~= lockOwner then
+            result = lock[2]
+        else
+            local score = tonumber(redis.call('zscore',expirableSet,resourcesPrefix..toDelete))
+            if score ~= nil and minscore > score then
+                redis.log(redis.LOG_NOTICE, "expired: "..resourcesPrefix..toDelete)
+            else
+                local pending = deleteChildrenAndItself(toDelete)
+                if redis.call('zcount', collectionsPrefix..toDelete,minscore,maxscore) == 0 then
+                    removeFromParent(toDelete)
+                end
+                setLockIfClaimed(toDelete)
+                if invalidationChannel ~= nil and invalidationChannel ~= '' then
+                    if isCollection == 1 then
+                        redis.call('publish',invalidationChannel,toDelete..":*")
+                    else
+                        redis.call('publish',invalidationChannel,toDelete)
+                    end
+                end
+                result = "deleted"
+                if pending then
+                    result = "detached"
+                end
+            end
+        end
+    end
+    results[i] = result
+end
+
+-- REMOVE THE ORPHAN PARENTS
+-- an empty collection does not exist anymore, the parents of removed collections are added to a lower depth
+for depth = maxDepth, 0, -1 do
+    if affected[depth] ~= nil then
+        for collection in pairs(affected[depth]) do
+            if redis.call('exists', collectionsPrefix..collection) == 0 then
+                removeFromParent(collection)
+            end
+        end
+    end
+end
+
+return results
@@ -0,0 +1,136 @@
+-- Executes several puts in a single evaluation.
+-- The body of the put script is wrapped into a function by the RedisStorage. The collections updated by a put are
+-- remembered in knownCollections, so that the following puts skip the checks and updates of the same collections.
+-- ARGV[1] contains the amount of puts and ARGV[2] is "true" if the puts are applied all or nothing, followed by the
+-- arguments count and the arguments of every put. The key of every put is passed in KEYS in the same order.
+local knownCollections = {}
+
+local put = function(KEYS, ARGV)
+--%(PUT)
+end
+
+-- the state the puts checked so far will leave behind, used to check the following puts of an all or nothing bulk
+local plannedResources = {}
+local plannedCollections = {}
+local plannedLocks = {}
+
+local readValue = function(resourceKey)
+    local chunks = tonumber(redis.call('hget',resourceKey,'chunks'))
+    if chunks then
+        local parts = {}
+        for i=0,chunks-1 do
+            parts[i+1] = redis.call('hget',resourceKey,'c'..i)
+        end
+        return table.concat(parts)
+    end
+    return redis.call('hget',resourceKey,'resource')
+end
+
+local isJsonObject = function(value)
+    local ok, decoded = pcall(cjson.decode, value)
+    return ok and type(decoded) == "table"
+end
+
+-- returns the result which makes the put fail, or nil if the put would succeed
+local check = function(key, args)
+    local resourcesPrefix = args[1]
+    local collectionsPrefix = args[2]
+    local lockPrefix = args[9]
+    local lockOwner = args[10]
+    local sep = ":"
+    -- while deleted collections are reclaimed, the keys below them still exist and are replaced by the put
+--%(DETACHED_COLLECTIONS)
+    if plannedCollections[key] or (redis.call('exists',collectionsPrefix..key) == 1 and not isStale(key)) then
+        return "existingCollection"
+    end
+    local lock = plannedLocks[key]
+    -- the lock of a deleted resource is removed together with the resource
+    local staleResource = redis.call('exists',resourcesPrefix..key) == 1 and isStale(key)
+    if lock == nil and redis.call('exists',lockPrefix..key) == 1 and not staleResource then
+        lock = redis.call('hmget',lockPrefix..key,'owner','mode')
+    end
+    if lock ~= nil and lock[1] ~= lockOwner then
+        if lock[2] == "reject" then
+            return "reject"
+        end
+        -- the put is silently ignored
+        return nil
+    end
+    local ancestors = {}
+    local ancestor = ""
+    for element in string.gmatch(key, "[^:]+") do
+        ancestor = ancestor..":"..element
+        if ancestor ~= key then
+            ancestors[#ancestors+1] = ancestor
+        end
+    end
+    for _,ancestor in ipairs(ancestors) do
+        if plannedResources[ancestor] or (not plannedCollections[ancestor] and redis.call('exists',resourcesPrefix..ancestor) == 1 and not isStale(ancestor)) then
+            return "existingResource "..resourcesPrefix..ancestor
+        end
+    end
+    if args[4] == "true" then
+        if not isJsonObject(args[7]) then
+            return "batchError invalid json to merge"
+        end
+        if not plannedResources[key] and redis.call('exists',resourcesPrefix..key) == 1 and not staleResource and not isJsonObject(readValue(resourcesPrefix..key)) then
+            return "batchError stored resource is no json to merge"
+        end
+    end
+    plannedResources[key] = true
+    for _,ancestor in ipairs(ancestors) do
+        plannedCollections[ancestor] = true
+    end
+    if lockOwner ~= nil and lockOwner ~= '' then
+        plannedLocks[key] = {lockOwner, args[11]}
+    end
+    return nil
+end
+
+local count = tonumber(ARGV[1])
+local atomic = ARGV[2] == "true"
+local puts = {}
+local argPosition = 3
+for i=1,count do
+    local argsCount = tonumber(ARGV[argPosition])
+    local putArgs = {}
+    for a=1,argsCount do
+        putArgs[a] = ARGV[argPosition+a]
+    end
+    argPosition = argPosition + argsCount + 1
+    puts[i] = putArgs
+end
+
+local results = {}
+
+if atomic then
+    local failed = false
+    for i=1,count do
+        local failure = check(KEYS[i], puts[i])
+        if failure ~= nil then
+            results[i] = failure
+            failed = true
+        end
+    end
+    if failed then
+        for i=1,count do
+            if results[i] == nil then
+                results[i] = "aborted"
+            end
+        end
+        return results
+    end
+end
+
+for i=1,count do
+    local ok, result = pcall(put, {KEYS[i]}, puts[i])
+    if not ok then
+        if type(result) == "table" and result.err then
+            result = result.err
+        end
+        result = "batchError "..tostring(result)
+    end
+    results[i] = result
+end
+
+return results
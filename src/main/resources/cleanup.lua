@@ -8,6 +8,18 @@ local maxscore = tonumber(ARGV[7])
 local now = tonumber(ARGV[8])
 local bulksize = tonumber(ARGV[9])
 local delScriptSha = ARGV[10]
+-- the cleanup lease and the fencing token of its holder, the lease is renewed if the token is the current one. without
+-- lease key, the cleanup is not coordinated
+local leaseKey = ARGV[14]
+local fencingToken = ARGV[15]
+local leaseDuration = tonumber(ARGV[16])
+
+if leaseKey ~= nil and leaseKey ~= '' then
+  if redis.call('hget', leaseKey, 'token') ~= fencingToken then
+    return -1
+  end
+  redis.call('pexpire', leaseKey, leaseDuration)
+end
 
 local resourcePrefixLength = string.len(resourcesPrefix)
 local counter = 0
@@ -0,0 +1,26 @@
+-- Acquires, renews or releases the lease of the cleanup of an expirable set, which allows a single storage to clean up
+-- at a time. The lease holds its owner and a fencing token, which is increased every time the lease is acquired anew.
+-- Returns the fencing token of the lease if the owner holds it, 0 if another owner holds it or if it was released.
+local leaseKey = KEYS[1]
+local owner = ARGV[1]
+local duration = tonumber(ARGV[2])
+local release = ARGV[3] == "release"
+
+local current = redis.call('hget', leaseKey, 'owner')
+if release then
+    if current == owner then
+        redis.call('del', leaseKey)
+    end
+    return 0
+end
+if current and current ~= owner then
+    return 0
+end
+local token = redis.call('hget', leaseKey, 'token')
+if not current then
+    -- the counter of the tokens outlives the lease, so that a token is never used twice
+    token = redis.call('incr', leaseKey.."-token")
+    redis.call('hmset', leaseKey, 'owner', owner, 'token', token)
+end
+redis.call('pexpire', leaseKey, duration)
+return tonumber(token)
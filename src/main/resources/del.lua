@@ -11,22 +11,33 @@ local lockPrefix = ARGV[8]
 local lockOwner = ARGV[9]
 local lockMode = ARGV[10]
 local lockExpire = ARGV[11]
+local invalidationChannel = ARGV[12]
+-- the amount of members of a deleted collection reclaimed by this evaluation, the rest is reclaimed by the reclaim script
+local budget = tonumber(ARGV[13]) or 1000
+-- the lexicographical index of a collection contains the same members as the collection, the sub collection index
+-- contains its sub collections and an empty name
+local lexIndexPrefix = collectionsPrefix.."-lex"
+local subIndexPrefix = collectionsPrefix.."-sub"
+--%(DETACHED_COLLECTIONS)
+
+-- removes the member from the collection and its indexes. the sub collection index of a collection without members
+-- is removed as well
+local function removeMember(collection, name)
+    redis.call('zrem', collectionsPrefix..collection, name)
+    redis.call('zrem', lexIndexPrefix..collection, name)
+    if redis.call('exists', collectionsPrefix..collection) == 0 then
+        redis.call('del', subIndexPrefix..collection)
+    else
+        redis.call('zrem', subIndexPrefix..collection, name)
+    end
+end
 
 local function deleteChildrenAndItself(path)
     if redis.call('exists',resourcesPrefix..path) == 1 then
-      redis.log(redis.LOG_NOTICE, "del: "..resourcesPrefix..path)
-      redis.call('zrem', expirableSet, resourcesPrefix..path)
-      redis.call('del', resourcesPrefix..path)
-      redis.call('del', deltaResourcesPrefix..path)
-      redis.call('del', deltaEtagsPrefix..path)
-      redis.call('del', lockPrefix..path)
+      deleteResource(path)
     elseif redis.call('exists',collectionsPrefix..path) == 1 then
-      local members = redis.call('zrangebyscore',collectionsPrefix..path,minscore,maxscore)
-      for key,value in pairs(members) do
-        local pathToDelete = path..":"..value
-        deleteChildrenAndItself(pathToDelete)
-        redis.call('del', collectionsPrefix..path)
-      end
+      detach(path)
+      reclaimDetached()
     else
       redis.log(redis.LOG_WARNING, "can't delete resource from type: "..path)
     end
@@ -44,7 +55,11 @@ local scriptState = "notFound"
 local isResource = redis.call('exists',resourcesPrefix..toDelete)
 local isCollection = redis.call('exists',collectionsPrefix..toDelete)
 
-if isResource == 1 or isCollection == 1 then
+-- the keys of a path below a detached collection are removed without changing the collections above, which may have
+-- been written again in the meantime, and the path is not found
+if (isResource == 1 or isCollection == 1) and isStale(toDelete) then
+  deleteChildrenAndItself(toDelete)
+elseif isResource == 1 or isCollection == 1 then
 
   if isResource and  redis.call('exists',lockPrefix..toDelete) == 1 then
     local result = redis.call('hmget',lockPrefix..KEYS[1],'owner','mode')
@@ -107,12 +122,12 @@ if isResource == 1 or isCollection == 1 then
               stopDel = 1
             end
             redis.log(redis.LOG_NOTICE, "zrem: "..collectionsPrefix..pathtable[pathDepthState-2].." "..nodetable[pathDepthState-1])
-            redis.call('zrem', collectionsPrefix..pathtable[pathDepthState-2], nodetable[pathDepthState-1])
+            removeMember(pathtable[pathDepthState-2], nodetable[pathDepthState-1])
         end
         if directParent == 1 then
           redis.log(redis.LOG_NOTICE, "remove direct parent")
           redis.log(redis.LOG_NOTICE, "zrem: "..collectionsPrefix..pathtable[pathDepth-2].." "..nodetable[pathDepthState-1])
-          redis.call('zrem', collectionsPrefix..pathtable[pathDepthState-2], nodetable[pathDepthState-1])
+          removeMember(pathtable[pathDepthState-2], nodetable[pathDepthState-1])
           directParent = 0
         end
       end
@@ -122,7 +137,19 @@ if isResource == 1 or isCollection == 1 then
         setLockIfClaimed()
     end
 
+    if invalidationChannel ~= nil and invalidationChannel ~= '' then
+        if isCollection == 1 then
+            redis.call('publish',invalidationChannel,toDelete..":*")
+        else
+            redis.call('publish',invalidationChannel,toDelete)
+        end
+    end
+
     scriptState = "deleted"
+    -- the collections not reclaimed yet are reclaimed by the reclaim script
+    if #detached > 0 and redis.call('exists', trashPrefix..detached[#detached]) == 1 then
+      scriptState = "detached"
+    end
   end
   
 end
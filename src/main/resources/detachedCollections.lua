@@ -0,0 +1,104 @@
+-- The keys and functions of the collections detached by a delete, substituted by the RedisStorage into every script
+-- which names the DETACHED_COLLECTIONS placeholder.
+-- A deleted collection is detached at once, by renaming it to a trash key named after a sequential id and its path. The
+-- queue holds the id followed by the path of every detached collection, which is not reclaimed yet. Until then, the
+-- keys below a detached collection still exist, and a path is only found if every collection above it lists it.
+-- The including script declares sep, resourcesPrefix, collectionsPrefix, lexIndexPrefix, subIndexPrefix,
+-- deltaResourcesPrefix, deltaEtagsPrefix, expirableSet, lockPrefix and the budget of members to reclaim, as far as the
+-- functions it calls need them.
+local trashPrefix = collectionsPrefix.."-trash:"
+local reclaimQueue = collectionsPrefix.."-reclaim"
+local reclaimCounter = collectionsPrefix.."-reclaim-id"
+local unlinkSupported = true
+-- the collections detached by this evaluation and the amount of them reclaimed by it
+local detached = {}
+local detachedReclaimed = 0
+-- the amount of members reclaimed by this evaluation
+local reclaimedMembers = 0
+
+-- frees the key in the background, if the server supports unlink
+local function free(key)
+    if unlinkSupported and type(redis.pcall('unlink', key)) == "table" then
+        unlinkSupported = false
+    end
+    if not unlinkSupported then
+        redis.call('del', key)
+    end
+end
+
+local function deleteResource(path)
+    redis.log(redis.LOG_NOTICE, "del: "..resourcesPrefix..path)
+    redis.call('zrem', expirableSet, resourcesPrefix..path)
+    free(resourcesPrefix..path)
+    if deltaResourcesPrefix ~= nil and deltaResourcesPrefix ~= '' then
+        redis.call('del', deltaResourcesPrefix..path, deltaEtagsPrefix..path)
+    end
+    redis.call('del', lockPrefix..path)
+end
+
+-- removes the collection from the key space with a constant amount of commands, its indexes are not needed anymore
+local function detach(path)
+    local id = redis.call('incr', reclaimCounter)
+    redis.log(redis.LOG_NOTICE, "detach: "..collectionsPrefix..path.." "..id)
+    redis.call('rename', collectionsPrefix..path, trashPrefix..id..path)
+    free(lexIndexPrefix..path)
+    free(subIndexPrefix..path)
+    redis.call('zadd', reclaimQueue, id, id..path)
+    table.insert(detached, id..path)
+end
+
+-- deletes the members of a detached collection until the budget is used up, the members which are collections are
+-- detached in turn. the collection is removed from the queue once it is empty
+local function reclaim(entry)
+    local path = string.match(entry, "^%d+(.*)$")
+    local trashKey = trashPrefix..entry
+    local names = redis.call('zrange', trashKey, 0, budget - 1)
+    -- a member written again since the collection was detached belongs to the new collection at the same path
+    local rewritable = redis.call('exists', collectionsPrefix..path) == 1
+    for i,name in ipairs(names) do
+        local rewritten = rewritable and redis.call('zscore', collectionsPrefix..path, name)
+        if not rewritten and redis.call('exists', collectionsPrefix..path..sep..name) == 1 then
+            detach(path..sep..name)
+        end
+        if not rewritten and redis.call('exists', resourcesPrefix..path..sep..name) == 1 then
+            deleteResource(path..sep..name)
+        end
+    end
+    if #names > 0 then
+        redis.call('zremrangebyrank', trashKey, 0, #names - 1)
+        budget = budget - #names
+        reclaimedMembers = reclaimedMembers + #names
+    end
+    if redis.call('exists', trashKey) == 0 then
+        redis.call('zrem', reclaimQueue, entry)
+        -- no detached collection is left once the queue is empty, the ids start over
+        if redis.call('exists', reclaimQueue) == 0 then
+            redis.call('del', reclaimCounter)
+        end
+    end
+end
+
+-- reclaims the collections detached by this evaluation as far as the budget allows. returns true if the last detached
+-- collection is not reclaimed completely
+local function reclaimDetached()
+    while detachedReclaimed < #detached and budget > 0 do
+        detachedReclaimed = detachedReclaimed + 1
+        reclaim(detached[detachedReclaimed])
+    end
+    return #detached > 0 and redis.call('exists', trashPrefix..detached[#detached]) == 1
+end
+
+-- returns true if the path is not listed by every collection above it, as it belongs to a detached collection
+local function isStale(path)
+    if redis.call('exists', reclaimQueue) == 0 then
+        return false
+    end
+    local parentPath = ""
+    for element in string.gmatch(path, "[^"..sep.."]+") do
+        if not redis.call('zscore', collectionsPrefix..parentPath, element) then
+            return true
+        end
+        parentPath = parentPath..sep..element
+    end
+    return false
+end
@@ -9,6 +9,23 @@ local maxtime = tonumber(ARGV[5])
 local offset = tonumber(ARGV[6])
 local count = tonumber(ARGV[7])
 local etag = ARGV[8]
+-- a paged collection listing follows the lexicographical order of the member names, it starts after the member named
+-- by the cursor and only contains the members starting with startsWith. if withCursor is "true", the name of the last
+-- listed member is returned after the type if further members follow, an empty string otherwise
+local cursor = ARGV[9] or ""
+local startsWith = ARGV[10] or ""
+local withCursor = ARGV[11] == "true"
+-- a paged listing only contains the sub collections if kind is "collections", only the resources if kind is "resources"
+local kind = ARGV[12] or ""
+-- an unpaged listing of a collection with more members than the threshold only returns the type "TYPE_COLLECTION_STREAM",
+-- the members are then read in pages. 0 for no threshold
+local streamThreshold = tonumber(ARGV[13]) or 0
+-- every collection has a lexicographical index, a sorted set of its members with score 0
+local lexIndexPrefix = collectionsPrefix.."-lex"
+-- every collection has a sub collection index, a sorted set of its members which are collections with score 0. the
+-- index always contains an empty name, so that the index of a collection without sub collections exists as well
+local subIndexPrefix = collectionsPrefix.."-sub"
+--%(DETACHED_COLLECTIONS)
 
 local function not_empty(x)
     return (type(x) == "table") and (not x.err) and (#x ~= 0)
@@ -18,19 +35,41 @@ local function string_not_empty(s)
     return s ~= nil and s ~= ''
 end
 
+-- the indexes of a collection written by an older version are built on its first listing. returns false if the
+-- index cannot be written, because the script is evaluated on a replica
+local function addToIndex(indexKey, names)
+    for i=1,#names,1000 do
+        local args = {}
+        for j=i,math.min(i+999,#names) do
+            table.insert(args, 0)
+            table.insert(args, names[j])
+        end
+        if type(redis.pcall('zadd',indexKey,unpack(args))) == "table" then
+            return false
+        end
+    end
+    return true
+end
+
+if isStale(path) then
+    return "notFound"
+end
+
 if redis.call('exists',resourcesPrefix..path) == 1 then
-    local score = tonumber(redis.call('zscore',expirableSet,resourcesPrefix..path))
+    local expireAt = redis.call('zscore',expirableSet,resourcesPrefix..path)
+    local score = tonumber(expireAt)
     if score ~= nil and score < timestamp then
         return "notFound"
     else
-        local result = redis.call('hmget',resourcesPrefix..path,'resource','etag','compressed')
+        local result = redis.call('hmget',resourcesPrefix..path,'resource','etag','compressed','chunks','length')
         if not_empty(result) then
             if string_not_empty(etag) then
                 local etagStorage = result[2]
                 if etagStorage == etag then
-                    return "notModified"
+                    return {"notModified", expireAt}
                 end
             end
+            result[6] = expireAt
             table.insert(result, 1, "TYPE_RESOURCE")
             return result
         else
@@ -38,17 +77,146 @@ if redis.call('exists',resourcesPrefix..path) == 1 then
         end
     end
 elseif redis.call('exists',collectionsPrefix..path) == 1 then
+    local collectionKey = collectionsPrefix..path
+    local lexIndexKey = lexIndexPrefix..path
+    local subIndexKey = subIndexPrefix..path
     local members = {}
-    if offset ~= nil and count ~= nil and offset > -1 then
-        members = redis.call('zrangebyscore',collectionsPrefix..path, timestamp, maxtime,'limit',offset, count)
+    local nextCursor = ""
+    local paged = offset ~= nil and count ~= nil and offset > -1 and (offset > 0 or count > -1)
+    local lexOrdered = paged or cursor ~= "" or startsWith ~= "" or kind ~= ""
+    if not lexOrdered and streamThreshold > 0 and redis.call('zcard',collectionKey) > streamThreshold then
+        return {"TYPE_COLLECTION_STREAM"}
+    end
+    -- the sub collections, if the sub collection index is missing and cannot be built
+    local subLookup
+    if redis.call('exists',subIndexKey) == 0 then
+        local names = {""}
+        for k,name in ipairs(redis.call('zrange',collectionKey,0,-1)) do
+            if redis.call('exists',collectionKey..sep..name) == 1 then
+                table.insert(names, name)
+            end
+        end
+        if not addToIndex(subIndexKey, names) then
+            subLookup = {}
+            for k,name in ipairs(names) do
+                subLookup[name] = true
+            end
+        end
+    end
+    -- returns the sub collections among the names between first and last with a single range of the index
+    local function subCollectionsBetween(first, last)
+        if subLookup then
+            return subLookup
+        end
+        local found = {}
+        for k,name in ipairs(redis.call('zrangebylex',subIndexKey,"["..first,"["..last)) do
+            found[name] = true
+        end
+        return found
+    end
+    -- the names of the members in lexicographical order, if the lexicographical index is missing and cannot be built
+    local sortedNames
+    if lexOrdered and redis.call('exists',lexIndexKey) == 0 then
+        local names = redis.call('zrange',collectionKey,0,-1)
+        if not addToIndex(lexIndexKey, names) then
+            table.sort(names)
+            sortedNames = names
+        end
+    end
+    -- returns the names of the index between min and max, the whole range if the index is read from sortedNames. the
+    -- sub collections are read from the sub collection index directly
+    local function readSlice(min, max, size)
+        if kind == "collections" and subLookup == nil then
+            return redis.call('zrangebylex',subIndexKey,min,max,'limit',0,size)
+        end
+        if sortedNames == nil then
+            return redis.call('zrangebylex',lexIndexKey,min,max,'limit',0,size)
+        end
+        local slice = {}
+        for k,name in ipairs(sortedNames) do
+            local aboveMin = min == "-" or (string.sub(min,1,1) == "[" and name >= string.sub(min,2)) or name > string.sub(min,2)
+            local belowMax = max == "+" or name <= string.sub(max,2)
+            if aboveMin and belowMax then
+                table.insert(slice, name)
+            end
+        end
+        return slice
+    end
+    local subCollections = {}
+    if not lexOrdered then
+        members = redis.call('zrangebyscore',collectionKey, timestamp, maxtime)
+        if subLookup then
+            subCollections = subLookup
+        else
+            for k,name in ipairs(redis.call('zrange',subIndexKey,0,-1)) do
+                subCollections[name] = true
+            end
+        end
     else
-        members = redis.call('zrangebyscore',collectionsPrefix..path, timestamp, maxtime)
+        local skip = 0
+        local wanted = -1
+        if paged then
+            skip = offset
+            wanted = count
+        end
+        local min = "-"
+        local max = "+"
+        if startsWith ~= "" then
+            min = "["..startsWith
+            max = "["..startsWith.."\255"
+        end
+        if cursor ~= "" then
+            min = "("..cursor
+        end
+        -- the index is read in slices, the expired members and the members of the other kind are skipped
+        local done = false
+        while not done do
+            local sliceSize = 1000
+            if wanted > -1 and skip + wanted + 1 - #members < sliceSize then
+                sliceSize = skip + wanted + 1 - #members
+            end
+            local slice = readSlice(min, max, sliceSize)
+            local sliceSubCollections = {}
+            if kind == "collections" and subLookup == nil then
+                for k,name in ipairs(slice) do
+                    sliceSubCollections[name] = true
+                end
+            elseif #slice > 0 then
+                sliceSubCollections = subCollectionsBetween(slice[1], slice[#slice])
+            end
+            for k,name in ipairs(slice) do
+                local isSubCollection = sliceSubCollections[name] == true
+                local ofKind = name ~= "" and (kind == "" or (kind == "collections") == isSubCollection)
+                local score = ofKind and tonumber(redis.call('zscore',collectionKey,name))
+                if score and score >= timestamp and score <= maxtime then
+                    if skip > 0 then
+                        skip = skip - 1
+                    elseif wanted > -1 and #members >= wanted then
+                        if #members > 0 then
+                            nextCursor = members[#members]
+                        end
+                        done = true
+                        break
+                    else
+                        table.insert(members, name)
+                        subCollections[name] = isSubCollection
+                    end
+                end
+            end
+            if #slice < sliceSize then
+                done = true
+            else
+                min = "("..slice[#slice]
+            end
+        end
     end
     local children = {}
     table.insert(children, 1, "TYPE_COLLECTION")
-    for key,value in pairs(members) do
-        local childPath = collectionsPrefix..path..sep..value
-        if redis.call('type', childPath)["ok"] == "zset" then
+    if withCursor then
+        table.insert(children, nextCursor)
+    end
+    for key,value in ipairs(members) do
+        if subCollections[value] then
             table.insert(children, value..sep)
         else
             table.insert(children, value)
@@ -57,4 +225,4 @@ elseif redis.call('exists',collectionsPrefix..path) == 1 then
     return children
 else
     return "notFound"
-end 
\ No newline at end of file
+end
\ No newline at end of file
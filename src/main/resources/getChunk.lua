@@ -0,0 +1,10 @@
+local resourceKey = KEYS[1]
+local etag = ARGV[1]
+local chunk = ARGV[2]
+
+-- the chunks are only returned as long as the resource was not replaced since the first chunk was read
+local values = redis.call('hmget',resourceKey,'etag','c'..chunk)
+if values[1] ~= etag or not values[2] then
+    return "modified"
+end
+return {"chunk", values[2]}
@@ -13,14 +13,68 @@ local lockOwner = ARGV[10]
 local lockMode = ARGV[11]
 local lockExpire = ARGV[12]
 local compress = tonumber(ARGV[13])
+local chunksKey = ARGV[14]
+local chunkCount = tonumber(ARGV[15]) or 0
+local resourceLength = ARGV[16]
+local invalidationChannel = ARGV[17]
+local deltaResourcesPrefix = ARGV[18]
+local deltaEtagsPrefix = ARGV[19]
+-- every collection has a lexicographical index, a sorted set of its members with score 0
+local lexIndexPrefix = collectionsPrefix.."-lex"
+-- every collection has a sub collection index, a sorted set of its members which are collections with score 0, which
+-- always contains an empty name
+local subIndexPrefix = collectionsPrefix.."-sub"
+--%(DETACHED_COLLECTIONS)
+
+-- collections updated by the previous puts of a bulk put, with the score of their entry in the parent collection
+local knownCollections = {}
+
+-- the chunks of a streamed resource are uploaded to a temporary key, which has to be removed if the put is refused
+local discardChunks = function()
+    if chunkCount > 0 then
+        redis.call('del',chunksKey)
+    end
+end
+
+-- the collections of the path from the root to the direct parent, each with the name of its member on the path
+local ancestry = {}
+local pathState
+local nodes = {path:match((path:gsub("[^"..sep.."]*"..sep, "([^"..sep.."]*)"..sep)))}
+for key,value in pairs(nodes) do
+    if pathState == nil then
+        pathState = value
+    else
+        table.insert(ancestry, {pathState, value})
+        pathState = pathState..sep..value
+    end
+end
+
+-- while deleted collections are reclaimed, the keys below them still exist. the keys on the path which are not listed
+-- by their parent belong to a deleted collection and are removed first, so that the put neither finds a deleted
+-- resource, collection or lock, nor adds a deleted collection with its members to a new parent
+if redis.call('exists',reclaimQueue) == 1 then
+    local listed = true
+    for i,link in ipairs(ancestry) do
+        local childPath = link[1]..sep..link[2]
+        listed = listed and redis.call('zscore',collectionsPrefix..link[1],link[2]) ~= false
+        if not listed and redis.call('exists',collectionsPrefix..childPath) == 1 then
+            detach(childPath)
+        end
+        if not listed and redis.call('exists',resourcesPrefix..childPath) == 1 then
+            deleteResource(childPath)
+        end
+    end
+end
 
 if redis.call('exists',collectionsPrefix..KEYS[1]) == 1 then
+    discardChunks()
     return "existingCollection"
 end
 
 if redis.call('exists',lockPrefix..KEYS[1]) == 1 then
     local result = redis.call('hmget',lockPrefix..KEYS[1],'owner','mode')
     if result[1] ~= lockOwner then
+        discardChunks()
         return result[2]
     end
 end
@@ -41,6 +95,7 @@ if redis.call('exists',resourcesPrefix..KEYS[1]) == 1 then
     local etag = redis.call('hget',resourcesPrefix..KEYS[1],'etag')
     if etag == resourceHash and expiration == maxexpiration and compressionModeNotChanged(compress) then
         setLockIfClaimed()
+        discardChunks()
         return "notModified";
     end
 end
@@ -49,40 +104,81 @@ local not_empty = function(x)
     return (type(x) == "table") and (not x.err) and (#x ~= 0)
 end
 
-local pathState
-local collections = {}
-local nodes = {path:match((path:gsub("[^"..sep.."]*"..sep, "([^"..sep.."]*)"..sep)))}
-
-for key,value in pairs(nodes) do
-    if pathState == nil then
-        pathState = value
-    else
-        collections[pathState] = value
-        pathState = pathState..sep..value
-    end
-    redis.log(redis.LOG_NOTICE, "pathState: "..resourcesPrefix..pathState)
-    redis.log(redis.LOG_NOTICE, "path: "..resourcesPrefix..KEYS[1])
-    if redis.call('exists',resourcesPrefix..pathState) == 1 and resourcesPrefix..pathState ~= resourcesPrefix..KEYS[1] then
-        return "existingResource".." "..resourcesPrefix..pathState
+-- a path containing a resource cannot become a collection. if the direct parent is a collection already, so are all
+-- its ancestors, and none of them has to be checked
+local parent = ancestry[#ancestry]
+if parent ~= nil and knownCollections[parent[1]] == nil and redis.call('exists',collectionsPrefix..parent[1]) == 0 then
+    for i,collection in ipairs(ancestry) do
+        redis.log(redis.LOG_NOTICE, "pathState: "..resourcesPrefix..collection[1])
+        if knownCollections[collection[1]] == nil and redis.call('exists',resourcesPrefix..collection[1]) == 1 then
+            discardChunks()
+            return "existingResource".." "..resourcesPrefix..collection[1]
+        end
     end
 end
-for key,value in pairs(collections) do
+
+-- the entry of a collection in its parent has the latest expiration of its content. the collections are updated from
+-- the direct parent upwards, until a collection already contains its member on the path with exactly the expiration it
+-- would be updated to. the entry is then unchanged, and so is the latest expiration of the content of the collections
+-- above. an entry reached by the update with a later expiration than its content, e.g. after the latest expiring
+-- resource was deleted, is corrected
+for i = #ancestry, 1, -1 do
+    local key = ancestry[i][1]
+    local value = ancestry[i][2]
     local collectionKey = collectionsPrefix..key
+    local childPath = key..sep..value
+    local knownExpiration = knownCollections[childPath]
+    -- the entry of a collection already updated by a previous put of a bulk put with a later expiration is left as it is
+    if childPath ~= KEYS[1] and knownExpiration ~= nil and knownExpiration >= expiration then
+        break
+    end
+    local score = tonumber(redis.call('zscore',collectionKey,value))
     local actualExpiration = expiration
-    local contentMax = redis.call('zrange',collectionKey..sep..value,-1,-1, "withscores")[2]
-    if contentMax ~= nil and contentMax ~= '' then
-        contentMax = tonumber(contentMax)
-        if contentMax > actualExpiration then
-            actualExpiration = contentMax
+    if childPath ~= KEYS[1] then
+        local contentMax = redis.call('zrange',collectionKey..sep..value,-1,-1, "withscores")[2]
+        if contentMax ~= nil and contentMax ~= '' then
+            contentMax = tonumber(contentMax)
+            if contentMax > actualExpiration then
+                actualExpiration = contentMax
+            end
+        end
+    end
+    if score == actualExpiration then
+        break
+    end
+    -- a new member is added to the indexes. the missing indexes of an existing collection are built on its first listing
+    if score == nil then
+        local newCollection = redis.call('exists',collectionKey) == 0
+        if newCollection or redis.call('exists',lexIndexPrefix..key) == 1 then
+            redis.call('zadd',lexIndexPrefix..key,0,value)
         end
+        if newCollection then
+            redis.call('zadd',subIndexPrefix..key,0,"")
+        end
+        if childPath ~= KEYS[1] and (newCollection or redis.call('exists',subIndexPrefix..key) == 1) then
+            redis.call('zadd',subIndexPrefix..key,0,value)
+        end
+    end
+    if score ~= actualExpiration then
+        redis.log(redis.LOG_NOTICE, "zadd: "..collectionKey.." "..actualExpiration.." "..value)
+        redis.call('zadd',collectionKey,actualExpiration,value)
+    end
+    if childPath ~= KEYS[1] then
+        knownCollections[childPath] = actualExpiration
     end
-    redis.log(redis.LOG_NOTICE, "zadd: "..collectionKey.." "..actualExpiration.." "..value)
-    redis.call('zadd',collectionKey,actualExpiration,value)
 end
 redis.log(redis.LOG_NOTICE, "merge: "..merge)
 
 if merge == "true" then
     local s = redis.call('hget',resourcesPrefix..KEYS[1],'resource')
+    local chunks = tonumber(redis.call('hget',resourcesPrefix..KEYS[1],'chunks'))
+    if chunks then
+        local parts = {}
+        for i=0,chunks-1 do
+            parts[i+1] = redis.call('hget',resourcesPrefix..KEYS[1],'c'..i)
+        end
+        s = table.concat(parts)
+    end
     redis.log(redis.LOG_NOTICE, "merge: "..tostring(s).." "..resourceValue)
     if s then
         s = cjson.decode(s)
@@ -94,11 +190,22 @@ if merge == "true" then
 end
 
 redis.log(redis.LOG_NOTICE, "update: "..resourcesPrefix..KEYS[1])
-if compress == 1 then
-    redis.call('hmset',resourcesPrefix..KEYS[1],'resource',resourceValue,'etag',resourceHash,'compressed',1)
+if chunkCount > 0 then
+    -- replaces the previous value of the resource at once
+    redis.call('rename',chunksKey,resourcesPrefix..KEYS[1])
+    redis.call('persist',resourcesPrefix..KEYS[1])
+    redis.call('hmset',resourcesPrefix..KEYS[1],'etag',resourceHash,'chunks',chunkCount,'length',resourceLength)
 else
-    redis.call('hmset',resourcesPrefix..KEYS[1],'resource',resourceValue,'etag',resourceHash)
-    redis.call('hdel',resourcesPrefix..KEYS[1],'compressed')
+    if redis.call('hexists',resourcesPrefix..KEYS[1],'chunks') == 1 then
+        -- the previous value was stored in chunks
+        redis.call('del',resourcesPrefix..KEYS[1])
+    end
+    if compress == 1 then
+        redis.call('hmset',resourcesPrefix..KEYS[1],'resource',resourceValue,'etag',resourceHash,'compressed',1)
+    else
+        redis.call('hmset',resourcesPrefix..KEYS[1],'resource',resourceValue,'etag',resourceHash)
+        redis.call('hdel',resourcesPrefix..KEYS[1],'compressed')
+    end
 end
 
 if expiration ~= maxexpiration then
@@ -111,4 +218,8 @@ end
 
 setLockIfClaimed()
 
+if invalidationChannel ~= nil and invalidationChannel ~= '' then
+    redis.call('publish',invalidationChannel,KEYS[1])
+end
+
 return "OK";
\ No newline at end of file
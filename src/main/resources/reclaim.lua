@@ -0,0 +1,25 @@
+-- Reclaims the keys of the collections detached by the delete scripts, in the order in which they were detached.
+-- A single evaluation deletes at most budget members, so that the deletion of a large collection does not block the
+-- server. Returns the amount of reclaimed members and the amount of detached collections still queued.
+-- KEYS[1] is the queue of the detached collections, which is derived from the collections prefix.
+local sep = ":"
+local resourcesPrefix = ARGV[1]
+local collectionsPrefix = ARGV[2]
+local deltaResourcesPrefix = ARGV[3]
+local deltaEtagsPrefix = ARGV[4]
+local expirableSet = ARGV[5]
+local lockPrefix = ARGV[6]
+local budget = tonumber(ARGV[7])
+local lexIndexPrefix = collectionsPrefix.."-lex"
+local subIndexPrefix = collectionsPrefix.."-sub"
+--%(DETACHED_COLLECTIONS)
+
+while budget > 0 do
+    local entry = redis.call('zrange', reclaimQueue, 0, 0)[1]
+    if entry == nil then
+        break
+    end
+    reclaim(entry)
+end
+
+return {reclaimedMembers, redis.call('zcard', reclaimQueue)}
@@ -14,6 +14,21 @@ local timestamp = tonumber(ARGV[4])
 local maxtime = tonumber(ARGV[5])
 local subResources = ARGV[6]
 local subResourcesCount = tonumber(ARGV[7])
+local depth = tonumber(ARGV[8]) or 1
+local maxNodes = tonumber(ARGV[9])
+local maxBytes = tonumber(ARGV[10])
+local requestEtag = ARGV[11]
+-- if allSubResources is "true", the members of the collection matching the prefix and the offset and limit window are
+-- expanded instead of the given sub resources
+local allSubResources = ARGV[12] == "true"
+local prefix = ARGV[13] or ""
+local offset = tonumber(ARGV[14]) or 0
+local limit = tonumber(ARGV[15]) or -1
+-- in mode "etag" only the etag is returned, without reading the resources
+local mode = ARGV[16] or "full"
+-- the maximum amount of members expanded by a single evaluation if all sub resources are expanded, 0 for no limit
+local chunkSize = tonumber(ARGV[17]) or 0
+local membershipCheck = ARGV[18] == "true"
 
 local function splitToTable(divider,str)
     if (divider=='') then return false end
@@ -41,44 +56,215 @@ local function isCompressed(resourcePath)
     end
 end
 
-local result = {}
+local function readResource(resourcePath)
+    local chunks = tonumber(redis.call('hget',resourcePath,'chunks'))
+    if chunks == nil then
+        return redis.call('hget',resourcePath,'resource')
+    end
+    local parts = {}
+    for i=0,chunks-1 do
+        parts[i+1] = redis.call('hget',resourcePath,'c'..i)
+    end
+    return table.concat(parts)
+end
+
 local subResourcesTable = splitToTable(";", subResources);
 
-for i=1,subResourcesCount do
-    local subResName = subResourcesTable[i]
-    if(isCollection(subResName)) then
-        subResName = string.sub(subResName, 1, string.len(subResName)-1)
-        local colPath = collectionsPrefix..path..sep..subResName
+-- the sub collection index of a collection contains its sub collections and an empty name
+local subIndexPrefix = collectionsPrefix.."-sub"
+--%(DETACHED_COLLECTIONS)
+
+-- returns the members of the collection, the sub collections first and sorted by name, followed by the resources.
+-- the names of sub collections end with a slash. the sub collections are read from the sub collection index, which
+-- is built by the first listing of a collection written by an older version
+local function listMembers(collectionPath)
+    local colPath = collectionsPrefix..collectionPath
+    local subCollections
+    if redis.call('exists',subIndexPrefix..collectionPath) == 1 then
+        subCollections = {}
+        for k, v in ipairs(redis.call('zrange',subIndexPrefix..collectionPath,0,-1)) do
+            subCollections[v] = true
+        end
+    end
+    local collections = {}
+    local resources = {}
+    for k, v in ipairs(redis.call('zrangebyscore',colPath, timestamp, maxtime)) do
+        local isSubCollection
+        if subCollections then
+            isSubCollection = subCollections[v]
+        else
+            isSubCollection = redis.call('exists',colPath..sep..v) == 1
+        end
+        if isSubCollection then
+            table.insert(collections, v.."/")
+        else
+            table.insert(resources, v)
+        end
+    end
+    table.sort(collections)
+    for k, v in ipairs(resources) do
+        table.insert(collections, v)
+    end
+    return collections
+end
+
+-- the expanded content is returned as a flat list of entries in document order, which the RedisStorage writes as
+-- json without parsing the resources: {"e", etag} is the etag of the expand, {"o", name} opens a collection, {"c"}
+-- closes it, {"r", name, content} is a resource, {"z", name, content} is a compressed resource, which is decompressed
+-- by the RedisStorage, and {"l", name, members} is a collection at the maximum depth, of which only the members are
+-- listed.
+-- the budget only applies to expands deeper than one level, compressed resources are counted with their stored size
+local entries = {}
+local nodes = 0
+local bytes = 0
+local failure
+
+-- the etag of the expand is the hash of the entries, with the stored etags of the resources instead of their content.
+-- every part is prefixed with its length, so that different entries cannot result in the same parts
+local etagParts = {}
+local function addEtagPart(part)
+    table.insert(etagParts, string.len(part)..":"..part)
+end
+
+-- the resources of the entries, which are read once the etag did not match
+local resourcePaths = {}
+
+local function expand(parentPath, name, level)
+    nodes = nodes + 1
+    if depth > 1 and nodes > maxNodes then
+        failure = "budgetExceeded"
+        return
+    end
+    if(isCollection(name)) then
+        name = string.sub(name, 1, string.len(name)-1)
+        local colPath = collectionsPrefix..parentPath..sep..name
         if redis.call('exists',colPath) == 1 then
-            local colMembers = redis.call('zrangebyscore',colPath, timestamp, maxtime)
-            for k, v in ipairs(colMembers) do
-                if redis.call('exists',colPath..sep..v) == 1 then
-                    colMembers[k] = v.."/"
+            local colMembers = listMembers(parentPath..sep..name)
+            if level >= depth then
+                table.insert(entries, {"l", name, colMembers})
+                addEtagPart("l")
+                addEtagPart(name)
+                addEtagPart(tostring(#colMembers))
+                for k, v in ipairs(colMembers) do
+                    addEtagPart(v)
                 end
+            else
+                table.insert(entries, {"o", name})
+                addEtagPart("o")
+                addEtagPart(name)
+                for k, v in ipairs(colMembers) do
+                    expand(parentPath..sep..name, v, level + 1)
+                    if failure then
+                        return
+                    end
+                end
+                table.insert(entries, {"c"})
+                addEtagPart("c")
             end
-            table.insert(result, {subResName, cjson.encode(colMembers)})
         end
     else
-        local resPath = resourcesPrefix..path..sep..subResName
+        local resPath = resourcesPrefix..parentPath..sep..name
         if redis.call('exists',resPath) == 1 then
-            if isCompressed(resPath) then
-                return "compressionNotSupported"
-            end
             local score = tonumber(redis.call('zscore',expirableSet,resPath))
             if score == nil or score > timestamp then
-                local res = (redis.call('hget',resPath,'resource'))
-                if(res) then
-                    table.insert(result, {subResName, res})
+                local resourceEtag = redis.call('hget',resPath,'etag') or ""
+                local type = "r"
+                if isCompressed(resPath) then
+                    type = "z"
                 end
+                table.insert(entries, {type, name})
+                resourcePaths[#entries] = resPath
+                addEtagPart(type)
+                addEtagPart(name)
+                addEtagPart(resourceEtag)
+            end
+        end
+    end
+end
+
+if isStale(path) then
+    return "notFound"
+end
+
+-- the sub resources to expand
+local selected = {}
+if allSubResources then
+    local colPath = collectionsPrefix..path
+    if redis.call('exists',colPath) == 0 then
+        return "notFound"
+    end
+    local matching = 0
+    for k, v in ipairs(listMembers(path)) do
+        if string.sub(v, 1, string.len(prefix)) == prefix then
+            matching = matching + 1
+            if limit >= 0 and matching > offset + limit then
+                break
             end
+            if matching > offset then
+                table.insert(selected, v)
+            end
+        end
+    end
+    -- too many members are returned to the RedisStorage, which expands them in chunks
+    if chunkSize > 0 and #selected > chunkSize then
+        table.insert(selected, 1, "list")
+        return selected
+    end
+else
+    -- a sub resource requested twice is only expanded once
+    local requested = {}
+    for i=1,subResourcesCount do
+        local subResName = subResourcesTable[i]
+        -- a named sub resource which is not a member of the collection belongs to a deleted collection
+        local memberName = string.gsub(subResName, "/$", "")
+        local listed = redis.call('zscore',collectionsPrefix..path,memberName) or not isStale(path..sep..memberName)
+        if listed and not requested[subResName] then
+            requested[subResName] = true
+            table.insert(selected, subResName)
         end
     end
 end
 
-local resEncoded = cjson.encode(result)
+for k, v in ipairs(selected) do
+    expand(path, v, 1)
+    if failure then
+        return failure
+    end
+end
 
-if (resEncoded=='{}') then
+if #entries == 0 and not allSubResources then
     return "notFound"
 end
 
-return resEncoded
\ No newline at end of file
+-- the hash of the members of the expanded collection allows to check that the chunks of an expand saw the same members
+local membership
+if membershipCheck then
+    membership = {"m", redis.sha1hex(table.concat(redis.call('zrangebyscore',collectionsPrefix..path,timestamp,maxtime), "/"))}
+end
+
+local etag = redis.sha1hex(table.concat(etagParts))
+if etag == requestEtag then
+    return "notModified"
+end
+
+if mode == "etag" then
+    return {{"e", etag}, membership}
+end
+
+for index=1,#entries do
+    local resPath = resourcePaths[index]
+    if resPath then
+        local res = readResource(resPath) or ""
+        bytes = bytes + string.len(res)
+        if depth > 1 and bytes > maxBytes then
+            return "budgetExceeded"
+        end
+        table.insert(entries[index], res)
+    end
+end
+
+if membership then
+    table.insert(entries, 1, membership)
+end
+table.insert(entries, 1, {"e", etag})
+return entries
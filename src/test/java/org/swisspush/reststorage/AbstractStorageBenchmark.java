@@ -0,0 +1,151 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+import redis.clients.jedis.Jedis;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Base class for the benchmarks running against the embedded redis. Benchmarks are not part of the regular test run,
+ * use <code>gradle benchmark</code> to execute them.
+ */
+public abstract class AbstractStorageBenchmark {
+
+    protected Vertx vertx;
+    protected Context context;
+    protected Jedis jedis;
+
+    @BeforeClass
+    public static void config() {
+        if(!RedisEmbeddedConfiguration.useExternalRedis()) {
+            RedisEmbeddedConfiguration.redisServer.start();
+        }
+    }
+
+    @AfterClass
+    public static void stopRedis() {
+        if(!RedisEmbeddedConfiguration.useExternalRedis()) {
+            RedisEmbeddedConfiguration.redisServer.stop();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        jedis = JedisFactory.createJedis();
+        jedis.flushAll();
+    }
+
+    @After
+    public void tearDown() {
+        jedis.flushAll();
+        jedis.close();
+        vertx.close();
+    }
+
+    /**
+     * Operation executed by the benchmark. Must call the done handler when finished.
+     */
+    protected interface Operation {
+        void run(int index, Handler<Void> done);
+    }
+
+    protected ModuleConfiguration.ModuleConfigurationBuilder redisConfiguration() {
+        return ModuleConfiguration.with().storageType(ModuleConfiguration.StorageType.redis);
+    }
+
+    /**
+     * Creates the storage on the benchmark context, so that all redis connections are bound to it.
+     */
+    protected RedisStorage createStorage(ModuleConfiguration config) throws Exception {
+        CompletableFuture<RedisStorage> storage = new CompletableFuture<>();
+        context.runOnContext(v -> storage.complete(new RedisStorage(vertx, config)));
+        return storage.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs the amount of operations keeping <code>concurrency</code> operations in flight.
+     *
+     * @return the throughput in operations per second
+     */
+    protected double runConcurrently(int operations, int concurrency, Operation operation) throws Exception {
+        AtomicInteger started = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(operations);
+        long start = System.nanoTime();
+        context.runOnContext(v -> {
+            for (int i = 0; i < concurrency; i++) {
+                startNext(operations, operation, started, finished);
+            }
+        });
+        assertTrue("benchmark did not finish in time", finished.await(5, TimeUnit.MINUTES));
+        long duration = System.nanoTime() - start;
+        return operations / (duration / 1000000000.0);
+    }
+
+    private void startNext(int operations, Operation operation, AtomicInteger started, CountDownLatch finished) {
+        int index = started.getAndIncrement();
+        if (index >= operations) {
+            return;
+        }
+        operation.run(index, done -> {
+            finished.countDown();
+            startNext(operations, operation, started, finished);
+        });
+    }
+
+    protected void put(Storage storage, String path, Buffer content, Handler<Void> done) {
+        storage.put(path, null, false, -1, resource -> {
+            DocumentResource documentResource = (DocumentResource) resource;
+            documentResource.endHandler = v -> done.handle(null);
+            documentResource.errorHandler = error -> done.handle(null);
+            documentResource.writeStream.write(content);
+            documentResource.closeHandler.handle(null);
+        });
+    }
+
+    protected void get(Storage storage, String path, Handler<Buffer> done) {
+        storage.get(path, null, 0, -1, resource -> {
+            if (!(resource instanceof DocumentResource)) {
+                done.handle(null);
+                return;
+            }
+            DocumentResource documentResource = (DocumentResource) resource;
+            Buffer content = Buffer.buffer();
+            documentResource.readStream.endHandler(v -> done.handle(content));
+            documentResource.readStream.handler(data -> content.appendBuffer((Buffer) data));
+        });
+    }
+
+    /**
+     * Returns the amount of bytes allocated by all threads of this jvm so far.
+     */
+    protected long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        for (long bytes : threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            if (bytes > 0) {
+                allocated += bytes;
+            }
+        }
+        return allocated;
+    }
+
+    protected void report(String benchmark, String variant, String metric, double value) {
+        System.out.println(String.format("%-40s %-30s %12.1f %s", benchmark, variant, value, metric));
+    }
+}
@@ -55,10 +55,7 @@ public abstract class AbstractTestCase {
         RestAssured.registerParser("application/json; charset=utf-8", Parser.JSON);
         RestAssured.defaultParser = Parser.JSON;
 
-        ModuleConfiguration modConfig = ModuleConfiguration.with()
-                .storageType(ModuleConfiguration.StorageType.redis)
-                .storageAddress("rest-storage")
-                .build();
+        ModuleConfiguration modConfig = createModuleConfiguration();
 
         RestStorageMod restStorageMod = new RestStorageMod();
         vertx.deployVerticle(restStorageMod, new DeploymentOptions().setConfig(modConfig.asJsonObject()), context.asyncAssertSuccess(stringAsyncResult1 -> {
@@ -67,6 +64,16 @@ public abstract class AbstractTestCase {
         }));
     }
 
+    /**
+     * Creates the configuration used to deploy the {@link RestStorageMod}. Override to test non-default configurations.
+     */
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .build();
+    }
+
     @After
     public void tearDown(TestContext context) {
         jedis.flushAll();
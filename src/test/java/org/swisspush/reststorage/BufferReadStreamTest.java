@@ -0,0 +1,99 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link BufferReadStream} class.
+ */
+@RunWith(VertxUnitRunner.class)
+public class BufferReadStreamTest {
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown(TestContext testContext) {
+        vertx.close(testContext.asyncAssertSuccess());
+    }
+
+    private Buffer content(int size) {
+        Buffer buffer = Buffer.buffer(size);
+        for (int i = 0; i < size; i++) {
+            buffer.appendByte((byte) i);
+        }
+        return buffer;
+    }
+
+    @Test
+    public void testEmitsSlices(TestContext testContext) {
+        Async async = testContext.async();
+        Buffer content = content(25);
+        List<Buffer> slices = new ArrayList<>();
+        BufferReadStream stream = new BufferReadStream(vertx, content, 10);
+        stream.endHandler(v -> {
+            testContext.assertEquals(3, slices.size());
+            testContext.assertEquals(10, slices.get(0).length());
+            testContext.assertEquals(5, slices.get(2).length());
+            Buffer result = Buffer.buffer();
+            slices.forEach(result::appendBuffer);
+            testContext.assertEquals(content, result);
+            async.complete();
+        });
+        stream.handler(slices::add);
+    }
+
+    @Test
+    public void testEmptyContent(TestContext testContext) {
+        Async async = testContext.async();
+        BufferReadStream stream = new BufferReadStream(vertx, new byte[0]);
+        stream.endHandler(v -> async.complete());
+        stream.handler(data -> testContext.fail("no data expected"));
+    }
+
+    @Test
+    public void testPauseAndResume(TestContext testContext) {
+        Async async = testContext.async();
+        Buffer content = content(40);
+        Buffer result = Buffer.buffer();
+        BufferReadStream stream = new BufferReadStream(vertx, content, 10);
+        stream.endHandler(v -> {
+            testContext.assertEquals(content, result);
+            async.complete();
+        });
+        stream.handler(data -> {
+            result.appendBuffer(data);
+            stream.pause();
+            // resuming several times must not emit the content twice
+            vertx.runOnContext(v -> stream.resume().resume());
+        });
+    }
+
+    @Test
+    public void testExceptionHandler(TestContext testContext) {
+        Async async = testContext.async();
+        BufferReadStream stream = new BufferReadStream(vertx, content(40), 10);
+        stream.endHandler(v -> testContext.fail("stream must not end after an exception"));
+        stream.exceptionHandler(e -> {
+            testContext.assertEquals("failed", e.getMessage());
+            async.complete();
+        });
+        stream.handler(data -> {
+            throw new IllegalStateException("failed");
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package org.swisspush.reststorage;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class BulkDeleteTest extends AbstractTestCase {
+
+    private void put(String path) {
+        with().body("{ \"foo\": \"bar\" }").put(path).then().assertThat().statusCode(200);
+    }
+
+    @Test
+    public void testBulkDelete(TestContext context) {
+        Async async = context.async();
+        put("/server/bulk/a/res1");
+        put("/server/bulk/a/res2");
+        put("/server/bulk/b/c/res3");
+        put("/server/bulk/b/res4");
+        put("/server/bulk/keep");
+
+        given().body("{ \"paths\": [\"/server/bulk/a/res1\", \"/server/bulk/a/res2\", \"/server/bulk/b/c/res3\", \"/server/bulk/missing\"] }")
+                .when().post("/server/_bulkdelete")
+                .then().assertThat().statusCode(200)
+                .body("results.path", contains("/server/bulk/a/res1", "/server/bulk/a/res2", "/server/bulk/b/c/res3", "/server/bulk/missing"))
+                .body("results.status", contains(200, 200, 200, 404));
+
+        get("/server/bulk/a/res1").then().assertThat().statusCode(404);
+        get("/server/bulk/a/").then().assertThat().statusCode(404);
+        get("/server/bulk/b/c/").then().assertThat().statusCode(404);
+        get("/server/bulk/b/").then().assertThat().statusCode(200).body("b", contains("res4"));
+        get("/server/bulk/").then().assertThat().statusCode(200).body("bulk", contains("b/", "keep"));
+
+        // all paths are deleted in a single evaluation
+        get("/_metrics").then().assertThat()
+                .body("bulkDeletes.total", equalTo(1))
+                .body("bulkDeletes.evaluations", equalTo(1))
+                .body("bulkDeletes.paths", equalTo(4));
+        async.complete();
+    }
+
+    @Test
+    public void testBulkDeleteRemovesOrphanParents(TestContext context) {
+        Async async = context.async();
+        put("/server/bulk/a/b/res1");
+        put("/server/bulk/a/b/res2");
+        put("/server/bulk/c/res3");
+
+        given().body("{ \"paths\": [\"/server/bulk/a/b/res1\", \"/server/bulk/c\", \"/server/bulk/a/b/res2\", \"/server/bulk/c/res3\"] }")
+                .when().post("/server/_bulkdelete")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(200, 200, 200, 404));
+
+        get("/server/bulk/").then().assertThat().statusCode(404);
+        get("/server/").then().assertThat().statusCode(404);
+        context.assertTrue(jedis.keys("*").isEmpty(), "keys left: " + jedis.keys("*"));
+        async.complete();
+    }
+
+    @Test
+    public void testBulkDeleteWithLocks(TestContext context) {
+        Async async = context.async();
+        with().header("x-lock", "owner1").header("x-lock-mode", "reject").body("{ \"foo\": \"bar\" }").put("/server/bulk/rejecting").then().assertThat().statusCode(200);
+        with().header("x-lock", "owner1").body("{ \"foo\": \"bar\" }").put("/server/bulk/silent").then().assertThat().statusCode(200);
+        put("/server/bulk/free");
+
+        given().body("{ \"paths\": [\"/server/bulk/rejecting\", \"/server/bulk/silent\", \"/server/bulk/free\"], \"lock\": \"owner2\" }")
+                .when().post("/server/_bulkdelete")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(409, 200, 200));
+        get("/server/bulk/rejecting").then().assertThat().statusCode(200);
+        get("/server/bulk/silent").then().assertThat().statusCode(200);
+        get("/server/bulk/free").then().assertThat().statusCode(404);
+
+        given().body("{ \"paths\": [\"/server/bulk/rejecting\", \"/server/bulk/silent\"], \"lock\": \"owner1\" }")
+                .when().post("/server/_bulkdelete")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(200, 200));
+        get("/server/bulk/rejecting").then().assertThat().statusCode(404);
+        get("/server/bulk/silent").then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testInvalidBulkDelete(TestContext context) {
+        Async async = context.async();
+        given().body("{ \"resources\": [] }").when().post("/server/_bulkdelete").then().assertThat().statusCode(400);
+        given().body("no json").when().post("/server/_bulkdelete").then().assertThat().statusCode(400);
+        given().body("{ \"paths\": [\"/server/bulk/res\"], \"lockMode\": \"unknown\" }").when().post("/server/_bulkdelete")
+                .then().assertThat().statusCode(400);
+        given().body("{ \"paths\": [] }").when().post("/server/_bulkdelete").then().assertThat().statusCode(200).body("results", empty());
+        async.complete();
+    }
+}
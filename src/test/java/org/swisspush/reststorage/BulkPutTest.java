@@ -0,0 +1,163 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class BulkPutTest extends AbstractTestCase {
+
+    private JsonObject resource(String path, String foo) {
+        return new JsonObject().put("path", path).put("content", new JsonObject().put("foo", foo));
+    }
+
+    private String bulk(boolean atomic, JsonObject... resources) {
+        JsonArray array = new JsonArray();
+        for (JsonObject resource : resources) {
+            array.add(resource);
+        }
+        return new JsonObject().put("atomic", atomic).put("resources", array).encode();
+    }
+
+    @Test
+    public void testBulkPut(TestContext context) {
+        Async async = context.async();
+        given().body(bulk(false,
+                resource("/server/bulk/col1/res1", "bar1"),
+                resource("/server/bulk/col1/res2", "bar2"),
+                resource("/server/bulk/col2/res3", "bar3"),
+                new JsonObject().put("path", "/server/bulk/text").put("base64", "no json".getBytes()),
+                resource("/server/bulk/compressed", "bar4").put("compress", true)))
+                .when().post("/server/_bulkput")
+                .then().assertThat().statusCode(200)
+                .body("results.path", contains("/server/bulk/col1/res1", "/server/bulk/col1/res2", "/server/bulk/col2/res3",
+                        "/server/bulk/text", "/server/bulk/compressed"))
+                .body("results.status", contains(200, 200, 200, 200, 200));
+
+        get("/server/bulk/col1/res1").then().assertThat().statusCode(200).body("foo", equalTo("bar1"));
+        get("/server/bulk/col2/res3").then().assertThat().statusCode(200).body("foo", equalTo("bar3"));
+        get("/server/bulk/compressed").then().assertThat().statusCode(200).body("foo", equalTo("bar4"));
+        context.assertEquals("no json", get("/server/bulk/text").asString());
+        get("/server/bulk/").then().assertThat().statusCode(200).body("bulk", contains("col1/", "col2/", "compressed", "text"));
+        get("/server/bulk/col1/").then().assertThat().statusCode(200).body("col1", contains("res1", "res2"));
+        get("/server/").then().assertThat().statusCode(200).body("server", contains("bulk/"));
+
+        // all puts are sent in a single evaluation
+        get("/_metrics").then().assertThat()
+                .body("bulkPuts.total", equalTo(1))
+                .body("bulkPuts.evaluations", equalTo(1))
+                .body("bulkPuts.resources", equalTo(5));
+        async.complete();
+    }
+
+    @Test
+    public void testBulkPutResultsLikeSinglePuts(TestContext context) {
+        Async async = context.async();
+        with().header("if-none-match", "etag1").body("{ \"foo\": \"bar\" }").put("/server/bulk/unchanged").then().assertThat().statusCode(200);
+        with().header("x-lock", "owner1").header("x-lock-mode", "reject").body("{ \"foo\": \"bar\" }").put("/server/bulk/locked").then().assertThat().statusCode(200);
+        with().header("x-lock", "owner1").body("{ \"foo\": \"bar\" }").put("/server/bulk/silent").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"bar\", \"baz\": 1 }").put("/server/bulk/merged").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"bar\" }").put("/server/bulk/col/res").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"bar\" }").put("/server/bulk/res").then().assertThat().statusCode(200);
+
+        given().body(bulk(false,
+                resource("/server/bulk/unchanged", "other").put("etag", "etag1"),
+                resource("/server/bulk/locked", "other").put("lock", "owner2"),
+                resource("/server/bulk/silent", "other").put("lock", "owner2"),
+                resource("/server/bulk/merged", "merged").put("merge", true),
+                resource("/server/bulk/col", "other"),
+                resource("/server/bulk/res/child", "other"),
+                resource("/server/bulk/new", "new").put("lock", "owner2").put("lockMode", "reject"),
+                resource("/server/bulk/new", "again").put("lock", "owner3")))
+                .when().post("/server/_bulkput")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(304, 409, 200, 200, 405, 405, 200, 409));
+
+        get("/server/bulk/locked").then().assertThat().body("foo", equalTo("bar"));
+        get("/server/bulk/silent").then().assertThat().body("foo", equalTo("bar"));
+        get("/server/bulk/merged").then().assertThat().body("foo", equalTo("merged")).body("baz", equalTo(1));
+        get("/server/bulk/res/child").then().assertThat().statusCode(404);
+        get("/server/bulk/new").then().assertThat().body("foo", equalTo("new"));
+        async.complete();
+    }
+
+    @Test
+    public void testAtomicBulkPut(TestContext context) {
+        Async async = context.async();
+        given().body(bulk(true,
+                resource("/server/bulk/col/res1", "bar1"),
+                resource("/server/bulk/col/res2", "bar2")))
+                .when().post("/server/_bulkput")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(200, 200));
+        get("/server/bulk/col/").then().assertThat().statusCode(200).body("col", contains("res1", "res2"));
+        async.complete();
+    }
+
+    @Test
+    public void testAtomicBulkPutWritesNothingIfAPutFails(TestContext context) {
+        Async async = context.async();
+        with().header("x-lock", "owner1").header("x-lock-mode", "reject").body("{ \"foo\": \"bar\" }").put("/server/bulk/locked").then().assertThat().statusCode(200);
+
+        given().body(bulk(true,
+                resource("/server/bulk/col/res1", "bar1"),
+                resource("/server/bulk/locked", "other")))
+                .when().post("/server/_bulkput")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(424, 409));
+        get("/server/bulk/col/res1").then().assertThat().statusCode(404);
+        get("/server/bulk/").then().assertThat().statusCode(200).body("bulk", contains("locked"));
+
+        // puts of the same bulk which conflict with each other
+        given().body(bulk(true,
+                resource("/server/bulk/new/res", "bar"),
+                resource("/server/bulk/new", "bar"),
+                new JsonObject().put("path", "/server/bulk/other").put("base64", "no json".getBytes()).put("merge", true)))
+                .when().post("/server/_bulkput")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(424, 405, 400));
+        get("/server/bulk/new/res").then().assertThat().statusCode(404);
+        get("/server/bulk/other").then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testBulkPutKeepsLongestExpirationOfCollections(TestContext context) {
+        Async async = context.async();
+        given().body(bulk(false,
+                resource("/server/bulk/col/expiring", "bar").put("expireAfter", 1),
+                resource("/server/bulk/col/persistent", "bar")))
+                .when().post("/server/_bulkput")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(200, 200));
+
+        await().atMost(3, TimeUnit.SECONDS).until(() -> get("/server/bulk/col/expiring").statusCode(), equalTo(404));
+        get("/server/bulk/").then().assertThat().statusCode(200).body("bulk", contains("col/"));
+        get("/server/bulk/col/").then().assertThat().statusCode(200).body("col", contains("persistent"));
+        async.complete();
+    }
+
+    @Test
+    public void testInvalidBulkPut(TestContext context) {
+        Async async = context.async();
+        given().body("{ \"paths\": [] }").when().post("/server/_bulkput").then().assertThat().statusCode(400);
+        given().body("no json").when().post("/server/_bulkput").then().assertThat().statusCode(400);
+        given().body(bulk(false, resource("server/bulk/res", "bar"))).when().post("/server/_bulkput").then().assertThat().statusCode(400);
+        given().body(bulk(false, new JsonObject().put("path", "/server/bulk/res"))).when().post("/server/_bulkput").then().assertThat().statusCode(400);
+        given().body(bulk(false, resource("/server/bulk/res", "bar").put("merge", true).put("compress", true)))
+                .when().post("/server/_bulkput").then().assertThat().statusCode(400);
+        given().body(bulk(false)).when().post("/server/_bulkput").then().assertThat().statusCode(200).body("results", empty());
+        get("/server/bulk/res").then().assertThat().statusCode(404);
+        async.complete();
+    }
+}
@@ -0,0 +1,150 @@
+package org.swisspush.reststorage;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import java.util.Arrays;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class ChunkedStorageTest extends AbstractTestCase {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final String RESOURCE_KEY = "rest-storage:resources:server:chunked:big";
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .redisChunkSize(CHUNK_SIZE)
+                .build();
+    }
+
+    private String largeJson(String value, int size) {
+        StringBuilder sb = new StringBuilder("{ \"foo\": \"").append(value).append("\", \"data\": \"");
+        while (sb.length() < size) {
+            sb.append("0123456789abcdef");
+        }
+        return sb.append("\" }").toString();
+    }
+
+    @Test
+    public void testPutAndGetChunkedResource(TestContext context) {
+        Async async = context.async();
+        String content = largeJson("bar", 10 * CHUNK_SIZE + 17);
+        with().body(content).put("/server/chunked/big").then().assertThat().statusCode(200);
+
+        context.assertEquals("11", jedis.hget(RESOURCE_KEY, "chunks"));
+        context.assertEquals(String.valueOf(content.length()), jedis.hget(RESOURCE_KEY, "length"));
+        context.assertNull(jedis.hget(RESOURCE_KEY, "resource"));
+        context.assertTrue(jedis.keys("*-chunks:*").isEmpty());
+
+        String body = get("/server/chunked/big").then().assertThat()
+                .statusCode(200)
+                .header("Content-Length", String.valueOf(content.length()))
+                .extract().body().asString();
+        context.assertEquals(content, body);
+        async.complete();
+    }
+
+    @Test
+    public void testPutAndGetChunkedBinaryResource(TestContext context) {
+        Async async = context.async();
+        byte[] content = new byte[5 * CHUNK_SIZE + 3];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        given().contentType("application/octet-stream").body(content).put("/server/chunked/big").then().assertThat().statusCode(200);
+        byte[] result = get("/server/chunked/big").then().assertThat().statusCode(200).extract().body().asByteArray();
+        context.assertTrue(Arrays.equals(content, result));
+        async.complete();
+    }
+
+    @Test
+    public void testSmallResourceIsNotChunked(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/chunked/big").then().assertThat().statusCode(200);
+        context.assertNull(jedis.hget(RESOURCE_KEY, "chunks"));
+        get("/server/chunked/big").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+        async.complete();
+    }
+
+    @Test
+    public void testReplaceChunkedResource(TestContext context) {
+        Async async = context.async();
+        with().body(largeJson("bar", 4 * CHUNK_SIZE)).put("/server/chunked/big").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"small\" }").put("/server/chunked/big").then().assertThat().statusCode(200);
+        context.assertNull(jedis.hget(RESOURCE_KEY, "chunks"));
+        context.assertNull(jedis.hget(RESOURCE_KEY, "c0"));
+        get("/server/chunked/big").then().assertThat().statusCode(200).body("foo", equalTo("small"));
+
+        with().body(largeJson("large", 2 * CHUNK_SIZE)).put("/server/chunked/big").then().assertThat().statusCode(200);
+        context.assertNull(jedis.hget(RESOURCE_KEY, "resource"));
+        get("/server/chunked/big").then().assertThat().statusCode(200).body("foo", equalTo("large"));
+        async.complete();
+    }
+
+    @Test
+    public void testChunkedResourceEtag(TestContext context) {
+        Async async = context.async();
+        String content = largeJson("bar", 3 * CHUNK_SIZE);
+        with().body(content).put("/server/chunked/big").then().assertThat().statusCode(200);
+        String etag = get("/server/chunked/big").then().assertThat().statusCode(200).extract().header("Etag");
+        context.assertNotNull(etag);
+
+        with().header("if-none-match", etag).body(content).put("/server/chunked/big").then().assertThat().statusCode(304);
+        context.assertTrue(jedis.keys("*-chunks:*").isEmpty());
+        with().header("if-none-match", etag).get("/server/chunked/big").then().assertThat().statusCode(304);
+        async.complete();
+    }
+
+    @Test
+    public void testMergeIntoChunkedResource(TestContext context) {
+        Async async = context.async();
+        with().body(largeJson("bar", 3 * CHUNK_SIZE)).put("/server/chunked/big").then().assertThat().statusCode(200);
+        with().param("merge", "true").body("{ \"foo\": \"merged\" }").put("/server/chunked/big").then().assertThat().statusCode(200);
+        get("/server/chunked/big").then().assertThat().statusCode(200)
+                .body("foo", equalTo("merged"))
+                .body("data", startsWith("0123456789abcdef"));
+        async.complete();
+    }
+
+    @Test
+    public void testStorageExpandWithChunkedResource(TestContext context) {
+        Async async = context.async();
+        with().body(largeJson("bar", 3 * CHUNK_SIZE)).put("/server/chunked/big").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"small\" }").put("/server/chunked/small").then().assertThat().statusCode(200);
+        given().body("{ \"subResources\": [\"big\", \"small\"] }")
+                .when().post("/server/chunked?storageExpand=true")
+                .then().assertThat().statusCode(200)
+                .body("big.foo", equalTo("bar"))
+                .body("small.foo", equalTo("small"));
+        async.complete();
+    }
+
+    @Test
+    public void testDeleteChunkedResource(TestContext context) {
+        Async async = context.async();
+        with().body(largeJson("bar", 3 * CHUNK_SIZE)).put("/server/chunked/big").then().assertThat().statusCode(200);
+        delete("/server/chunked/big").then().assertThat().statusCode(200);
+        context.assertFalse(jedis.exists(RESOURCE_KEY));
+        get("/server/chunked/big").then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testRejectedPutRemovesChunks(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/chunked/collection/res").then().assertThat().statusCode(200);
+        with().body(largeJson("bar", 3 * CHUNK_SIZE)).put("/server/chunked/collection").then().assertThat().statusCode(405);
+        context.assertTrue(jedis.keys("*-chunks:*").isEmpty());
+        async.complete();
+    }
+}
@@ -0,0 +1,49 @@
+package org.swisspush.reststorage;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class CleanupSchedulerTest extends AbstractTestCase {
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .cleanupInterval(200)
+                .build();
+    }
+
+    @Test
+    public void testScheduledCleanup(TestContext context) {
+        Async async = context.async();
+        for (int i = 1; i <= 300; i++) {
+            with().header("x-expire-after", "1").body("{ \"foo\": \"bar\" }").put("/server/scheduled/res" + i)
+                    .then().assertThat().statusCode(200);
+        }
+        with().body("{ \"foo\": \"bar\" }").put("/server/scheduled/kept").then().assertThat().statusCode(200);
+
+        // the expired resources are removed without a cleanup request
+        await().atMost(5, TimeUnit.SECONDS).until(() -> get("/_metrics").jsonPath().getInt("cleanup.cleaned"), equalTo(300));
+        context.assertEquals(0L, jedis.zcard("rest-storage:expirable"));
+        context.assertFalse(jedis.exists("rest-storage:resources:server:scheduled:res1"));
+        context.assertTrue(jedis.exists("rest-storage:resources:server:scheduled:kept"));
+
+        get("/_metrics").then().assertThat()
+                .body("cleanup.backlog", equalTo(0))
+                .body("cleanup.targetDuration", equalTo(5))
+                .body("cleanup.bulkSize", allOf(greaterThanOrEqualTo(10), lessThanOrEqualTo(10000)));
+        async.complete();
+    }
+}
@@ -0,0 +1,163 @@
+package org.swisspush.reststorage;
+
+import com.jayway.restassured.response.Response;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class CollectionPagingTest extends AbstractTestCase {
+
+    private static final String NEXT_CURSOR = "x-next-cursor";
+
+    private void put(String path) {
+        with().body("{ \"foo\": \"bar\" }").put(path).then().assertThat().statusCode(200);
+    }
+
+    private void putResources() {
+        for (int i = 1; i <= 10; i++) {
+            put("/server/paging/res" + i);
+        }
+        put("/server/paging/res5x/sub");
+        put("/server/paging/other");
+    }
+
+    private List<String> listAllPages(String query) {
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        do {
+            Response response = get("/server/paging/?" + query + (cursor != null ? "&cursor=" + cursor : ""));
+            response.then().assertThat().statusCode(200);
+            names.addAll(response.jsonPath().getList("paging"));
+            cursor = response.getHeader(NEXT_CURSOR);
+        } while (cursor != null);
+        return names;
+    }
+
+    @Test
+    public void testPagesInLexicographicalOrder(TestContext context) {
+        Async async = context.async();
+        putResources();
+
+        get("/server/paging/?limit=3").then().assertThat().statusCode(200)
+                .header(NEXT_CURSOR, not(empty()))
+                .body("paging", contains("other", "res1", "res10"));
+
+        // the pages follow each other in the order of the names, collections are not listed first
+        List<String> names = listAllPages("limit=3");
+        context.assertEquals(12, names.size());
+        context.assertEquals("res5x/", names.get(7));
+        context.assertEquals(names, listAllPages("limit=5"));
+
+        // the last page has no cursor
+        get("/server/paging/?limit=12").then().assertThat().statusCode(200)
+                .header(NEXT_CURSOR, nullValue())
+                .body("paging", hasSize(12));
+        async.complete();
+    }
+
+    @Test
+    public void testListingWithoutEtag(TestContext context) {
+        Async async = context.async();
+        putResources();
+
+        // a listing without if-none-match header lists all members without cursor
+        get("/server/paging/").then().assertThat().statusCode(200)
+                .header(NEXT_CURSOR, nullValue())
+                .body("paging", hasSize(12))
+                .body("paging", hasItems("other", "res1", "res5x/"));
+        get("/server/paging/res5x/").then().assertThat().statusCode(200).body("res5x", contains("sub"));
+        async.complete();
+    }
+
+    @Test
+    public void testMultiGetOfCollections(TestContext context) {
+        Async async = context.async();
+        putResources();
+
+        // the resources of a multi get are read without etag
+        given().body("{ \"paths\": [\"/server/paging/res1\", \"/server/paging/res5x\", \"/server/paging\"] }")
+                .when().post("/server/_multiget")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(200, 200, 200))
+                .body("results[0].content.foo", equalTo("bar"))
+                .body("results[1].collection", contains("sub"))
+                .body("results[2].collection", hasSize(12));
+        async.complete();
+    }
+
+    @Test
+    public void testPagesStartingWith(TestContext context) {
+        Async async = context.async();
+        putResources();
+
+        get("/server/paging/?startsWith=res1").then().assertThat().statusCode(200)
+                .header(NEXT_CURSOR, nullValue())
+                .body("paging", contains("res1", "res10"));
+        context.assertEquals(listAllPages("startsWith=res5&limit=1").toString(), "[res5, res5x/]");
+        get("/server/paging/?startsWith=unknown").then().assertThat().statusCode(200).body("paging", empty());
+        async.complete();
+    }
+
+    @Test
+    public void testPagesSkipExpiredMembers(TestContext context) {
+        Async async = context.async();
+        putResources();
+        with().header("x-expire-after", "1").body("{ \"foo\": \"bar\" }").put("/server/paging/res2").then().assertThat().statusCode(200);
+        await().atMost(3, TimeUnit.SECONDS).until(() -> get("/server/paging/res2").statusCode(), equalTo(404));
+
+        get("/server/paging/?startsWith=res&limit=3").then().assertThat().statusCode(200)
+                .body("paging", contains("res1", "res10", "res3"));
+        async.complete();
+    }
+
+    @Test
+    public void testIndexOfCollectionWithoutIndex(TestContext context) {
+        Async async = context.async();
+        putResources();
+        // collections written before the index existed
+        for (String key : jedis.keys("*-lex*")) {
+            jedis.del(key);
+        }
+        put("/server/paging/res11");
+
+        List<String> names = listAllPages("limit=4");
+        context.assertEquals(13, names.size());
+        context.assertTrue(names.contains("res11"));
+        context.assertTrue(names.contains("res7"));
+        get("/server/paging/res5x/?limit=1").then().assertThat().statusCode(200).body("res5x", contains("sub"));
+        async.complete();
+    }
+
+    @Test
+    public void testDeleteRemovesIndex(TestContext context) {
+        Async async = context.async();
+        putResources();
+        get("/server/paging/?limit=1").then().assertThat().statusCode(200);
+        delete("/server/paging/res5x/sub").then().assertThat().statusCode(200);
+        get("/server/paging/?startsWith=res5").then().assertThat().statusCode(200).body("paging", contains("res5"));
+        delete("/server/paging").then().assertThat().statusCode(200);
+        context.assertTrue(jedis.keys("*").isEmpty(), "keys left: " + jedis.keys("*"));
+        async.complete();
+    }
+
+    @Test
+    public void testInvalidCursor(TestContext context) {
+        Async async = context.async();
+        putResources();
+        get("/server/paging/?limit=2&cursor=%25%25").then().assertThat().statusCode(400);
+        String cursor = get("/server/paging/?limit=1").getHeader(NEXT_CURSOR);
+        get("/server/paging/?startsWith=res&cursor=" + cursor).then().assertThat().statusCode(400);
+        async.complete();
+    }
+}
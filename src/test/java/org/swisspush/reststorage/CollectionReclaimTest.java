@@ -0,0 +1,107 @@
+package org.swisspush.reststorage;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class CollectionReclaimTest extends AbstractTestCase {
+
+    private static final int RECLAIM_BATCH_SIZE = 5;
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .reclaimBatchSize(RECLAIM_BATCH_SIZE)
+                .build();
+    }
+
+    private void put(String path) {
+        with().body("{ \"foo\": \"bar\" }").put(path).then().assertThat().statusCode(200);
+    }
+
+    @Test
+    public void testDeleteLargeCollection(TestContext context) {
+        Async async = context.async();
+        for (int i = 1; i <= 20; i++) {
+            put("/server/reclaim/large/res" + i);
+            put("/server/reclaim/large/sub/res" + i);
+        }
+        put("/server/reclaim/other");
+
+        delete("/server/reclaim/large").then().assertThat().statusCode(200);
+
+        // the collection is detached at once
+        get("/server/reclaim/large/").then().assertThat().statusCode(404);
+        get("/server/reclaim/").then().assertThat().statusCode(200).body("reclaim", contains("other"));
+
+        // the members are reclaimed in the background
+        await().atMost(3, TimeUnit.SECONDS).until(() -> get("/_metrics").jsonPath().getBoolean("reclaim.running"), equalTo(false));
+        context.assertTrue(jedis.keys("rest-storage:*large*").isEmpty());
+        context.assertTrue(jedis.keys("rest-storage:collections-trash:*").isEmpty());
+        // the delete reclaims the first batch of members itself
+        get("/_metrics").then().assertThat()
+                .body("reclaim.detached", equalTo(1))
+                .body("reclaim.pending", equalTo(0))
+                .body("reclaim.members", equalTo(41 - RECLAIM_BATCH_SIZE));
+
+        // the path can be used again
+        put("/server/reclaim/large/res1");
+        get("/server/reclaim/large/").then().assertThat().statusCode(200).body("large", contains("res1"));
+        async.complete();
+    }
+
+    @Test
+    public void testGetAndPutBelowDeletedCollection(TestContext context) {
+        Async async = context.async();
+        for (int i = 1; i <= 20; i++) {
+            put("/server/reclaim/deleted/sub/res" + i);
+        }
+        put("/server/reclaim/deleted/res");
+
+        delete("/server/reclaim/deleted").then().assertThat().statusCode(200);
+
+        // whether or not the members are reclaimed yet, they are not found anymore
+        get("/server/reclaim/deleted/sub/res20").then().assertThat().statusCode(404);
+        get("/server/reclaim/deleted/sub/").then().assertThat().statusCode(404);
+
+        // a deleted resource can become a collection, a deleted collection starts empty
+        put("/server/reclaim/deleted/res/new");
+        put("/server/reclaim/deleted/sub/new");
+        get("/server/reclaim/deleted/sub/").then().assertThat().statusCode(200).body("sub", contains("new"));
+
+        await().atMost(3, TimeUnit.SECONDS).until(() -> get("/_metrics").jsonPath().getBoolean("reclaim.running"), equalTo(false));
+        get("/server/reclaim/deleted/").then().assertThat().statusCode(200).body("deleted", contains("res/", "sub/"));
+        get("/server/reclaim/deleted/sub/").then().assertThat().statusCode(200).body("sub", contains("new"));
+        get("/server/reclaim/deleted/res/new").then().assertThat().statusCode(200);
+        context.assertTrue(jedis.keys("rest-storage:collections-trash:*").isEmpty());
+        async.complete();
+    }
+
+    @Test
+    public void testDeleteSmallCollection(TestContext context) {
+        Async async = context.async();
+        put("/server/reclaim/small/res1");
+        put("/server/reclaim/small/sub/res2");
+
+        delete("/server/reclaim/small").then().assertThat().statusCode(200);
+
+        // reclaimed by the delete itself
+        context.assertTrue(jedis.keys("rest-storage:*small*").isEmpty());
+        get("/_metrics").then().assertThat()
+                .body("reclaim.detached", equalTo(0))
+                .body("reclaim.evaluations", lessThanOrEqualTo(1));
+        async.complete();
+    }
+}
@@ -0,0 +1,116 @@
+package org.swisspush.reststorage;
+
+import com.jayway.restassured.response.Response;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class CollectionStreamTest extends AbstractTestCase {
+
+    private static final int STREAM_THRESHOLD = 5;
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .collectionStreamThreshold(STREAM_THRESHOLD)
+                .build();
+    }
+
+    private void put(String path) {
+        with().body("{ \"foo\": \"bar\" }").put(path).then().assertThat().statusCode(200);
+    }
+
+    @Test
+    public void testStreamLargeCollection(TestContext context) {
+        Async async = context.async();
+        for (int i = 1; i <= 1005; i++) {
+            put("/server/stream/res" + i);
+        }
+        put("/server/stream/sub/res");
+        with().urlEncodingEnabled(false).body("{ \"foo\": \"bar\" }").put("/server/stream/col:on/res").then().assertThat().statusCode(200);
+
+        Response response = get("/server/stream/");
+        response.then().assertThat().statusCode(200)
+                .header("Transfer-Encoding", equalTo("chunked"))
+                .header("Content-Length", nullValue())
+                .body("stream", hasSize(1007));
+        // the sub collections are listed first, the names are decoded
+        context.assertEquals("col:on/", response.jsonPath().getString("stream[0]"));
+        context.assertEquals("sub/", response.jsonPath().getString("stream[1]"));
+        context.assertEquals("res1", response.jsonPath().getString("stream[2]"));
+        context.assertEquals("res999", response.jsonPath().getString("stream[1006]"));
+
+        // one page of sub collections and two pages of resources
+        get("/_metrics").then().assertThat()
+                .body("collectionStreams.total", equalTo(1))
+                .body("collectionStreams.pages", equalTo(3));
+        async.complete();
+    }
+
+    @Test
+    public void testFailingPageClosesResponse(TestContext context) {
+        Async async = context.async();
+        // enough sub collections to send the first chunk before the page of resources is read
+        for (int i = 1; i <= 1005; i++) {
+            put("/server/stream/sub" + i + "/res");
+        }
+        put("/server/stream/res");
+        jedis.del("rest-storage:collections-lex:server:stream");
+        jedis.set("rest-storage:collections-lex:server:stream", "no index");
+
+        HttpClient client = vertx.createHttpClient(new HttpClientOptions().setDefaultPort(8989));
+        final boolean[] closed = {false};
+        Handler<Throwable> closeHandler = exception -> {
+            if (!closed[0]) {
+                closed[0] = true;
+                client.close();
+                async.complete();
+            }
+        };
+        client.get("/server/stream/", response -> {
+            context.assertEquals(200, response.statusCode());
+            response.exceptionHandler(closeHandler);
+            response.endHandler(v -> context.fail("the incomplete listing was ended"));
+        }).exceptionHandler(closeHandler).end();
+    }
+
+    @Test
+    public void testSmallCollectionNotStreamed(TestContext context) {
+        Async async = context.async();
+        for (int i = 1; i <= STREAM_THRESHOLD; i++) {
+            put("/server/stream/res" + i);
+        }
+        get("/server/stream/").then().assertThat().statusCode(200)
+                .header("Content-Length", not(nullValue()))
+                .body("stream", hasSize(STREAM_THRESHOLD));
+        // a paged listing is never streamed
+        put("/server/stream/res6");
+        get("/server/stream/?limit=3").then().assertThat().statusCode(200)
+                .header("Content-Length", not(nullValue()))
+                .body("stream", contains("res1", "res2", "res3"));
+        async.complete();
+    }
+
+    @Test
+    public void testStreamedCollectionAsHtml(TestContext context) {
+        Async async = context.async();
+        for (int i = 1; i <= 10; i++) {
+            put("/server/stream/res" + i);
+        }
+        given().header("Accept", "text/html").get("/server/stream/").then().assertThat().statusCode(200)
+                .body(containsString("<a href=\"res10\">res10</a>"));
+        async.complete();
+    }
+}
@@ -0,0 +1,84 @@
+package org.swisspush.reststorage;
+
+import com.jayway.awaitility.Duration;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class EtagIndexStorageTest extends AbstractTestCase {
+
+    private static final String RESOURCE_KEY = "rest-storage:resources:server:etags:res";
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .redisEtagIndexSize(1000)
+                .build();
+    }
+
+    /**
+     * Waits until the invalidation messages published by the writes were received, so that they do not remove the
+     * entries added by the following reads. Every write invalidates the caches twice, directly and with its message.
+     */
+    private void awaitInvalidations(int count) {
+        await().atMost(Duration.FIVE_SECONDS).until(() -> get("/_metrics").path("etagIndex.invalidations"), equalTo(count));
+    }
+
+    @Test
+    public void testConditionalGetIsAnsweredFromIndex(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/etags/res").then().assertThat().statusCode(200);
+        awaitInvalidations(2);
+        String etag = get("/server/etags/res").then().assertThat().statusCode(200).extract().header("Etag");
+
+        // a change bypassing the storage without notification is not seen
+        jedis.hset(RESOURCE_KEY, "etag", "changed");
+        with().header("if-none-match", etag).get("/server/etags/res").then().assertThat().statusCode(304);
+        get("/_metrics").then().assertThat().statusCode(200).body("etagIndex.hits", equalTo(1));
+
+        // the index only holds etags, the content is always read from redis
+        get("/server/etags/res").then().assertThat().statusCode(200).header("Etag", equalTo("changed"));
+        async.complete();
+    }
+
+    @Test
+    public void testIndexIsPopulatedByNotModifiedResponses(TestContext context) {
+        Async async = context.async();
+        with().header("if-none-match", "etag1").body("{ \"foo\": \"bar\" }").put("/server/etags/res").then().assertThat().statusCode(200);
+        awaitInvalidations(2);
+        with().header("if-none-match", "etag1").get("/server/etags/res").then().assertThat().statusCode(304);
+        with().header("if-none-match", "etag1").get("/server/etags/res").then().assertThat().statusCode(304);
+        get("/_metrics").then().assertThat().statusCode(200).body("etagIndex.hits", equalTo(1));
+        async.complete();
+    }
+
+    @Test
+    public void testWritesInvalidateIndex(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/etags/res").then().assertThat().statusCode(200);
+        String etag = get("/server/etags/res").then().assertThat().statusCode(200).extract().header("Etag");
+
+        with().body("{ \"foo\": \"new\" }").put("/server/etags/res").then().assertThat().statusCode(200);
+        with().header("if-none-match", etag).get("/server/etags/res").then().assertThat().statusCode(200).body("foo", equalTo("new"));
+
+        String newEtag = get("/server/etags/res").then().extract().header("Etag");
+        // simulates a write of another instance
+        jedis.hset(RESOURCE_KEY, "etag", "other");
+        jedis.publish("rest-storage:invalidations", ":server:etags:res");
+        await().atMost(Duration.FIVE_SECONDS).until(() -> with().header("if-none-match", newEtag).get("/server/etags/res").getStatusCode(), equalTo(200));
+
+        delete("/server/etags").then().assertThat().statusCode(200);
+        with().header("if-none-match", "other").get("/server/etags/res").then().assertThat().statusCode(404);
+        async.complete();
+    }
+}
@@ -0,0 +1,41 @@
+package org.swisspush.reststorage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link EtagIndex} class.
+ */
+public class EtagIndexTest {
+
+    @Test
+    public void testIsNotModified() {
+        EtagIndex index = new EtagIndex(10);
+        assertFalse(index.isNotModified("a", "etag1", 0));
+        index.put("a", new EtagIndex.Entry("etag1", 100), index.generation());
+        assertTrue(index.isNotModified("a", "etag1", 0));
+        assertFalse(index.isNotModified("a", "etag2", 0));
+        assertFalse(index.isNotModified("a", "etag1", 101));
+    }
+
+    @Test
+    public void testBoundedByAmountOfEntries() {
+        EtagIndex index = new EtagIndex(2);
+        index.put("a", new EtagIndex.Entry("a", Long.MAX_VALUE), index.generation());
+        index.put("b", new EtagIndex.Entry("b", Long.MAX_VALUE), index.generation());
+        index.put("c", new EtagIndex.Entry("c", Long.MAX_VALUE), index.generation());
+        assertFalse(index.isNotModified("a", "a", 0));
+        assertTrue(index.isNotModified("c", "c", 0));
+        assertEquals(2, index.metrics().getInteger("entries").intValue());
+        assertEquals(1, index.metrics().getLong("evictions").longValue());
+    }
+
+    @Test
+    public void testInvalidate() {
+        EtagIndex index = new EtagIndex(10);
+        index.put("a", new EtagIndex.Entry("a", Long.MAX_VALUE), index.generation());
+        index.invalidate("a");
+        assertFalse(index.isNotModified("a", "a", 0));
+    }
+}
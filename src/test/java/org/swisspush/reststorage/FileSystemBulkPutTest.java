@@ -0,0 +1,89 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class FileSystemBulkPutTest extends AbstractTestCase {
+
+    private File root = new File(System.getProperty("java.io.tmpdir"), "rest-storage-" + UUID.randomUUID());
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.filesystem)
+                .root(root.getAbsolutePath())
+                .storageAddress("rest-storage")
+                .build();
+    }
+
+    @After
+    public void deleteRoot() throws IOException {
+        if (root.exists()) {
+            Files.walk(root.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private JsonObject resource(String path, String foo) {
+        return new JsonObject().put("path", path).put("content", new JsonObject().put("foo", foo));
+    }
+
+    private String bulk(boolean atomic, JsonObject... resources) {
+        JsonArray array = new JsonArray();
+        for (JsonObject resource : resources) {
+            array.add(resource);
+        }
+        return new JsonObject().put("atomic", atomic).put("resources", array).encode();
+    }
+
+    @Test
+    public void testBulkPut(TestContext context) {
+        Async async = context.async();
+        given().body(bulk(false,
+                resource("/server/bulk/col1/res1", "bar1"),
+                resource("/server/bulk/col1/res2", "bar2"),
+                resource("/server/bulk/col1", "other"),
+                resource("/server/bulk/col1/res1/child", "other"),
+                resource("/server/bulk/compressed", "bar3").put("compress", true)))
+                .when().post("/server/_bulkput")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(200, 200, 405, 405, 400));
+
+        get("/server/bulk/col1/res1").then().assertThat().statusCode(200).body("foo", equalTo("bar1"));
+        get("/server/bulk/col1/res2").then().assertThat().statusCode(200).body("foo", equalTo("bar2"));
+        get("/server/bulk/compressed").then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testAtomicBulkPutNotSupported(TestContext context) {
+        Async async = context.async();
+        given().body(bulk(true,
+                resource("/server/bulk/res1", "bar1"),
+                resource("/server/bulk/res2", "bar2")))
+                .when().post("/server/_bulkput")
+                .then().assertThat().statusCode(400)
+                .body("results.status", contains(400, 400))
+                .body("results[0].error", containsString("not supported"));
+
+        get("/server/bulk/res1").then().assertThat().statusCode(404);
+        async.complete();
+    }
+}
@@ -0,0 +1,64 @@
+package org.swisspush.reststorage;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class FileSystemMultiGetTest extends AbstractTestCase {
+
+    private File root = new File(System.getProperty("java.io.tmpdir"), "rest-storage-" + UUID.randomUUID());
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.filesystem)
+                .root(root.getAbsolutePath())
+                .storageAddress("rest-storage")
+                .build();
+    }
+
+    @After
+    public void deleteRoot() throws IOException {
+        if (root.exists()) {
+            Files.walk(root.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private void writeFile(String path, String content) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMultiGet(TestContext context) throws IOException {
+        Async async = context.async();
+        writeFile("server/multi/col1/res1", "{ \"foo\": \"bar1\" }");
+        writeFile("server/multi/col2/res2", "{ \"foo\": \"bar2\" }");
+
+        given().body("{ \"paths\": [\"/server/multi/col1/res1\", \"/server/multi/col2/res2\", \"/server/multi/missing\", \"/server/multi\"] }")
+                .when().post("/server/_multiget")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(200, 200, 404, 200))
+                .body("results[0].content.foo", equalTo("bar1"))
+                .body("results[1].content.foo", equalTo("bar2"))
+                .body("results[3].collection", contains("col1/", "col2/"));
+        async.complete();
+    }
+}
@@ -0,0 +1,120 @@
+package org.swisspush.reststorage;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class FileSystemStorageExpandTest extends AbstractTestCase {
+
+    private File root = new File(System.getProperty("java.io.tmpdir"), "rest-storage-" + UUID.randomUUID());
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.filesystem)
+                .root(root.getAbsolutePath())
+                .storageAddress("rest-storage")
+                .build();
+    }
+
+    @After
+    public void deleteRoot() throws IOException {
+        if (root.exists()) {
+            Files.walk(root.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private void writeFile(String path, String content) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeCollection() throws IOException {
+        writeFile("server/expand/a1", "{ \"foo\": \"a1\" }");
+        writeFile("server/expand/a2", "{ \"foo\": \"a2\" }");
+        writeFile("server/expand/b1", "{ \"foo\": \"b1\" }");
+        writeFile("server/expand/sub/sub1", "{ \"foo\": \"sub1\" }");
+        writeFile("server/expand/sub/deeper/deep1", "{ \"foo\": \"deep1\" }");
+    }
+
+    @Test
+    public void testStorageExpand(TestContext context) throws IOException {
+        Async async = context.async();
+        writeCollection();
+
+        String etag = given().body("{ \"subResources\": [\"a1\", \"sub/\", \"missing\"] }")
+                .when().post("/server/expand?storageExpand=true")
+                .then().assertThat().statusCode(200).header("Etag", not(empty()))
+                .body("keySet()", containsInAnyOrder("a1", "sub"))
+                .body("a1.foo", equalTo("a1"))
+                .body("sub", contains("deeper/", "sub1"))
+                .extract().header("Etag");
+
+        given().header("if-none-match", etag).body("{ \"subResources\": [\"a1\", \"sub/\", \"missing\"] }")
+                .when().post("/server/expand?storageExpand=true")
+                .then().assertThat().statusCode(304);
+
+        given().body("{ \"subResources\": [\"sub/\"] }")
+                .when().post("/server/expand?storageExpand=true&depth=3")
+                .then().assertThat().statusCode(200)
+                .body("sub.sub1.foo", equalTo("sub1"))
+                .body("sub.deeper.deep1.foo", equalTo("deep1"));
+
+        given().body("{ \"subResources\": [\"missing\", \"../expand/\"] }")
+                .when().post("/server/expand?storageExpand=true")
+                .then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testExpandAllSubResources(TestContext context) throws IOException {
+        Async async = context.async();
+        writeCollection();
+
+        given().body("{ \"allSubResources\": true }")
+                .when().post("/server/expand?storageExpand=true")
+                .then().assertThat().statusCode(200)
+                .body("keySet()", containsInAnyOrder("sub", "a1", "a2", "b1"))
+                .body("b1.foo", equalTo("b1"));
+
+        given().body("{ \"allSubResources\": true, \"prefix\": \"a\", \"offset\": 1, \"limit\": 5 }")
+                .when().post("/server/expand?storageExpand=true")
+                .then().assertThat().statusCode(200)
+                .body("keySet()", containsInAnyOrder("a2"));
+
+        given().body("{ \"allSubResources\": true }")
+                .when().post("/server/missing?storageExpand=true")
+                .then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testStorageExpandWithInvalidResource(TestContext context) throws IOException {
+        Async async = context.async();
+        writeFile("server/expand/valid", "{ \"foo\": \"bar\" }");
+        writeFile("server/expand/invalid", "no json");
+
+        given().body("{ \"subResources\": [\"valid\", \"invalid\"] }")
+                .when().post("/server/expand?storageExpand=true")
+                .then().assertThat().statusCode(500)
+                .body("error", equalTo("Error decoding invalid json resource 'invalid'"));
+        async.complete();
+    }
+}
@@ -0,0 +1,105 @@
+package org.swisspush.reststorage;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Verifies that all keys written by the redis storage contain the hash tag of the configured prefixes, so that they
+ * are stored in the same slot of a redis cluster.
+ */
+@RunWith(VertxUnitRunner.class)
+public class HashTagPrefixTest extends AbstractTestCase {
+
+    private static final String HASH_TAG = "{rs}";
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .expirablePrefix(HASH_TAG + ":expirable")
+                .resourcesPrefix(HASH_TAG + ":resources")
+                .collectionsPrefix(HASH_TAG + ":collections")
+                .deltaResourcesPrefix(HASH_TAG + ":delta:resources")
+                .deltaEtagsPrefix(HASH_TAG + ":delta:etags")
+                .lockPrefix(HASH_TAG + ":locks")
+                .redisChunkSize(1024)
+                .build();
+    }
+
+    private String largeJson(int size) {
+        StringBuilder sb = new StringBuilder("{ \"data\": \"");
+        while (sb.length() < size) {
+            sb.append("0123456789abcdef");
+        }
+        return sb.append("\" }").toString();
+    }
+
+    @Test
+    public void testAllKeysContainHashTag(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/tagged/col/res1").then().assertThat().statusCode(200);
+        with().header("x-expire-after", "100").body("{ \"foo\": \"bar\" }").put("/server/tagged/col/res2").then().assertThat().statusCode(200);
+        with().header("x-lock", "owner").body("{ \"foo\": \"bar\" }").put("/server/tagged/locked").then().assertThat().statusCode(200);
+        with().body(largeJson(3 * 1024)).put("/server/tagged/big").then().assertThat().statusCode(200);
+
+        get("/server/tagged/col/res1").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+        get("/server/tagged/big").then().assertThat().statusCode(200);
+        get("/server/tagged/col/").then().assertThat().statusCode(200).body("col", hasItems("res1", "res2"));
+        given().body("{ \"subResources\": [\"res1\", \"res2\"] }")
+                .when().post("/server/tagged/col?storageExpand=true")
+                .then().assertThat().statusCode(200).body("res1.foo", equalTo("bar"));
+
+        Set<String> keys = jedis.keys("*");
+        context.assertFalse(keys.isEmpty());
+        for (String key : keys) {
+            context.assertTrue(key.contains(HASH_TAG), "key without hash tag: " + key);
+        }
+
+        delete("/server/tagged/col/res1").then().assertThat().statusCode(200);
+        get("/server/tagged/col/res1").then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testCleanupWithHashTag(TestContext context) {
+        Async async = context.async();
+        with().header("x-expire-after", "1").body("{ \"foo\": \"bar\" }").put("/server/tagged/expiring").then().assertThat().statusCode(200);
+        await().atMost(3, TimeUnit.SECONDS).until(() -> get("/server/tagged/expiring").statusCode(), equalTo(404));
+        post("/server/_cleanup").then().assertThat().statusCode(200).body("cleanedResources", equalTo(1));
+        context.assertFalse(jedis.exists(HASH_TAG + ":resources:server:tagged:expiring"));
+        async.complete();
+    }
+
+    @Test
+    public void testDerivedKeysContainHashTag(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/tagged/col/sub/res1").then().assertThat().statusCode(200);
+        with().header("x-expire-after", "1").body("{ \"foo\": \"bar\" }").put("/server/tagged/col/res2").then().assertThat().statusCode(200);
+        get("/server/tagged/col/").then().assertThat().statusCode(200);
+        await().atMost(3, TimeUnit.SECONDS).until(() -> get("/server/tagged/col/res2").statusCode(), equalTo(404));
+        post("/server/_cleanup").then().assertThat().statusCode(200).body("cleanedResources", equalTo(1));
+        context.assertTrue(jedis.exists(HASH_TAG + ":collections-lex:server:tagged:col"));
+        delete("/server/tagged/col").then().assertThat().statusCode(200);
+
+        // the reclaim counter is removed again once the small collection is reclaimed by the delete itself
+        Set<String> keys = jedis.keys("*");
+        context.assertFalse(keys.contains(HASH_TAG + ":collections-reclaim-id"));
+        context.assertTrue(keys.contains(HASH_TAG + ":expirable-lease-token"));
+        for (String key : keys) {
+            context.assertTrue(key.contains(HASH_TAG), "key without hash tag: " + key);
+        }
+        async.complete();
+    }
+}
@@ -0,0 +1,105 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Base64;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class MultiGetTest extends AbstractTestCase {
+
+    @Test
+    public void testMultiGet(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar1\" }").put("/server/multi/col1/res1").then().assertThat().statusCode(200);
+        with().body("[1, 2, 3]").put("/server/multi/col2/res2").then().assertThat().statusCode(200);
+        with().body("no json").put("/server/multi/col2/text").then().assertThat().statusCode(200);
+        String etag = get("/server/multi/col1/res1").then().extract().header("Etag");
+
+        int dispatched = get("/_metrics").path("redisPool.totalDispatched");
+        given().body("{ \"paths\": [\"/server/multi/col1/res1\", \"/server/multi/col2/res2\", \"/server/multi/missing\", " +
+                "\"/server/multi/col2/\", \"/server/multi/col2/text\", \"/other/res\"] }")
+                .when().post("/server/_multiget")
+                .then().assertThat().statusCode(200)
+                .body("results.path", contains("/server/multi/col1/res1", "/server/multi/col2/res2", "/server/multi/missing",
+                        "/server/multi/col2/", "/server/multi/col2/text", "/other/res"))
+                .body("results.status", contains(200, 200, 404, 200, 200, 404))
+                .body("results[0].etag", equalTo(etag))
+                .body("results[0].content.foo", equalTo("bar1"))
+                .body("results[1].content", contains(1, 2, 3))
+                .body("results[3].collection", contains("res2", "text"))
+                .body("results[4].base64", equalTo(Base64.getEncoder().encodeToString("no json".getBytes())));
+
+        // all resources are read in a single evaluation
+        get("/_metrics").then().assertThat()
+                .body("redisPool.totalDispatched", equalTo(dispatched + 1))
+                .body("multiGets", equalTo(1));
+        async.complete();
+    }
+
+    @Test
+    public void testMultiGetFailure(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar1\" }").put("/server/multi/res1").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"bar2\" }").put("/server/multi/res2").then().assertThat().statusCode(200);
+        // the get script fails on a resource of the wrong type, which fails the whole batch
+        jedis.del("rest-storage:resources:server:multi:res2");
+        jedis.set("rest-storage:resources:server:multi:res2", "no hash");
+
+        given().body("{ \"paths\": [\"/server/multi/res1\", \"/server/multi/res2\"] }")
+                .when().post("/server/_multiget")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(500, 500))
+                .body("results[0].error", not(isEmptyOrNullString()));
+        // a single path is evaluated without the batch script
+        given().body("{ \"paths\": [\"/server/multi/res2\"] }")
+                .when().post("/server/_multiget")
+                .then().assertThat().statusCode(200)
+                .body("results.status", contains(500));
+        async.complete();
+    }
+
+    @Test
+    public void testMultiGetWithoutPaths(TestContext context) {
+        Async async = context.async();
+        given().body("{ \"paths\": [] }").when().post("/server/_multiget")
+                .then().assertThat().statusCode(200).body("results", empty());
+        given().body("{ \"resources\": [] }").when().post("/server/_multiget")
+                .then().assertThat().statusCode(400);
+        given().body("no json").when().post("/server/_multiget")
+                .then().assertThat().statusCode(400);
+        async.complete();
+    }
+
+    @Test
+    public void testMultiGetOverEventBus(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar1\" }").put("/server/multi/col1/res1").then().assertThat().statusCode(200);
+
+        JsonObject header = new JsonObject().put("method", "POST").put("uri", "/server/_multiget");
+        Buffer headerBuffer = Buffer.buffer(header.encode());
+        Buffer request = Buffer.buffer().appendInt(headerBuffer.length()).appendBuffer(headerBuffer)
+                .appendString(new JsonObject().put("paths", new JsonArray().add("/server/multi/col1/res1")).encode());
+        vertx.eventBus().<Buffer>send("rest-storage", request, reply -> {
+            context.assertTrue(reply.succeeded());
+            Buffer response = reply.result().body();
+            int headerLength = response.getInt(0);
+            JsonObject responseHeader = new JsonObject(response.getString(4, headerLength + 4));
+            context.assertEquals(200, responseHeader.getInteger("statusCode"));
+            JsonObject result = new JsonObject(response.getString(headerLength + 4, response.length()))
+                    .getJsonArray("results").getJsonObject(0);
+            context.assertEquals(200, result.getInteger("status"));
+            context.assertEquals("bar1", result.getJsonObject("content").getString("foo"));
+            async.complete();
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package org.swisspush.reststorage;
+
+import com.jayway.awaitility.Duration;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class NearCacheStorageTest extends AbstractTestCase {
+
+    private static final String CHANNEL = "rest-storage:invalidations";
+    private static final String RESOURCE_KEY = "rest-storage:resources:server:cache:res";
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .redisNearCacheSize(1024 * 1024)
+                .build();
+    }
+
+    /**
+     * Waits until the invalidation messages published by the writes were received, so that they do not remove the
+     * entries added by the following reads. Every write invalidates the caches twice, directly and with its message.
+     */
+    private void awaitInvalidations(int count) {
+        await().atMost(Duration.FIVE_SECONDS).until(() -> get("/_metrics").path("nearCache.invalidations"), equalTo(count));
+    }
+
+    @Test
+    public void testGetIsServedFromCache(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/cache/res").then().assertThat().statusCode(200);
+        awaitInvalidations(2);
+        get("/server/cache/res").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+
+        // a change bypassing the storage without notification is not seen
+        jedis.hset(RESOURCE_KEY, "resource", "{ \"foo\": \"changed\" }");
+        get("/server/cache/res").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+
+        get("/_metrics").then().assertThat().statusCode(200)
+                .body("nearCache.hits", equalTo(1))
+                .body("nearCache.misses", equalTo(1))
+                .body("nearCache.entries", equalTo(1));
+        async.complete();
+    }
+
+    @Test
+    public void testPutInvalidatesCache(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/cache/res").then().assertThat().statusCode(200);
+        String etag = get("/server/cache/res").then().assertThat().statusCode(200).extract().header("Etag");
+        with().header("if-none-match", etag).get("/server/cache/res").then().assertThat().statusCode(304);
+
+        with().body("{ \"foo\": \"new\" }").put("/server/cache/res").then().assertThat().statusCode(200);
+        get("/server/cache/res").then().assertThat().statusCode(200).body("foo", equalTo("new"));
+        with().header("if-none-match", etag).get("/server/cache/res").then().assertThat().statusCode(200);
+        async.complete();
+    }
+
+    @Test
+    public void testDeleteOfCollectionInvalidatesCache(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/cache/res").then().assertThat().statusCode(200);
+        get("/server/cache/res").then().assertThat().statusCode(200);
+        delete("/server/cache").then().assertThat().statusCode(200);
+        get("/server/cache/res").then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testInvalidationFromOtherInstance(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/cache/res").then().assertThat().statusCode(200);
+        get("/server/cache/res").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+
+        // simulates a write of another instance
+        jedis.hset(RESOURCE_KEY, "resource", "{ \"foo\": \"changed\" }");
+        jedis.publish(CHANNEL, ":server:cache:res");
+        await().atMost(Duration.FIVE_SECONDS).until(() -> get("/server/cache/res").body().jsonPath().getString("foo"), equalTo("changed"));
+        async.complete();
+    }
+
+    @Test
+    public void testCachedResourceExpires(TestContext context) {
+        Async async = context.async();
+        with().header("x-expire-after", "1").body("{ \"foo\": \"bar\" }").put("/server/cache/res").then().assertThat().statusCode(200);
+        get("/server/cache/res").then().assertThat().statusCode(200);
+        await().atMost(Duration.FIVE_SECONDS).until(() -> get("/server/cache/res").getStatusCode(), equalTo(404));
+        async.complete();
+    }
+}
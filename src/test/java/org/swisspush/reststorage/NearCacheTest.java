@@ -0,0 +1,81 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link NearCache} class.
+ */
+public class NearCacheTest {
+
+    private NearCache.Entry entry(int size, String etag) {
+        return new NearCache.Entry(Buffer.buffer(new byte[size]), etag, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testGetAndPut() {
+        NearCache cache = new NearCache(10000);
+        assertNull(cache.get("a", 0));
+        cache.put("a", entry(10, "etag1"), cache.generation());
+        assertEquals("etag1", cache.get("a", 0).getEtag());
+        assertEquals(1, cache.metrics().getLong("hits").longValue());
+        assertEquals(1, cache.metrics().getLong("misses").longValue());
+        assertEquals(0.5, cache.metrics().getDouble("hitRatio"), 0.001);
+    }
+
+    @Test
+    public void testExpiredEntryIsRemoved() {
+        NearCache cache = new NearCache(10000);
+        cache.put("a", new NearCache.Entry(Buffer.buffer("x"), "etag1", 100), cache.generation());
+        assertNotNull(cache.get("a", 100));
+        assertNull(cache.get("a", 101));
+        assertEquals(0, cache.metrics().getLong("size").longValue());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        NearCache cache = new NearCache(1000);
+        cache.put("a", entry(300, "a"), cache.generation());
+        cache.put("b", entry(300, "b"), cache.generation());
+        cache.get("a", 0);
+        cache.put("c", entry(300, "c"), cache.generation());
+        assertNotNull(cache.get("a", 0));
+        assertNull(cache.get("b", 0));
+        assertNotNull(cache.get("c", 0));
+        assertEquals(1, cache.metrics().getLong("evictions").longValue());
+        assertTrue(cache.metrics().getLong("size") <= 1000);
+    }
+
+    @Test
+    public void testTooLargeEntryIsNotCached() {
+        NearCache cache = new NearCache(1000);
+        cache.put("a", entry(2000, "a"), cache.generation());
+        assertNull(cache.get("a", 0));
+    }
+
+    @Test
+    public void testReadStartedBeforeInvalidationIsNotCached() {
+        NearCache cache = new NearCache(10000);
+        long generation = cache.generation();
+        cache.invalidate("a");
+        cache.put("a", entry(10, "etag1"), generation);
+        assertNull(cache.get("a", 0));
+    }
+
+    @Test
+    public void testInvalidateTree() {
+        NearCache cache = new NearCache(10000);
+        cache.put("server:col:a", entry(10, "a"), cache.generation());
+        cache.put("server:col:sub:b", entry(10, "b"), cache.generation());
+        cache.put("server:colx", entry(10, "c"), cache.generation());
+        cache.invalidate("server:col" + NearCache.TREE_SUFFIX);
+        assertNull(cache.get("server:col:a", 0));
+        assertNull(cache.get("server:col:sub:b", 0));
+        assertNotNull(cache.get("server:colx", 0));
+        cache.invalidate("server:colx");
+        assertNull(cache.get("server:colx", 0));
+        assertEquals(0, cache.metrics().getLong("size").longValue());
+    }
+}
@@ -0,0 +1,37 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+/**
+ * Measures the bytes allocated per GET and PUT of resources of different sizes in the {@link RedisStorage}.
+ */
+public class RedisAllocationBenchmark extends AbstractStorageBenchmark {
+
+    private static final int WARMUP = 200;
+    private static final int OPERATIONS = 500;
+
+    @Test
+    public void allocationPerRequest() throws Exception {
+        RedisStorage storage = createStorage(redisConfiguration().build());
+        measure(storage, 1024);
+        measure(storage, 64 * 1024);
+        measure(storage, 1024 * 1024);
+    }
+
+    private void measure(RedisStorage storage, int size) throws Exception {
+        Buffer content = Buffer.buffer(new byte[size]);
+        String path = "/benchmark/allocation/res" + size;
+        int operations = size > 64 * 1024 ? OPERATIONS / 10 : OPERATIONS;
+
+        runConcurrently(WARMUP, 1, (i, done) -> put(storage, path, content, done));
+        long before = allocatedBytes();
+        runConcurrently(operations, 1, (i, done) -> put(storage, path, content, done));
+        report("redis allocation PUT", size + " bytes", "bytes/op", (allocatedBytes() - before) / (double) operations);
+
+        runConcurrently(WARMUP, 1, (i, done) -> get(storage, path, result -> done.handle(null)));
+        before = allocatedBytes();
+        runConcurrently(operations, 1, (i, done) -> get(storage, path, result -> done.handle(null)));
+        report("redis allocation GET", size + " bytes", "bytes/op", (allocatedBytes() - before) / (double) operations);
+    }
+}
@@ -0,0 +1,44 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+/**
+ * Compares the throughput of the {@link RedisStorage} with and without batching of the lua script evaluations.
+ */
+public class RedisBatchingBenchmark extends AbstractStorageBenchmark {
+
+    private static final int RESOURCES = 1000;
+    private static final int OPERATIONS = 50000;
+    private static final int CONCURRENCY = 500;
+    private static final Buffer CONTENT = Buffer.buffer("{ \"foo\": \"bar\", \"count\": 12345 }");
+
+    @Test
+    public void compareThroughput() throws Exception {
+        measure("unbatched", -1);
+        measure("batched per event loop tick", 0);
+        measure("batched with 1ms window", 1);
+    }
+
+    private void measure(String variant, long batchWindow) throws Exception {
+        jedis.flushAll();
+        RedisStorage storage = createStorage(redisConfiguration().redisBatchWindow(batchWindow).build());
+        runConcurrently(RESOURCES, CONCURRENCY, (i, done) -> put(storage, "/benchmark/batching/res" + i, CONTENT, done));
+
+        // warm up
+        runConcurrently(OPERATIONS / 10, CONCURRENCY, (i, done) -> mixed(storage, i, done));
+
+        double throughput = runConcurrently(OPERATIONS, CONCURRENCY, (i, done) -> mixed(storage, i, done));
+        report("redis batching (get/put 50/50)", variant, "ops/s", throughput);
+    }
+
+    private void mixed(RedisStorage storage, int index, Handler<Void> done) {
+        String path = "/benchmark/batching/res" + (index % RESOURCES);
+        if (index % 2 == 0) {
+            get(storage, path, content -> done.handle(null));
+        } else {
+            put(storage, path, CONTENT, done);
+        }
+    }
+}
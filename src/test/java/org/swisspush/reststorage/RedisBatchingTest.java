@@ -0,0 +1,120 @@
+package org.swisspush.reststorage;
+
+import com.jayway.restassured.RestAssured;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class RedisBatchingTest extends AbstractTestCase {
+
+    private static final int REQUESTS = 50;
+    // long enough for the concurrent requests to be collected into the same batches
+    private static final int BATCH_WINDOW = 10;
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .redisBatchWindow(BATCH_WINDOW)
+                .redisBatchMaxSize(20)
+                .build();
+    }
+
+    @Before
+    public void setPath() {
+        RestAssured.basePath = "/server/batch";
+    }
+
+    @Test
+    public void testConcurrentRequestsAreBatched(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient(new HttpClientOptions().setDefaultPort(8989).setMaxPoolSize(REQUESTS));
+        AtomicInteger puts = new AtomicInteger();
+        for (int i = 0; i < REQUESTS; i++) {
+            String body = "{ \"foo\": \"bar" + i + "\" }";
+            client.put("/server/batch/res" + i, response -> {
+                context.assertEquals(200, response.statusCode());
+                if (puts.incrementAndGet() == REQUESTS) {
+                    getAll(context, client, async);
+                }
+            }).putHeader("content-length", String.valueOf(body.length())).end(body);
+        }
+    }
+
+    private void getAll(TestContext context, HttpClient client, Async async) {
+        AtomicInteger gets = new AtomicInteger();
+        for (int i = 0; i < REQUESTS; i++) {
+            String expected = "bar" + i;
+            client.getNow("/server/batch/res" + i, response -> {
+                context.assertEquals(200, response.statusCode());
+                response.bodyHandler(body -> {
+                    context.assertEquals(expected, body.toJsonObject().getString("foo"));
+                    if (gets.incrementAndGet() == REQUESTS) {
+                        assertBatched(context, client, async);
+                    }
+                });
+            });
+        }
+    }
+
+    /**
+     * The concurrent requests are sent in batches of at least two and at most redisBatchMaxSize evaluations.
+     */
+    private void assertBatched(TestContext context, HttpClient client, Async async) {
+        client.getNow("/_metrics", response -> response.bodyHandler(body -> {
+            JsonObject batchMetrics = body.toJsonObject().getJsonObject("redisBatch");
+            long batches = batchMetrics.getLong("totalBatches");
+            long commands = batchMetrics.getLong("totalBatchedCommands");
+            context.assertTrue(batches > 0, "no evaluation was batched");
+            context.assertTrue(commands >= 2 * batches, "a batch contains a single evaluation");
+            context.assertTrue(commands <= 2 * REQUESTS, "more evaluations batched than requested");
+            context.assertTrue(batchMetrics.getInteger("largestBatch") >= 2);
+            context.assertTrue(batchMetrics.getInteger("largestBatch") <= 20);
+            client.close();
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void testBatchedResultsAreDispatched(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("resources/res").then().assertThat().statusCode(200);
+        get("resources/res").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+        get("resources/notExisting").then().assertThat().statusCode(404);
+        get("resources").then().assertThat().statusCode(200).body("resources", hasItem("res"));
+        delete("resources/res").then().assertThat().statusCode(200);
+        delete("resources/res").then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testBatchMetrics(TestContext context) {
+        Async async = context.async();
+        RestAssured.basePath = "";
+        get("/_metrics")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("redisBatch.window", equalTo(BATCH_WINDOW))
+                .body("redisBatch.maxSize", equalTo(20))
+                .body("redisBatch.pending", equalTo(0))
+                .body("redisBatch.totalBatches", equalTo(0))
+                .body("redisBatch.totalBatchedCommands", equalTo(0))
+                .body("redisBatch.largestBatch", equalTo(0));
+        async.complete();
+    }
+}
@@ -0,0 +1,79 @@
+package org.swisspush.reststorage;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.http.ContentType;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class RedisClientPoolTest extends AbstractTestCase {
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .redisPoolSize(3)
+                .redisPoolStrategy(ModuleConfiguration.RedisPoolStrategy.leastOutstanding)
+                .redisMaxInFlight(1)
+                .build();
+    }
+
+    @Before
+    public void setPath() {
+        RestAssured.basePath = "/server/pool";
+    }
+
+    @Test
+    public void testCrudWithPooledConnections(TestContext context) {
+        Async async = context.async();
+        for (int i = 0; i < 20; i++) {
+            with().body("{ \"foo\": \"bar" + i + "\" }").put("res" + i).then().assertThat().statusCode(200);
+        }
+        for (int i = 0; i < 20; i++) {
+            when().get("res" + i).then().assertThat().statusCode(200).body("foo", equalTo("bar" + i));
+        }
+        delete("res0").then().assertThat().statusCode(200);
+        get("res0").then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testPoolMetrics(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("res");
+        get("res");
+
+        RestAssured.basePath = "";
+        get("/_metrics")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .contentType(ContentType.JSON)
+                .body("redisPool.size", equalTo(3))
+                .body("redisPool.strategy", equalTo("leastOutstanding"))
+                .body("redisPool.maxInFlight", equalTo(1))
+                .body("redisPool.inFlight", equalTo(0))
+                .body("redisPool.totalDispatched", greaterThanOrEqualTo(2));
+        async.complete();
+    }
+
+    @Test
+    public void testResourceNamedMetrics(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("_metrics").then().assertThat().statusCode(200);
+
+        // only the metrics path below the prefix is reserved
+        get("_metrics").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+        get("").then().assertThat().statusCode(200).body("pool", hasItem("_metrics"));
+        async.complete();
+    }
+}
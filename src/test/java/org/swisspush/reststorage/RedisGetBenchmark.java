@@ -0,0 +1,100 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import org.junit.Test;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures latency and garbage collection of GET requests over http for resources of different sizes.
+ */
+public class RedisGetBenchmark extends AbstractStorageBenchmark {
+
+    private static final int PORT = 8989;
+    private static final int CONCURRENCY = 16;
+    private static final int WARMUP = 2000;
+
+    private HttpClient client;
+
+    @Test
+    public void getLatency() throws Exception {
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(new RestStorageMod(), new DeploymentOptions().setConfig(redisConfiguration().build().asJsonObject()), result -> {
+            if (result.succeeded()) {
+                deployed.complete(result.result());
+            } else {
+                deployed.completeExceptionally(result.cause());
+            }
+        });
+        deployed.get(10, TimeUnit.SECONDS);
+
+        CompletableFuture<HttpClient> created = new CompletableFuture<>();
+        context.runOnContext(v -> created.complete(vertx.createHttpClient(new HttpClientOptions()
+                .setDefaultPort(PORT).setKeepAlive(true).setMaxPoolSize(CONCURRENCY))));
+        client = created.get(10, TimeUnit.SECONDS);
+
+        measure(1024, 20000);
+        measure(64 * 1024, 5000);
+        measure(1024 * 1024, 500);
+    }
+
+    private void measure(int size, int operations) throws Exception {
+        String path = "/benchmark/get/res" + size;
+        runConcurrently(1, 1, (i, done) -> client.put(path, response -> response.endHandler(v -> done.handle(null)))
+                .end(Buffer.buffer(new byte[size])));
+
+        runConcurrently(WARMUP, CONCURRENCY, (i, done) -> get(path, done));
+
+        long[] latencies = new long[operations];
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long allocated = allocatedBytes();
+        double throughput = runConcurrently(operations, CONCURRENCY, (i, done) -> {
+            long start = System.nanoTime();
+            get(path, v -> {
+                latencies[i] = System.nanoTime() - start;
+                done.handle(null);
+            });
+        });
+        allocated = allocatedBytes() - allocated;
+        gcCount = gcCount() - gcCount;
+        gcTime = gcTime() - gcTime;
+
+        Arrays.sort(latencies);
+        String variant = size + " bytes";
+        report("http GET", variant, "ops/s", throughput);
+        report("http GET", variant, "ms p50", latencies[operations / 2] / 1000000.0);
+        report("http GET", variant, "ms p99", latencies[operations * 99 / 100] / 1000000.0);
+        report("http GET", variant, "bytes/op", allocated / (double) operations);
+        report("http GET", variant, "gc collections", gcCount);
+        report("http GET", variant, "gc ms", gcTime);
+    }
+
+    private void get(String path, Handler<Void> done) {
+        client.getNow(path, response -> response.endHandler(v -> done.handle(null)));
+    }
+
+    private long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+}
@@ -0,0 +1,48 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+/**
+ * Measures the amount of redis commands executed by a PUT, including the commands of the put script, for paths of
+ * different depths.
+ */
+public class RedisPutCommandsBenchmark extends AbstractStorageBenchmark {
+
+    private static final int OPERATIONS = 500;
+
+    @Test
+    public void commandsPerPut() throws Exception {
+        RedisStorage storage = createStorage(redisConfiguration().build());
+        for (int depth : new int[]{2, 4, 8, 12}) {
+            StringBuilder collection = new StringBuilder();
+            for (int level = 1; level < depth; level++) {
+                collection.append("/level").append(level);
+            }
+            String path = collection.toString();
+            runConcurrently(1, 1, (i, done) -> put(storage, path + "/first", Buffer.buffer("{}"), done));
+
+            long commands = redisCommands();
+            runConcurrently(OPERATIONS, 1, (i, done) -> put(storage, path + "/res" + i, Buffer.buffer("{\"created\":" + i + "}"), done));
+            report("redis commands per PUT", "depth " + depth + " new resource", "commands/op", (redisCommands() - commands) / (double) OPERATIONS);
+
+            commands = redisCommands();
+            runConcurrently(OPERATIONS, 1, (i, done) -> put(storage, path + "/res" + i, Buffer.buffer("{\"updated\":" + i + "}"), done));
+            report("redis commands per PUT", "depth " + depth + " update", "commands/op", (redisCommands() - commands) / (double) OPERATIONS);
+        }
+    }
+
+    /**
+     * Returns the amount of commands executed by redis so far, without the info commands of the benchmark.
+     */
+    private long redisCommands() {
+        long calls = 0;
+        for (String line : jedis.info("commandstats").split("\r\n")) {
+            if (line.startsWith("cmdstat_") && !line.startsWith("cmdstat_info:")) {
+                int start = line.indexOf("calls=") + "calls=".length();
+                calls += Long.parseLong(line.substring(start, line.indexOf(',', start)));
+            }
+        }
+        return calls;
+    }
+}
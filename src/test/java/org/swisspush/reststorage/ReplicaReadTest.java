@@ -0,0 +1,137 @@
+package org.swisspush.reststorage;
+
+import com.jayway.awaitility.Duration;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+import redis.clients.jedis.Jedis;
+import redis.embedded.RedisServer;
+
+import java.util.Collections;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests the routing of reads to a redis replica. The second configured replica does not exist and must never be used.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ReplicaReadTest extends AbstractTestCase {
+
+    private static final int REPLICA_PORT = 6380;
+
+    private static RedisServer replicaServer;
+
+    @BeforeClass
+    public static void startReplica() {
+        replicaServer = RedisServer.builder()
+                .redisExecProvider(RedisEmbeddedConfiguration.customProvider)
+                .port(REPLICA_PORT)
+                .slaveOf("localhost", 6379)
+                .build();
+        replicaServer.start();
+    }
+
+    @AfterClass
+    public static void stopReplica() {
+        replicaServer.stop();
+    }
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .redisReplicas("localhost:" + REPLICA_PORT + ", localhost:6399")
+                .redisReplicaHedging(true)
+                .build();
+    }
+
+    private void awaitReplica(String path) {
+        await().atMost(Duration.FIVE_SECONDS).until(() -> get("/_metrics").path("redisReplicas.replicas[0].usable"), equalTo(true));
+        await().atMost(Duration.FIVE_SECONDS).until(() -> get(path).statusCode(), equalTo(200));
+    }
+
+    @Test
+    public void testReadsFromReplica(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/replicated/res").then().assertThat().statusCode(200);
+        awaitReplica("/server/replicated/res");
+
+        get("/server/replicated/res").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+        get("/server/replicated/").then().assertThat().statusCode(200).body("replicated", hasItem("res"));
+        given().body("{ \"subResources\": [\"res\"] }")
+                .when().post("/server/replicated?storageExpand=true")
+                .then().assertThat().statusCode(200).body("res.foo", equalTo("bar"));
+
+        get("/_metrics").then().assertThat().statusCode(200)
+                .body("redisReplicas.replicas[0].dispatched", greaterThanOrEqualTo(3))
+                .body("redisReplicas.replicas[1].usable", equalTo(false))
+                .body("redisReplicas.replicas[1].dispatched", equalTo(0));
+        async.complete();
+    }
+
+    @Test
+    public void testFallbackToPrimaryWithoutScript(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/replicated/res").then().assertThat().statusCode(200);
+        awaitReplica("/server/replicated/res");
+
+        try (Jedis replica = new Jedis("localhost", REPLICA_PORT)) {
+            replica.scriptFlush();
+        }
+        get("/server/replicated/res").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+        get("/_metrics").then().assertThat().statusCode(200).body("redisReplicas.fallbacks", equalTo(1));
+
+        // the script was loaded into the replica again
+        get("/server/replicated/res").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+        get("/_metrics").then().assertThat().statusCode(200).body("redisReplicas.fallbacks", equalTo(1));
+
+        // the primary assumes that the replica still knows the scripts and would keep replicating evalsha commands
+        jedis.scriptFlush();
+        async.complete();
+    }
+
+    @Test
+    public void testHedgedReadWhenReplicaIsBlocked(TestContext context) throws Exception {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/replicated/res").then().assertThat().statusCode(200);
+        awaitReplica("/server/replicated/res");
+
+        // collect enough latency samples to calculate the percentile
+        for (int i = 0; i < 200; i++) {
+            get("/server/replicated/res").then().assertThat().statusCode(200);
+        }
+        context.assertTrue((Integer) get("/_metrics").path("redisReplicas.latencyP95Micros") > 0);
+
+        // keeps the replica busy for a second
+        Thread blocker = new Thread(() -> {
+            try (Jedis replica = new Jedis("localhost", REPLICA_PORT)) {
+                replica.eval("local start = redis.call('time') " +
+                        "while true do " +
+                        "local now = redis.call('time') " +
+                        "if (now[1] - start[1]) * 1000000 + (now[2] - start[2]) > 1000000 then break end " +
+                        "end " +
+                        "return 1", Collections.emptyList(), Collections.emptyList());
+            }
+        });
+        blocker.start();
+        Thread.sleep(100);
+
+        long start = System.currentTimeMillis();
+        get("/server/replicated/res").then().assertThat().statusCode(200).body("foo", equalTo("bar"));
+        context.assertTrue(System.currentTimeMillis() - start < 500, "hedged read must not wait for the blocked replica");
+        blocker.join();
+
+        get("/_metrics").then().assertThat().statusCode(200)
+                .body("redisReplicas.hedgedReads", greaterThanOrEqualTo(1))
+                .body("redisReplicas.hedgeWins", greaterThanOrEqualTo(1));
+        async.complete();
+    }
+}
@@ -0,0 +1,87 @@
+package org.swisspush.reststorage;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class StorageExpandAllTest extends AbstractTestCase {
+
+    private void putCollection() {
+        with().body("{ \"foo\": \"a1\" }").put("/server/all/a1").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"a2\" }").put("/server/all/a2").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"b1\" }").put("/server/all/b1").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"sub1\" }").put("/server/all/sub/sub1").then().assertThat().statusCode(200);
+    }
+
+    @Test
+    public void testExpandAllSubResources(TestContext context) {
+        Async async = context.async();
+        putCollection();
+
+        given().body("{ \"allSubResources\": true }")
+                .when().post("/server/all?storageExpand=true")
+                .then().assertThat().statusCode(200).header("Etag", not(empty()))
+                .body("", allOf(hasKey("a1"), hasKey("a2"), hasKey("b1"), hasKey("sub")))
+                .body("a1.foo", equalTo("a1"))
+                .body("b1.foo", equalTo("b1"))
+                .body("sub", contains("sub1"));
+
+        given().body("{ \"allSubResources\": true }")
+                .when().post("/server/all?storageExpand=true&depth=2")
+                .then().assertThat().statusCode(200)
+                .body("sub.sub1.foo", equalTo("sub1"));
+        async.complete();
+    }
+
+    @Test
+    public void testExpandAllSubResourcesWithPrefixAndWindow(TestContext context) {
+        Async async = context.async();
+        putCollection();
+
+        given().body("{ \"allSubResources\": true, \"prefix\": \"a\" }")
+                .when().post("/server/all?storageExpand=true")
+                .then().assertThat().statusCode(200)
+                .body("keySet()", containsInAnyOrder("a1", "a2"));
+
+        // the collections are listed first, like in the listing of a collection
+        given().body("{ \"allSubResources\": true, \"offset\": 1, \"limit\": 2 }")
+                .when().post("/server/all?storageExpand=true")
+                .then().assertThat().statusCode(200)
+                .body("keySet()", hasSize(2))
+                .body("", not(hasKey("sub")));
+
+        given().body("{ \"allSubResources\": true, \"prefix\": \"x\" }")
+                .when().post("/server/all?storageExpand=true")
+                .then().assertThat().statusCode(200)
+                .body("keySet()", empty());
+        async.complete();
+    }
+
+    @Test
+    public void testExpandAllSubResourcesOfMissingCollection(TestContext context) {
+        Async async = context.async();
+        given().body("{ \"allSubResources\": true }")
+                .when().post("/server/missing?storageExpand=true")
+                .then().assertThat().statusCode(404);
+        async.complete();
+    }
+
+    @Test
+    public void testInvalidExpandAllSubResources(TestContext context) {
+        Async async = context.async();
+        putCollection();
+        given().body("{ \"allSubResources\": true, \"subResources\": [\"a1\"] }")
+                .when().post("/server/all?storageExpand=true")
+                .then().assertThat().statusCode(400);
+        given().body("{ \"allSubResources\": true, \"offset\": -1 }")
+                .when().post("/server/all?storageExpand=true")
+                .then().assertThat().statusCode(400);
+        async.complete();
+    }
+}
@@ -0,0 +1,94 @@
+package org.swisspush.reststorage;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+import org.swisspush.reststorage.util.ResourceNameUtil;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the bytes allocated and the cpu time per storage expand of a collection with 1000 children. The writing
+ * of the expanded json is compared with the former processing, which parsed every resource into a tree and encoded
+ * the whole result again before calculating the etag.
+ */
+public class StorageExpandBenchmark extends AbstractStorageBenchmark {
+
+    private static final int CHILDREN = 1000;
+    private static final int WARMUP = 50;
+    private static final int OPERATIONS = 200;
+
+    @Test
+    public void expandOfThousandChildren() throws Exception {
+        RedisStorage storage = createStorage(redisConfiguration().build());
+        List<String> subResources = new ArrayList<>();
+        JsonArray entries = new JsonArray();
+        JsonArray formerResult = new JsonArray();
+        for (int i = 0; i < CHILDREN; i++) {
+            String name = "res" + i;
+            String content = new JsonObject().put("name", name).put("index", i).put("tags", new JsonArray().add("a").add("b"))
+                    .put("nested", new JsonObject().put("description", "a child of the expanded collection")).encode();
+            subResources.add(name);
+            entries.add(new JsonArray().add("r").add(name).add(content));
+            formerResult.add(new JsonArray().add(name).add(content));
+        }
+        runConcurrently(CHILDREN, 10, (i, done) -> put(storage, "/benchmark/expand/" + subResources.get(i),
+                Buffer.buffer(entries.getJsonArray(i).getString(2)), done));
+        String formerValue = formerResult.encode();
+
+        measure("storage expand", "redis and json writing", (i, done) -> storageExpand(storage, subResources, done));
+        measure("storage expand json", "single parse", (i, done) -> storage.expandedTree(entries, null, resource -> read(resource, done)));
+        measure("storage expand json", "tree rebuild (former)", (i, done) -> {
+            formerProcessing(formerValue);
+            done.handle(null);
+        });
+    }
+
+    private void measure(String benchmark, String variant, Operation operation) throws Exception {
+        runConcurrently(WARMUP, 1, operation);
+        long allocated = allocatedBytes();
+        long cpu = processCpuTime();
+        runConcurrently(OPERATIONS, 1, operation);
+        report(benchmark, variant, "bytes/op", (allocatedBytes() - allocated) / (double) OPERATIONS);
+        report(benchmark, variant, "cpu us/op", (processCpuTime() - cpu) / 1000.0 / OPERATIONS);
+    }
+
+    private void storageExpand(RedisStorage storage, List<String> subResources, Handler<Void> done) {
+        storage.storageExpand("/benchmark/expand", null, subResources, resource -> read(resource, done));
+    }
+
+    private void read(Resource resource, Handler<Void> done) {
+        if (!(resource instanceof DocumentResource)) {
+            done.handle(null);
+            return;
+        }
+        DocumentResource documentResource = (DocumentResource) resource;
+        documentResource.readStream.endHandler(v -> done.handle(null));
+        documentResource.readStream.handler(data -> {
+            // the content is dropped
+        });
+    }
+
+    /**
+     * The processing of the storage expand result before the json was written from the entries.
+     */
+    private String formerProcessing(String value) {
+        JsonObject expandResult = new JsonObject();
+        for (Object resultEntry : new JsonArray(value)) {
+            JsonArray entry = (JsonArray) resultEntry;
+            expandResult.put(ResourceNameUtil.resetReplacedColonsAndSemiColons(entry.getString(0)), new JsonObject(entry.getString(1)));
+        }
+        byte[] content = expandResult.encode().getBytes(StandardCharsets.ISO_8859_1);
+        return DigestUtils.sha1Hex(content);
+    }
+
+    private long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
@@ -0,0 +1,154 @@
+package org.swisspush.reststorage;
+
+import com.jayway.restassured.http.ContentType;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class StorageExpandChunkTest extends AbstractTestCase {
+
+    private static final int CHUNK_SIZE = 2;
+    private static final long MAX_BYTES = 100;
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .storageExpandChunkSize(CHUNK_SIZE)
+                .storageExpandChunkConsistency(true)
+                .storageExpandMaxBytes(MAX_BYTES)
+                .build();
+    }
+
+    private void putResources() {
+        for (int i = 1; i <= 5; i++) {
+            with().body("{ \"foo\": \"res" + i + "\" }").put("/server/chunks/res" + i).then().assertThat().statusCode(200);
+        }
+        with().body("{ \"foo\": \"sub1\" }").put("/server/chunks/sub/sub1").then().assertThat().statusCode(200);
+    }
+
+    @Test
+    public void testExpandInChunks(TestContext context) {
+        Async async = context.async();
+        putResources();
+
+        String content = given().body("{ \"subResources\": [\"res5\", \"sub/\", \"res1\", \"missing\", \"res3\", \"res1\"] }")
+                .when().post("/server/chunks?storageExpand=true")
+                .then().assertThat().statusCode(200).contentType(ContentType.JSON).header("Etag", not(empty()))
+                .extract().asString();
+        // the merged entries keep the order of the requested sub resources
+        context.assertEquals(Arrays.asList("res5", "sub", "res1", "res3"), new ArrayList<>(new JsonObject(content).fieldNames()));
+        context.assertEquals(new JsonObject("{\"res5\":{\"foo\":\"res5\"},\"sub\":[\"sub1\"],\"res1\":{\"foo\":\"res1\"}," +
+                "\"res3\":{\"foo\":\"res3\"}}"), new JsonObject(content));
+
+        // the duplicate is removed, 5 sub resources are expanded with 3 evaluations
+        get("/_metrics").then().assertThat()
+                .body("storageExpandChunks.total", equalTo(1))
+                .body("storageExpandChunks.evaluations", equalTo(3));
+        async.complete();
+    }
+
+    @Test
+    public void testExpandInChunksWithDepth(TestContext context) {
+        Async async = context.async();
+        putResources();
+
+        given().body("{ \"subResources\": [\"res1\", \"res2\", \"sub/\"] }")
+                .when().post("/server/chunks?storageExpand=true&depth=2")
+                .then().assertThat().statusCode(200)
+                .body("res1.foo", equalTo("res1"))
+                .body("res2.foo", equalTo("res2"))
+                .body("sub.sub1.foo", equalTo("sub1"));
+        async.complete();
+    }
+
+    @Test
+    public void testExpandInChunksSharesTheBudget(TestContext context) {
+        Async async = context.async();
+        // two resources fit into the budget, three do not
+        for (int i = 1; i <= 6; i++) {
+            with().body("{ \"foo\": \"res" + i + "-------------------------\" }").put("/server/chunks/big/res" + i)
+                    .then().assertThat().statusCode(200);
+        }
+
+        given().body("{ \"subResources\": [\"res1\", \"res2\", \"res3\", \"res4\", \"res5\", \"res6\"] }")
+                .when().post("/server/chunks/big?storageExpand=true&depth=2")
+                .then().assertThat().statusCode(409).body(containsString("exceeds the limit"));
+        // the second chunk exceeds the budget left by the first one, the third chunk is not evaluated
+        get("/_metrics").then().assertThat()
+                .body("storageExpandChunks.total", equalTo(1))
+                .body("storageExpandChunks.evaluations", equalTo(2));
+        async.complete();
+    }
+
+    @Test
+    public void testEtagOfExpandInChunks(TestContext context) {
+        Async async = context.async();
+        putResources();
+        String body = "{ \"subResources\": [\"res1\", \"res2\", \"res3\", \"res4\"] }";
+
+        String etag = given().body(body).when().post("/server/chunks?storageExpand=true").getHeader("Etag");
+        context.assertEquals(etag, given().body(body).when().post("/server/chunks?storageExpand=true").getHeader("Etag"));
+
+        // only the etags of the chunks are evaluated
+        given().header("if-none-match", etag).body(body)
+                .when().post("/server/chunks?storageExpand=true")
+                .then().assertThat().statusCode(304);
+        get("/_metrics").then().assertThat()
+                .body("storageExpandChunks.total", equalTo(3))
+                .body("storageExpandChunks.evaluations", equalTo(6));
+
+        with().body("{ \"foo\": \"changed\" }").put("/server/chunks/res4").then().assertThat().statusCode(200);
+        given().header("if-none-match", etag).body(body)
+                .when().post("/server/chunks?storageExpand=true")
+                .then().assertThat().statusCode(200).header("Etag", not(equalTo(etag)))
+                .body("res4.foo", equalTo("changed"));
+        async.complete();
+    }
+
+    @Test
+    public void testExpandAllInChunks(TestContext context) {
+        Async async = context.async();
+        putResources();
+
+        given().body("{ \"allSubResources\": true }")
+                .when().post("/server/chunks?storageExpand=true")
+                .then().assertThat().statusCode(200)
+                .body("sub", contains("sub1"))
+                .body("res5.foo", equalTo("res5"));
+        get("/_metrics").then().assertThat()
+                .body("storageExpandChunks.total", equalTo(1))
+                .body("storageExpandChunks.evaluations", equalTo(3));
+
+        // members within the chunk size are expanded by a single evaluation
+        given().body("{ \"allSubResources\": true, \"offset\": 1, \"limit\": 2 }")
+                .when().post("/server/chunks?storageExpand=true")
+                .then().assertThat().statusCode(200)
+                .body("res1.foo", equalTo("res1"))
+                .body("res2.foo", equalTo("res2"));
+        get("/_metrics").then().assertThat().body("storageExpandChunks.total", equalTo(1));
+        async.complete();
+    }
+
+    @Test
+    public void testExpandInChunksNotFound(TestContext context) {
+        Async async = context.async();
+        putResources();
+        given().body("{ \"subResources\": [\"missing1\", \"missing2\", \"missing3\"] }")
+                .when().post("/server/chunks?storageExpand=true")
+                .then().assertThat().statusCode(404);
+        async.complete();
+    }
+}
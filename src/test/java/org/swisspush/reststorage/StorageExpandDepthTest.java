@@ -0,0 +1,168 @@
+package org.swisspush.reststorage;
+
+import com.jayway.restassured.http.ContentType;
+import com.jayway.restassured.response.Response;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.swisspush.reststorage.util.ModuleConfiguration;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@RunWith(VertxUnitRunner.class)
+public class StorageExpandDepthTest extends AbstractTestCase {
+
+    private static final int MAX_NODES = 20;
+    private static final long MAX_BYTES = 1024;
+
+    @Override
+    protected ModuleConfiguration createModuleConfiguration() {
+        return ModuleConfiguration.with()
+                .storageType(ModuleConfiguration.StorageType.redis)
+                .storageAddress("rest-storage")
+                .storageExpandMaxNodes(MAX_NODES)
+                .storageExpandMaxBytes(MAX_BYTES)
+                .build();
+    }
+
+    private void putTree() {
+        with().body("{ \"foo\": \"res1\" }").put("/server/tree/res1").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"sub1\" }").put("/server/tree/sub/sub1").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"sub2\" }").put("/server/tree/sub/sub2").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"deep1\" }").put("/server/tree/sub/deeper/deep1").then().assertThat().statusCode(200);
+        with().body("{ \"foo\": \"deepest\" }").put("/server/tree/sub/deeper/deepest/leaf").then().assertThat().statusCode(200);
+    }
+
+    @Test
+    public void testExpandWithDepth(TestContext context) {
+        Async async = context.async();
+        putTree();
+
+        given().body("{ \"subResources\": [\"res1\", \"sub/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=3")
+                .then().assertThat().statusCode(200).contentType(ContentType.JSON).header("Etag", not(empty()))
+                .body("res1.foo", equalTo("res1"))
+                .body("sub.sub1.foo", equalTo("sub1"))
+                .body("sub.sub2.foo", equalTo("sub2"))
+                .body("sub.deeper.deep1.foo", equalTo("deep1"))
+                .body("sub.deeper.deepest", contains("leaf"));
+
+        given().body("{ \"subResources\": [\"sub/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=2")
+                .then().assertThat().statusCode(200)
+                .body("sub.sub1.foo", equalTo("sub1"))
+                .body("sub.deeper", contains("deepest/", "deep1"));
+
+        String content = given().body("{ \"subResources\": [\"sub/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=10").asString();
+        context.assertEquals(new JsonObject("{\"sub\":{\"deeper\":{\"deepest\":{\"leaf\":{\"foo\":\"deepest\"}}," +
+                "\"deep1\":{\"foo\":\"deep1\"}},\"sub1\":{\"foo\":\"sub1\"},\"sub2\":{\"foo\":\"sub2\"}}}"), new JsonObject(content));
+        async.complete();
+    }
+
+    @Test
+    public void testExpandNonAsciiNames(TestContext context) {
+        Async async = context.async();
+        byte[] resource = "{ \"foo\": \"prix \u20ac\" }".getBytes(StandardCharsets.UTF_8);
+        with().body(resource).put("/server/tree/caf\u00e9/\u20acuro").then().assertThat().statusCode(200);
+        with().body(resource).put("/server/tree/caf\u00e9/sub/\u00fcber").then().assertThat().statusCode(200);
+
+        Response response = given().body("{ \"subResources\": [\"caf\\u00e9/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=2");
+        response.then().assertThat().statusCode(200);
+        byte[] content = response.asByteArray();
+        // the length is counted in bytes of the utf-8 encoded names
+        context.assertEquals(String.valueOf(content.length), response.getHeader("Content-Length"));
+        context.assertEquals(new JsonObject("{\"caf\u00e9\":{\"sub\":[\"\u00fcber\"],\"\u20acuro\":{\"foo\":\"prix \u20ac\"}}}"),
+                new JsonObject(new String(content, StandardCharsets.UTF_8)));
+        async.complete();
+    }
+
+    @Test
+    public void testDepthOneIsTheDefault(TestContext context) {
+        Async async = context.async();
+        putTree();
+
+        Response withoutDepth = given().body("{ \"subResources\": [\"res1\", \"sub/\"] }").when().post("/server/tree?storageExpand=true");
+        Response withDepth = given().body("{ \"subResources\": [\"res1\", \"sub/\"] }").when().post("/server/tree?storageExpand=true&depth=1");
+        withoutDepth.then().assertThat().statusCode(200).body("sub", contains("deeper/", "sub1", "sub2"));
+        context.assertEquals(withoutDepth.asString(), withDepth.asString());
+        context.assertEquals(withoutDepth.getHeader("Etag"), withDepth.getHeader("Etag"));
+        async.complete();
+    }
+
+    @Test
+    public void testEtagOfExpandWithDepth(TestContext context) {
+        Async async = context.async();
+        putTree();
+
+        String etag = given().body("{ \"subResources\": [\"sub/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=3").getHeader("Etag");
+        given().header("if-none-match", etag).body("{ \"subResources\": [\"sub/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=3")
+                .then().assertThat().statusCode(304);
+
+        with().body("{ \"foo\": \"changed\" }").put("/server/tree/sub/deeper/deep1").then().assertThat().statusCode(200);
+        given().header("if-none-match", etag).body("{ \"subResources\": [\"sub/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=3")
+                .then().assertThat().statusCode(200).header("Etag", not(equalTo(etag)))
+                .body("sub.deeper.deep1.foo", equalTo("changed"));
+        async.complete();
+    }
+
+    @Test
+    public void testExpandWithDepthExceedingTheBudget(TestContext context) {
+        Async async = context.async();
+        for (int i = 0; i < MAX_NODES; i++) {
+            with().body("{ \"foo\": \"bar\" }").put("/server/tree/many/res" + i).then().assertThat().statusCode(200);
+        }
+        given().body("{ \"subResources\": [\"many/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=2")
+                .then().assertThat().statusCode(409).body(containsString("exceeds the limit"));
+
+        StringBuilder large = new StringBuilder("{ \"foo\": \"");
+        for (int i = 0; i < MAX_BYTES; i++) {
+            large.append('x');
+        }
+        with().body(large.append("\" }").toString()).put("/server/tree/large/res").then().assertThat().statusCode(200);
+        given().body("{ \"subResources\": [\"large/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=2")
+                .then().assertThat().statusCode(409);
+
+        // the budget does not apply to the expand of a single level
+        given().body("{ \"subResources\": [\"many/\"] }")
+                .when().post("/server/tree?storageExpand=true")
+                .then().assertThat().statusCode(200).body("many", hasSize(MAX_NODES));
+        async.complete();
+    }
+
+    @Test
+    public void testExpandWithDepthAndInvalidResource(TestContext context) {
+        Async async = context.async();
+        with().body("{ \"foo\": \"bar\" }").put("/server/tree/sub/valid").then().assertThat().statusCode(200);
+        with().body("no json").put("/server/tree/sub/invalid").then().assertThat().statusCode(200);
+        given().body("{ \"subResources\": [\"sub/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=2")
+                .then().assertThat().statusCode(500).body("error", equalTo("Error decoding invalid json resource 'invalid'"));
+        async.complete();
+    }
+
+    @Test
+    public void testInvalidDepth(TestContext context) {
+        Async async = context.async();
+        putTree();
+        given().body("{ \"subResources\": [\"sub/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=0")
+                .then().assertThat().statusCode(400);
+        given().body("{ \"subResources\": [\"sub/\"] }")
+                .when().post("/server/tree?storageExpand=true&depth=all")
+                .then().assertThat().statusCode(400);
+        async.complete();
+    }
+}
@@ -404,27 +404,28 @@ public class StorageExpandTest extends AbstractTestCase {
         with().body("{ \"foo\": \"bar1\" }").put("/server/resources/res1");
         with().header(COMPRESS_HEADER, "true").body("{ \"foo\": \"bar2\" }").put("/server/resources/res2");
         with().body("{ \"foo\": \"bar3\" }").put("/server/resources/res3");
+        with().header(COMPRESS_HEADER, "true").body("{ \"foo\": \"bar4\" }").put("/server/resources/res4");
 
-        given()
-                .body("{ \"subResources\": [\"res1\", \"res2\", \"res3\"] }")
+        String etag = given()
+                .body("{ \"subResources\": [\"res1\", \"res2\", \"res3\", \"res4\"] }")
                 .when()
                 .post(POST_STORAGE_EXP)
                 .then()
-                .assertThat()
-                .statusCode(409)
-                .body(containsString("Collections having compressed resources are not supported in storage expand"));
-
+                .assertThat().statusCode(200).contentType(ContentType.JSON).header(ETAG_HEADER, not(empty()))
+                .body("", allOf(hasKey("res1"), hasKey("res2"), hasKey("res3"), hasKey("res4")))
+                .body("res1.foo", equalTo("bar1"))
+                .body("res2.foo", equalTo("bar2"))
+                .body("res3.foo", equalTo("bar3"))
+                .body("res4.foo", equalTo("bar4"))
+                .extract().header(ETAG_HEADER);
 
-        // make storage expand again without the compressed resource
         given()
-                .body("{ \"subResources\": [\"res1\", \"res3\"] }")
+                .header(IF_NONE_MATCH_HEADER, etag)
+                .body("{ \"subResources\": [\"res1\", \"res2\", \"res3\", \"res4\"] }")
                 .when()
                 .post(POST_STORAGE_EXP)
                 .then()
-                .assertThat().statusCode(200).contentType(ContentType.JSON).header(ETAG_HEADER, not(empty()))
-                .body("", allOf(hasKey("res1"), hasKey("res3")))
-                .body("res1.foo", equalTo("bar1"))
-                .body("res3.foo", equalTo("bar3"));
+                .assertThat().statusCode(304);
 
         async.complete();
     }
@@ -458,9 +459,80 @@ public class StorageExpandTest extends AbstractTestCase {
                 .when()
                 .post("/server/resources/sub?storageExpand=true")
                 .then()
-                .assertThat()
-                .statusCode(409)
-                .body(containsString("Collections having compressed resources are not supported in storage expand"));;
+                .assertThat().statusCode(200).contentType(ContentType.JSON)
+                .body("sub1.foo", equalTo("sub1"))
+                .body("sub2.foo", equalTo("sub2"));
+
+        given()
+                .body("{ \"subResources\": [\"sub/\"] }")
+                .when()
+                .post("/server/resources?storageExpand=true&depth=2")
+                .then()
+                .assertThat().statusCode(200).contentType(ContentType.JSON)
+                .body("sub.sub2.foo", equalTo("sub2"));
+
+        async.complete();
+    }
+
+    @Test
+    public void testCorruptCompressedResource(TestContext context) {
+        Async async = context.async();
+        delete("/server/resources");
+
+        with().body("{ \"foo\": \"bar1\" }").put("/server/resources/res1");
+        with().header(COMPRESS_HEADER, "true").body("{ \"foo\": \"bar2\" }").put("/server/resources/res2");
+
+        // cripple compressed data to make it impossible to decompress
+        jedis.hset("rest-storage:resources:server:resources:res2", "resource", "{ \"foo\": \"bar2\" }");
+
+        given()
+                .body("{ \"subResources\": [\"res1\", \"res2\"] }")
+                .when()
+                .post(POST_STORAGE_EXP)
+                .then()
+                .assertThat().statusCode(409)
+                .body(containsString("Error during decompression of resource 'res2'"));
+
+        async.complete();
+    }
+
+    @Test
+    public void testNotModifiedWithoutReadingResources(TestContext context) {
+        Async async = context.async();
+        delete("/server/resources");
+
+        with().body("{ \"foo\": \"bar1\" }").put("/server/resources/res1");
+        with().body("{ \"foo\": \"sub1\" }").put("/server/resources/sub/sub1");
+
+        String etag = given()
+                .body("{ \"subResources\": [\"res1\", \"sub/\"] }")
+                .when()
+                .post(POST_STORAGE_EXP)
+                .then()
+                .assertThat().statusCode(200).header(ETAG_HEADER, not(empty()))
+                .extract().header(ETAG_HEADER);
+
+        // the etag is calculated from the etags of the resources, the corrupted body is not read
+        jedis.hset("rest-storage:resources:server:resources:res1", "resource", "no json");
+        given()
+                .header(IF_NONE_MATCH_HEADER, etag)
+                .body("{ \"subResources\": [\"res1\", \"sub/\"] }")
+                .when()
+                .post(POST_STORAGE_EXP)
+                .then()
+                .assertThat().statusCode(304);
+
+        // a new member of a listed collection changes the etag
+        with().body("{ \"foo\": \"sub2\" }").put("/server/resources/sub/sub2");
+        with().body("{ \"foo\": \"bar1\" }").put("/server/resources/res1");
+        given()
+                .header(IF_NONE_MATCH_HEADER, etag)
+                .body("{ \"subResources\": [\"res1\", \"sub/\"] }")
+                .when()
+                .post(POST_STORAGE_EXP)
+                .then()
+                .assertThat().statusCode(200).header(ETAG_HEADER, not(equalTo(etag)))
+                .body("sub", contains("sub1", "sub2"));
 
         async.complete();
     }
@@ -9,6 +9,7 @@
 package org.swisspush.reststorage.lua;
 
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.apache.commons.lang.text.StrSubstitutor;
 import org.swisspush.reststorage.JedisFactory;
 import org.swisspush.reststorage.RedisEmbeddedConfiguration;
 import org.junit.After;
@@ -23,6 +24,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -84,7 +87,17 @@ public abstract class AbstractLuaScriptTest {
         return readScript(scriptFileName, false);
     }
 
+    /**
+     * Reads the script and substitutes the functions of detached collections like the RedisStorage does.
+     */
     protected String readScript(String scriptFileName, boolean stripLogNotice) {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("DETACHED_COLLECTIONS", readScriptFile("detachedCollections.lua", stripLogNotice));
+        StrSubstitutor sub = new StrSubstitutor(values, "--%(", ")");
+        return sub.replace(readScriptFile(scriptFileName, stripLogNotice));
+    }
+
+    protected String readScriptFile(String scriptFileName, boolean stripLogNotice) {
         BufferedReader in = new BufferedReader(new InputStreamReader(this.getClass().getClassLoader().getResourceAsStream(scriptFileName)));
         StringBuilder sb;
         try {
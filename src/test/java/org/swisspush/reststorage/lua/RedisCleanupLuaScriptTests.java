@@ -15,6 +15,7 @@ import static org.junit.Assert.assertThat;
 public class RedisCleanupLuaScriptTests extends AbstractLuaScriptTest {
 
     private static final double MAX_EXPIRE_IN_MILLIS = 9999999999999d;
+    private static final String LEASE_KEY = "rest-storage:expirable-lease";
 
     @Test
     public void cleanupAllExpiredAmount2() throws InterruptedException {
@@ -150,6 +151,64 @@ public class RedisCleanupLuaScriptTests extends AbstractLuaScriptTest {
         assertThat(jedis.zcount("rest-storage:collections:project:server:test:test1", getNowAsDouble(), MAX_EXPIRE_IN_MILLIS), equalTo(1000000l));
     }
 
+    @Test
+    public void cleanupWithFencingTokenOfCurrentLease() throws InterruptedException {
+
+        // ARRANGE
+        String now = String.valueOf(System.currentTimeMillis());
+        evalScriptPutNoReturn(":project:server:test:test1:test2", "{\"content\": \"test/test1/test2\"}", now);
+        Long token = evalScriptCleanupLease("owner1", "acquire");
+        Thread.sleep(10);
+
+        // ACT
+        Long count = (Long) evalScriptCleanup(0, System.currentTimeMillis(), 1000, LEASE_KEY, token);
+
+        // ASSERT
+        assertThat(count, equalTo(1l));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test1:test2"), equalTo(false));
+    }
+
+    @Test
+    public void cleanupWithStaleFencingToken() throws InterruptedException {
+
+        // ARRANGE
+        String now = String.valueOf(System.currentTimeMillis());
+        evalScriptPutNoReturn(":project:server:test:test1:test2", "{\"content\": \"test/test1/test2\"}", now);
+        Long staleToken = evalScriptCleanupLease("owner1", "acquire");
+        evalScriptCleanupLease("owner1", "release");
+        evalScriptCleanupLease("owner2", "acquire");
+        Thread.sleep(10);
+
+        // ACT
+        Long count = (Long) evalScriptCleanup(0, System.currentTimeMillis(), 1000, LEASE_KEY, staleToken);
+
+        // ASSERT
+        assertThat(count, equalTo(-1l));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test1:test2"), equalTo(true));
+    }
+
+    @Test
+    public void cleanupLeaseHeldBySingleOwner() {
+
+        // ACT
+        Long token1 = evalScriptCleanupLease("owner1", "acquire");
+        Long refused = evalScriptCleanupLease("owner2", "acquire");
+        Long renewed = evalScriptCleanupLease("owner1", "acquire");
+        Long notReleased = evalScriptCleanupLease("owner2", "release");
+        Long stillRefused = evalScriptCleanupLease("owner2", "acquire");
+        evalScriptCleanupLease("owner1", "release");
+        Long token2 = evalScriptCleanupLease("owner2", "acquire");
+
+        // ASSERT
+        assertThat(token1, equalTo(1l));
+        assertThat(refused, equalTo(0l));
+        assertThat(renewed, equalTo(1l));
+        assertThat(notReleased, equalTo(0l));
+        assertThat(stillRefused, equalTo(0l));
+        assertThat(token2, equalTo(2l));
+        assertThat(jedis.hget(LEASE_KEY, "owner"), equalTo("owner2"));
+    }
+
     private Object evalScriptCleanup(final long minscore, final long now) {
         return evalScriptCleanup(minscore, now, 1000, false);
     }
@@ -158,14 +217,24 @@ public class RedisCleanupLuaScriptTests extends AbstractLuaScriptTest {
         return evalScriptCleanup(minscore, now, bulkSize, false);
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked", "serial" })
     private Object evalScriptCleanup(final long minscore, final long now, final int bulkSize, final boolean stripLogNotice) {
+        return evalScriptCleanup(minscore, now, bulkSize, stripLogNotice, null, 0);
+    }
+
+    private Object evalScriptCleanup(final long minscore, final long now, final int bulkSize, final String leaseKey, final long fencingToken) {
+        return evalScriptCleanup(minscore, now, bulkSize, false, leaseKey, fencingToken);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked", "serial" })
+    private Object evalScriptCleanup(final long minscore, final long now, final int bulkSize, final boolean stripLogNotice,
+                                     final String leaseKey, final long fencingToken) {
 
         Map<String, String> values = new HashMap<String, String>();
-        values.put("delscript", readScript("del.lua", stripLogNotice).replaceAll("return", "--return"));
+        values.put("delscript", readScriptFile("del.lua", stripLogNotice).replaceAll("return", "--return"));
+        values.put("DETACHED_COLLECTIONS", readScriptFile("detachedCollections.lua", stripLogNotice));
 
         StrSubstitutor sub = new StrSubstitutor(values, "--%(", ")");
-        String cleanupScript = sub.replace(readScript("cleanup.lua", stripLogNotice));
+        String cleanupScript = sub.replace(readScriptFile("cleanup.lua", stripLogNotice));
         return jedis.eval(cleanupScript, new ArrayList(), new ArrayList() {
                     {
                         add(prefixResources);
@@ -177,7 +246,15 @@ public class RedisCleanupLuaScriptTests extends AbstractLuaScriptTest {
                         add(String.valueOf(MAX_EXPIRE_IN_MILLIS));
                         add(String.valueOf(now));
                         add(String.valueOf(bulkSize));
-
+                        if (leaseKey != null) {
+                            add("");
+                            add("");
+                            add("");
+                            add("1000");
+                            add(leaseKey);
+                            add(String.valueOf(fencingToken));
+                            add("10000");
+                        }
                     }
                 }
         );
@@ -205,4 +282,21 @@ public class RedisCleanupLuaScriptTests extends AbstractLuaScriptTest {
                 }
         );
     }
+
+    @SuppressWarnings({ "rawtypes", "unchecked", "serial" })
+    private Long evalScriptCleanupLease(final String owner, final String mode) {
+        String leaseScript = readScript("cleanupLease.lua");
+        return (Long) jedis.eval(leaseScript, new ArrayList() {
+                    {
+                        add(LEASE_KEY);
+                    }
+                }, new ArrayList() {
+                    {
+                        add(owner);
+                        add("10000");
+                        add(mode);
+                    }
+                }
+        );
+    }
 }
@@ -4,6 +4,7 @@ import org.junit.Test;
 import org.swisspush.reststorage.util.LockMode;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import static com.jayway.awaitility.Awaitility.await;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -316,6 +317,109 @@ public class RedisDelLuaScriptTests extends AbstractLuaScriptTest {
         assertThat(jedis.exists("rest-storage:resources" + path3), equalTo(false));
     }
 
+    @Test
+    public void deleteCollectionDetachedAndReclaimedInBatches() {
+
+        // ARRANGE
+        evalScriptPut(":project:server:test:test1:test2", "{\"content\": \"test/test1/test2\"}");
+        evalScriptPut(":project:server:test:test1:test3", "{\"content\": \"test/test1/test3\"}");
+        evalScriptPut(":project:server:test:test4", "{\"content\": \"test/test4\"}");
+        evalScriptPut(":project:server:test5", "{\"content\": \"test5\"}");
+
+        // ACT
+        String value = evalScriptDel(":project:server:test", "", LockMode.SILENT, 10, 1);
+
+        // ASSERT
+        assertThat(value, equalTo("detached"));
+        assertThat(jedis.exists("rest-storage:collections:project:server:test"), equalTo(false));
+        assertThat(jedis.zrangeByScore("rest-storage:collections:project:server", getNowAsDouble(), 9999999999999d).iterator().next(), equalTo("test5"));
+        assertThat(jedis.zcard("rest-storage:collections-reclaim"), equalTo(2L));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test1:test2"), equalTo(true));
+
+        // ACT
+        List<Long> result = evalScriptReclaim(2);
+
+        // ASSERT
+        assertThat(result.get(0), equalTo(2L));
+        assertThat(result.get(1), equalTo(1L));
+
+        // ACT
+        result = evalScriptReclaim(2);
+
+        // ASSERT
+        assertThat(result.get(0), equalTo(1L));
+        assertThat(result.get(1), equalTo(0L));
+        assertThat(jedis.exists("rest-storage:collections:project:server:test:test1"), equalTo(false));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test1:test2"), equalTo(false));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test1:test3"), equalTo(false));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test4"), equalTo(false));
+        assertThat(jedis.keys("rest-storage:collections-trash:*").isEmpty(), equalTo(true));
+        assertThat(jedis.hget("rest-storage:resources:project:server:test5", RESOURCE), equalTo("{\"content\": \"test5\"}"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void getAndPutBelowDeletedCollectionBeforeReclaim() {
+
+        // ARRANGE
+        evalScriptPut(":project:server:test:test1:test2", "{\"content\": \"test/test1/test2\"}");
+        evalScriptPut(":project:server:test:test1:test3", "{\"content\": \"test/test1/test3\"}");
+        evalScriptPut(":project:server:test:test4", "{\"content\": \"test/test4\"}");
+        evalScriptPut(":project:server:test5", "{\"content\": \"test5\"}");
+        String value = evalScriptDel(":project:server:test", "", LockMode.SILENT, 10, 1);
+        assertThat(value, equalTo("detached"));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test1:test2"), equalTo(true));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test4"), equalTo(true));
+
+        // ACT / ASSERT
+        assertThat(evalScriptGet(":project:server:test:test1:test2"), equalTo("notFound"));
+        assertThat(evalScriptGet(":project:server:test:test4"), equalTo("notFound"));
+        assertThat(evalScriptGet(":project:server:test"), equalTo("notFound"));
+
+        // the deleted resource is replaced by a collection, the deleted collection starts empty
+        assertThat(evalScriptPut(":project:server:test:test4:test6", "{\"content\": \"test/test4/test6\"}"), equalTo("OK"));
+        assertThat(evalScriptPut(":project:server:test:test1:test7", "{\"content\": \"test/test1/test7\"}"), equalTo("OK"));
+        List<String> values = (List<String>) evalScriptGet(":project:server:test:test1");
+        assertThat(values.size(), equalTo(2));
+        assertThat(values.get(1), equalTo("test7"));
+        assertThat(evalScriptGet(":project:server:test:test1:test2"), equalTo("notFound"));
+
+        // ACT
+        List<Long> result = evalScriptReclaim(100);
+
+        // ASSERT
+        assertThat(result.get(1), equalTo(0L));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test1:test2"), equalTo(false));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test1:test3"), equalTo(false));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test4"), equalTo(false));
+        assertThat(jedis.hget("rest-storage:resources:project:server:test:test4:test6", RESOURCE), equalTo("{\"content\": \"test/test4/test6\"}"));
+        assertThat(jedis.hget("rest-storage:resources:project:server:test:test1:test7", RESOURCE), equalTo("{\"content\": \"test/test1/test7\"}"));
+        values = (List<String>) evalScriptGet(":project:server:test:test1");
+        assertThat(values.size(), equalTo(2));
+        assertThat(values.get(1), equalTo("test7"));
+        assertThat(jedis.keys("rest-storage:collections-trash:*").isEmpty(), equalTo(true));
+        assertThat(jedis.exists("rest-storage:collections-reclaim-id"), equalTo(false));
+    }
+
+    @Test
+    public void deleteBelowDeletedCollectionKeepsNewParent() {
+
+        // ARRANGE
+        evalScriptPut(":project:server:test:test1:test2", "{\"content\": \"test/test1/test2\"}");
+        evalScriptPut(":project:server:test:test4", "{\"content\": \"test/test4\"}");
+        evalScriptDel(":project:server:test", "", LockMode.SILENT, 10, 1);
+        evalScriptPut(":project:server:test:test8", "{\"content\": \"test/test8\"}");
+
+        // ACT
+        String value = evalScriptDel(":project:server:test:test4", "", LockMode.SILENT, 10);
+
+        // ASSERT
+        assertThat(value, equalTo("notFound"));
+        assertThat(jedis.exists("rest-storage:resources:project:server:test:test4"), equalTo(false));
+        assertThat(jedis.zscore("rest-storage:collections:project:server", "test") != null, equalTo(true));
+        assertThat(jedis.hget("rest-storage:resources:project:server:test:test8", RESOURCE), equalTo("{\"content\": \"test/test8\"}"));
+    }
+
     @Test
     public void tryToDeleteWhileAndAfterResourceLock() {
         // ARRANGE
@@ -338,8 +442,12 @@ public class RedisDelLuaScriptTests extends AbstractLuaScriptTest {
         assertThat(jedis.exists(prefixLock + path), equalTo(false));
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked", "serial" })
     private String evalScriptDel(final String resourceName, final String lockOwner, LockMode lockMode, long lockExpire) {
+        return evalScriptDel(resourceName, lockOwner, lockMode, lockExpire, 1000);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked", "serial" })
+    private String evalScriptDel(final String resourceName, final String lockOwner, LockMode lockMode, long lockExpire, final int reclaimBudget) {
         String delScript = readScript("del.lua");
         String lockExpireInMillis = String.valueOf(System.currentTimeMillis() + (lockExpire * 1000));
         return (String) jedis.eval(delScript, new ArrayList() {
@@ -360,6 +468,8 @@ public class RedisDelLuaScriptTests extends AbstractLuaScriptTest {
                         add(lockOwner);
                         add(lockMode.text());
                         add(lockExpireInMillis);
+                        add("");
+                        add(String.valueOf(reclaimBudget));
                     }
                 }
         );
@@ -410,4 +520,25 @@ public class RedisDelLuaScriptTests extends AbstractLuaScriptTest {
         }
         );
     }
+
+    @SuppressWarnings({ "rawtypes", "unchecked", "serial" })
+    private List<Long> evalScriptReclaim(final int budget) {
+        String reclaimScript = readScript("reclaim.lua");
+        return (List<Long>) jedis.eval(reclaimScript, new ArrayList() {
+            {
+                add("rest-storage:collections-reclaim");
+            }
+        }, new ArrayList() {
+            {
+                add(prefixResources);
+                add(prefixCollections);
+                add(prefixDeltaResources);
+                add(prefixDeltaEtags);
+                add(expirableSet);
+                add(prefixLock);
+                add(String.valueOf(budget));
+            }
+        }
+        );
+    }
 }
@@ -269,4 +269,44 @@ public class RedisGetLuaScriptTests extends AbstractLuaScriptTest {
         assertThat(valuesTest3.size(), equalTo(1));
         assertThat(valuesTest3.get(0), equalTo(TYPE_COLLECTION));
     }
+
+    @Test
+    public void getCollectionWithSubCollectionsFromIndex() {
+
+        // ARRANGE
+        evalScriptPut(":project:server:test:test1:col1:res", "{\"content\": \"test/test1/col1/res\"}");
+        evalScriptPut(":project:server:test:test1:res1", "{\"content\": \"test/test1/res1\"}");
+        evalScriptPut(":project:server:test:test1:col2:res", "{\"content\": \"test/test1/col2/res\"}");
+
+        // ACT
+        List<String> valuesTest1 = (List<String>) evalScriptGetOffsetCount(":project:server:test:test1", "0", "-1");
+        List<String> valuesPaged = (List<String>) evalScriptGetOffsetCount(":project:server:test:test1", "1", "2");
+
+        // ASSERT
+        assertThat(jedis.zrange("rest-storage:collections-sub:project:server:test:test1", 0, -1), hasItems("", "col1", "col2"));
+        assertThat(jedis.zrange("rest-storage:collections-sub:project:server:test:test1", 0, -1).size(), equalTo(3));
+        assertThat(valuesTest1.size(), equalTo(4));
+        assertThat(valuesTest1, hasItems("col1:", "col2:", "res1"));
+        assertThat(valuesPaged.size(), equalTo(3));
+        assertThat(valuesPaged.get(1), equalTo("col2:"));
+        assertThat(valuesPaged.get(2), equalTo("res1"));
+    }
+
+    @Test
+    public void getCollectionWithoutSubCollectionIndex() {
+
+        // ARRANGE
+        evalScriptPut(":project:server:test:test1:col1:res", "{\"content\": \"test/test1/col1/res\"}");
+        evalScriptPut(":project:server:test:test1:res1", "{\"content\": \"test/test1/res1\"}");
+        // a collection written by an older version
+        jedis.del("rest-storage:collections-sub:project:server:test:test1");
+
+        // ACT
+        List<String> valuesTest1 = (List<String>) evalScriptGet(":project:server:test:test1");
+
+        // ASSERT
+        assertThat(valuesTest1.size(), equalTo(3));
+        assertThat(valuesTest1, hasItems("col1:", "res1"));
+        assertThat(jedis.zrange("rest-storage:collections-sub:project:server:test:test1", 0, -1), hasItems("", "col1"));
+    }
 }
@@ -537,4 +537,46 @@ public class RedisPutLuaScriptTests extends AbstractLuaScriptTest {
         assertThat(jedis.hget("rest-storage:resources" + lockedPath, RESOURCE), equalTo(newResource));
         assertThat(jedis.exists(prefixLock + lockedPath), equalTo(false));
     }
+
+    @Test
+    public void putResourceUpdatesAncestorsUpToSufficientExpiration() {
+
+        // ACT
+        evalScriptPut(":project:server:test:test1", "{\"content\": \"test/test1\"}", "1000");
+        evalScriptPut(":project:server:test:test2", "{\"content\": \"test/test2\"}", "2000");
+        evalScriptPut(":project:server:test:test3", "{\"content\": \"test/test3\"}", "1500");
+
+        // ASSERT
+        assertThat(jedis.zscore("rest-storage:collections:project", "server"), equalTo(2000d));
+        assertThat(jedis.zscore("rest-storage:collections:project:server", "test"), equalTo(2000d));
+        assertThat(jedis.zscore("rest-storage:collections:project:server:test", "test3"), equalTo(1500d));
+
+        // ACT
+        evalScriptPut(":project:server:test:test2", "{\"content\": \"test/test2\"}", "1200");
+
+        // ASSERT
+        assertThat(jedis.zscore("rest-storage:collections:project", "server"), equalTo(1500d));
+        assertThat(jedis.zscore("rest-storage:collections:project:server", "test"), equalTo(1500d));
+        assertThat(jedis.zscore("rest-storage:collections:project:server:test", "test2"), equalTo(1200d));
+        assertThat(evalScriptPut(":project:server:test:test1:test4", "{\"content\": \"test/test1/test4\"}", "3000"),
+                equalTo("existingResource rest-storage:resources:project:server:test:test1"));
+    }
+
+    @Test
+    public void putResourceCorrectsAncestorWithStaleExpiration() {
+
+        // ARRANGE
+        evalScriptPut(":project:server:test:test1", "{\"content\": \"test/test1\"}", "1000");
+        evalScriptPut(":project:server:test:test2", "{\"content\": \"test/test2\"}", "3000");
+        // the entry keeps the expiration of a resource deleted in the meantime
+        jedis.zadd("rest-storage:collections:project:server", 5000d, "test");
+
+        // ACT
+        evalScriptPut(":project:server:test:test1", "{\"content\": \"test/test1\"}", "1200");
+
+        // ASSERT
+        assertThat(jedis.zscore("rest-storage:collections:project:server:test", "test1"), equalTo(1200d));
+        assertThat(jedis.zscore("rest-storage:collections:project:server", "test"), equalTo(3000d));
+        assertThat(jedis.zscore("rest-storage:collections:project", "server"), equalTo(3000d));
+    }
 }
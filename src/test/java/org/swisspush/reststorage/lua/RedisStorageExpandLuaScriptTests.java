@@ -17,6 +17,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 
@@ -123,7 +124,7 @@ public class RedisStorageExpandLuaScriptTests extends AbstractLuaScriptTest {
         // ASSERT
         assertThat(value.size(), equalTo(1));
         assertThat(value.get(0).get(0), equalTo("sub"));
-        assertThat(value.get(0).get(1), equalTo("[\"othersubsub\\/\",\"subsub\\/\"]"));
+        assertThat(value.get(0).get(1), equalTo("[\"othersubsub/\",\"subsub/\"]"));
 
         // ACT
         subResources = Arrays.asList("subsub/");
@@ -273,6 +274,7 @@ public class RedisStorageExpandLuaScriptTests extends AbstractLuaScriptTest {
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     public void testStorageExpandCompressedDataInCollection() {
 
         // ARRANGE
@@ -280,13 +282,15 @@ public class RedisStorageExpandLuaScriptTests extends AbstractLuaScriptTest {
 
         // ACT
         List<String> subResources = Arrays.asList("item1");
-        String value = (String) evalScriptStorageExpand(":project:server:test", subResources);
+        List<List<String>> value = (List<List<String>>) evalScriptStorageExpand(":project:server:test", subResources);
 
         // ASSERT
-        assertThat(value, equalTo("compressionNotSupported"));
+        assertThat(value.size(), equalTo(2));
+        assertThat(value.get(1), equalTo(Arrays.asList("z", "item1", "{\"content\": \"content_1\"}")));
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     public void testStorageExpandCompressedAndUncompressedDataInCollection() {
 
         // ARRANGE
@@ -296,21 +300,53 @@ public class RedisStorageExpandLuaScriptTests extends AbstractLuaScriptTest {
 
         // ACT
         List<String> subResources = Arrays.asList("item2", "item1", "item3");
-        String value = (String) evalScriptStorageExpand(":project:server:test", subResources);
+        List<List<String>> value = (List<List<String>>) evalScriptStorageExpand(":project:server:test", subResources);
+
+        // ASSERT
+        assertThat(value.size(), equalTo(4));
+        assertThat(value.get(1).get(0), equalTo("z"));
+        assertThat(value.get(1).get(1), equalTo("item2"));
+        assertThat(value.get(2).get(0), equalTo("r"));
+        assertThat(value.get(2).get(1), equalTo("item1"));
+        assertThat(value.get(3).get(0), equalTo("r"));
+        assertThat(value.get(3).get(1), equalTo("item3"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStorageExpandEtagFromResourceEtags() {
+
+        // ARRANGE
+        evalScriptPut(":project:server:test:item1", "{\"content\": \"content_1\"}");
+        evalScriptPut(":project:server:test:sub:sub1", "{\"content\": \"content_sub_1\"}");
+        List<String> subResources = Arrays.asList("item1", "sub/");
+
+        // ACT
+        List<List<String>> value = (List<List<String>>) evalScriptStorageExpand(":project:server:test", subResources);
+        String etag = value.get(0).get(1);
 
         // ASSERT
-        assertThat(value, equalTo("compressionNotSupported"));
+        assertThat(value.get(0).get(0), equalTo("e"));
+        assertThat(evalScriptStorageExpandWithEtag(":project:server:test", subResources, etag), equalTo("notModified"));
+
+        // the resource bodies are not read for a matching etag
+        jedis.hset(prefixResources + ":project:server:test:item1", "resource", "{\"content\"");
+        assertThat(evalScriptStorageExpandWithEtag(":project:server:test", subResources, etag), equalTo("notModified"));
 
         // ACT
-        List<String> subResources2 = Arrays.asList("item1", "item3");
-        List<List<String>> value2 = evalScriptStorageExpandAndExtract(":project:server:test", subResources2);
+        evalScriptPut(":project:server:test:sub:sub2", "{\"content\": \"content_sub_2\"}");
+        value = (List<List<String>>) evalScriptStorageExpandWithEtag(":project:server:test", subResources, etag);
 
         // ASSERT
-        assertThat(value2.size(), equalTo(2));
-        assertThat(value2.get(0).get(0), equalTo("item1"));
-        assertThat(value2.get(0).get(1), equalTo("{\"content\": \"content_1\"}"));
-        assertThat(value2.get(1).get(0), equalTo("item3"));
-        assertThat(value2.get(1).get(1), equalTo("{\"content\": \"content_3\"}"));
+        assertThat(value.get(0).get(0), equalTo("e"));
+        assertThat(value.get(0).get(1), not(equalTo(etag)));
+    }
+
+    private Object evalScriptStorageExpandWithEtag(final String resourceName, final List<String> subResources, final String etag) {
+        String getScript = readScript("storageExpand.lua");
+        return jedis.eval(getScript, Arrays.asList(resourceName), Arrays.asList(prefixResources, prefixCollections, expirableSet,
+                String.valueOf(System.currentTimeMillis()), "9999999999999", StringUtils.join(subResources, ";"),
+                String.valueOf(subResources.size()), "1", "0", "0", etag));
     }
 
     @SuppressWarnings({"rawtypes", "unchecked", "serial"})
@@ -343,23 +379,36 @@ public class RedisStorageExpandLuaScriptTests extends AbstractLuaScriptTest {
         return evalScriptStorageExpandAndExtract(resourceName, subResources, null);
     }
 
+    /**
+     * Extracts the name and the content of every expanded resource and the name and the encoded members of every
+     * listed collection from the entries returned by the script, without the etag.
+     */
+    @SuppressWarnings("unchecked")
     private List<List<String>> evalScriptStorageExpandAndExtract(String resourceName, List<String> subResources, String timestamp){
         List<List<String>> result = new ArrayList<>();
-        String valueStr;
+        Object value;
         if(timestamp != null){
-            valueStr = (String) evalScriptStorageExpand(resourceName, subResources, timestamp);
+            value = evalScriptStorageExpand(resourceName, subResources, timestamp);
         } else {
-            valueStr = (String) evalScriptStorageExpand(resourceName, subResources);
+            value = evalScriptStorageExpand(resourceName, subResources);
         }
 
-        if(valueStr.equals("notFound")){
+        if("notFound".equals(value)){
             return result;
         }
 
-        JsonArray jsonArray = new JsonArray(valueStr);
-        for (Object arr : jsonArray) {
-            JsonArray subArr = (JsonArray) arr;
-            result.add(Arrays.asList(subArr.getString(0), subArr.getString(1)));
+        for (Object entry : (List<Object>) value) {
+            List<Object> entryList = (List<Object>) entry;
+            if("e".equals(entryList.get(0))) {
+                continue;
+            }
+            String content;
+            if("l".equals(entryList.get(0))) {
+                content = new JsonArray((List<Object>) entryList.get(2)).encode();
+            } else {
+                content = (String) entryList.get(2);
+            }
+            result.add(Arrays.asList((String) entryList.get(1), content));
         }
         return result;
     }
@@ -34,6 +34,27 @@ public class ModuleConfigurationTest {
         testContext.assertEquals(config.getDeltaEtagsPrefix(), "delta:etags");
         testContext.assertEquals(config.getResourceCleanupAmount(), 100000L);
         testContext.assertEquals(config.getLockPrefix(), "rest-storage:locks");
+        testContext.assertEquals(config.getRedisPoolSize(), 1);
+        testContext.assertEquals(config.getRedisPoolStrategy(), RedisPoolStrategy.roundRobin);
+        testContext.assertEquals(config.getRedisMaxInFlight(), 0);
+        testContext.assertEquals(config.getRedisBatchWindow(), -1L);
+        testContext.assertEquals(config.getRedisBatchMaxSize(), 100);
+        testContext.assertEquals(config.getRedisChunkSize(), 0);
+        testContext.assertEquals(config.getRedisNearCacheSize(), 0L);
+        testContext.assertEquals(config.getRedisInvalidationChannel(), "rest-storage:invalidations");
+        testContext.assertEquals(config.getRedisEtagIndexSize(), 0);
+        testContext.assertEquals(config.getRedisReplicas(), null);
+        testContext.assertEquals(config.getRedisReplicaMaxLag(), 10);
+        testContext.assertEquals(config.isRedisReplicaHedging(), false);
+        testContext.assertEquals(config.getStorageExpandMaxNodes(), 10000);
+        testContext.assertEquals(config.getStorageExpandMaxBytes(), 10485760L);
+        testContext.assertEquals(config.getStorageExpandChunkSize(), 1000);
+        testContext.assertEquals(config.isStorageExpandChunkConsistency(), false);
+        testContext.assertEquals(config.getCollectionStreamThreshold(), 10000);
+        testContext.assertEquals(config.getReclaimBatchSize(), 1000);
+        testContext.assertEquals(config.getCleanupInterval(), 0L);
+        testContext.assertEquals(config.getCleanupTargetDuration(), 5L);
+        testContext.assertEquals(config.getCleanupLeaseDuration(), 10000L);
     }
 
     @Test
@@ -42,6 +63,27 @@ public class ModuleConfigurationTest {
                 .redisHost("anotherhost")
                 .redisPort(1234)
                 .editorConfig(new JsonObject().put("myKey", "myValue"))
+                .redisPoolSize(4)
+                .redisPoolStrategy(RedisPoolStrategy.leastOutstanding)
+                .redisMaxInFlight(100)
+                .redisBatchWindow(2L)
+                .redisBatchMaxSize(50)
+                .redisChunkSize(1024)
+                .redisNearCacheSize(1048576)
+                .redisInvalidationChannel("my:invalidations")
+                .redisEtagIndexSize(10000)
+                .redisReplicas("replica1:6380,replica2:6380")
+                .redisReplicaMaxLag(5)
+                .redisReplicaHedging(true)
+                .storageExpandMaxNodes(500)
+                .storageExpandMaxBytes(2048L)
+                .storageExpandChunkSize(50)
+                .storageExpandChunkConsistency(true)
+                .collectionStreamThreshold(50)
+                .reclaimBatchSize(20)
+                .cleanupInterval(1000L)
+                .cleanupTargetDuration(10L)
+                .cleanupLeaseDuration(3000L)
                 .build();
 
         // default values
@@ -65,6 +107,27 @@ public class ModuleConfigurationTest {
         testContext.assertNotNull(config.getEditorConfig());
         testContext.assertTrue(config.getEditorConfig().containsKey("myKey"));
         testContext.assertEquals(config.getEditorConfig().getString("myKey"), "myValue");
+        testContext.assertEquals(config.getRedisPoolSize(), 4);
+        testContext.assertEquals(config.getRedisPoolStrategy(), RedisPoolStrategy.leastOutstanding);
+        testContext.assertEquals(config.getRedisMaxInFlight(), 100);
+        testContext.assertEquals(config.getRedisBatchWindow(), 2L);
+        testContext.assertEquals(config.getRedisBatchMaxSize(), 50);
+        testContext.assertEquals(config.getRedisChunkSize(), 1024);
+        testContext.assertEquals(config.getRedisNearCacheSize(), 1048576L);
+        testContext.assertEquals(config.getRedisInvalidationChannel(), "my:invalidations");
+        testContext.assertEquals(config.getRedisEtagIndexSize(), 10000);
+        testContext.assertEquals(config.getRedisReplicas(), "replica1:6380,replica2:6380");
+        testContext.assertEquals(config.getRedisReplicaMaxLag(), 5);
+        testContext.assertEquals(config.isRedisReplicaHedging(), true);
+        testContext.assertEquals(config.getStorageExpandMaxNodes(), 500);
+        testContext.assertEquals(config.getStorageExpandMaxBytes(), 2048L);
+        testContext.assertEquals(config.getStorageExpandChunkSize(), 50);
+        testContext.assertEquals(config.isStorageExpandChunkConsistency(), true);
+        testContext.assertEquals(config.getCollectionStreamThreshold(), 50);
+        testContext.assertEquals(config.getReclaimBatchSize(), 20);
+        testContext.assertEquals(config.getCleanupInterval(), 1000L);
+        testContext.assertEquals(config.getCleanupTargetDuration(), 10L);
+        testContext.assertEquals(config.getCleanupLeaseDuration(), 3000L);
     }
 
     @Test
@@ -87,6 +150,22 @@ public class ModuleConfigurationTest {
         testContext.assertEquals(json.getString(PROP_DELTA_ETAGS_PREFIX), "delta:etags");
         testContext.assertEquals(json.getLong(PROP_RES_CLEANUP_AMMOUNT), 100000L);
         testContext.assertEquals(json.getString(PROP_LOCK_PREFIX), "rest-storage:locks");
+        testContext.assertEquals(json.getInteger(PROP_REDIS_POOL_SIZE), 1);
+        testContext.assertEquals(json.getString(PROP_REDIS_POOL_STRATEGY), RedisPoolStrategy.roundRobin.name());
+        testContext.assertEquals(json.getInteger(PROP_REDIS_MAX_IN_FLIGHT), 0);
+        testContext.assertEquals(json.getLong(PROP_REDIS_BATCH_WINDOW), -1L);
+        testContext.assertEquals(json.getInteger(PROP_REDIS_BATCH_MAX_SIZE), 100);
+        testContext.assertEquals(json.getInteger(PROP_REDIS_CHUNK_SIZE), 0);
+        testContext.assertEquals(json.getLong(PROP_REDIS_NEAR_CACHE_SIZE), 0L);
+        testContext.assertEquals(json.getString(PROP_REDIS_INVALIDATION_CHANNEL), "rest-storage:invalidations");
+        testContext.assertEquals(json.getInteger(PROP_REDIS_ETAG_INDEX_SIZE), 0);
+        testContext.assertEquals(json.getString(PROP_REDIS_REPLICAS), null);
+        testContext.assertEquals(json.getInteger(PROP_REDIS_REPLICA_MAX_LAG), 10);
+        testContext.assertEquals(json.getBoolean(PROP_REDIS_REPLICA_HEDGING), false);
+        testContext.assertEquals(json.getInteger(PROP_STORAGE_EXPAND_MAX_NODES), 10000);
+        testContext.assertEquals(json.getLong(PROP_STORAGE_EXPAND_MAX_BYTES), 10485760L);
+        testContext.assertEquals(json.getInteger(PROP_STORAGE_EXPAND_CHUNK_SIZE), 1000);
+        testContext.assertEquals(json.getBoolean(PROP_STORAGE_EXPAND_CHUNK_CONSISTENCY), false);
     }
 
     @Test
@@ -144,7 +223,27 @@ public class ModuleConfigurationTest {
         testContext.assertEquals(config.getDeltaEtagsPrefix(), "delta:etags");
         testContext.assertEquals(config.getResourceCleanupAmount(), 100000L);
         testContext.assertEquals(config.getLockPrefix(), "rest-storage:locks");
-
+        testContext.assertEquals(config.getRedisPoolSize(), 1);
+        testContext.assertEquals(config.getRedisPoolStrategy(), RedisPoolStrategy.roundRobin);
+        testContext.assertEquals(config.getRedisMaxInFlight(), 0);
+        testContext.assertEquals(config.getRedisBatchWindow(), -1L);
+        testContext.assertEquals(config.getRedisBatchMaxSize(), 100);
+        testContext.assertEquals(config.getRedisChunkSize(), 0);
+        testContext.assertEquals(config.getRedisNearCacheSize(), 0L);
+        testContext.assertEquals(config.getRedisInvalidationChannel(), "rest-storage:invalidations");
+        testContext.assertEquals(config.getRedisEtagIndexSize(), 0);
+        testContext.assertEquals(config.getRedisReplicas(), null);
+        testContext.assertEquals(config.getRedisReplicaMaxLag(), 10);
+        testContext.assertEquals(config.isRedisReplicaHedging(), false);
+        testContext.assertEquals(config.getStorageExpandMaxNodes(), 10000);
+        testContext.assertEquals(config.getStorageExpandMaxBytes(), 10485760L);
+        testContext.assertEquals(config.getStorageExpandChunkSize(), 1000);
+        testContext.assertEquals(config.isStorageExpandChunkConsistency(), false);
+        testContext.assertEquals(config.getCollectionStreamThreshold(), 10000);
+        testContext.assertEquals(config.getReclaimBatchSize(), 1000);
+        testContext.assertEquals(config.getCleanupInterval(), 0L);
+        testContext.assertEquals(config.getCleanupTargetDuration(), 5L);
+        testContext.assertEquals(config.getCleanupLeaseDuration(), 10000L);
     }
 
     @Test
@@ -166,6 +265,27 @@ public class ModuleConfigurationTest {
         json.put(PROP_DELTA_ETAGS_PREFIX, "newDeltaEtagsPrefix");
         json.put(PROP_RES_CLEANUP_AMMOUNT, 999L);
         json.put(PROP_LOCK_PREFIX, "newLockPrefix");
+        json.put(PROP_REDIS_POOL_SIZE, 8);
+        json.put(PROP_REDIS_POOL_STRATEGY, "leastOutstanding");
+        json.put(PROP_REDIS_MAX_IN_FLIGHT, 50);
+        json.put(PROP_REDIS_BATCH_WINDOW, 5L);
+        json.put(PROP_REDIS_BATCH_MAX_SIZE, 20);
+        json.put(PROP_REDIS_CHUNK_SIZE, 4096);
+        json.put(PROP_REDIS_NEAR_CACHE_SIZE, 2097152L);
+        json.put(PROP_REDIS_INVALIDATION_CHANNEL, "json:invalidations");
+        json.put(PROP_REDIS_ETAG_INDEX_SIZE, 20000);
+        json.put(PROP_REDIS_REPLICAS, "json1:6380");
+        json.put(PROP_REDIS_REPLICA_MAX_LAG, 20);
+        json.put(PROP_REDIS_REPLICA_HEDGING, true);
+        json.put(PROP_STORAGE_EXPAND_MAX_NODES, 600);
+        json.put(PROP_STORAGE_EXPAND_MAX_BYTES, 4096L);
+        json.put(PROP_STORAGE_EXPAND_CHUNK_SIZE, 100);
+        json.put(PROP_STORAGE_EXPAND_CHUNK_CONSISTENCY, true);
+        json.put(PROP_COLLECTION_STREAM_THRESHOLD, 200);
+        json.put(PROP_RECLAIM_BATCH_SIZE, 300);
+        json.put(PROP_CLEANUP_INTERVAL, 2000L);
+        json.put(PROP_CLEANUP_TARGET_DURATION, 20L);
+        json.put(PROP_CLEANUP_LEASE_DURATION, 4000L);
 
         ModuleConfiguration config = fromJsonObject(json);
         testContext.assertEquals(config.getRoot(), "newroot");
@@ -187,5 +307,26 @@ public class ModuleConfigurationTest {
         testContext.assertEquals(config.getDeltaEtagsPrefix(), "newDeltaEtagsPrefix");
         testContext.assertEquals(config.getResourceCleanupAmount(), 999L);
         testContext.assertEquals(config.getLockPrefix(), "newLockPrefix");
+        testContext.assertEquals(config.getRedisPoolSize(), 8);
+        testContext.assertEquals(config.getRedisPoolStrategy(), RedisPoolStrategy.leastOutstanding);
+        testContext.assertEquals(config.getRedisMaxInFlight(), 50);
+        testContext.assertEquals(config.getRedisBatchWindow(), 5L);
+        testContext.assertEquals(config.getRedisBatchMaxSize(), 20);
+        testContext.assertEquals(config.getRedisChunkSize(), 4096);
+        testContext.assertEquals(config.getRedisNearCacheSize(), 2097152L);
+        testContext.assertEquals(config.getRedisInvalidationChannel(), "json:invalidations");
+        testContext.assertEquals(config.getRedisEtagIndexSize(), 20000);
+        testContext.assertEquals(config.getRedisReplicas(), "json1:6380");
+        testContext.assertEquals(config.getRedisReplicaMaxLag(), 20);
+        testContext.assertEquals(config.isRedisReplicaHedging(), true);
+        testContext.assertEquals(config.getStorageExpandMaxNodes(), 600);
+        testContext.assertEquals(config.getStorageExpandMaxBytes(), 4096L);
+        testContext.assertEquals(config.getStorageExpandChunkSize(), 100);
+        testContext.assertEquals(config.isStorageExpandChunkConsistency(), true);
+        testContext.assertEquals(config.getCollectionStreamThreshold(), 200);
+        testContext.assertEquals(config.getReclaimBatchSize(), 300);
+        testContext.assertEquals(config.getCleanupInterval(), 2000L);
+        testContext.assertEquals(config.getCleanupTargetDuration(), 20L);
+        testContext.assertEquals(config.getCleanupLeaseDuration(), 4000L);
     }
 }
\ No newline at end of file